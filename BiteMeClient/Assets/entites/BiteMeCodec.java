@@ -0,0 +1,226 @@
+package entites;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import enums.Commands;
+import ocsf.common.BinaryCodec;
+
+/**
+ * The binary codec used between the BiteMe client and server in place of Java
+ * object serialization. A message is written as the tag of its command followed
+ * by its payload; the payload shapes used by the commands (users, customers,
+ * orders, restaurant orders, report arrays and menu maps) are written field by
+ * field with compact integers, and anything else falls back to serialization.
+ *
+ * The codec name includes a fingerprint of the Commands enum, so a client and a
+ * server built with different commands do not agree on the codec and keep
+ * using object serialization instead.
+ */
+public class BiteMeCodec extends BinaryCodec {
+
+	/**
+	 * Tag of a Message.
+	 */
+	private static final int MESSAGE = FIRST_CUSTOM_TAG;
+
+	/**
+	 * Tag of a User.
+	 */
+	private static final int USER = FIRST_CUSTOM_TAG + 1;
+
+	/**
+	 * Tag of a Customer.
+	 */
+	private static final int CUSTOMER = FIRST_CUSTOM_TAG + 2;
+
+	/**
+	 * Tag of an Order.
+	 */
+	private static final int ORDER = FIRST_CUSTOM_TAG + 3;
+
+	/**
+	 * Tag of a RestaurantOrder.
+	 */
+	private static final int RESTAURANT_ORDER = FIRST_CUSTOM_TAG + 4;
+
+	/**
+	 * The commands, indexed by the tag written for them.
+	 */
+	private static final Commands[] COMMANDS = Commands.values();
+
+	/**
+	 * The name of the codec, versioned and tied to the commands known.
+	 */
+	private static final String NAME = "biteme-binary/3/"
+			+ Integer.toHexString(Arrays.toString(COMMANDS).hashCode());
+
+	/**
+	 * Returns the name identifying this codec.
+	 *
+	 * @return the name of the codec.
+	 */
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	/**
+	 * Names a message by its command, so that the compression statistics show
+	 * which commands carry large payloads.
+	 *
+	 * @param msg the message.
+	 * @return the name of the command, or the type of a message without one.
+	 */
+	@Override
+	public String getMessageType(Object msg) {
+		if (msg instanceof Message && ((Message) msg).getCmd() != null) {
+			return ((Message) msg).getCmd().name();
+		}
+		return super.getMessageType(msg);
+	}
+
+	/**
+	 * Writes the BiteMe types field by field.
+	 *
+	 * @param value the value to write.
+	 * @param out   the stream to write to.
+	 * @return false if the value is not a BiteMe type.
+	 * @throws IOException if the value cannot be written.
+	 */
+	@Override
+	protected boolean writeCustom(Object value, DataOutputStream out) throws IOException {
+		Class<?> type = value.getClass();
+
+		if (type == Message.class) {
+			Message message = (Message) value;
+			out.writeByte(MESSAGE);
+			writeSignedVarInt(message.getCmd() == null ? -1 : message.getCmd().ordinal(), out);
+			writeVarInt(message.getRequestId(), out);
+			writeValue(message.getObj(), out);
+		} else if (type == User.class) {
+			User user = (User) value;
+			out.writeByte(USER);
+			writeSignedVarInt(user.getId(), out);
+			writeString(user.getUsername(), out);
+			writeString(user.getPassword(), out);
+			writeString(user.getFirstName(), out);
+			writeString(user.getLastName(), out);
+			writeString(user.getEmail(), out);
+			writeString(user.getPhone(), out);
+			writeString(user.getType(), out);
+			writeSignedVarInt(user.getIsLoggedIn(), out);
+			writeString(user.getDistrict(), out);
+		} else if (type == Customer.class) {
+			Customer customer = (Customer) value;
+			out.writeByte(CUSTOMER);
+			writeSignedVarInt(customer.getCustomerNumber(), out);
+			writeSignedVarInt(customer.getId(), out);
+			writeSignedVarInt(customer.getCredit(), out);
+			out.writeBoolean(customer.isBusiness());
+			writeString(customer.getStatus(), out);
+		} else if (type == Order.class) {
+			Order order = (Order) value;
+			out.writeByte(ORDER);
+			writeSignedVarInt(order.getOrderNumber(), out);
+			writeSignedVarInt(order.getCustomerNumber(), out);
+			writeString(order.getRestaurantName(), out);
+			out.writeByte(order.getOrderStatus() == null ? -1 : order.getOrderStatus().ordinal());
+			out.writeByte(order.getDeliveryTime() == null ? -1 : order.getDeliveryTime().ordinal());
+			writeSignedVarInt(order.getOrderPrice(), out);
+			writeString(order.getOrderDateTime(), out);
+			writeString(order.getRequestedDateTime(), out);
+			writeSignedVarInt(order.getIsEarlyOrder(), out);
+		} else if (type == RestaurantOrder.class) {
+			RestaurantOrder order = (RestaurantOrder) value;
+			out.writeByte(RESTAURANT_ORDER);
+			writeSignedVarInt(order.getOrderId(), out);
+			writeSignedVarInt(order.getCustomerNumber(), out);
+			writeString(order.getOrderDateTime(), out);
+			writeString(order.getDishName(), out);
+			writeSignedVarInt(order.getQuantity(), out);
+			writeSignedVarInt(order.getIsDelivery(), out);
+			writeString(order.getOrderStatus(), out);
+			writeString(order.getSize(), out);
+			writeString(order.getSpecification(), out);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the BiteMe types written by writeCustom.
+	 *
+	 * @param tag the tag of the value.
+	 * @param in  the stream to read from.
+	 * @return the value read.
+	 * @throws IOException            if the tag is unknown or the value cannot be
+	 *                                read.
+	 * @throws ClassNotFoundException if the class of a serialized payload cannot
+	 *                                be found.
+	 */
+	@Override
+	protected Object readCustom(int tag, DataInputStream in) throws IOException, ClassNotFoundException {
+		switch (tag) {
+
+		case MESSAGE:
+			Commands cmd = readConstant(COMMANDS, readSignedVarInt(in));
+			int requestId = readVarInt(in);
+			Message message = new Message(readValue(in), cmd);
+			message.setRequestId(requestId);
+			return message;
+
+		case USER:
+			return new User(readSignedVarInt(in), readString(in), readString(in), readString(in), readString(in),
+					readString(in), readString(in), readString(in), readSignedVarInt(in), readString(in));
+
+		case CUSTOMER:
+			return new Customer(readSignedVarInt(in), readSignedVarInt(in), readSignedVarInt(in), in.readBoolean(),
+					readString(in));
+
+		case ORDER:
+			return new Order(readSignedVarInt(in), readSignedVarInt(in), readString(in),
+					readConstant(Order.OrderStatus.values(), in.readByte()),
+					readConstant(Order.DelieveredOnTime.values(), in.readByte()), readSignedVarInt(in), readString(in),
+					readString(in), readSignedVarInt(in));
+
+		case RESTAURANT_ORDER:
+			RestaurantOrder order = new RestaurantOrder();
+			order.setOrderId(readSignedVarInt(in));
+			order.setCustomerNumber(readSignedVarInt(in));
+			order.setOrderDateTime(readString(in));
+			order.setDishName(readString(in));
+			order.setQuantity(readSignedVarInt(in));
+			order.setIsDelivery(readSignedVarInt(in));
+			order.setOrderStatus(readString(in));
+			order.setSize(readString(in));
+			order.setSpecification(readString(in));
+			return order;
+
+		default:
+			return super.readCustom(tag, in);
+		}
+	}
+
+	/**
+	 * Returns the enum constant written as its ordinal, or -1 for null.
+	 *
+	 * @param constants the constants of the enum.
+	 * @param ordinal   the ordinal read.
+	 * @return the constant, or null.
+	 * @throws StreamCorruptedException if the ordinal is out of range.
+	 */
+	private static <E> E readConstant(E[] constants, int ordinal) throws StreamCorruptedException {
+		if (ordinal == -1) {
+			return null;
+		}
+		if (ordinal < 0 || ordinal >= constants.length) {
+			throw new StreamCorruptedException("invalid constant " + ordinal);
+		}
+		return constants[ordinal];
+	}
+}
@@ -3,16 +3,19 @@ package entites;
 import java.io.Serializable;
 
 import enums.Commands;
+import ocsf.common.Correlated;
 
 /**
  * Represents a message containing an object and a command.
  * This class is used to encapsulate a command along with its associated data
  * for communication between different parts of the application.
  * It implements Serializable to allow its objects to be serialized.
+ * A message sent as a request carries an id that the server copies into its
+ * reply, so the client can match the reply to the request.
  * 
  * @author yosra
  */
-public class Message implements Serializable {
+public class Message implements Serializable, Correlated {
 
 	/**
      * A unique identifier for the serialization runtime to associate with the Message class.
@@ -30,6 +33,12 @@ public class Message implements Serializable {
      */
 	private Commands cmd;
 
+	/**
+	 * The id of the request this message belongs to, or 0 if it is not part of a
+	 * request.
+	 */
+	private int requestId;
+
 	/**
      * Constructs a new Message object with the specified object and command.
      * 
@@ -76,4 +85,24 @@ public class Message implements Serializable {
 	public void setCmd(Commands cmd) {
 		this.cmd = cmd;
 	}
+
+	/**
+	 * Returns the id of the request this message belongs to.
+	 * 
+	 * @return The request id, or 0 if the message is not part of a request.
+	 */
+	@Override
+	public int getRequestId() {
+		return requestId;
+	}
+
+	/**
+	 * Sets the id of the request this message belongs to.
+	 * 
+	 * @param requestId The request id, or 0.
+	 */
+	@Override
+	public void setRequestId(int requestId) {
+		this.requestId = requestId;
+	}
 }
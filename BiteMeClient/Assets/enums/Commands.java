@@ -49,12 +49,10 @@ public enum Commands {
     gotMyCustomerDetails,
     getUpdateTimes,
     RestaurantQuarterIncomeReport, //command for generating quarter reports
-    RestaurantQuarterReport2, //command for generating quarter reports
-    RestaurantQuarterIncomeReport1, //command for generating income reports
-    RestaurantQuarterReport3, //command for generating quarter reports
-    RestaurantQuarterIncomeReport2,//command for generating income reports
     sendCustomerOrder,
     updateCustomerCredit,
-    updatedCustomerCredit
+    updatedCustomerCredit,
+    serverBusy, // command from server telling the client its request was not handled and should be retried
+    serverFull // command from server refusing a new connection, with the time in ms after which to try again
 
 }
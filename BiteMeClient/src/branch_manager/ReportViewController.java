@@ -11,7 +11,6 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import ceo.CEOController;
-import client.Client;
 import client.ClientController;
 import entites.Message;
 import entites.User;
@@ -140,8 +139,6 @@ public class ReportViewController {
 	@FXML
 	private void initialize() {
 		
-		 Client.reportViewController = this;  // Set the  reportViwController instance here
-		
 		if (reportType.equals("income report")) {
 			incomeReport();
 		} else if (reportType.equals("order report")) {
@@ -209,7 +206,8 @@ public class ReportViewController {
 	public void orderReport() {
 		
 		Message msg = new Message(new Object[]{district,restaurantId,monthYear}, Commands. OrderReport);
-        ClientController.client.handleMessageFromClientControllers(msg); 
+        ClientController.client.requestFromClientControllers(msg,
+        		reply -> handleServerResponseOrder((int[]) reply.getObj()));
 	}
 
 	/**
@@ -283,7 +281,8 @@ public class ReportViewController {
 		Commands command = Commands.getIncomeReport;
 		Object[] incomeReportData = {restaurantId, monthYear, district};
 		Message message = new Message(incomeReportData, command);
-		ClientController.client.handleMessageFromClientControllers(message);	
+		ClientController.client.requestFromClientControllers(message,
+				reply -> handleServerResponseIncome((int[]) reply.getObj()));
 	}
 
 	/**
@@ -347,7 +346,8 @@ public class ReportViewController {
      */
 	public void performanceReport() {
 		 Message msg = new Message(new Object[]{district, monthYear }, Commands.getPerformanceReport);
-        ClientController.client.handleMessageFromClientControllers(msg); 
+        ClientController.client.requestFromClientControllers(msg,
+        		reply -> handleServerResponsePerformance((int[]) reply.getObj()));
 	}
 	
 	/**
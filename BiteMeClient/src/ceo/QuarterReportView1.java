@@ -1,7 +1,6 @@
 package ceo;
 
 
-import client.Client;
 import client.ClientController;
 import entites.Message;
 import enums.Commands;
@@ -107,16 +106,19 @@ public class QuarterReportView1 {
 	     */
 	    @FXML
 		private void initialize() {
-			Client.quarterReportView1 = this;
-	    	
 	    	txtRestaurant.setText(restaurantName);
 	    	
 			Message msg = new Message(new Object[]{restaurantId, quarter}, Commands. RestaurantQuarterReport1);
-	        ClientController.client.handleMessageFromClientControllers(msg); 
-	        
+	        ClientController.client.requestFromClientControllers(msg, reply -> {
+	        	Object[] response = (Object[]) reply.getObj();
+	        	handleServerResponseQuarter((int) response[0], (String[]) response[1], (int[]) response[2]);
+	        });
 	        
 	        Message msg1 = new Message(new Object[]{restaurantId, quarter}, Commands. RestaurantQuarterIncomeReport);
-	        ClientController.client.handleMessageFromClientControllers(msg1); 
+	        ClientController.client.requestFromClientControllers(msg1, reply -> {
+	        	Object[] response = (Object[]) reply.getObj();
+	        	handleServerResponseQuarterIncome((int) response[0], (int[]) response[1]);
+	        });
 	    }    
 	    
 	    /**
@@ -1,6 +1,5 @@
 package ceo;
 
-import client.Client;
 import client.ClientController;
 import entites.Message;
 import enums.Commands;
@@ -146,45 +145,43 @@ public class QuarterReportView2 {
      */
 	@FXML
 	private void initialize() {
-		Client.quarterReportView2 = this;
+		txtRestaurant.setText(restaurantName1);
 
-		if (restaurantName2 == null) {
-			txtRestaurant.setText(restaurantName1);
-
-			Message msg = new Message(new Object[] { restaurantId1, quarter1 }, Commands.RestaurantQuarterReport2);
-			ClientController.client.handleMessageFromClientControllers(msg);
-
-			Message msg2 = new Message(new Object[] { restaurantId1, quarter1 },
-					Commands.RestaurantQuarterIncomeReport1);
-			ClientController.client.handleMessageFromClientControllers(msg2);
-
-			Message msg1 = new Message(new Object[] { restaurantId1, quarter2 }, Commands.RestaurantQuarterReport3);
-			ClientController.client.handleMessageFromClientControllers(msg1);
-
-			Message msg3 = new Message(new Object[] { restaurantId1, quarter2 },
-					Commands.RestaurantQuarterIncomeReport2);
-			ClientController.client.handleMessageFromClientControllers(msg3);
-
-		} else {
-			txtRestaurant.setText(restaurantName1);
+		// Without a second restaurant, the same restaurant is compared over two
+		// quarters
+		int secondId = restaurantName2 == null ? restaurantId1 : restaurantId2;
+		String secondQuarter = restaurantName2 == null ? quarter2 : quarter1;
+		if (restaurantName2 != null) {
 			txtRestaurant2.setText(restaurantName2);
-
-			Message msg = new Message(new Object[] { restaurantId1, quarter1 }, Commands.RestaurantQuarterReport2);
-			ClientController.client.handleMessageFromClientControllers(msg);
-
-			Message msg2 = new Message(new Object[] { restaurantId1, quarter1 },
-					Commands.RestaurantQuarterIncomeReport1);
-			ClientController.client.handleMessageFromClientControllers(msg2);
-
-			Message msg1 = new Message(new Object[] { restaurantId2, quarter1 }, Commands.RestaurantQuarterReport3);
-			ClientController.client.handleMessageFromClientControllers(msg1);
-
-			Message msg3 = new Message(new Object[] { restaurantId2, quarter1 },
-					Commands.RestaurantQuarterIncomeReport2);
-			ClientController.client.handleMessageFromClientControllers(msg3);
-
 		}
 
+		// The four reports are requested at once; each reply is matched to its
+		// request by id, so they may arrive in any order
+		ClientController.client.requestFromClientControllers(
+				new Message(new Object[] { restaurantId1, quarter1 }, Commands.RestaurantQuarterReport1), reply -> {
+					Object[] response = (Object[]) reply.getObj();
+					handleServerResponseQuarter((int) response[0], (String[]) response[1], (int[]) response[2]);
+				});
+
+		ClientController.client.requestFromClientControllers(
+				new Message(new Object[] { restaurantId1, quarter1 }, Commands.RestaurantQuarterIncomeReport),
+				reply -> {
+					Object[] response = (Object[]) reply.getObj();
+					handleServerResponseQuarterIncome((int) response[0], (int[]) response[1]);
+				});
+
+		ClientController.client.requestFromClientControllers(
+				new Message(new Object[] { secondId, secondQuarter }, Commands.RestaurantQuarterReport1), reply -> {
+					Object[] response = (Object[]) reply.getObj();
+					handleServerResponseQuarter1((int) response[0], (String[]) response[1], (int[]) response[2]);
+				});
+
+		ClientController.client.requestFromClientControllers(
+				new Message(new Object[] { secondId, secondQuarter }, Commands.RestaurantQuarterIncomeReport),
+				reply -> {
+					Object[] response = (Object[]) reply.getObj();
+					handleServerResponseQuarterIncome1((int) response[0], (int[]) response[1]);
+				});
 	}
 
 	/**
@@ -2,16 +2,19 @@ package client;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
-import branch_manager.ReportViewController;
 import branch_manager.UpdateClientController;
-import ceo.QuarterReportView1;
-import ceo.QuarterReportView2;
 import customer.CustomerController;
 import customer.NewOrderController;
 import customer.ViewOrderController;
+import entites.BiteMeCodec;
 import entites.Customer;
 import entites.Message;
 import entites.Order;
@@ -33,6 +36,53 @@ import resturant.UpdateMenuController;
  * @author yosra
  */
 public class Client extends AbstractClient {
+	// Class variables *************************************************
+
+	/**
+	 * System property holding the size in bytes from which messages to the server
+	 * are compressed, if the server agrees, 0 to never compress. Defaults to 1024.
+	 */
+	public static final String COMPRESSION_THRESHOLD_PROPERTY = "biteme.client.compressionThreshold";
+
+	/**
+	 * System property holding the time in milliseconds without sending anything
+	 * after which the client sends a heartbeat, 0 to send none. Defaults to 15000,
+	 * well within the idle timeout of the server.
+	 */
+	public static final String HEARTBEAT_INTERVAL_PROPERTY = "biteme.client.heartbeatInterval";
+
+	/**
+	 * System property holding the URL of the server, overriding the host and port
+	 * entered by the user: "unix:/path/to/socket" for the Unix domain socket of a
+	 * server on the same host, or "tcp://host:port". Not set by default.
+	 */
+	public static final String SERVER_URL_PROPERTY = "biteme.client.serverUrl";
+
+	/**
+	 * System property telling whether the client reconnects by itself when the
+	 * connection is lost, resuming the session of the user. Defaults to true.
+	 */
+	public static final String AUTO_RECONNECT_PROPERTY = "biteme.client.autoReconnect";
+
+	/**
+	 * System property holding the number of messages that may wait to be written
+	 * to the server by the writer thread, so that the screens never wait for the
+	 * network, 0 to write them on the thread sending them. Defaults to 256.
+	 */
+	public static final String OUTBOUND_CAPACITY_PROPERTY = "biteme.client.outboundCapacity";
+
+	/**
+	 * System property holding the time in milliseconds that must pass between two
+	 * identical requests for data, such as refreshing the orders of a restaurant,
+	 * so that a busy terminal sends them as one. Defaults to 200.
+	 */
+	public static final String REQUEST_DEBOUNCE_PROPERTY = "biteme.client.requestDebounce";
+
+	/**
+	 * The requests for data that are coalesced, with the command of their reply.
+	 */
+	static final Map<Commands, Commands> COALESCED_REQUESTS = coalescedRequests();
+
 	// Instance variables **********************************************
 
 	/**
@@ -41,6 +91,24 @@ public class Client extends AbstractClient {
 	 */
 	ClientController clientUI;
 
+	/**
+	 * Indicates that the server already gave the client a session, so that the
+	 * next session follows a reconnection.
+	 */
+	private boolean hadSession;
+
+	/**
+	 * Builds the models of the large replies of the server away from the JavaFX
+	 * thread.
+	 */
+	private final ViewModelBuilder viewModelBuilder = new ViewModelBuilder();
+
+	/**
+	 * Keeps the screens from sending identical requests for data at once.
+	 */
+	private final RequestCoalescer requestCoalescer = new RequestCoalescer(this, COALESCED_REQUESTS,
+			Long.getLong(REQUEST_DEBOUNCE_PROPERTY, 200));
+
 	// Constructors ****************************************************
 
 	// TODO: STATIC IMPORT OF DIFFERENT CONTROLLERS
@@ -71,11 +139,6 @@ public class Client extends AbstractClient {
 	 */
 	static public ViewOrderController viewOrderController;
 	
-	/**
-	 * The controller for managing the report view screen and displaying reports.
-	 */
-	static public ReportViewController reportViewController;
-	
 	/**
 	 * The controller for managing the update menu screen and handling menu updates.
 	 */
@@ -85,16 +148,6 @@ public class Client extends AbstractClient {
 	 * The controller for managing the new order screen and handling new order creation.
 	 */
 	static public NewOrderController newOrderController;
-	
-	/**
-	 * The controller for managing the first quarterly report view for the CEO.
-	 */
-	static public QuarterReportView1 quarterReportView1;
-	
-	/**
-	 * The controller for managing the second quarterly report view for the CEO.
-	 */
-	static public QuarterReportView2 quarterReportView2;
 
 	/**
 	 * Constructs an instance of the Client.
@@ -108,6 +161,16 @@ public class Client extends AbstractClient {
 		super(host, port); // Call the superclass constructor
 		this.clientUI = clientUI;
 		System.out.println("Connecting...");
+		// Offer the binary codec, the connection falls back to serialization if the
+		// server does not accept it
+		setMessageCodec(new BiteMeCodec());
+		setCompressionThreshold(Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, 1024));
+		setHeartbeatInterval(Integer.getInteger(HEARTBEAT_INTERVAL_PROPERTY, 15000));
+		String serverUrl = System.getProperty(SERVER_URL_PROPERTY);
+		if (serverUrl != null && !serverUrl.isEmpty())
+			setUrl(serverUrl);
+		setAutoReconnect(Boolean.parseBoolean(System.getProperty(AUTO_RECONNECT_PROPERTY, "true")));
+		setOutboundCapacity(Integer.getInteger(OUTBOUND_CAPACITY_PROPERTY, 256));
 		openConnection();
 
 		updateMenuController = new UpdateMenuController();
@@ -135,6 +198,12 @@ public class Client extends AbstractClient {
 		// get the message a message object from the server (getcmd,getobj) while obj is
 		// the data from the server
 		Message m = (Message) msg;
+		if (m.getCmd() == Commands.serverBusy) {
+			// The request that was not handled cannot be told apart
+			requestCoalescer.clear();
+		} else {
+			requestCoalescer.replied(m.getCmd());
+		}
 		// TEMPORARY TODO: SWTICH CASE
 		switch (m.getCmd()) {
 
@@ -209,39 +278,34 @@ public class Client extends AbstractClient {
 			});
 
 			break;
-		case updateCoustomerToContactByCoustomerId:
+		case updateRestaurantOrdersTable:
+			// Pushed by the server when an order of the restaurant changed
+			requestCoalescer.changed();
 			Platform.runLater(() -> {
-				User customer = (User) m.getObj();
 				if (employeeController != null) {
-					employeeController.sendTextMassageAndEmailToCustomer(customer);
-				}
-			});
-			break;
-		case OrderReport:
-			Platform.runLater(() -> {
-				int[] orderReportDetails = (int[]) m.getObj();
-				if (reportViewController != null) {
-					reportViewController.handleServerResponseOrder(orderReportDetails);
+					employeeController.getTableData();
 				}
 			});
 			break;
-		case setIncomeReport:
-			Platform.runLater(() -> {
-				int[] incomeReportResultData = (int[]) m.getObj();
-				if (reportViewController != null) {
-					reportViewController.handleServerResponseIncome(incomeReportResultData);
-				}
-			});
-			break;
-		case getPerformanceReport:
+		case updateCoustomerToContactByCoustomerId:
 			Platform.runLater(() -> {
-				int[] performanceReportResultData = (int[]) m.getObj();
-				if (reportViewController != null) {
-					reportViewController.handleServerResponsePerformance(performanceReportResultData);
+				User customer = (User) m.getObj();
+				if (employeeController != null) {
+					employeeController.sendTextMassageAndEmailToCustomer(customer);
 				}
 			});
 			break;
 		case GetRestaurantDishes:
+			// The rows are built away from the JavaFX thread, which only swaps them in
+			viewModelBuilder.submit(m.getCmd().name(),
+					() -> UpdateMenuController.buildDishes((List<Object[]>) m.getObj()), dishes -> {
+						if (UpdateMenuController.getInstance() != null) {
+							UpdateMenuController.getInstance().setDishes(dishes);
+						} else {
+							System.err.println("UpdateMenuController instance is null.");
+						}
+					});
+			break;
 		case AddDish:
 		case DeleteDish:
 		case UpdateDishPrice:
@@ -268,17 +332,17 @@ public class Client extends AbstractClient {
 			break;
 
 		case gotMyRestaurantMenu: // NEWORDER - GET REST NAMES
-			Platform.runLater(() -> {
-				ArrayList<Map<String, Object>> menu = (ArrayList<Map<String, Object>>) m.getObj();
-				if (newOrderController != null) {
-					try {
-						newOrderController.setRestaurantMenu(menu);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-					System.out.println(menu); // checking debugging
-				}
-			});
+			// The dishes are built away from the JavaFX thread, which only swaps them in
+			viewModelBuilder.submit(m.getCmd().name(),
+					() -> NewOrderController.buildRestaurantMenu((ArrayList<Map<String, Object>>) m.getObj()), menu -> {
+						if (newOrderController != null) {
+							try {
+								newOrderController.setRestaurantMenu(menu);
+							} catch (Exception e) {
+								e.printStackTrace();
+							}
+						}
+					});
 			break;
 
 		case gotMyCustomerDetails:
@@ -291,76 +355,16 @@ public class Client extends AbstractClient {
 			});
 			break;
 
-		case RestaurantQuarterReport1:
-			Platform.runLater(() -> {
-				Object[] response = (Object[]) m.getObj();
-				int maxOrders = (int) response[0];
-				String[] intervals = (String[]) response[1];
-				int[] values = (int[]) response[2];
-				if (quarterReportView1 != null) {
-					quarterReportView1.handleServerResponseQuarter(maxOrders, intervals, values);
-				}
-			});
-
-			break;
-
-		case RestaurantQuarterIncomeReport:
-			Platform.runLater(() -> {
-				Object[] response = (Object[]) m.getObj();
-				int totalIncome = (int) response[0];
-				int[] values = (int[]) response[1];
-				if (quarterReportView1 != null) {
-					quarterReportView1.handleServerResponseQuarterIncome(totalIncome, values);
-				}
-			});
-			break;
-
-		case RestaurantQuarterReport2:
-			Platform.runLater(() -> {
-				Object[] response = (Object[]) m.getObj();
-				int maxOrders = (int) response[0];
-				String[] intervals = (String[]) response[1];
-				int[] values = (int[]) response[2];
-				if (quarterReportView2 != null) {
-					quarterReportView2.handleServerResponseQuarter(maxOrders, intervals, values);
-				}
-			});
-
+		case serverBusy:
+			// The request was not handled, the user may send it again
+			clientUI.display((String) m.getObj());
 			break;
 
-		case RestaurantQuarterIncomeReport1:
-			Platform.runLater(() -> {
-				Object[] response = (Object[]) m.getObj();
-				int totalIncome = (int) response[0];
-				int[] values = (int[]) response[1];
-				if (quarterReportView2 != null) {
-					quarterReportView2.handleServerResponseQuarterIncome(totalIncome, values);
-				}
-			});
-			break;
-
-		case RestaurantQuarterReport3:
-			Platform.runLater(() -> {
-				Object[] response = (Object[]) m.getObj();
-				int maxOrders = (int) response[0];
-				String[] intervals = (String[]) response[1];
-				int[] values = (int[]) response[2];
-				if (quarterReportView2 != null) {
-					quarterReportView2.handleServerResponseQuarter1(maxOrders, intervals, values);
-				}
-			});
-
-			break;
-
-		case RestaurantQuarterIncomeReport2:
-			Platform.runLater(() -> {
-				Object[] response = (Object[]) m.getObj();
-				int totalIncome = (int) response[0];
-				int[] values = (int[]) response[1];
-				if (quarterReportView2 != null) {
-					quarterReportView2.handleServerResponseQuarterIncome1(totalIncome, values);
-				}
-			});
+		case serverFull:
+			// The server closes the connection right after this message
+			delayReconnect((int) m.getObj());
+			clientUI.display("The server is full, please try again in " + ((int) m.getObj() + 999) / 1000
+					+ " seconds");
 			break;
 
 		default:
@@ -382,11 +386,128 @@ public class Client extends AbstractClient {
 			sendToServer(message);
 
 		} catch (IOException e) {
+			if (isAutoReconnect()) {
+				// The client is reconnecting or the network is congested, the user may
+				// try again
+				clientUI.display("Could not send message to server: " + e.getMessage() + ", please try again shortly");
+				return;
+			}
 			clientUI.display("Could not send message to server.  Terminating client.");
 			quit();
 		}
 	}
 
+	/**
+	 * Sends a request to the server without blocking the caller, and returns its
+	 * future reply. Controllers may have many requests outstanding at once, even
+	 * with the same command, and compose their replies: each reply is matched to
+	 * its request by id and does not go through handleMessageFromServer. The
+	 * future fails if the server is busy, if no reply arrives within the request
+	 * timeout, or if the connection is lost.
+	 *
+	 * @param message The request from the client controllers.
+	 * @return The future reply of the server.
+	 */
+	public CompletableFuture<Message> request(Message message) {
+		return super.request(message).thenApply(response -> {
+			Message reply = (Message) response;
+			if (reply.getCmd() == Commands.serverBusy) {
+				// The request was not handled, the user may send it again
+				throw new CompletionException(new IOException((String) reply.getObj()));
+			}
+			return reply;
+		});
+	}
+
+	/**
+	 * Sends a request from the client controllers whose reply is passed to the
+	 * given action on the JavaFX thread. A failed request is reported to the
+	 * user instead.
+	 *
+	 * @param message The request from the client controllers.
+	 * @param onReply The action receiving the reply.
+	 */
+	public void requestFromClientControllers(Message message, Consumer<Message> onReply) {
+		request(message).whenComplete((reply, failure) -> {
+			if (failure == null) {
+				Platform.runLater(() -> onReply.accept(reply));
+				return;
+			}
+			Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+			clientUI.display("No reply to " + message.getCmd() + ": " + cause.getMessage());
+		});
+	}
+
+	/**
+	 * Reports a lost connection, including a server that stopped answering
+	 * heartbeats without closing its socket.
+	 *
+	 * @param exception The exception that closed the connection.
+	 */
+	@Override
+	protected void connectionException(Exception exception) {
+		requestCoalescer.clear();
+		clientUI.display("Lost connection to the server: " + exception.getMessage());
+	}
+
+	/**
+	 * Reports a message of the screens that was queued but never reached the
+	 * server because the connection was lost.
+	 *
+	 * @param msg       The message that was not sent.
+	 * @param exception The reason it was not sent.
+	 */
+	@Override
+	protected void sendFailed(Object msg, Exception exception) {
+		if (msg instanceof Message) {
+			clientUI.display("Could not send " + ((Message) msg).getCmd() + " to the server: " + exception.getMessage());
+		}
+	}
+
+	/**
+	 * Reports each attempt to reconnect to the server.
+	 *
+	 * @param attempt The number of the attempt.
+	 * @param delay   The time in milliseconds before the attempt.
+	 */
+	@Override
+	protected void reconnecting(int attempt, long delay) {
+		clientUI.display("Reconnecting in " + (delay + 999) / 1000 + " seconds (attempt " + attempt + ")");
+	}
+
+	/**
+	 * Handles the session given by the server. After a reconnection, a resumed
+	 * session keeps the user logged in and the screens as they are; only the
+	 * order table of an employee is fetched again, since the changes pushed while
+	 * the client was away were lost. A session that could not be resumed means
+	 * the user has to log in again.
+	 *
+	 * @param resumed true if the server restored the session of the previous
+	 *                connection.
+	 */
+	@Override
+	protected void sessionStarted(boolean resumed) {
+		// The replies to the requests sent on the previous connection are lost
+		requestCoalescer.clear();
+		boolean reconnected = hadSession;
+		hadSession = true;
+		if (!reconnected) {
+			return;
+		}
+		if (resumed) {
+			clientUI.display("Reconnected to the server");
+			Platform.runLater(() -> {
+				if (employeeController != null) {
+					employeeController.getTableData();
+				}
+			});
+			return;
+		}
+		// The server does not know the client any more
+		handleMessageFromClientControllers(new Message(null, Commands.ClientConnect));
+		clientUI.display("Reconnected to the server, your session expired, please log in again");
+	}
+
 	/**
 	 * Handles the termination command from the server.
 	 */
@@ -400,19 +521,61 @@ public class Client extends AbstractClient {
 
 	/**
 	 * This method handles all data coming from the client controllers and sends it
-	 * to the server.
+	 * to the server. A request for data identical to one already waiting for its
+	 * reply is not sent again, and rapid refreshes are sent as one.
 	 *
 	 * @param message The message from the client controllers.
 	 */
 	public void handleMessageFromClientControllers(Object message) {
+		if (message instanceof Message && requestCoalescer.coalesce((Message) message)) {
+			return;
+		}
+		// Any other message may change the data shown by the screens
+		requestCoalescer.changed();
+		send(message);
+	}
+
+	/**
+	 * Sends a message to the server, reporting a failure to the user.
+	 *
+	 * @param message The message to send.
+	 * @return true if the message was sent.
+	 */
+	boolean send(Object message) {
 		try {
 			System.out.println("sendtoserver");
 			sendToServer(message);
+			return true;
 
 		} catch (IOException e) {
+			if (isAutoReconnect()) {
+				// The client is reconnecting or the network is congested, the user may
+				// try again
+				clientUI.display("Could not send message to server: " + e.getMessage() + ", please try again shortly");
+				return false;
+			}
 			clientUI.display("Could not send message to server.  Terminating client.");
 			quit();
+			return false;
 		}
 	}
 
+	/**
+	 * Lists the requests for data that are coalesced, with the command of their
+	 * reply. Their replies go through handleMessageFromServer, in the order the
+	 * requests were sent.
+	 *
+	 * @return The command of the reply to each coalesced request.
+	 */
+	private static Map<Commands, Commands> coalescedRequests() {
+		Map<Commands, Commands> requests = new EnumMap<>(Commands.class);
+		requests.put(Commands.getRestaurantOrders, Commands.setRestaurantOrders);
+		requests.put(Commands.getRestaurantList, Commands.gotMyRestaurantList);
+		requests.put(Commands.getRestaurantMenu, Commands.gotMyRestaurantMenu);
+		requests.put(Commands.getCustomerDetails, Commands.gotMyCustomerDetails);
+		requests.put(Commands.getPendingOrders, Commands.getPendingOrders);
+		requests.put(Commands.GetRestaurantDishes, Commands.GetRestaurantDishes);
+		return Collections.unmodifiableMap(requests);
+	}
+
 }
@@ -0,0 +1,341 @@
+package client;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import entites.Message;
+import enums.Commands;
+
+/**
+ * The RequestCoalescer class keeps the screens from asking the server for the
+ * same data over and over. A request for data, such as the orders of a
+ * restaurant or its menu, that is identical to one still waiting for its reply
+ * (the same command with an equal argument) is not sent again: the single reply
+ * updates the screens for both. A refresh asked for again shortly after the
+ * previous one is delayed until the debounce time has passed, and any number of
+ * such refreshes are sent as one.
+ *
+ * A request waiting for its reply only stands for a new one if it was sent
+ * after the last change the client made, or was told about, so that a refresh
+ * following a change always sees it. A later identical request is then sent
+ * once the reply to the earlier one arrives. Replies are matched to requests by
+ * their command: the server answers the messages of a client in the order it
+ * sent them.
+ */
+public class RequestCoalescer {
+	// Instance variables **********************************************
+
+	/**
+	 * The client sending the requests.
+	 */
+	private final Client client;
+
+	/**
+	 * The command of the reply to each request that is coalesced.
+	 */
+	private final Map<Commands, Commands> replies;
+
+	/**
+	 * The time in milliseconds that must pass between two identical requests.
+	 */
+	private final long debounce;
+
+	/**
+	 * The requests sent or waiting to be sent, by command and argument.
+	 */
+	private final Map<Key, Entry> entries = new HashMap<>();
+
+	/**
+	 * The requests waiting for their reply, by command of the reply, in the order
+	 * they were sent.
+	 */
+	private final Map<Commands, ArrayDeque<Entry>> inFlight = new EnumMap<>(Commands.class);
+
+	/**
+	 * Counts the changes made by the client or pushed by the server.
+	 */
+	private long changes;
+
+	/**
+	 * The number of requests sent to the server.
+	 */
+	private long sent;
+
+	/**
+	 * The number of requests answered by another request.
+	 */
+	private long coalesced;
+
+	/**
+	 * The thread sending the delayed requests.
+	 */
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "BiteMe request coalescer");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	// Constructors ****************************************************
+
+	/**
+	 * Constructs a request coalescer.
+	 *
+	 * @param client   The client sending the requests.
+	 * @param replies  The command of the reply to each request to coalesce.
+	 * @param debounce The time in milliseconds that must pass between two
+	 *                 identical requests, 0 to send them as soon as the previous
+	 *                 one is answered.
+	 */
+	public RequestCoalescer(Client client, Map<Commands, Commands> replies, long debounce) {
+		this.client = client;
+		this.replies = new EnumMap<>(replies);
+		this.debounce = debounce;
+	}
+
+	// Instance methods ************************************************
+
+	/**
+	 * Takes a request from the screens. The request is sent at once, later, or not
+	 * at all if an identical request answers it.
+	 *
+	 * @param message The request.
+	 * @return true if the request was taken, false if it is not coalesced and must
+	 *         be sent by the caller.
+	 */
+	public boolean coalesce(Message message) {
+		if (!replies.containsKey(message.getCmd())) {
+			return false;
+		}
+
+		Entry entry;
+		synchronized (this) {
+			Key key = new Key(message);
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+
+			long now = System.currentTimeMillis();
+			if (entry.inFlight && client.getRequestTimeout() > 0
+					&& now - entry.sentAt > client.getRequestTimeout()) {
+				// The reply is not coming, do not wait for it any longer
+				inFlight.get(replies.get(key.command)).remove(entry);
+				entry.inFlight = false;
+			}
+
+			if (entry.waiting || (entry.inFlight && entry.changes == changes)) {
+				coalesced++;
+				return true;
+			}
+
+			long wait = entry.sentAt + debounce - now;
+			if (entry.inFlight || wait > 0) {
+				entry.waiting = true;
+				entry.message = message;
+				if (!entry.inFlight) {
+					schedule(entry, wait);
+				}
+				return true;
+			}
+
+			markSent(entry, message, now);
+		}
+		send(entry, message);
+		return true;
+	}
+
+	/**
+	 * Records that the client made a change, or was told about one, so that the
+	 * requests already sent do not stand for new ones.
+	 */
+	public synchronized void changed() {
+		changes++;
+	}
+
+	/**
+	 * Records a message from the server, which answers the oldest request waiting
+	 * for a reply with its command.
+	 *
+	 * @param command The command of the message.
+	 */
+	public synchronized void replied(Commands command) {
+		ArrayDeque<Entry> waiting = inFlight.get(command);
+		Entry entry = waiting == null ? null : waiting.poll();
+		if (entry == null) {
+			return;
+		}
+
+		entry.inFlight = false;
+		if (entry.waiting) {
+			schedule(entry, entry.sentAt + debounce - System.currentTimeMillis());
+		} else {
+			schedule(entry, debounce);
+		}
+	}
+
+	/**
+	 * Forgets the requests waiting for their reply, when their replies cannot be
+	 * matched any more because the connection was lost or the server did not
+	 * handle a request. The requests waiting to be sent are still sent, once
+	 * their debounce time has passed.
+	 */
+	public synchronized void clear() {
+		inFlight.clear();
+		long now = System.currentTimeMillis();
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			Entry entry = it.next();
+			if (!entry.waiting) {
+				it.remove();
+				continue;
+			}
+			if (entry.inFlight) {
+				// It was to be sent on the reply, which will not come
+				entry.inFlight = false;
+				schedule(entry, entry.sentAt + debounce - now);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of requests sent to the server.
+	 */
+	public synchronized long getSent() {
+		return sent;
+	}
+
+	/**
+	 * @return The number of requests answered by another request.
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "requests: " + sent + " sent, " + coalesced + " coalesced";
+	}
+
+	/**
+	 * Sends the delayed request of an entry when it is due, or forgets an idle
+	 * entry once its debounce time has passed.
+	 *
+	 * @param entry The entry.
+	 */
+	private void fire(Entry entry) {
+		Message message;
+		synchronized (this) {
+			if (entries.get(entry.key) != entry || entry.inFlight) {
+				return;
+			}
+			if (!entry.waiting) {
+				if (System.currentTimeMillis() - entry.sentAt >= debounce) {
+					entries.remove(entry.key);
+				}
+				return;
+			}
+			message = entry.message;
+			markSent(entry, message, System.currentTimeMillis());
+		}
+		send(entry, message);
+	}
+
+	/**
+	 * Records that the request of an entry is about to be sent.
+	 *
+	 * @param entry   The entry.
+	 * @param message The request.
+	 * @param now     The current time in milliseconds.
+	 */
+	private void markSent(Entry entry, Message message, long now) {
+		entry.inFlight = true;
+		entry.waiting = false;
+		entry.message = null;
+		entry.changes = changes;
+		entry.sentAt = now;
+		inFlight.computeIfAbsent(replies.get(message.getCmd()), k -> new ArrayDeque<>()).add(entry);
+		sent++;
+	}
+
+	/**
+	 * Sends the request of an entry, forgetting it if it could not be sent.
+	 *
+	 * @param entry   The entry.
+	 * @param message The request.
+	 */
+	private void send(Entry entry, Message message) {
+		if (!client.send(message)) {
+			synchronized (this) {
+				ArrayDeque<Entry> waiting = inFlight.get(replies.get(message.getCmd()));
+				if (waiting != null) {
+					waiting.remove(entry);
+				}
+				entries.remove(entry.key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Calls fire for an entry after a delay.
+	 *
+	 * @param entry The entry.
+	 * @param delay The delay in milliseconds, at once if not positive.
+	 */
+	private void schedule(Entry entry, long delay) {
+		timer.schedule(() -> fire(entry), Math.max(0, delay), TimeUnit.MILLISECONDS);
+	}
+
+	// Inner classes ***************************************************
+
+	/**
+	 * A command and its argument, which make identical requests.
+	 */
+	private static final class Key {
+		private final Commands command;
+		private final Object[] argument;
+
+		Key(Message message) {
+			command = message.getCmd();
+			argument = new Object[] { message.getObj() };
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && command == ((Key) other).command
+					&& Arrays.deepEquals(argument, ((Key) other).argument);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * command.hashCode() + Arrays.deepHashCode(argument);
+		}
+	}
+
+	/**
+	 * The state of the identical requests with a key.
+	 */
+	private static final class Entry {
+		private final Key key;
+		/** Indicates that the last request sent waits for its reply. */
+		private boolean inFlight;
+		/** Indicates that a request waits to be sent. */
+		private boolean waiting;
+		/** The request waiting to be sent. */
+		private Message message;
+		/** The count of changes when the last request was sent. */
+		private long changes;
+		/** The time in milliseconds the last request was sent. */
+		private long sentAt = Long.MIN_VALUE / 2;
+
+		Entry(Key key) {
+			this.key = key;
+		}
+	}
+}
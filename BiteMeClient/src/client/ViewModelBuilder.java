@@ -0,0 +1,171 @@
+package client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import javafx.application.Platform;
+
+/**
+ * The ViewModelBuilder class turns the replies of the server into the models
+ * shown by the screens away from the JavaFX thread. The model of a reply is
+ * built on a background thread, and only the final swap of the model into the
+ * screen runs on the JavaFX thread, so that a large menu does not freeze the
+ * user interface while it is built.
+ *
+ * Models are built one at a time, in the order the replies arrived, so that an
+ * older reply never replaces the model of a newer one. The time spent in each
+ * stage is recorded per command: waiting for the builder, building the model,
+ * waiting for the JavaFX thread and applying the model.
+ */
+public class ViewModelBuilder {
+	// Instance variables **********************************************
+
+	/**
+	 * The thread building the models.
+	 */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "BiteMe view model builder");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The time spent in each stage, by command.
+	 */
+	private final Map<String, Timings> timings = new ConcurrentHashMap<>();
+
+	// Instance methods ************************************************
+
+	/**
+	 * Builds a model on the background thread, then applies it on the JavaFX
+	 * thread. A model that fails to build is not applied.
+	 *
+	 * @param <T>   The type of the model.
+	 * @param name  The name the timings are recorded under, usually the command of
+	 *              the reply.
+	 * @param build Builds the model, without touching the screens.
+	 * @param apply Puts the model into the screens.
+	 */
+	public <T> void submit(String name, Supplier<T> build, Consumer<T> apply) {
+		long submitted = System.nanoTime();
+		executor.execute(() -> {
+			long started = System.nanoTime();
+			T model;
+			try {
+				model = build.get();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				return;
+			}
+			long built = System.nanoTime();
+			Platform.runLater(() -> {
+				long applying = System.nanoTime();
+				try {
+					apply.accept(model);
+				} finally {
+					long applied = System.nanoTime();
+					Timings timing = timings.computeIfAbsent(name, k -> new Timings());
+					timing.record(started - submitted, built - started, applying - built, applied - applying);
+					System.out.println(name + ": " + timing.describeLast());
+				}
+			});
+		});
+	}
+
+	/**
+	 * @return The time spent in each stage, by command.
+	 */
+	public Map<String, Timings> getTimings() {
+		return Collections.unmodifiableMap(timings);
+	}
+
+	// Inner classes ***************************************************
+
+	/**
+	 * The time spent in each stage by the models built under a name.
+	 */
+	public static class Timings {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong queuedNanos = new AtomicLong();
+		private final AtomicLong buildNanos = new AtomicLong();
+		private final AtomicLong waitNanos = new AtomicLong();
+		private final AtomicLong applyNanos = new AtomicLong();
+		private volatile long[] last = new long[4];
+
+		/**
+		 * Records the stages of a model.
+		 *
+		 * @param queued The time waiting for the builder, in nanoseconds.
+		 * @param build  The time building the model.
+		 * @param wait   The time waiting for the JavaFX thread.
+		 * @param apply  The time applying the model on the JavaFX thread.
+		 */
+		void record(long queued, long build, long wait, long apply) {
+			count.incrementAndGet();
+			queuedNanos.addAndGet(queued);
+			buildNanos.addAndGet(build);
+			waitNanos.addAndGet(wait);
+			applyNanos.addAndGet(apply);
+			last = new long[] { queued, build, wait, apply };
+		}
+
+		/**
+		 * @return The number of models built.
+		 */
+		public long getCount() {
+			return count.get();
+		}
+
+		/**
+		 * @return The total time waiting for the builder, in nanoseconds.
+		 */
+		public long getQueuedNanos() {
+			return queuedNanos.get();
+		}
+
+		/**
+		 * @return The total time building the models, in nanoseconds.
+		 */
+		public long getBuildNanos() {
+			return buildNanos.get();
+		}
+
+		/**
+		 * @return The total time waiting for the JavaFX thread, in nanoseconds.
+		 */
+		public long getWaitNanos() {
+			return waitNanos.get();
+		}
+
+		/**
+		 * @return The total time applying the models on the JavaFX thread, in
+		 *         nanoseconds.
+		 */
+		public long getApplyNanos() {
+			return applyNanos.get();
+		}
+
+		/**
+		 * @return The stages of the last model, in milliseconds.
+		 */
+		String describeLast() {
+			long[] stages = last;
+			return String.format("queued %.3f ms, built %.3f ms, waited %.3f ms, applied %.3f ms on the JavaFX thread",
+					stages[0] / 1e6, stages[1] / 1e6, stages[2] / 1e6, stages[3] / 1e6);
+		}
+
+		@Override
+		public String toString() {
+			long n = Math.max(1, getCount());
+			return String.format("%d models, average queued %.3f ms, built %.3f ms, waited %.3f ms, applied %.3f ms",
+					getCount(), getQueuedNanos() / 1e6 / n, getBuildNanos() / 1e6 / n, getWaitNanos() / 1e6 / n,
+					getApplyNanos() / 1e6 / n);
+		}
+	}
+}
@@ -535,26 +535,19 @@ public class NewOrderController {
 	}
 
 	/**
-	 * Populates the restaurant's menu and updates the corresponding dish lists and
-	 * TableViews. This method processes the provided menu data, categorizes dishes
-	 * by type, and handles specific settings like size options and default
-	 * specifications. If the Finish button was pressed, it also checks for updates
-	 * and continues processing the order.
+	 * Builds the model of a restaurant's menu from the menu data received from the
+	 * server. This method processes the provided menu data, categorizes dishes by
+	 * type, and handles specific settings like size options and default
+	 * specifications. It does not touch the screen, so that it may run away from
+	 * the JavaFX thread.
 	 *
 	 * @param menu An ArrayList of Map objects, each representing a dish with its
-	 *             properties and options.
-	 * @throws Exception If an error occurs while processing the menu data.
-	 */
-	public void setRestaurantMenu(ArrayList<Map<String, Object>> menu) throws Exception {
-		dishes1.clear();
-		orderQuantitiesSalad.clear();
-		dishes2.clear();
-		orderQuantitiesMain.clear();
-		dishes3.clear();
-		orderQuantitiesDesert.clear();
-		dishes4.clear();
-		orderQuantitiesDrink.clear();
-
+	 *             properties and options, followed by the restaurant info.
+	 * @return The model of the menu, to be passed to setRestaurantMenu.
+	 */
+	@SuppressWarnings("unchecked")
+	public static RestaurantMenu buildRestaurantMenu(ArrayList<Map<String, Object>> menu) {
+		RestaurantMenu model = new RestaurantMenu();
 		Map<String, Dish> dishMap = new HashMap<>();
 
 		// The last item in the menu list contains the restaurant info
@@ -564,111 +557,129 @@ public class NewOrderController {
 		Object beginUpdateObj = restaurantInfo.get("BeginUpdate");
 		Object endUpdateObj = restaurantInfo.get("EndUpdate");
 
-		if (beginUpdateObj == null || endUpdateObj == null) {
-			this.timeIsNull = true;
-			this.beginUpdate = null;
-			this.endUpdate = null;
-		} else {
-			this.timeIsNull = false;
-			this.beginUpdate = (java.sql.Timestamp) beginUpdateObj;
-			this.endUpdate = (java.sql.Timestamp) endUpdateObj;
+		if (beginUpdateObj != null && endUpdateObj != null) {
+			model.beginUpdate = (java.sql.Timestamp) beginUpdateObj;
+			model.endUpdate = (java.sql.Timestamp) endUpdateObj;
 		}
 
 		// Handle RestaurantNumber
 		Object restaurantNumberObj = restaurantInfo.get("RestaurantNumber");
 		if (restaurantNumberObj != null) {
-			this.restaurantNumber = (Integer) restaurantNumberObj;
-		} else {
-			this.restaurantNumber = -1;
+			model.restaurantNumber = (Integer) restaurantNumberObj;
 		}
 
-		if (!checkTimeBeforeConfirm) {
-
-			for (Map<String, Object> dishData : menu) {
-				String dishID = (String) dishData.get("dishID");
-				String dishType = (String) dishData.get("dishType");
-				String dishName = (String) dishData.get("dishName");
-				int dishPrice = ((Number) dishData.get("dishPrice")).intValue();
-				Map<String, List<String>> dishOptions = (Map<String, List<String>>) dishData.get("dishOptions");
-				Map<String, Integer> dishPrices = (Map<String, Integer>) dishData.get("dishPrices");
-
-				// Create or get existing Dish object
-				Dish dish = dishMap.computeIfAbsent(dishID, k -> {
-					ObservableList<String> specifications = FXCollections.observableArrayList();
-					return new Dish(dishID, dishName, dishType, dishPrice, specifications);
-				});
+		for (Map<String, Object> dishData : menu) {
+			String dishID = (String) dishData.get("dishID");
+			String dishType = (String) dishData.get("dishType");
+			String dishName = (String) dishData.get("dishName");
+			int dishPrice = ((Number) dishData.get("dishPrice")).intValue();
+			Map<String, List<String>> dishOptions = (Map<String, List<String>>) dishData.get("dishOptions");
+			Map<String, Integer> dishPrices = (Map<String, Integer>) dishData.get("dishPrices");
+
+			// Create or get existing Dish object
+			Dish dish = dishMap.computeIfAbsent(dishID, k -> {
+				ObservableList<String> specifications = FXCollections.observableArrayList();
+				return new Dish(dishID, dishName, dishType, dishPrice, specifications);
+			});
 
-				// Set size prices after dish is created
-				if (dishPrices != null && !dishPrices.isEmpty()) {
-					dish.setSizePrices(new HashMap<>(dishPrices));
-				} else {
-					dish.setSizePrices(new HashMap<>());
-				}
+			// Set size prices after dish is created
+			if (dishPrices != null && !dishPrices.isEmpty()) {
+				dish.setSizePrices(new HashMap<>(dishPrices));
+			} else {
+				dish.setSizePrices(new HashMap<>());
+			}
 
-				// Process and add specifications
-				boolean hasSpecifications = false;
-				boolean hasRemoveOption = false;
-				for (Map.Entry<String, List<String>> entry : dishOptions.entrySet()) {
-					String optionType = entry.getKey();
-					List<String> optionValues = entry.getValue();
-
-					for (String value : optionValues) {
-						String specificationText = optionType + ": " + value;
-						if (!dish.getSpecifications().contains(specificationText)) {
-							dish.getSpecifications().add(specificationText);
-							hasSpecifications = true;
-							if (optionType.equals("Remove")) {
-								hasRemoveOption = true;
-							}
+			// Process and add specifications
+			boolean hasSpecifications = false;
+			boolean hasRemoveOption = false;
+			for (Map.Entry<String, List<String>> entry : dishOptions.entrySet()) {
+				String optionType = entry.getKey();
+				List<String> optionValues = entry.getValue();
+
+				for (String value : optionValues) {
+					String specificationText = optionType + ": " + value;
+					if (!dish.getSpecifications().contains(specificationText)) {
+						dish.getSpecifications().add(specificationText);
+						hasSpecifications = true;
+						if (optionType.equals("Remove")) {
+							hasRemoveOption = true;
 						}
 					}
 				}
+			}
 
-				// Add "None" if there are no specifications or if there's a "Remove" option
-				if (!hasSpecifications || hasRemoveOption) {
-					dish.getSpecifications().add(0, "None");
-				}
+			// Add "None" if there are no specifications or if there's a "Remove" option
+			if (!hasSpecifications || hasRemoveOption) {
+				dish.getSpecifications().add(0, "None");
+			}
 
-				// Set default specification
-				if (hasRemoveOption) {
-					dish.setSelectedSpecification("None");
-				} else if (!dish.getSpecifications().isEmpty()) {
-					dish.setSelectedSpecification(dish.getSpecifications().get(0));
-				}
+			// Set default specification
+			if (hasRemoveOption) {
+				dish.setSelectedSpecification("None");
+			} else if (!dish.getSpecifications().isEmpty()) {
+				dish.setSelectedSpecification(dish.getSpecifications().get(0));
+			}
 
-				// Update price if the default specification is a size
-				if (dish.getSelectedSpecification().startsWith("Size:")) {
-					String selectedSize = dish.getSelectedSpecification().substring(6).trim().toLowerCase();
-					Integer newPrice = dish.getSizePrices().get(selectedSize);
-					if (newPrice != null) {
-						dish.setDishPrice(newPrice);
-					}
+			// Update price if the default specification is a size
+			if (dish.getSelectedSpecification().startsWith("Size:")) {
+				String selectedSize = dish.getSelectedSpecification().substring(6).trim().toLowerCase();
+				Integer newPrice = dish.getSizePrices().get(selectedSize);
+				if (newPrice != null) {
+					dish.setDishPrice(newPrice);
 				}
 			}
+		}
 
-			// Categorize dishes into appropriate lists
-			for (Dish dish : dishMap.values()) {
-				switch (dish.getCategoryName()) {
-				case "salad":
-					dishes1.add(dish);
-					orderQuantitiesSalad.put(dish.getDishID(), 0);
-					break;
-				case "main course":
-					dishes2.add(dish);
-					orderQuantitiesMain.put(dish.getDishID(), 0);
-					break;
-				case "dessert":
-					dishes3.add(dish);
-					orderQuantitiesDesert.put(dish.getDishID(), 0);
-					break;
-				case "drink":
-					dishes4.add(dish);
-					orderQuantitiesDrink.put(dish.getDishID(), 0);
-					break;
-				default:
-					break;
-				}
+		// Categorize dishes into appropriate lists
+		for (Dish dish : dishMap.values()) {
+			switch (dish.getCategoryName()) {
+			case "salad":
+				model.salads.add(dish);
+				model.quantitiesSalad.put(dish.getDishID(), 0);
+				break;
+			case "main course":
+				model.mainCourses.add(dish);
+				model.quantitiesMain.put(dish.getDishID(), 0);
+				break;
+			case "dessert":
+				model.desserts.add(dish);
+				model.quantitiesDesert.put(dish.getDishID(), 0);
+				break;
+			case "drink":
+				model.drinks.add(dish);
+				model.quantitiesDrink.put(dish.getDishID(), 0);
+				break;
+			default:
+				break;
 			}
+		}
+		return model;
+	}
+
+	/**
+	 * Populates the restaurant's menu from its model, swapping the dish lists of the
+	 * TableViews. If the Finish button was pressed, the menu is only used to check
+	 * for updates, and the method continues processing the order. Must run on the
+	 * JavaFX thread.
+	 *
+	 * @param menu The model of the menu, built by buildRestaurantMenu.
+	 * @throws Exception If an error occurs while processing the order.
+	 */
+	public void setRestaurantMenu(RestaurantMenu menu) throws Exception {
+		this.timeIsNull = menu.beginUpdate == null;
+		this.beginUpdate = menu.beginUpdate;
+		this.endUpdate = menu.endUpdate;
+		this.restaurantNumber = menu.restaurantNumber;
+
+		if (!checkTimeBeforeConfirm) {
+			dishes1 = menu.salads;
+			orderQuantitiesSalad = menu.quantitiesSalad;
+			dishes2 = menu.mainCourses;
+			orderQuantitiesMain = menu.quantitiesMain;
+			dishes3 = menu.desserts;
+			orderQuantitiesDesert = menu.quantitiesDesert;
+			dishes4 = menu.drinks;
+			orderQuantitiesDrink = menu.quantitiesDrink;
 
 			// Update TableViews
 			dishTableViewSalad.setItems(dishes1);
@@ -682,6 +693,15 @@ public class NewOrderController {
 
 			orderChanged = false;
 			updateButtonStates();
+		} else {
+			dishes1.clear();
+			orderQuantitiesSalad.clear();
+			dishes2.clear();
+			orderQuantitiesMain.clear();
+			dishes3.clear();
+			orderQuantitiesDesert.clear();
+			dishes4.clear();
+			orderQuantitiesDrink.clear();
 		}
 
 		// Call inBetween if Finish button was pressed
@@ -2207,4 +2227,21 @@ public class NewOrderController {
 
 	}
 
+	/**
+	 * The model of a restaurant's menu, built away from the JavaFX thread: its
+	 * dishes by category with their initial quantities, and the restaurant info.
+	 */
+	public static class RestaurantMenu {
+		private final ObservableList<Dish> salads = FXCollections.observableArrayList();
+		private final ObservableList<Dish> mainCourses = FXCollections.observableArrayList();
+		private final ObservableList<Dish> desserts = FXCollections.observableArrayList();
+		private final ObservableList<Dish> drinks = FXCollections.observableArrayList();
+		private final Map<String, Integer> quantitiesSalad = new HashMap<>();
+		private final Map<String, Integer> quantitiesMain = new HashMap<>();
+		private final Map<String, Integer> quantitiesDesert = new HashMap<>();
+		private final Map<String, Integer> quantitiesDrink = new HashMap<>();
+		private java.sql.Timestamp beginUpdate;
+		private java.sql.Timestamp endUpdate;
+		private int restaurantNumber = -1;
+	}
 }
\ No newline at end of file
@@ -18,6 +18,7 @@ import javafx.scene.control.TableView;
 import javafx.stage.Stage;
 import javafx.scene.control.TextField;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import client.ClientController;
 import entites.Category;
@@ -479,6 +480,41 @@ public class UpdateMenuController {
 
 	}
 
+	/**
+	 * Builds the rows of the dish table from the dish data received from the
+	 * server. It does not touch the screen, so that it may run away from the
+	 * JavaFX thread.
+	 *
+	 * @param dishData The dish, option, price and category of each dish
+	 * @return The rows of the dish table
+	 */
+	public static List<DishDisplay> buildDishes(List<Object[]> dishData) {
+		System.out.println("Received " + dishData.size() + " dishes from server");
+		List<DishDisplay> dishes = new ArrayList<>(dishData.size());
+
+		for (Object[] data : dishData) {
+			DishUpdate dish = (DishUpdate) data[0];
+			DishOption option = (DishOption) data[1];
+			Price price = (Price) data[2];
+			Category category = (Category) data[3];
+
+			dishes.add(new DishDisplay(dish, option, price, category));
+		}
+		return dishes;
+	}
+
+	/**
+	 * Replaces the rows of the dish table in a single change. Must run on the
+	 * JavaFX thread.
+	 *
+	 * @param dishes The rows built by buildDishes
+	 */
+	public void setDishes(List<DishDisplay> dishes) {
+		dishList.setAll(dishes);
+		txtTable.setItems(dishList);
+		System.out.println("Updated TableView with " + dishList.size() + " dishes");
+	}
+
 	/**
 	 * Handles responses received from the server. Processes various types of server
 	 * responses including dish data, operation confirmations, restaurant
@@ -490,21 +526,7 @@ public class UpdateMenuController {
 		System.out.println("Received server response: " + message.getCmd());
 		switch (message.getCmd()) {
 		case GetRestaurantDishes:
-			List<Object[]> dishData = (List<Object[]>) message.getObj();
-			System.out.println("Received " + dishData.size() + " dishes from server");
-			dishList.clear();
-
-			for (Object[] data : dishData) {
-				DishUpdate dish = (DishUpdate) data[0];
-				DishOption option = (DishOption) data[1];
-				Price price = (Price) data[2];
-				Category category = (Category) data[3];
-
-				dishList.add(new DishDisplay(dish, option, price, category));
-			}
-
-			txtTable.setItems(dishList);
-			System.out.println("Updated TableView with " + dishList.size() + " dishes");
+			setDishes(buildDishes((List<Object[]>) message.getObj()));
 			break;
 
 		case AddDish:
@@ -0,0 +1,238 @@
+package client;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import entites.Message;
+import enums.Commands;
+import ocsf.server.AbstractServer;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * Tests the coalescing of the requests for data of the screens: an identical
+ * request waiting for its reply is not sent again, a refresh following a change
+ * is sent once the earlier reply arrives, and refreshes asked for again shortly
+ * are sent as one after the debounce time, even once the requests waiting for
+ * their reply are forgotten. The requests are recorded instead of being sent to
+ * the server the client connects to.
+ * <p>
+ * Run with {@code java client.RequestCoalescerTest}; a failure throws an
+ * AssertionError.
+ */
+public class RequestCoalescerTest {
+
+	/**
+	 * The longest time in milliseconds a test waits for a request to be sent.
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private final SilentServer server;
+	private final RecordingClient client;
+
+	/**
+	 * The coalescer tested, created by the test.
+	 */
+	private RequestCoalescer coalescer;
+
+	private RequestCoalescerTest() throws IOException {
+		server = new SilentServer();
+		server.listen();
+		client = new RecordingClient(server.getPort());
+	}
+
+	public static void main(String[] args) throws Exception {
+		run(RequestCoalescerTest::identicalRequestsAreSentOnce);
+		run(RequestCoalescerTest::requestAfterChangeIsSentOnReply);
+		run(RequestCoalescerTest::refreshesAreDebounced);
+		run(RequestCoalescerTest::clearKeepsTheWaitingRequests);
+		System.out.println("RequestCoalescerTest passed");
+	}
+
+	/**
+	 * A request identical to one waiting for its reply is answered by it, while a
+	 * request with another argument, or one that is not coalesced, is sent.
+	 */
+	private void identicalRequestsAreSentOnce() {
+		coalescer = new RequestCoalescer(client, Client.COALESCED_REQUESTS, 0);
+		check(coalescer.coalesce(orders("3")), "the request to be taken");
+		check(coalescer.coalesce(orders("3")), "the identical request to be taken");
+		check(coalescer.coalesce(orders("4")), "the other request to be taken");
+		check(client.sent().equals(List.of("getRestaurantOrders 3", "getRestaurantOrders 4")),
+				"the identical request not to be sent, got " + client.sent());
+		check(coalescer.getSent() == 2 && coalescer.getCoalesced() == 1,
+				"one request coalesced, got " + coalescer);
+
+		check(!coalescer.coalesce(new Message("3", Commands.updateRestaurantOrderStatus)),
+				"a change to be left to the caller");
+		check(client.sent().size() == 2, "a change not to be sent by the coalescer");
+	}
+
+	/**
+	 * A request made after a change does not stand in for an earlier request
+	 * waiting for its reply: it is sent once that reply arrives, and the requests
+	 * made meanwhile are sent with it.
+	 */
+	private void requestAfterChangeIsSentOnReply() {
+		coalescer = new RequestCoalescer(client, Client.COALESCED_REQUESTS, 0);
+		coalescer.coalesce(orders("3"));
+		coalescer.changed();
+		coalescer.coalesce(orders("3"));
+		coalescer.coalesce(orders("3"));
+		sleep(100);
+		check(client.sent().size() == 1, "the refresh to wait for the earlier reply, got " + client.sent());
+
+		coalescer.replied(Commands.setRestaurantOrders);
+		awaitSent(2);
+		check(coalescer.getSent() == 2 && coalescer.getCoalesced() == 1,
+				"the refreshes to be sent as one, got " + coalescer);
+	}
+
+	/**
+	 * Refreshes asked for again within the debounce time wait for it to pass, and
+	 * are then sent as one.
+	 */
+	private void refreshesAreDebounced() {
+		coalescer = new RequestCoalescer(client, Client.COALESCED_REQUESTS, 300);
+		coalescer.coalesce(orders("3"));
+		coalescer.replied(Commands.setRestaurantOrders);
+		for (int i = 0; i < 3; i++) {
+			coalescer.coalesce(orders("3"));
+		}
+		check(client.sent().size() == 1, "the refreshes to wait for the debounce time");
+
+		awaitSent(2);
+		long waited = client.sentAt(1) - client.sentAt(0);
+		check(waited >= 290, "the refresh to be sent after the debounce time, took " + waited + " ms");
+		sleep(400);
+		check(client.sent().size() == 2, "the refreshes to be sent as one, got " + client.sent());
+		check(coalescer.getCoalesced() == 2, "two refreshes coalesced, got " + coalescer);
+	}
+
+	/**
+	 * Clearing the coalescer forgets the requests waiting for their reply, so that
+	 * they are sent again when asked for, but still sends the refreshes waiting
+	 * for the lost replies.
+	 */
+	private void clearKeepsTheWaitingRequests() {
+		coalescer = new RequestCoalescer(client, Client.COALESCED_REQUESTS, 0);
+		coalescer.coalesce(orders("3"));
+		coalescer.coalesce(new Message("Pizza", Commands.getRestaurantMenu));
+		coalescer.changed();
+		coalescer.coalesce(orders("3"));
+		check(client.sent().size() == 2, "the refresh to wait for the earlier reply, got " + client.sent());
+
+		coalescer.clear();
+		awaitSent(3);
+		check(client.sent().get(2).equals("getRestaurantOrders 3"),
+				"the waiting refresh to be sent, got " + client.sent());
+
+		coalescer.coalesce(new Message("Pizza", Commands.getRestaurantMenu));
+		check(client.sent().size() == 4 && client.sent().get(3).equals("getRestaurantMenu Pizza"),
+				"a request whose reply was forgotten to be sent again, got " + client.sent());
+	}
+
+	/**
+	 * @param restaurant the restaurant
+	 * @return a request for the orders of the restaurant
+	 */
+	private static Message orders(String restaurant) {
+		return new Message(restaurant, Commands.getRestaurantOrders);
+	}
+
+	/**
+	 * Waits until a number of requests are sent.
+	 *
+	 * @param count the number of requests
+	 */
+	private void awaitSent(int count) {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (client.sent().size() < count && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		check(client.sent().size() == count, count + " requests sent, got " + client.sent());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void run(Case test) throws Exception {
+		RequestCoalescerTest instance = new RequestCoalescerTest();
+		try {
+			test.run(instance);
+		} finally {
+			instance.client.setAutoReconnect(false);
+			instance.client.closeConnection();
+			instance.server.close();
+		}
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+
+	/**
+	 * A test, run on a new client.
+	 */
+	private interface Case {
+		void run(RequestCoalescerTest test) throws Exception;
+	}
+
+	/**
+	 * A client recording the messages it is asked to send, and when.
+	 */
+	private static class RecordingClient extends Client {
+		private final List<String> sent = new ArrayList<>();
+		private final List<Long> times = new ArrayList<>();
+
+		RecordingClient(int port) throws IOException {
+			super("localhost", port, null);
+		}
+
+		@Override
+		synchronized boolean send(Object message) {
+			Message request = (Message) message;
+			sent.add(request.getCmd() + " " + request.getObj());
+			times.add(System.currentTimeMillis());
+			return true;
+		}
+
+		synchronized List<String> sent() {
+			return new ArrayList<>(sent);
+		}
+
+		synchronized long sentAt(int index) {
+			return times.get(index);
+		}
+	}
+
+	/**
+	 * A server the client connects to, which answers nothing.
+	 */
+	private static class SilentServer extends AbstractServer {
+		SilentServer() throws IOException {
+			super(freePort());
+		}
+
+		@Override
+		protected void handleMessageFromClient(Object msg, ConnectionToClient client) {
+		}
+
+		/**
+		 * @return a port no one listens on
+		 */
+		private static int freePort() throws IOException {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				return socket.getLocalPort();
+			}
+		}
+	}
+}
@@ -106,6 +106,34 @@ public class Order implements Serializable {
         this.orderDateTime = orderDateTime;
     }
     
+    /**
+     * Constructs an Order object with all of its details, as read back by the
+     * binary message codec.
+     * 
+     * @param orderNumber       The unique identifier for the order.
+     * @param customerNumber    The unique identifier for the customer who placed the order.
+     * @param restaurantName    The name of the restaurant where the order was placed.
+     * @param orderStatus       The current status of the order.
+     * @param delieveredOnTime  Whether the order was delivered on time.
+     * @param orderPrice        The total price of the order.
+     * @param orderDateTime     The date and time when the order was placed.
+     * @param requestedDateTime The requested date and time for the order.
+     * @param isEarlyOrder      1 if the order was placed early, 0 otherwise.
+     */
+    Order(int orderNumber, int customerNumber, String restaurantName, OrderStatus orderStatus,
+            DelieveredOnTime delieveredOnTime, int orderPrice, String orderDateTime, String requestedDateTime,
+            int isEarlyOrder) {
+        this.orderNumber = orderNumber;
+        this.customerNumber = customerNumber;
+        this.restaurantName = restaurantName;
+        this.orderStatus = orderStatus;
+        this.delieveredOnTime = delieveredOnTime;
+        this.orderPrice = orderPrice;
+        this.orderDateTime = orderDateTime;
+        this.requestedDateTime = requestedDateTime;
+        this.isEarlyOrder = isEarlyOrder;
+    }
+    
     /**
      * Returns the unique identifier for the order.
      * 
@@ -0,0 +1,276 @@
+package JDBC;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * The AsyncDbController class runs the operations of a {@link DbController} on
+ * threads of its own and hands back their results as futures, so that the
+ * thread handling a message never waits for the database.
+ * <p>
+ * There are as many threads as the connection pools have connections, so that
+ * an operation never waits for a connection after it has started, and the
+ * number of operations waiting for a thread is bounded: beyond it, an operation
+ * fails at once with a {@link RejectedExecutionException}.
+ * <p>
+ * An operation that takes longer than its timeout, counted from when it was
+ * asked for, fails with a {@link TimeoutException}. An operation whose future
+ * is cancelled does not start if it is still waiting. If it is running, the
+ * statements it runs are cancelled on the database and its thread is
+ * interrupted, so that it neither waits for a connection nor saves a report it
+ * could not finish.
+ */
+public class AsyncDbController {
+
+	/**
+	 * The controller running the operations.
+	 */
+	private final DbController db;
+
+	/**
+	 * The threads running the operations.
+	 */
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * The thread failing the operations that take too long.
+	 */
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "BiteMe JDBC timeouts");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The time in milliseconds an operation may take, 0 for no limit.
+	 */
+	private final long timeout;
+
+	/**
+	 * The number of operations completed.
+	 */
+	private final AtomicLong completed = new AtomicLong();
+
+	/**
+	 * The number of operations that took longer than their timeout.
+	 */
+	private final AtomicLong timedOut = new AtomicLong();
+
+	/**
+	 * The number of operations cancelled by their caller.
+	 */
+	private final AtomicLong cancelled = new AtomicLong();
+
+	/**
+	 * The number of operations refused because too many were waiting.
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Constructs the asynchronous facade of a controller.
+	 *
+	 * @param db            the controller running the operations
+	 * @param queueCapacity the largest number of operations waiting for a thread
+	 * @param timeout       the time in milliseconds an operation may take, 0 for no
+	 *                      limit
+	 * @throws IllegalArgumentException if the capacity is not positive or the
+	 *                                  timeout is negative
+	 */
+	public AsyncDbController(DbController db, int queueCapacity, long timeout) {
+		if (queueCapacity <= 0) {
+			throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+		}
+		if (timeout < 0) {
+			throw new IllegalArgumentException("Timeout must not be negative: " + timeout);
+		}
+		this.db = db;
+		this.timeout = timeout;
+
+		int threads = db.getTransactionalPool().getMaxSize() + db.getAnalyticalPool().getMaxSize();
+		AtomicInteger count = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), task -> {
+					Thread thread = new Thread(task, "BiteMe JDBC " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs an operation with the default timeout.
+	 *
+	 * @param <T>       the type of the result
+	 * @param operation the operation, calling the controller it is given
+	 * @return the future result of the operation
+	 */
+	public <T> CompletableFuture<T> call(Function<DbController, T> operation) {
+		return call(operation, timeout);
+	}
+
+	/**
+	 * Runs an operation.
+	 *
+	 * @param <T>       the type of the result
+	 * @param operation the operation, calling the controller it is given
+	 * @param timeout   the time in milliseconds the operation may take, 0 for no
+	 *                  limit
+	 * @return the future result of the operation, which fails with a
+	 *         {@link RejectedExecutionException} if too many operations are
+	 *         waiting, or a {@link TimeoutException} if it takes too long
+	 */
+	public <T> CompletableFuture<T> call(Function<DbController, T> operation, long timeout) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Call<T> call = new Call<>(operation, future);
+		try {
+			executor.execute(call);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		if (timeout > 0) {
+			ScheduledFuture<?> timer = this.timer.schedule(() -> {
+				if (future.completeExceptionally(
+						new TimeoutException("The database operation took longer than " + timeout + " ms"))) {
+					timedOut.incrementAndGet();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+			future.whenComplete((result, error) -> timer.cancel(false));
+		}
+		future.whenComplete((result, error) -> {
+			if (error != null) {
+				call.cancel();
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Stops the threads. The operations waiting are not run and fail with a
+	 * {@link RejectedExecutionException}.
+	 */
+	public void close() {
+		for (Runnable waiting : executor.shutdownNow()) {
+			((Call<?>) waiting).future
+					.completeExceptionally(new RejectedExecutionException("The database operations were stopped"));
+		}
+		timer.shutdownNow();
+	}
+
+	/**
+	 * @return the number of operations completed
+	 */
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * @return the number of operations that took longer than their timeout
+	 */
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+
+	/**
+	 * @return the number of operations cancelled by their caller
+	 */
+	public long getCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * @return the number of operations refused because too many were waiting
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@Override
+	public String toString() {
+		return "database operations: " + getCompleted() + " completed, " + getTimedOut() + " timed out, "
+				+ getCancelled() + " cancelled, " + getRejected() + " rejected, " + executor.getQueue().size()
+				+ " waiting";
+	}
+
+	/**
+	 * An operation, which can be cancelled while it waits or runs.
+	 */
+	private final class Call<T> implements Runnable {
+		private final Function<DbController, T> operation;
+		private final CompletableFuture<T> future;
+		/** The thread running the operation, while it runs. */
+		private Thread worker;
+		/** Indicates that the operation was given up. */
+		private boolean abandoned;
+
+		Call(Function<DbController, T> operation, CompletableFuture<T> future) {
+			this.operation = operation;
+			this.future = future;
+		}
+
+		@Override
+		public void run() {
+			synchronized (this) {
+				if (abandoned) {
+					return;
+				}
+				worker = Thread.currentThread();
+			}
+			T result;
+			try {
+				result = operation.apply(db);
+			} catch (RuntimeException e) {
+				finished();
+				future.completeExceptionally(e);
+				return;
+			}
+			finished();
+			if (future.complete(result)) {
+				completed.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Records that the operation no longer runs, so that cancelling it does not
+		 * cancel what its thread runs next, and clears the interrupt left by a
+		 * cancellation.
+		 */
+		private synchronized void finished() {
+			worker = null;
+			Thread.interrupted();
+		}
+
+		/**
+		 * Gives up the operation: it does not start if it is waiting, and the
+		 * statements it runs are cancelled and its thread interrupted if it is
+		 * running.
+		 */
+		synchronized void cancel() {
+			if (abandoned) {
+				return;
+			}
+			abandoned = true;
+			if (future.isCancelled()) {
+				cancelled.incrementAndGet();
+			}
+			executor.remove(this);
+			if (worker != null) {
+				db.getTransactionalPool().cancel(worker);
+				db.getAnalyticalPool().cancel(worker);
+				worker.interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,743 @@
+package JDBC;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ConnectionPool class lends database connections to the handlers of the
+ * server, so that each database operation runs on a connection of its own and
+ * concurrent handlers neither share transactions nor wait for each other's
+ * queries.
+ * <p>
+ * The pool keeps at least its minimum number of connections open and opens at
+ * most its maximum. A handler asking for a connection when all of them are lent
+ * waits up to the borrow timeout. A connection idle for a while is checked with
+ * the validation query before it is lent again, and a connection older than its
+ * maximum lifetime is closed and replaced. A connection returned in the middle
+ * of a transaction is rolled back. A connection not returned within the leak
+ * detection threshold is reported along with the place that borrowed it.
+ * <p>
+ * A handler may be refused at once instead of waiting, when the number of
+ * handlers already waiting reaches the queue limit of the pool. The server
+ * keeps separate pools for separate kinds of work, so that a burst of one kind
+ * fills its own pool and queue without delaying the others.
+ * <p>
+ * A thread that already holds a connection gets the same connection again, so
+ * that an operation calling another one shares its connection and transaction
+ * instead of waiting for a second connection.
+ * <p>
+ * Connections are returned by closing them, typically with try-with-resources.
+ * <p>
+ * Each connection keeps its prepared statements in a {@link StatementCache}, and
+ * the statements and result sets an operation left open are closed when its
+ * connection is returned.
+ */
+public class ConnectionPool {
+
+	/**
+	 * The time in milliseconds between two rounds of housekeeping: reporting leaks,
+	 * retiring old connections and opening the minimum number of connections.
+	 */
+	private static final long HOUSEKEEPING_INTERVAL = 5000;
+
+	/**
+	 * The time in milliseconds a connection may stay idle before it is validated
+	 * again when lent.
+	 */
+	private static final long VALIDATION_INTERVAL = 5000;
+
+	/**
+	 * The time in seconds the validation of a connection may take.
+	 */
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	/**
+	 * The name of the pool, for the messages.
+	 */
+	private final String name;
+
+	/**
+	 * Opens the connections of the pool.
+	 */
+	private final SqlConnection source;
+
+	/**
+	 * The minimum number of open connections.
+	 */
+	private final int minSize;
+
+	/**
+	 * The maximum number of open connections.
+	 */
+	private final int maxSize;
+
+	/**
+	 * The query validating a connection, or null to ask the driver.
+	 */
+	private volatile String validationQuery = "SELECT 1";
+
+	/**
+	 * The time in milliseconds after which a connection is replaced, 0 for never.
+	 */
+	private volatile long maxLifetime = 30 * 60 * 1000;
+
+	/**
+	 * The time in milliseconds after which a connection not returned is reported, 0
+	 * for never.
+	 */
+	private volatile long leakDetectionThreshold = 60 * 1000;
+
+	/**
+	 * The time in milliseconds to wait for a connection.
+	 */
+	private volatile long borrowTimeout = 10 * 1000;
+
+	/**
+	 * The largest number of threads waiting for a connection, 0 for no limit.
+	 */
+	private volatile int maxWaiting;
+
+	/**
+	 * The number of prepared statements cached per connection, 0 for none.
+	 */
+	private volatile int statementCacheSize = 64;
+
+	/**
+	 * The counters of the statement caches of the connections.
+	 */
+	private final StatementCache.Counters statements = new StatementCache.Counters();
+
+	/**
+	 * The idle connections, the most recently returned first. Also the lock of the
+	 * pool.
+	 */
+	private final ArrayDeque<Pooled> idle = new ArrayDeque<>();
+
+	/**
+	 * The number of connections open or being opened.
+	 */
+	private int total;
+
+	/**
+	 * The number of threads waiting for a connection.
+	 */
+	private int waiting;
+
+	/**
+	 * Indicates that the pool was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * The connections lent, for leak detection.
+	 */
+	private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The connection lent to each thread.
+	 */
+	private final ThreadLocal<Lease> current = new ThreadLocal<>();
+
+	/**
+	 * Runs the housekeeping of the pool.
+	 */
+	private final ScheduledExecutorService housekeeper;
+
+	/**
+	 * Constructs a pool and opens its minimum number of connections.
+	 *
+	 * @param name    the name of the pool, for the messages
+	 * @param source  opens the connections of the pool
+	 * @param minSize the minimum number of open connections
+	 * @param maxSize the maximum number of open connections
+	 * @throws IllegalArgumentException if the sizes are negative or the maximum is
+	 *                                  not positive or below the minimum
+	 */
+	public ConnectionPool(String name, SqlConnection source, int minSize, int maxSize) {
+		if (minSize < 0 || maxSize <= 0 || maxSize < minSize) {
+			throw new IllegalArgumentException("invalid pool size: " + minSize + " to " + maxSize);
+		}
+		this.name = name;
+		this.source = source;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "BiteMe " + name + " connection pool");
+			thread.setDaemon(true);
+			return thread;
+		});
+		fill();
+		housekeeper.scheduleWithFixedDelay(this::housekeeping, HOUSEKEEPING_INTERVAL, HOUSEKEEPING_INTERVAL,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sets the query validating a connection idle for a while before it is lent.
+	 *
+	 * @param validationQuery the query, or null to ask the driver
+	 */
+	public void setValidationQuery(String validationQuery) {
+		this.validationQuery = validationQuery;
+	}
+
+	/**
+	 * Sets the time after which a connection is closed and replaced.
+	 *
+	 * @param maxLifetime the time in milliseconds, 0 for never
+	 * @throws IllegalArgumentException if the time is negative
+	 */
+	public void setMaxLifetime(long maxLifetime) {
+		if (maxLifetime < 0) {
+			throw new IllegalArgumentException("negative lifetime: " + maxLifetime);
+		}
+		this.maxLifetime = maxLifetime;
+	}
+
+	/**
+	 * Sets the time after which a connection not returned is reported.
+	 *
+	 * @param leakDetectionThreshold the time in milliseconds, 0 for never
+	 * @throws IllegalArgumentException if the time is negative
+	 */
+	public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+		if (leakDetectionThreshold < 0) {
+			throw new IllegalArgumentException("negative threshold: " + leakDetectionThreshold);
+		}
+		this.leakDetectionThreshold = leakDetectionThreshold;
+	}
+
+	/**
+	 * Sets the time to wait for a connection when all of them are lent.
+	 *
+	 * @param borrowTimeout the time in milliseconds
+	 * @throws IllegalArgumentException if the time is negative
+	 */
+	public void setBorrowTimeout(long borrowTimeout) {
+		if (borrowTimeout < 0) {
+			throw new IllegalArgumentException("negative timeout: " + borrowTimeout);
+		}
+		this.borrowTimeout = borrowTimeout;
+	}
+
+	/**
+	 * Sets the largest number of threads waiting for a connection when all of them
+	 * are lent. A thread arriving when that many are waiting is refused at once.
+	 *
+	 * @param maxWaiting the number of threads, 0 for no limit
+	 * @throws IllegalArgumentException if the number is negative
+	 */
+	public void setMaxWaiting(int maxWaiting) {
+		if (maxWaiting < 0) {
+			throw new IllegalArgumentException("Queue limit must not be negative: " + maxWaiting);
+		}
+		this.maxWaiting = maxWaiting;
+	}
+
+	/**
+	 * Sets the number of prepared statements cached per connection, for the
+	 * connections opened from now on.
+	 *
+	 * @param statementCacheSize the number of statements, 0 to cache none
+	 * @throws IllegalArgumentException if the number is negative
+	 */
+	public void setStatementCacheSize(int statementCacheSize) {
+		if (statementCacheSize < 0) {
+			throw new IllegalArgumentException("Statement cache size must not be negative: " + statementCacheSize);
+		}
+		this.statementCacheSize = statementCacheSize;
+	}
+
+	/**
+	 * Borrows a connection, to be returned by closing it. A thread holding a
+	 * connection already gets the same one.
+	 *
+	 * @return the connection
+	 * @throws SQLException if the pool is closed, no connection could be opened, or
+	 *                      none was returned within the borrow timeout, or too
+	 *                      many threads are waiting already, or the thread is
+	 *                      interrupted
+	 */
+	public Connection getConnection() throws SQLException {
+		Lease lease = current.get();
+		if (lease != null) {
+			lease.holds++;
+			return lease.proxy;
+		}
+
+		lease = new Lease(take());
+		current.set(lease);
+		leases.add(lease);
+		return lease.proxy;
+	}
+
+	/**
+	 * Cancels the statements of the connection lent to a thread, from another
+	 * thread. The thread sees its statements fail with an SQLException.
+	 *
+	 * @param thread the thread
+	 * @return the number of statements cancelled
+	 */
+	public int cancel(Thread thread) {
+		int cancelled = 0;
+		for (Lease lease : leases) {
+			if (lease.owner == thread && !lease.returned) {
+				cancelled += lease.pooled.statements.cancel();
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * @return true if the current thread holds a connection of the pool
+	 */
+	public boolean isHeldByCurrentThread() {
+		return current.get() != null;
+	}
+
+	/**
+	 * @return the maximum number of open connections
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Closes the idle connections and the pool. The connections lent are closed
+	 * when they are returned.
+	 */
+	public void close() {
+		List<Pooled> closing;
+		synchronized (idle) {
+			closed = true;
+			closing = new ArrayList<>(idle);
+			total -= idle.size();
+			idle.clear();
+			idle.notifyAll();
+		}
+		housekeeper.shutdownNow();
+		for (Pooled pooled : closing) {
+			pooled.closeQuietly();
+		}
+	}
+
+	/**
+	 * @return the number of connections open
+	 */
+	public int getTotal() {
+		synchronized (idle) {
+			return total;
+		}
+	}
+
+	/**
+	 * @return the number of idle connections
+	 */
+	public int getIdle() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * @return the number of connections lent
+	 */
+	public int getActive() {
+		return leases.size();
+	}
+
+	/**
+	 * @return the number of threads waiting for a connection
+	 */
+	public int getWaiting() {
+		synchronized (idle) {
+			return waiting;
+		}
+	}
+
+	/**
+	 * @return the name of the pool
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of prepared statements taken from the caches
+	 */
+	public long getStatementHits() {
+		return statements.hits.get();
+	}
+
+	/**
+	 * @return the number of prepared statements prepared because none was cached
+	 */
+	public long getStatementMisses() {
+		return statements.misses.get();
+	}
+
+	/**
+	 * @return the number of cached statements closed to make room for others
+	 */
+	public long getStatementEvictions() {
+		return statements.evictions.get();
+	}
+
+	/**
+	 * @return the number of result sets open
+	 */
+	public long getOpenCursors() {
+		return statements.openCursors.get();
+	}
+
+	/**
+	 * @return the number of statements left open by their operation and closed
+	 *         when the connection was returned
+	 */
+	public long getReclaimedStatements() {
+		return statements.reclaimed.get();
+	}
+
+	@Override
+	public String toString() {
+		long hits = getStatementHits();
+		long lookups = hits + getStatementMisses();
+		return name + " pool: " + getActive() + " active, " + getIdle() + " idle, " + getWaiting() + " waiting, "
+				+ minSize + " to " + maxSize
+				+ "; statements: " + (lookups == 0 ? 0 : hits * 100 / lookups) + "% hits, " + getStatementEvictions()
+				+ " evicted, " + getReclaimedStatements() + " reclaimed, " + getOpenCursors() + " open cursors";
+	}
+
+	/**
+	 * Takes an idle connection that is still valid, or opens one if the pool is not
+	 * full, waiting up to the borrow timeout otherwise unless the queue is full.
+	 *
+	 * @return the connection
+	 * @throws SQLException if no connection could be had
+	 */
+	private Pooled take() throws SQLException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new SQLException("Interrupted before borrowing a connection of the " + name + " pool");
+		}
+		long deadline = System.currentTimeMillis() + borrowTimeout;
+		while (true) {
+			Pooled pooled = null;
+			boolean open = false;
+			synchronized (idle) {
+				if (!closed && idle.isEmpty() && total >= maxSize && maxWaiting > 0 && waiting >= maxWaiting) {
+					throw new SQLException("The " + name + " pool is saturated: " + total + " connections in use and "
+							+ waiting + " requests waiting");
+				}
+				while (!closed && idle.isEmpty() && total >= maxSize) {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						throw new SQLException("Timed out after " + borrowTimeout + " ms waiting for a connection of the "
+								+ name + " pool, " + total + " in use");
+					}
+					waiting++;
+					try {
+						idle.wait(wait);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted while waiting for a database connection", e);
+					} finally {
+						waiting--;
+					}
+				}
+				if (closed) {
+					throw new SQLException("The " + name + " pool is closed");
+				}
+				if (!idle.isEmpty()) {
+					pooled = idle.pollFirst();
+				} else {
+					total++;
+					open = true;
+				}
+			}
+
+			if (open) {
+				return open();
+			}
+			if (isUsable(pooled)) {
+				return pooled;
+			}
+			discard(pooled);
+		}
+	}
+
+	/**
+	 * Opens a connection for which room was made in the pool.
+	 *
+	 * @return the connection
+	 * @throws SQLException if the connection could not be opened
+	 */
+	private Pooled open() throws SQLException {
+		try {
+			Connection connection = source.openConnection();
+			return new Pooled(connection, new StatementCache(connection, statementCacheSize, statements));
+		} catch (SQLException | RuntimeException e) {
+			synchronized (idle) {
+				total--;
+				idle.notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Tells whether an idle connection may be lent: it is not too old and, if it
+	 * was idle for a while, it passes validation.
+	 *
+	 * @param pooled the connection
+	 * @return true if the connection may be lent
+	 */
+	private boolean isUsable(Pooled pooled) {
+		long now = System.currentTimeMillis();
+		if (pooled.isExpired(now, maxLifetime)) {
+			return false;
+		}
+		if (now - pooled.returnedAt < VALIDATION_INTERVAL) {
+			return true;
+		}
+
+		String query = validationQuery;
+		try {
+			if (query == null) {
+				return pooled.connection.isValid(VALIDATION_TIMEOUT);
+			}
+			try (Statement stmt = pooled.connection.createStatement()) {
+				stmt.setQueryTimeout(VALIDATION_TIMEOUT);
+				stmt.execute(query);
+				return true;
+			}
+		} catch (SQLException e) {
+			System.out.println("Discarding a broken database connection: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Puts a connection back after its last holder closed it, rolling back what it
+	 * left uncommitted.
+	 *
+	 * @param lease the lease ending
+	 */
+	private void giveBack(Lease lease) {
+		if (current.get() == lease) {
+			current.remove();
+		}
+		leases.remove(lease);
+
+		Pooled pooled = lease.pooled;
+		pooled.statements.reclaim();
+		boolean reusable = !pooled.isExpired(System.currentTimeMillis(), maxLifetime);
+		try {
+			if (reusable && !pooled.connection.getAutoCommit()) {
+				pooled.connection.rollback();
+				pooled.connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			reusable = false;
+		}
+
+		if (!reusable) {
+			discard(pooled);
+			return;
+		}
+
+		pooled.returnedAt = System.currentTimeMillis();
+		synchronized (idle) {
+			if (!closed) {
+				idle.addFirst(pooled);
+				idle.notify();
+				return;
+			}
+			total--;
+		}
+		pooled.closeQuietly();
+	}
+
+	/**
+	 * Closes a connection and makes room for another.
+	 *
+	 * @param pooled the connection
+	 */
+	private void discard(Pooled pooled) {
+		pooled.closeQuietly();
+		synchronized (idle) {
+			total--;
+			idle.notifyAll();
+		}
+	}
+
+	/**
+	 * Opens connections until the pool holds its minimum number.
+	 */
+	private void fill() {
+		while (true) {
+			synchronized (idle) {
+				if (closed || total >= minSize) {
+					return;
+				}
+				total++;
+			}
+			Pooled pooled;
+			try {
+				pooled = open();
+			} catch (SQLException e) {
+				System.out.println("SQLException: " + e.getMessage());
+				return;
+			}
+			synchronized (idle) {
+				if (closed) {
+					total--;
+				} else {
+					idle.addLast(pooled);
+					idle.notify();
+					continue;
+				}
+			}
+			pooled.closeQuietly();
+			return;
+		}
+	}
+
+	/**
+	 * Reports the connections lent for too long, replaces the idle connections
+	 * that are too old and opens the minimum number of connections.
+	 */
+	private void housekeeping() {
+		long now = System.currentTimeMillis();
+		long threshold = leakDetectionThreshold;
+		if (threshold > 0) {
+			for (Lease lease : leases) {
+				if (!lease.reported && lease.borrower != null && now - lease.borrowedAt > threshold) {
+					lease.reported = true;
+					System.err.println("A database connection was not returned after " + (now - lease.borrowedAt)
+							+ " ms, it may have leaked:");
+					lease.borrower.printStackTrace();
+				}
+			}
+		}
+
+		List<Pooled> expired = new ArrayList<>();
+		synchronized (idle) {
+			Iterator<Pooled> connections = idle.iterator();
+			while (connections.hasNext()) {
+				Pooled pooled = connections.next();
+				if (pooled.isExpired(now, maxLifetime)) {
+					connections.remove();
+					expired.add(pooled);
+				}
+			}
+		}
+		for (Pooled pooled : expired) {
+			discard(pooled);
+		}
+		fill();
+	}
+
+	/**
+	 * A connection of the pool.
+	 */
+	private static final class Pooled {
+		private final Connection connection;
+		/** The prepared statements of the connection. */
+		private final StatementCache statements;
+		/** The time the connection was opened. */
+		private final long openedAt = System.currentTimeMillis();
+		/** The time the connection was last returned. */
+		private long returnedAt = openedAt;
+
+		Pooled(Connection connection, StatementCache statements) {
+			this.connection = connection;
+			this.statements = statements;
+		}
+
+		boolean isExpired(long now, long maxLifetime) {
+			return maxLifetime > 0 && now - openedAt >= maxLifetime;
+		}
+
+		void closeQuietly() {
+			statements.close();
+			try {
+				connection.close();
+			} catch (SQLException e) {
+			}
+		}
+	}
+
+	/**
+	 * A connection lent to a thread, handed out as a proxy whose close method
+	 * returns it to the pool once every holder closed it.
+	 */
+	private final class Lease implements InvocationHandler {
+		private final Pooled pooled;
+		private final Connection proxy;
+		/** The thread the connection was lent to. */
+		private final Thread owner = Thread.currentThread();
+		/** The time the connection was lent. */
+		private final long borrowedAt = System.currentTimeMillis();
+		/** Where the connection was borrowed, if leaks are detected. */
+		private final Throwable borrower;
+		/** The number of holders that did not close the connection yet. */
+		private int holds = 1;
+		/** Indicates that the connection was returned. */
+		private volatile boolean returned;
+		/** Indicates that the connection was reported as leaked. */
+		private volatile boolean reported;
+
+		Lease(Pooled pooled) {
+			this.pooled = pooled;
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, this);
+			this.borrower = leakDetectionThreshold > 0 ? new Throwable("Borrowed here") : null;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!returned && --holds == 0) {
+					returned = true;
+					giveBack(this);
+				}
+				return null;
+			case "isClosed":
+				return returned || pooled.connection.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "pooled " + pooled.connection;
+			default:
+				break;
+			}
+			if (returned) {
+				throw new SQLException("The connection was returned to the pool");
+			}
+			if (Statement.class.isAssignableFrom(method.getReturnType())) {
+				return pooled.statements.create(this.proxy, method, args);
+			}
+			try {
+				return method.invoke(pooled.connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
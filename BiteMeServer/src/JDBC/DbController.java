@@ -34,17 +34,83 @@ import entites.User;
 public class DbController {
 
 	/**
-	 * The database connection used for executing queries.
+	 * The pool lending connections to the operations of the users: logging in,
+	 * ordering and updating orders and menus.
 	 */
-	private Connection conn;
+	private final ConnectionPool transactional;
 
 	/**
-	 * Constructs a DbController with the given database connection.
+	 * The pool lending connections to the reports and the import of external
+	 * data, so that long queries never take the connections the orders need.
+	 */
+	private final ConnectionPool analytical;
+
+	/**
+	 * The read replicas serving the menus and the reports, or null to read from
+	 * the primary.
+	 */
+	private final ReplicaSet replicas;
+
+	/**
+	 * The time in milliseconds of the last change to a menu, which the reads of
+	 * the menus must see.
+	 */
+	private volatile long menuWrittenAt;
+
+	/**
+	 * Constructs a DbController borrowing its connections from the given pools.
 	 * 
-	 * @param connection the database connection
+	 * @param transactional the pool of the operations of the users
+	 * @param analytical    the pool of the reports and the import
+	 */
+	public DbController(ConnectionPool transactional, ConnectionPool analytical) {
+		this(transactional, analytical, null);
+	}
+
+	/**
+	 * Constructs a DbController borrowing its connections from the given pools,
+	 * and reading the menus and the reports from read replicas.
+	 * 
+	 * @param transactional the pool of the operations of the users
+	 * @param analytical    the pool of the reports and the import
+	 * @param replicas      the read replicas, or null to read from the primary
+	 */
+	public DbController(ConnectionPool transactional, ConnectionPool analytical, ReplicaSet replicas) {
+		this.transactional = transactional;
+		this.analytical = analytical;
+		this.replicas = replicas;
+	}
+
+	/**
+	 * @return the pool of the operations of the users
+	 */
+	public ConnectionPool getTransactionalPool() {
+		return transactional;
+	}
+
+	/**
+	 * @return the pool of the reports and the import
+	 */
+	public ConnectionPool getAnalyticalPool() {
+		return analytical;
+	}
+
+	/**
+	 * @return the read replicas, or null if there are none
 	 */
-	public DbController(Connection connection) {
-		this.conn = connection;
+	public ReplicaSet getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Closes the database connection pools.
+	 */
+	public void close() {
+		transactional.close();
+		analytical.close();
+		if (replicas != null) {
+			replicas.close();
+		}
 	}
 
 	/**
@@ -55,12 +121,12 @@ public class DbController {
 	 */
 	public boolean isUsernameExists(String username) {
 		String query = "SELECT COUNT(*) FROM users WHERE UserName = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, username);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				return rs.getInt(1) > 0;
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					return rs.getInt(1) > 0;
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -78,13 +144,13 @@ public class DbController {
 	 */
 	public boolean isPasswordCorrect(String username, String password) {
 		String query = "SELECT Password FROM users WHERE UserName = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, username);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				String storedPassword = rs.getString("Password");
-				return storedPassword.equals(password);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					String storedPassword = rs.getString("Password");
+					return storedPassword.equals(password);
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -101,22 +167,23 @@ public class DbController {
 	 */
 	public User getUserDetails(String username) {
 		String query = "SELECT * FROM users WHERE UserName = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, username);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				int id = rs.getInt("ID");
-				String password = rs.getString("Password");
-				String firstName = rs.getString("FirstName");
-				String lastName = rs.getString("LastName");
-				String email = rs.getString("Email");
-				String phone = rs.getString("Phone");
-				String type = rs.getString("Type");
-				int isLoggedIn = rs.getInt("IsLoggedIn");
-				String district = rs.getString("District");
-
-				return new User(id, username, password, firstName, lastName, email, phone, type, isLoggedIn, district);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					int id = rs.getInt("ID");
+					String password = rs.getString("Password");
+					String firstName = rs.getString("FirstName");
+					String lastName = rs.getString("LastName");
+					String email = rs.getString("Email");
+					String phone = rs.getString("Phone");
+					String type = rs.getString("Type");
+					int isLoggedIn = rs.getInt("IsLoggedIn");
+					String district = rs.getString("District");
+
+					return new User(id, username, password, firstName, lastName, email, phone, type, isLoggedIn,
+							district);
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -132,8 +199,7 @@ public class DbController {
 	 */
 	public void updateLoginStatus(int userId, int status) {
 		String query = "UPDATE users SET IsLoggedIn = ? WHERE ID = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, status);
 			stmt.setInt(2, userId);
 			stmt.executeUpdate();
@@ -150,12 +216,12 @@ public class DbController {
 	 */
 	public boolean isUserIdExists(int userId) {
 		String query = "SELECT COUNT(*) FROM users WHERE ID = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, userId);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				return rs.getInt(1) > 0;
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					return rs.getInt(1) > 0;
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -172,23 +238,24 @@ public class DbController {
 	 */
 	public User getUserDetailsById(int userId) {
 		String query = "SELECT * FROM users WHERE ID = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, userId);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				int id = rs.getInt("ID");
-				String username = rs.getString("UserName");
-				String password = rs.getString("Password");
-				String firstName = rs.getString("FirstName");
-				String lastName = rs.getString("LastName");
-				String email = rs.getString("Email");
-				String phone = rs.getString("Phone");
-				String type = rs.getString("Type");
-				int isLoggedIn = rs.getInt("IsLoggedIn");
-				String district = rs.getString("District");
-
-				return new User(id, username, password, firstName, lastName, email, phone, type, isLoggedIn, district);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					int id = rs.getInt("ID");
+					String username = rs.getString("UserName");
+					String password = rs.getString("Password");
+					String firstName = rs.getString("FirstName");
+					String lastName = rs.getString("LastName");
+					String email = rs.getString("Email");
+					String phone = rs.getString("Phone");
+					String type = rs.getString("Type");
+					int isLoggedIn = rs.getInt("IsLoggedIn");
+					String district = rs.getString("District");
+
+					return new User(id, username, password, firstName, lastName, email, phone, type, isLoggedIn,
+							district);
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -206,12 +273,12 @@ public class DbController {
 	 */
 	public String getCustomerStatus(int userId) {
 		String query = "SELECT Status FROM customers WHERE ID = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, userId);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				return rs.getString("Status");
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					return rs.getString("Status");
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -228,8 +295,7 @@ public class DbController {
 	 */
 	public void updateCustomerStatus(int userId, String status) {
 		String query = "UPDATE customers SET Status = ? WHERE ID = ?";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, status);
 			stmt.setInt(2, userId);
 			stmt.executeUpdate();
@@ -255,15 +321,14 @@ public class DbController {
 				+ "JOIN customer_orders co ON o.OrderID = co.OrderID "
 				+ "JOIN customers c ON o.CustomerNumber = c.CustomerNumber "
 				+ "WHERE c.ID = ? AND co.Status = 'pending' AND o.StatusRestaurant = 'completed'";
-		try {
-			PreparedStatement stmt = conn.prepareStatement(query);
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, customerId);
-			ResultSet rs = stmt.executeQuery();
-
-			while (rs.next()) {
-				int orderId = rs.getInt("OrderID");
-				String orderDateTime = rs.getString("OrderDateTime");
-				orders.add(new Order(orderId, orderDateTime));
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					int orderId = rs.getInt("OrderID");
+					String orderDateTime = rs.getString("OrderDateTime");
+					orders.add(new Order(orderId, orderDateTime));
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -290,30 +355,41 @@ public class DbController {
 		String dateTime = "";
 		int totalPrice = 0;
 
+		Connection conn;
 		try {
-			conn.setAutoCommit(false);
+			conn = transactional.getConnection();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return new Object[] { isEarlyOrder, dateTime, totalPrice };
+		}
 
-			PreparedStatement customerOrdersStmt = conn.prepareStatement(updateCustomerOrdersQuery);
-			customerOrdersStmt.setInt(1, orderId);
-			customerOrdersStmt.executeUpdate();
+		try {
+			conn.setAutoCommit(false);
 
-			PreparedStatement ordersStmt = conn.prepareStatement(updateOrdersQuery);
-			ordersStmt.setString(1, receivedDateTime);
-			ordersStmt.setInt(2, orderId);
-			ordersStmt.executeUpdate();
+			try (PreparedStatement customerOrdersStmt = conn.prepareStatement(updateCustomerOrdersQuery)) {
+				customerOrdersStmt.setInt(1, orderId);
+				customerOrdersStmt.executeUpdate();
+			}
 
-			PreparedStatement selectOrderDetailsStmt = conn.prepareStatement(selectOrderDetailsQuery);
-			selectOrderDetailsStmt.setInt(1, orderId);
-			ResultSet rs = selectOrderDetailsStmt.executeQuery();
+			try (PreparedStatement ordersStmt = conn.prepareStatement(updateOrdersQuery)) {
+				ordersStmt.setString(1, receivedDateTime);
+				ordersStmt.setInt(2, orderId);
+				ordersStmt.executeUpdate();
+			}
 
-			if (rs.next()) {
-				isEarlyOrder = rs.getInt("IsEarlyOrder");
-				if (isEarlyOrder == 0) {
-					dateTime = rs.getString("OrderDateTime");
-				} else {
-					dateTime = rs.getString("RequestedDateTime");
+			try (PreparedStatement selectOrderDetailsStmt = conn.prepareStatement(selectOrderDetailsQuery)) {
+				selectOrderDetailsStmt.setInt(1, orderId);
+				try (ResultSet rs = selectOrderDetailsStmt.executeQuery()) {
+					if (rs.next()) {
+						isEarlyOrder = rs.getInt("IsEarlyOrder");
+						if (isEarlyOrder == 0) {
+							dateTime = rs.getString("OrderDateTime");
+						} else {
+							dateTime = rs.getString("RequestedDateTime");
+						}
+						totalPrice = rs.getInt("TotalPrice");
+					}
 				}
-				totalPrice = rs.getInt("TotalPrice");
 			}
 
 			conn.commit();
@@ -328,6 +404,7 @@ public class DbController {
 				conn.setAutoCommit(true);
 			} catch (SQLException e) {
 			}
+			release(conn);
 		}
 		return new Object[] { isEarlyOrder, dateTime, totalPrice };
 	}
@@ -344,31 +421,43 @@ public class DbController {
 		String selectCurrentCreditQuery = "SELECT Credit FROM customers WHERE ID = ?";
 		String updateCustomersQuery = "UPDATE customers SET Credit = ? WHERE ID = ?";
 
+		Connection conn;
+		try {
+			conn = transactional.getConnection();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return;
+		}
+
 		try {
 			conn.setAutoCommit(false);
 
 			// Update the orders table
-			PreparedStatement ordersStmt = conn.prepareStatement(updateOrdersQuery);
-			ordersStmt.setInt(1, orderId);
-			ordersStmt.executeUpdate();
+			try (PreparedStatement ordersStmt = conn.prepareStatement(updateOrdersQuery)) {
+				ordersStmt.setInt(1, orderId);
+				ordersStmt.executeUpdate();
+			}
 
 			// Get the current credit
-			PreparedStatement selectCreditStmt = conn.prepareStatement(selectCurrentCreditQuery);
-			selectCreditStmt.setInt(1, id);
-			ResultSet rs = selectCreditStmt.executeQuery();
 			int currentCredit = 0;
-			if (rs.next()) {
-				currentCredit = rs.getInt("Credit");
+			try (PreparedStatement selectCreditStmt = conn.prepareStatement(selectCurrentCreditQuery)) {
+				selectCreditStmt.setInt(1, id);
+				try (ResultSet rs = selectCreditStmt.executeQuery()) {
+					if (rs.next()) {
+						currentCredit = rs.getInt("Credit");
+					}
+				}
 			}
 
 			// Add the new credit to the current credit
 			int newCredit = currentCredit + credit;
 
 			// Update the customers table
-			PreparedStatement customersStmt = conn.prepareStatement(updateCustomersQuery);
-			customersStmt.setInt(1, newCredit);
-			customersStmt.setInt(2, id);
-			customersStmt.executeUpdate();
+			try (PreparedStatement customersStmt = conn.prepareStatement(updateCustomersQuery)) {
+				customersStmt.setInt(1, newCredit);
+				customersStmt.setInt(2, id);
+				customersStmt.executeUpdate();
+			}
 
 			conn.commit();
 		} catch (SQLException e) {
@@ -384,6 +473,7 @@ public class DbController {
 			} catch (SQLException e) {
 				e.printStackTrace();
 			}
+			release(conn);
 		}
 	}
 
@@ -396,7 +486,7 @@ public class DbController {
 	public void updateRestaurantOrderStatus(int orderId, String status) {
 		String query = "UPDATE orders SET StatusRestaurant = ? WHERE OrderID = ?";
 
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, status);
 			stmt.setInt(2, orderId);
 			stmt.executeUpdate();
@@ -419,35 +509,36 @@ public class DbController {
 				+ "JOIN dishes d ON r.DishID = d.DishID " + "WHERE o.RestaurantNumber = ? "
 				+ "AND (o.StatusRestaurant = 'pending' OR o.StatusRestaurant = 'received')";
 
-		try (PreparedStatement stmtRestaurantNumber = conn.prepareStatement(queryRestaurantNumber)) {
+		try (Connection conn = transactional.getConnection();
+				PreparedStatement stmtRestaurantNumber = conn.prepareStatement(queryRestaurantNumber)) {
 			stmtRestaurantNumber.setInt(1, employeeId);
-			ResultSet rsRestaurantNumber = stmtRestaurantNumber.executeQuery();
 			int givenRestaurantNumber = 0;
-
-			if (rsRestaurantNumber.next()) {
-				givenRestaurantNumber = rsRestaurantNumber.getInt("RestaurantNumber");
-			} else {
-				// No matching restaurant number found, return empty list
-				return restaurantOrders;
+			try (ResultSet rsRestaurantNumber = stmtRestaurantNumber.executeQuery()) {
+				if (rsRestaurantNumber.next()) {
+					givenRestaurantNumber = rsRestaurantNumber.getInt("RestaurantNumber");
+				} else {
+					// No matching restaurant number found, return empty list
+					return restaurantOrders;
+				}
 			}
 
 			try (PreparedStatement stmtOrders = conn.prepareStatement(queryOrders)) {
 				stmtOrders.setInt(1, givenRestaurantNumber);
-				ResultSet rsOrders = stmtOrders.executeQuery();
-
-				while (rsOrders.next()) {
-					RestaurantOrder restaurantOrder = new RestaurantOrder();
-					restaurantOrder.setOrderId(rsOrders.getInt("OrderID"));
-					restaurantOrder.setCustomerNumber(rsOrders.getInt("CustomerNumber"));
-					restaurantOrder.setIsDelivery(rsOrders.getInt("IsDelivery"));
-					restaurantOrder.setOrderDateTime(rsOrders.getString("OrderDateTime"));
-					restaurantOrder.setOrderStatus(rsOrders.getString("StatusRestaurant"));
-					restaurantOrder.setDishName(rsOrders.getString("DishName"));
-					restaurantOrder.setQuantity(rsOrders.getInt("Quantity"));
-					restaurantOrder.setSpecification(rsOrders.getString("Specification"));
-					restaurantOrder.setSize(rsOrders.getString("Size"));
-
-					restaurantOrders.add(restaurantOrder);
+				try (ResultSet rsOrders = stmtOrders.executeQuery()) {
+					while (rsOrders.next()) {
+						RestaurantOrder restaurantOrder = new RestaurantOrder();
+						restaurantOrder.setOrderId(rsOrders.getInt("OrderID"));
+						restaurantOrder.setCustomerNumber(rsOrders.getInt("CustomerNumber"));
+						restaurantOrder.setIsDelivery(rsOrders.getInt("IsDelivery"));
+						restaurantOrder.setOrderDateTime(rsOrders.getString("OrderDateTime"));
+						restaurantOrder.setOrderStatus(rsOrders.getString("StatusRestaurant"));
+						restaurantOrder.setDishName(rsOrders.getString("DishName"));
+						restaurantOrder.setQuantity(rsOrders.getInt("Quantity"));
+						restaurantOrder.setSpecification(rsOrders.getString("Specification"));
+						restaurantOrder.setSize(rsOrders.getString("Size"));
+
+						restaurantOrders.add(restaurantOrder);
+					}
 				}
 			}
 		} catch (SQLException e) {
@@ -469,35 +560,40 @@ public class DbController {
 		String queryUserDetails = "SELECT * FROM users WHERE ID = ?";
 		int userId = 0;
 
-		try {
+		try (Connection conn = transactional.getConnection()) {
 			// Step 1: Get the ID from customers table using CustomerNumber
-			PreparedStatement stmtCustomerId = conn.prepareStatement(queryCustomerId);
-			stmtCustomerId.setInt(1, customerNumber);
-			ResultSet rsCustomerId = stmtCustomerId.executeQuery();
-			if (rsCustomerId.next()) {
-				userId = rsCustomerId.getInt("ID");
-			} else {
-				// No matching customer found
-				return null;
+			try (PreparedStatement stmtCustomerId = conn.prepareStatement(queryCustomerId)) {
+				stmtCustomerId.setInt(1, customerNumber);
+				try (ResultSet rsCustomerId = stmtCustomerId.executeQuery()) {
+					if (rsCustomerId.next()) {
+						userId = rsCustomerId.getInt("ID");
+					} else {
+						// No matching customer found
+						return null;
+					}
+				}
 			}
 
 			// Step 2: Get the user details from users table using the fetched ID
-			PreparedStatement stmtUserDetails = conn.prepareStatement(queryUserDetails);
-			stmtUserDetails.setInt(1, userId);
-			ResultSet rsUserDetails = stmtUserDetails.executeQuery();
-			if (rsUserDetails.next()) {
-				int id = rsUserDetails.getInt("ID");
-				String username = rsUserDetails.getString("UserName");
-				String password = rsUserDetails.getString("Password");
-				String firstName = rsUserDetails.getString("FirstName");
-				String lastName = rsUserDetails.getString("LastName");
-				String email = rsUserDetails.getString("Email");
-				String phone = rsUserDetails.getString("Phone");
-				String type = rsUserDetails.getString("Type");
-				int isLoggedIn = rsUserDetails.getInt("IsLoggedIn");
-				String district = rsUserDetails.getString("District");
-
-				return new User(id, username, password, firstName, lastName, email, phone, type, isLoggedIn, district);
+			try (PreparedStatement stmtUserDetails = conn.prepareStatement(queryUserDetails)) {
+				stmtUserDetails.setInt(1, userId);
+				try (ResultSet rsUserDetails = stmtUserDetails.executeQuery()) {
+					if (rsUserDetails.next()) {
+						int id = rsUserDetails.getInt("ID");
+						String username = rsUserDetails.getString("UserName");
+						String password = rsUserDetails.getString("Password");
+						String firstName = rsUserDetails.getString("FirstName");
+						String lastName = rsUserDetails.getString("LastName");
+						String email = rsUserDetails.getString("Email");
+						String phone = rsUserDetails.getString("Phone");
+						String type = rsUserDetails.getString("Type");
+						int isLoggedIn = rsUserDetails.getInt("IsLoggedIn");
+						String district = rsUserDetails.getString("District");
+
+						return new User(id, username, password, firstName, lastName, email, phone, type, isLoggedIn,
+								district);
+					}
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -525,19 +621,19 @@ public class DbController {
 		// Step 1: Check if the report already exists in the order_reports table
 		String checkReportQuery = "SELECT Salad, MainCourse, Dessert, Drink FROM order_reports WHERE MonthYear = ? AND District = ? AND RestaurantNumber = ?";
 
-		try (PreparedStatement checkReportStmt = conn.prepareStatement(checkReportQuery)) {
-			checkReportStmt.setString(1, monthYear);
-			checkReportStmt.setString(2, district);
-			checkReportStmt.setInt(3, restaurantNumber);
-
-			ResultSet rs = checkReportStmt.executeQuery();
-			if (rs.next()) {
-				// Report exists, return the existing data
-				int salad = rs.getInt("Salad");
-				int mainCourse = rs.getInt("MainCourse");
-				int dessert = rs.getInt("Dessert");
-				int drink = rs.getInt("Drink");
-				return new int[] { salad, mainCourse, dessert, drink };
+		try {
+			int[] report;
+			try (Connection conn = read(analytical, 0)) {
+				report = findOrderReport(conn, checkReportQuery, district, restaurantNumber, monthYear);
+			}
+			if (report == null && replicas != null) {
+				// A replica that is behind may miss a report the primary has
+				try (Connection conn = analytical.getConnection()) {
+					report = findOrderReport(conn, checkReportQuery, district, restaurantNumber, monthYear);
+				}
+			}
+			if (report != null) {
+				return report;
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -550,37 +646,40 @@ public class DbController {
 				+ "WHERE u.District = ? AND c.Status = 'active' AND o.RestaurantNumber = ? "
 				+ "AND DATE_FORMAT(o.OrderDateTime, '%c/%Y') = ?";
 
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = analytical.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, district);
 			stmt.setInt(2, restaurantNumber);
 			stmt.setString(3, monthYear);
 
-			ResultSet rs = stmt.executeQuery();
-
-			if (rs.next()) {
-				int salad = rs.getInt("SaladTotal");
-				int mainCourse = rs.getInt("MainCourseTotal");
-				int dessert = rs.getInt("DessertTotal");
-				int drink = rs.getInt("DrinkTotal");
-
-				// Step 2.1: Insert or update the new report in the order_reports table
-				String insertOrUpdateReportQuery = "INSERT INTO order_reports (MonthYear, District, RestaurantNumber, Salad, MainCourse, Dessert, Drink) "
-						+ "VALUES (?, ?, ?, ?, ?, ?, ?) "
-						+ "ON DUPLICATE KEY UPDATE Salad = VALUES(Salad), MainCourse = VALUES(MainCourse), "
-						+ "Dessert = VALUES(Dessert), Drink = VALUES(Drink)";
-
-				try (PreparedStatement insertOrUpdateStmt = conn.prepareStatement(insertOrUpdateReportQuery)) {
-					insertOrUpdateStmt.setString(1, monthYear);
-					insertOrUpdateStmt.setString(2, district);
-					insertOrUpdateStmt.setInt(3, restaurantNumber);
-					insertOrUpdateStmt.setInt(4, salad);
-					insertOrUpdateStmt.setInt(5, mainCourse);
-					insertOrUpdateStmt.setInt(6, dessert);
-					insertOrUpdateStmt.setInt(7, drink);
-					insertOrUpdateStmt.executeUpdate();
-				}
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					int salad = rs.getInt("SaladTotal");
+					int mainCourse = rs.getInt("MainCourseTotal");
+					int dessert = rs.getInt("DessertTotal");
+					int drink = rs.getInt("DrinkTotal");
+					if (abandoned()) {
+						return new int[] { salad, mainCourse, dessert, drink };
+					}
 
-				return new int[] { salad, mainCourse, dessert, drink };
+					// Step 2.1: Insert or update the new report in the order_reports table
+					String insertOrUpdateReportQuery = "INSERT INTO order_reports (MonthYear, District, RestaurantNumber, Salad, MainCourse, Dessert, Drink) "
+							+ "VALUES (?, ?, ?, ?, ?, ?, ?) "
+							+ "ON DUPLICATE KEY UPDATE Salad = VALUES(Salad), MainCourse = VALUES(MainCourse), "
+							+ "Dessert = VALUES(Dessert), Drink = VALUES(Drink)";
+
+					try (PreparedStatement insertOrUpdateStmt = conn.prepareStatement(insertOrUpdateReportQuery)) {
+						insertOrUpdateStmt.setString(1, monthYear);
+						insertOrUpdateStmt.setString(2, district);
+						insertOrUpdateStmt.setInt(3, restaurantNumber);
+						insertOrUpdateStmt.setInt(4, salad);
+						insertOrUpdateStmt.setInt(5, mainCourse);
+						insertOrUpdateStmt.setInt(6, dessert);
+						insertOrUpdateStmt.setInt(7, drink);
+						insertOrUpdateStmt.executeUpdate();
+					}
+
+					return new int[] { salad, mainCourse, dessert, drink };
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -590,6 +689,39 @@ public class DbController {
 		return new int[] { 0, 0, 0, 0 };
 	}
 
+	/**
+	 * Looks for an order report already saved in the `order_reports` table.
+	 * 
+	 * @param conn             the connection to read from
+	 * @param query            the query selecting the report
+	 * @param district         the district of the report
+	 * @param restaurantNumber the restaurant number of the report
+	 * @param monthYear        the month and year of the report
+	 * @return the report in the order [salad, main course, dessert, drink], or
+	 *         null if it is not saved
+	 * @throws SQLException if the query fails
+	 */
+	private static int[] findOrderReport(Connection conn, String query, String district, int restaurantNumber,
+			String monthYear) throws SQLException {
+		try (PreparedStatement checkReportStmt = conn.prepareStatement(query)) {
+			checkReportStmt.setString(1, monthYear);
+			checkReportStmt.setString(2, district);
+			checkReportStmt.setInt(3, restaurantNumber);
+
+			try (ResultSet rs = checkReportStmt.executeQuery()) {
+				if (rs.next()) {
+					// Report exists, return the existing data
+					int salad = rs.getInt("Salad");
+					int mainCourse = rs.getInt("MainCourse");
+					int dessert = rs.getInt("Dessert");
+					int drink = rs.getInt("Drink");
+					return new int[] { salad, mainCourse, dessert, drink };
+				}
+			}
+			return null;
+		}
+	}
+
 	/**
 	 * Generates or retrieves the income report for a specific restaurant, district,
 	 * and month-year. The report consists of the total income for each of the four
@@ -612,23 +744,25 @@ public class DbController {
 		// 1. Try to fetch data from the income_reports table
 		String selectIncomeQuery = "SELECT Week1, Week2, Week3, Week4 FROM income_reports WHERE RestaurantNumber = ? AND MonthYear = ? AND District = ?";
 
-		try (PreparedStatement selectStmt = conn.prepareStatement(selectIncomeQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement selectStmt = conn.prepareStatement(selectIncomeQuery)) {
 			selectStmt.setInt(1, restaurantNumber);
 			selectStmt.setString(2, monthYear);
 			selectStmt.setString(3, district);
 
-			ResultSet rs = selectStmt.executeQuery();
-
-			if (rs.next()) {
-				incomeReportResultData[0] = rs.getInt("Week1");
-				incomeReportResultData[1] = rs.getInt("Week2");
-				incomeReportResultData[2] = rs.getInt("Week3");
-				incomeReportResultData[3] = rs.getInt("Week4");
-				System.out.println("Data found in income_reports: " + Arrays.toString(incomeReportResultData));
-				return incomeReportResultData; // Return early if data found
+			try (ResultSet rs = selectStmt.executeQuery()) {
+				if (rs.next()) {
+					incomeReportResultData[0] = rs.getInt("Week1");
+					incomeReportResultData[1] = rs.getInt("Week2");
+					incomeReportResultData[2] = rs.getInt("Week3");
+					incomeReportResultData[3] = rs.getInt("Week4");
+					System.out.println("Data found in income_reports: " + Arrays.toString(incomeReportResultData));
+					return incomeReportResultData; // Return early if data found
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
+			return incomeReportResultData; // A report whose reads failed is not saved
 		}
 
 		// 2. If data not found in income_reports, calculate it from the orders table
@@ -637,15 +771,17 @@ public class DbController {
 		String selectCustomersQuery = "SELECT c.CustomerNumber FROM customers c JOIN users u ON c.ID = u.ID WHERE u.District = ? AND u.Type = 'customer' AND c.Status = 'active'";
 		List<Integer> customerNumbers = new ArrayList<>();
 
-		try (PreparedStatement selectCustomersStmt = conn.prepareStatement(selectCustomersQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement selectCustomersStmt = conn.prepareStatement(selectCustomersQuery)) {
 			selectCustomersStmt.setString(1, district);
-			ResultSet rs = selectCustomersStmt.executeQuery();
-
-			while (rs.next()) {
-				customerNumbers.add(rs.getInt("CustomerNumber"));
+			try (ResultSet rs = selectCustomersStmt.executeQuery()) {
+				while (rs.next()) {
+					customerNumbers.add(rs.getInt("CustomerNumber"));
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
+			return incomeReportResultData;
 		}
 
 		if (customerNumbers.isEmpty()) {
@@ -660,7 +796,8 @@ public class DbController {
 		String selectOrdersQuery = "SELECT TotalPrice, OrderDateTime FROM orders WHERE RestaurantNumber = ? AND CustomerNumber IN ("
 				+ placeholders + ") AND DATE_FORMAT(OrderDateTime, '%c/%Y') = ?";
 
-		try (PreparedStatement selectOrdersStmt = conn.prepareStatement(selectOrdersQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement selectOrdersStmt = conn.prepareStatement(selectOrdersQuery)) {
 			selectOrdersStmt.setInt(1, restaurantNumber);
 
 			int i = 2;
@@ -670,29 +807,34 @@ public class DbController {
 
 			selectOrdersStmt.setString(i, monthYear);
 
-			ResultSet rs = selectOrdersStmt.executeQuery();
+			try (ResultSet rs = selectOrdersStmt.executeQuery()) {
+				while (rs.next()) {
+					int totalPrice = rs.getInt("TotalPrice");
+					LocalDateTime orderDateTime = rs.getTimestamp("OrderDateTime").toLocalDateTime();
+					int weekOfMonth = orderDateTime.get(ChronoField.ALIGNED_WEEK_OF_MONTH);
+					System.out.println("OrderDateTime: " + orderDateTime + ", TotalPrice: " + totalPrice
+							+ ", WeekOfMonth: " + weekOfMonth);
 
-			while (rs.next()) {
-				int totalPrice = rs.getInt("TotalPrice");
-				LocalDateTime orderDateTime = rs.getTimestamp("OrderDateTime").toLocalDateTime();
-				int weekOfMonth = orderDateTime.get(ChronoField.ALIGNED_WEEK_OF_MONTH);
-				System.out.println("OrderDateTime: " + orderDateTime + ", TotalPrice: " + totalPrice + ", WeekOfMonth: "
-						+ weekOfMonth);
-
-				if (weekOfMonth >= 1 && weekOfMonth <= 4) {
-					incomeReportResultData[weekOfMonth - 1] += totalPrice;
+					if (weekOfMonth >= 1 && weekOfMonth <= 4) {
+						incomeReportResultData[weekOfMonth - 1] += totalPrice;
+					}
 				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
+			return incomeReportResultData; // Partial sums are not saved
 		}
 
 		System.out.println("Calculated incomeReportResultData: " + Arrays.toString(incomeReportResultData));
+		if (abandoned()) {
+			return incomeReportResultData;
+		}
 
 		// 3. Update the income_reports table with the calculated values
 		String updateIncomeQuery = "INSERT INTO income_reports (MonthYear, District, RestaurantNumber, Week1, Week2, Week3, Week4) VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE Week1 = ?, Week2 = ?, Week3 = ?, Week4 = ?";
 
-		try (PreparedStatement updateStmt = conn.prepareStatement(updateIncomeQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement updateStmt = conn.prepareStatement(updateIncomeQuery)) {
 			updateStmt.setString(1, monthYear);
 			updateStmt.setString(2, district);
 			updateStmt.setInt(3, restaurantNumber);
@@ -730,15 +872,16 @@ public class DbController {
 		// Step 1: Check if the report already exists in the performance_reports table
 		String checkReportQuery = "SELECT Week1, Week2, Week3, Week4 FROM performance_reports WHERE MonthYear = ? AND District = ?";
 
-		try (PreparedStatement checkReportStmt = conn.prepareStatement(checkReportQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement checkReportStmt = conn.prepareStatement(checkReportQuery)) {
 			checkReportStmt.setString(1, monthYear);
 			checkReportStmt.setString(2, district);
 
-			ResultSet rs = checkReportStmt.executeQuery();
-
-			if (rs.next()) {
-				// Report exists, return the existing data
-				return new int[] { rs.getInt("Week1"), rs.getInt("Week2"), rs.getInt("Week3"), rs.getInt("Week4") };
+			try (ResultSet rs = checkReportStmt.executeQuery()) {
+				if (rs.next()) {
+					// Report exists, return the existing data
+					return new int[] { rs.getInt("Week1"), rs.getInt("Week2"), rs.getInt("Week3"), rs.getInt("Week4") };
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -758,39 +901,42 @@ public class DbController {
 				+ "JOIN users u ON c.ID = u.ID " + "WHERE u.District = ? AND c.Status = 'active' "
 				+ "AND DATE_FORMAT(o.OrderDateTime, '%c/%Y') = ?";
 
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = analytical.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, district);
 			stmt.setString(2, monthYear);
 
-			ResultSet rs = stmt.executeQuery();
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					int[] performanceData = new int[4];
+					for (int i = 1; i <= 4; i++) {
+						int total = rs.getInt("TotalWeek" + i);
+						int late = rs.getInt("LateWeek" + i);
+						performanceData[i - 1] = total > 0 ? (late * 100 / total) : 0;
+					}
+					System.out.println("Calculated performance data: " + Arrays.toString(performanceData));
+					if (abandoned()) {
+						return performanceData;
+					}
 
-			if (rs.next()) {
-				int[] performanceData = new int[4];
-				for (int i = 1; i <= 4; i++) {
-					int total = rs.getInt("TotalWeek" + i);
-					int late = rs.getInt("LateWeek" + i);
-					performanceData[i - 1] = total > 0 ? (late * 100 / total) : 0;
-				}
-				System.out.println("Calculated performance data: " + Arrays.toString(performanceData));
-
-				// Insert or update the new report in the performance_reports table
-				String insertOrUpdateReportQuery = "INSERT INTO performance_reports (MonthYear, District, Week1, Week2, Week3, Week4) "
-						+ "VALUES (?, ?, ?, ?, ?, ?) "
-						+ "ON DUPLICATE KEY UPDATE Week1 = VALUES(Week1), Week2 = VALUES(Week2), "
-						+ "Week3 = VALUES(Week3), Week4 = VALUES(Week4)";
-
-				try (PreparedStatement insertOrUpdateStmt = conn.prepareStatement(insertOrUpdateReportQuery)) {
-					insertOrUpdateStmt.setString(1, monthYear);
-					insertOrUpdateStmt.setString(2, district);
-					insertOrUpdateStmt.setInt(3, performanceData[0]);
-					insertOrUpdateStmt.setInt(4, performanceData[1]);
-					insertOrUpdateStmt.setInt(5, performanceData[2]);
-					insertOrUpdateStmt.setInt(6, performanceData[3]);
-
-					insertOrUpdateStmt.executeUpdate();
-				}
+					// Insert or update the new report in the performance_reports table
+					String insertOrUpdateReportQuery = "INSERT INTO performance_reports (MonthYear, District, Week1, Week2, Week3, Week4) "
+							+ "VALUES (?, ?, ?, ?, ?, ?) "
+							+ "ON DUPLICATE KEY UPDATE Week1 = VALUES(Week1), Week2 = VALUES(Week2), "
+							+ "Week3 = VALUES(Week3), Week4 = VALUES(Week4)";
+
+					try (PreparedStatement insertOrUpdateStmt = conn.prepareStatement(insertOrUpdateReportQuery)) {
+						insertOrUpdateStmt.setString(1, monthYear);
+						insertOrUpdateStmt.setString(2, district);
+						insertOrUpdateStmt.setInt(3, performanceData[0]);
+						insertOrUpdateStmt.setInt(4, performanceData[1]);
+						insertOrUpdateStmt.setInt(5, performanceData[2]);
+						insertOrUpdateStmt.setInt(6, performanceData[3]);
+
+						insertOrUpdateStmt.executeUpdate();
+					}
 
-				return performanceData;
+					return performanceData;
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -819,35 +965,36 @@ public class DbController {
 				+ "LEFT JOIN dish_options do ON d.DishID = do.DishID " + "JOIN prices p ON d.DishID = p.DishID "
 				+ "JOIN employee e ON d.RestaurantNumber = e.RestaurantNumber " + "WHERE e.ID = ?";
 
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = read(transactional, menuWrittenAt);
+				PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, user.getId());
-			ResultSet rs = stmt.executeQuery();
-
-			while (rs.next()) {
-				int dishId = rs.getInt("DishID");
-				int restaurantNumber = rs.getInt("RestaurantNumber");
-				int categoryId = rs.getInt("CategoryId");
-				String dishName = rs.getString("DishName");
-				String categoryName = rs.getString("CategoryName");
-				DishUpdate dish = new DishUpdate(dishId, restaurantNumber, categoryId, dishName);
-				Category category = new Category(categoryId, categoryName);
-				String optionTypeStr = rs.getString("OptionType");
-				String optionValue = rs.getString("OptionValue");
-				DishOption option = null;
-				if (optionTypeStr != null) {
-					try {
-						OptionType optionType = OptionType.valueOf(optionTypeStr.toUpperCase());
-						option = new DishOption(dishId, optionType, optionValue);
-					} catch (IllegalArgumentException e) {
-						// Log the error and continue processing
-						System.err.println("Invalid OptionType: " + optionTypeStr);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					int dishId = rs.getInt("DishID");
+					int restaurantNumber = rs.getInt("RestaurantNumber");
+					int categoryId = rs.getInt("CategoryId");
+					String dishName = rs.getString("DishName");
+					String categoryName = rs.getString("CategoryName");
+					DishUpdate dish = new DishUpdate(dishId, restaurantNumber, categoryId, dishName);
+					Category category = new Category(categoryId, categoryName);
+					String optionTypeStr = rs.getString("OptionType");
+					String optionValue = rs.getString("OptionValue");
+					DishOption option = null;
+					if (optionTypeStr != null) {
+						try {
+							OptionType optionType = OptionType.valueOf(optionTypeStr.toUpperCase());
+							option = new DishOption(dishId, optionType, optionValue);
+						} catch (IllegalArgumentException e) {
+							// Log the error and continue processing
+							System.err.println("Invalid OptionType: " + optionTypeStr);
+						}
 					}
-				}
-				String size = rs.getString("Size");
-				int price = rs.getInt("Price");
-				Price priceObj = new Price(dishId, size, price);
+					String size = rs.getString("Size");
+					int price = rs.getInt("Price");
+					Price priceObj = new Price(dishId, size, price);
 
-				dishes.add(new Object[] { dish, option, priceObj, category });
+					dishes.add(new Object[] { dish, option, priceObj, category });
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -864,13 +1011,14 @@ public class DbController {
 	 */
 	public int getRestaurantNum(User user) {
 		String query = "SELECT e.RestaurantNumber " + "FROM employee e " + "WHERE e.ID = ?";
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, user.getId());
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				return rs.getInt("RestaurantNumber");
-			} else {
-				throw new SQLException("No restaurant number found for user ID: " + user.getId());
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					return rs.getInt("RestaurantNumber");
+				} else {
+					throw new SQLException("No restaurant number found for user ID: " + user.getId());
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -888,13 +1036,14 @@ public class DbController {
 	public String getRestaurantName(User user) {
 		String query = "SELECT r.RestaurantName " + "FROM restaurants r "
 				+ "JOIN employee e ON r.RestaurantNumber = e.RestaurantNumber " + "WHERE e.ID = ?";
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, user.getId());
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				return rs.getString("RestaurantName");
-			} else {
-				throw new SQLException("No restaurant name found for user ID: " + user.getId());
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					return rs.getString("RestaurantName");
+				} else {
+					throw new SQLException("No restaurant name found for user ID: " + user.getId());
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -917,7 +1066,8 @@ public class DbController {
 		String insertDishQuery = "INSERT INTO dishes (RestaurantNumber, CategoryID, DishName) VALUES (?, ?, ?)";
 		String insertPriceQuery = "INSERT INTO prices (DishID, Size, Price) VALUES (?, ?, ?)";
 		String insertOptionQuery = "INSERT INTO dish_options (DishID, OptionType, OptionValue) VALUES (?, ?, ?)";
-		try (PreparedStatement dishStmt = conn.prepareStatement(insertDishQuery, Statement.RETURN_GENERATED_KEYS);
+		try (Connection conn = transactional.getConnection();
+				PreparedStatement dishStmt = conn.prepareStatement(insertDishQuery, Statement.RETURN_GENERATED_KEYS);
 				PreparedStatement priceStmt = conn.prepareStatement(insertPriceQuery);
 				PreparedStatement optionStmt = conn.prepareStatement(insertOptionQuery)) {
 
@@ -955,6 +1105,8 @@ public class DbController {
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			menuChanged();
 		}
 	}
 
@@ -971,7 +1123,8 @@ public class DbController {
 	public boolean insertPriceAndOption(DishUpdate dish, Price price, DishOption option) {
 		String insertPriceQuery = "INSERT INTO prices (DishID, Size, Price) VALUES (?, ?, ?)";
 		String insertOptionQuery = "INSERT INTO dish_options (DishID, OptionType, OptionValue) VALUES (?, ?, ?)";
-		try (PreparedStatement priceStmt = conn.prepareStatement(insertPriceQuery);
+		try (Connection conn = transactional.getConnection();
+				PreparedStatement priceStmt = conn.prepareStatement(insertPriceQuery);
 				PreparedStatement optionStmt = conn.prepareStatement(insertOptionQuery)) {
 
 			// Insert price
@@ -991,6 +1144,8 @@ public class DbController {
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			menuChanged();
 		}
 	}
 
@@ -1004,11 +1159,12 @@ public class DbController {
 	 */
 	public boolean isDishExists(String dishName, String size) {
 		String query = "SELECT * FROM dishes d JOIN prices p ON d.DishID = p.DishID WHERE d.DishName = ? AND p.Size = ?";
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, dishName);
 			stmt.setString(2, size);
-			ResultSet rs = stmt.executeQuery();
-			return rs.next();
+			try (ResultSet rs = stmt.executeQuery()) {
+				return rs.next();
+			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
@@ -1026,16 +1182,17 @@ public class DbController {
 	 */
 	public DishUpdate findDishByNameAndSize(String dishName, String size) {
 		String query = "SELECT * FROM dishes WHERE DishName = ? AND DishID IN (SELECT DishID FROM prices WHERE Size != ?)";
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setString(1, dishName);
 			stmt.setString(2, size);
-			ResultSet rs = stmt.executeQuery();
-			if (rs.next()) {
-				int dishID = rs.getInt("DishID");
-				int restaurantNumber = rs.getInt("RestaurantNumber");
-				int categoryId = rs.getInt("CategoryID");
-				String name = rs.getString("DishName");
-				return new DishUpdate(dishID, restaurantNumber, categoryId, name);
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					int dishID = rs.getInt("DishID");
+					int restaurantNumber = rs.getInt("RestaurantNumber");
+					int categoryId = rs.getInt("CategoryID");
+					String name = rs.getString("DishName");
+					return new DishUpdate(dishID, restaurantNumber, categoryId, name);
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -1058,7 +1215,7 @@ public class DbController {
 		String deletePricesQuery = "DELETE FROM prices WHERE DishID = ?";
 		String deleteDishQuery = "DELETE FROM dishes WHERE DishID = ?";
 
-		try {
+		try (Connection conn = transactional.getConnection()) {
 			// First, update restaurants_orders table
 			try (PreparedStatement updateOrdersStmt = conn.prepareStatement(updateOrdersQuery)) {
 				updateOrdersStmt.setInt(1, dish.getDishID());
@@ -1086,6 +1243,8 @@ public class DbController {
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			menuChanged();
 		}
 	}
 
@@ -1099,7 +1258,7 @@ public class DbController {
 	 */
 	public boolean updateDishPrice(Price price) {
 		String query = "UPDATE prices SET Price = ? WHERE DishID = ? AND Size = ?";
-		try (PreparedStatement stmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, price.getPrice());
 			stmt.setInt(2, price.getDishID());
 			stmt.setString(3, price.getSize());
@@ -1108,6 +1267,8 @@ public class DbController {
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return false;
+		} finally {
+			menuChanged();
 		}
 	}
 
@@ -1123,7 +1284,7 @@ public class DbController {
 	public void updateEntryTime(int restaurantNum, Timestamp localTime) {
 		String query = "UPDATE restaurants SET BeginUpdate = ? WHERE RestaurantNumber = ?";
 
-		try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement pstmt = conn.prepareStatement(query)) {
 			// Use setObject with Types.TIMESTAMP to ensure compatibility with datetime
 			pstmt.setObject(1, localTime, Types.TIMESTAMP);
 			pstmt.setInt(2, restaurantNum);
@@ -1138,6 +1299,8 @@ public class DbController {
 		} catch (SQLException e) {
 			System.err.println("Error updating BeginUpdate: " + e.getMessage());
 			e.printStackTrace();
+		} finally {
+			menuChanged();
 		}
 	}
 
@@ -1162,81 +1325,82 @@ public class DbController {
 				+ "JOIN restaurants r ON d.RestaurantNumber = r.RestaurantNumber " + "WHERE d.RestaurantNumber = ( "
 				+ "  SELECT RestaurantNumber " + "  FROM restaurants " + "  WHERE RestaurantName = ? " + ")";
 
-		try (PreparedStatement stmt = conn.prepareStatement(SQL_QUERY)) {
+		try (Connection conn = read(transactional, menuWrittenAt);
+				PreparedStatement stmt = conn.prepareStatement(SQL_QUERY)) {
 			stmt.setString(1, restaurantName);
-			ResultSet rs = stmt.executeQuery();
-
-			Map<String, Map<String, Object>> dishMap = new HashMap<>();
-			Map<String, Object> restaurantInfo = new HashMap<>(); // To store BeginUpdate, EndUpdate, and
-																	// RestaurantNumber
-
-			boolean firstRow = true;
-			while (rs.next()) {
-				String dishID = rs.getString("dishID");
-				String dishSize = rs.getString("dishSize");
-				int dishPrice = rs.getInt("dishPrice");
-
-				// Store BeginUpdate, EndUpdate, and RestaurantNumber only once
-				if (restaurantInfo.isEmpty()) {
-					int restaurantNumber = rs.getInt("RestaurantNumber");
-					java.sql.Timestamp beginUpdate = rs.getTimestamp("BeginUpdate");
-					java.sql.Timestamp endUpdate = rs.getTimestamp("EndUpdate");
+			try (ResultSet rs = stmt.executeQuery()) {
+				Map<String, Map<String, Object>> dishMap = new HashMap<>();
+				Map<String, Object> restaurantInfo = new HashMap<>(); // To store BeginUpdate, EndUpdate, and
+																		// RestaurantNumber
+
+				boolean firstRow = true;
+				while (rs.next()) {
+					String dishID = rs.getString("dishID");
+					String dishSize = rs.getString("dishSize");
+					int dishPrice = rs.getInt("dishPrice");
+
+					// Store BeginUpdate, EndUpdate, and RestaurantNumber only once
+					if (restaurantInfo.isEmpty()) {
+						int restaurantNumber = rs.getInt("RestaurantNumber");
+						java.sql.Timestamp beginUpdate = rs.getTimestamp("BeginUpdate");
+						java.sql.Timestamp endUpdate = rs.getTimestamp("EndUpdate");
+
+						restaurantInfo.put("RestaurantNumber", restaurantNumber);
+						restaurantInfo.put("BeginUpdate", beginUpdate);
+						restaurantInfo.put("EndUpdate", endUpdate);
+
+						System.out.println("DbController: Retrieved RestaurantNumber: " + restaurantNumber);
+						System.out.println("DbController: Retrieved BeginUpdate: " + beginUpdate);
+						System.out.println("DbController: Retrieved EndUpdate: " + endUpdate);
+					}
 
-					restaurantInfo.put("RestaurantNumber", restaurantNumber);
-					restaurantInfo.put("BeginUpdate", beginUpdate);
-					restaurantInfo.put("EndUpdate", endUpdate);
+					Map<String, Object> dish = dishMap.computeIfAbsent(dishID, k -> {
+						Map<String, Object> newDish = new HashMap<>();
+						try {
+							newDish.put("dishID", dishID);
+							newDish.put("dishType", rs.getString("dishType"));
+							newDish.put("dishName", rs.getString("dishName"));
+							newDish.put("dishPrice", dishPrice);
+							newDish.put("dishOptions", new HashMap<String, List<String>>());
+							newDish.put("dishPrices", new HashMap<String, Integer>());
+						} catch (SQLException e) {
+							e.printStackTrace();
+						}
+						return newDish;
+					});
 
-					System.out.println("DbController: Retrieved RestaurantNumber: " + restaurantNumber);
-					System.out.println("DbController: Retrieved BeginUpdate: " + beginUpdate);
-					System.out.println("DbController: Retrieved EndUpdate: " + endUpdate);
-				}
+					// Handle size options, ignoring 'Regular'
+					if (dishSize != null && !dishSize.isEmpty() && !dishSize.equalsIgnoreCase("Regular")) {
+						Map<String, List<String>> options = (Map<String, List<String>>) dish.get("dishOptions");
+						options.computeIfAbsent("Size", k -> new ArrayList<>()).add(dishSize);
 
-				Map<String, Object> dish = dishMap.computeIfAbsent(dishID, k -> {
-					Map<String, Object> newDish = new HashMap<>();
-					try {
-						newDish.put("dishID", dishID);
-						newDish.put("dishType", rs.getString("dishType"));
-						newDish.put("dishName", rs.getString("dishName"));
-						newDish.put("dishPrice", dishPrice);
-						newDish.put("dishOptions", new HashMap<String, List<String>>());
-						newDish.put("dishPrices", new HashMap<String, Integer>());
-					} catch (SQLException e) {
-						e.printStackTrace();
+						// Store price for each size
+						Map<String, Integer> prices = (Map<String, Integer>) dish.get("dishPrices");
+						prices.put(dishSize, dishPrice);
 					}
-					return newDish;
-				});
 
-				// Handle size options, ignoring 'Regular'
-				if (dishSize != null && !dishSize.isEmpty() && !dishSize.equalsIgnoreCase("Regular")) {
-					Map<String, List<String>> options = (Map<String, List<String>>) dish.get("dishOptions");
-					options.computeIfAbsent("Size", k -> new ArrayList<>()).add(dishSize);
+					String optionType = rs.getString("OptionType");
+					String optionValue = rs.getString("OptionValue");
 
-					// Store price for each size
-					Map<String, Integer> prices = (Map<String, Integer>) dish.get("dishPrices");
-					prices.put(dishSize, dishPrice);
-				}
-
-				String optionType = rs.getString("OptionType");
-				String optionValue = rs.getString("OptionValue");
+					if (optionType != null && optionValue != null) {
+						Map<String, List<String>> options = (Map<String, List<String>>) dish.get("dishOptions");
 
-				if (optionType != null && optionValue != null) {
-					Map<String, List<String>> options = (Map<String, List<String>>) dish.get("dishOptions");
-
-					if (optionType.equals("cooking_level") && optionValue.startsWith("M, MW, WD")) {
-						options.computeIfAbsent("Doneness", k -> new ArrayList<>())
-								.addAll(Arrays.asList("Medium", "Medium Well", "Well Done"));
-					} else if (optionType.equals("ingredient") && optionValue.startsWith("no ")) {
-						String ingredient = optionValue.substring(3); // remove "no " prefix
-						options.computeIfAbsent("Remove", k -> new ArrayList<>()).add(ingredient);
-					} else {
-						options.computeIfAbsent(optionType, k -> new ArrayList<>()).add(optionValue);
+						if (optionType.equals("cooking_level") && optionValue.startsWith("M, MW, WD")) {
+							options.computeIfAbsent("Doneness", k -> new ArrayList<>())
+									.addAll(Arrays.asList("Medium", "Medium Well", "Well Done"));
+						} else if (optionType.equals("ingredient") && optionValue.startsWith("no ")) {
+							String ingredient = optionValue.substring(3); // remove "no " prefix
+							options.computeIfAbsent("Remove", k -> new ArrayList<>()).add(ingredient);
+						} else {
+							options.computeIfAbsent(optionType, k -> new ArrayList<>()).add(optionValue);
+						}
 					}
 				}
-			}
 
-			menu.addAll(dishMap.values());
-			// Add restaurantInfo as the last item in the menu list
-			menu.add(restaurantInfo);
+				menu.addAll(dishMap.values());
+				// Add restaurantInfo as the last item in the menu list
+				menu.add(restaurantInfo);
+			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -1255,7 +1419,7 @@ public class DbController {
 		Customer customer = null;
 		String query = "SELECT CustomerNumber, ID, Credit, IsBusiness, Status " + "FROM customers WHERE ID = ?";
 
-		try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement pstmt = conn.prepareStatement(query)) {
 			pstmt.setInt(1, userID);
 
 			try (ResultSet rs = pstmt.executeQuery()) {
@@ -1285,7 +1449,7 @@ public class DbController {
 	public void updateExitTime(int restaurantNum, Timestamp localTime) {
 		String query = "UPDATE restaurants SET EndUpdate = ? WHERE RestaurantNumber = ?";
 
-		try (PreparedStatement pstmt = conn.prepareStatement(query)) {
+		try (Connection conn = transactional.getConnection(); PreparedStatement pstmt = conn.prepareStatement(query)) {
 			// Use setObject with Types.TIMESTAMP to ensure compatibility with datetime
 			pstmt.setObject(1, localTime, Types.TIMESTAMP);
 			pstmt.setInt(2, restaurantNum);
@@ -1300,6 +1464,8 @@ public class DbController {
 		} catch (SQLException e) {
 			System.err.println("Error updating EndUpdate: " + e.getMessage());
 			e.printStackTrace();
+		} finally {
+			menuChanged();
 		}
 	}
 
@@ -1312,7 +1478,8 @@ public class DbController {
 		ArrayList<String> restaurantNames = new ArrayList<>();
 		String query = "SELECT RestaurantName FROM restaurants";
 
-		try (PreparedStatement stmt = conn.prepareStatement(query); ResultSet rs = stmt.executeQuery()) {
+		try (Connection conn = transactional.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(query); ResultSet rs = stmt.executeQuery()) {
 
 			while (rs.next()) {
 				String restaurantName = rs.getString("RestaurantName");
@@ -1343,31 +1510,61 @@ public class DbController {
 				+ "Interval8, value8, Interval9, value9, Interval10, value10 "
 				+ "FROM quarter_reports WHERE RestaurantNumber = ? AND Quarter = ?";
 
+		try {
+			Object[] report;
+			try (Connection conn = read(analytical, 0)) {
+				report = findQuarterReport(conn, query, restaurantNumber, quarter);
+			}
+			if (report == null && replicas != null) {
+				// A replica that is behind may miss a report the primary has
+				try (Connection conn = analytical.getConnection()) {
+					report = findQuarterReport(conn, query, restaurantNumber, quarter);
+				}
+			}
+			if (report != null) {
+				return report;
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null; // Return null if something goes wrong
+		}
+		// If no data found, calculate and save the quarter report
+		return calculateAndSaveQuarterReport(restaurantNumber, quarter);
+	}
+
+	/**
+	 * Looks for a quarter report already saved in the quarter_reports table.
+	 * 
+	 * @param conn             the connection to read from
+	 * @param query            the query selecting the report
+	 * @param restaurantNumber the ID of the restaurant
+	 * @param quarter          the quarter of the report
+	 * @return the report as returned by getQuarterReportData, or null if it is
+	 *         not saved
+	 * @throws SQLException if the query fails
+	 */
+	private static Object[] findQuarterReport(Connection conn, String query, int restaurantNumber, String quarter)
+			throws SQLException {
 		try (PreparedStatement stmt = conn.prepareStatement(query)) {
 			stmt.setInt(1, restaurantNumber);
 			stmt.setString(2, quarter);
-			ResultSet rs = stmt.executeQuery();
+			try (ResultSet rs = stmt.executeQuery()) {
+				// If the report exists, return the data
+				if (rs.next()) {
+					int maxOrders = rs.getInt("MaxOrders");
+					String[] intervals = new String[10];
+					int[] values = new int[10];
 
-			// If the report exists, return the data
-			if (rs.next()) {
-				int maxOrders = rs.getInt("MaxOrders");
-				String[] intervals = new String[10];
-				int[] values = new int[10];
+					for (int i = 0; i < 10; i++) {
+						intervals[i] = rs.getString("Interval" + (i + 1));
+						values[i] = rs.getInt("value" + (i + 1));
+					}
 
-				for (int i = 0; i < 10; i++) {
-					intervals[i] = rs.getString("Interval" + (i + 1));
-					values[i] = rs.getInt("value" + (i + 1));
+					return new Object[] { maxOrders, intervals, values };
 				}
-
-				return new Object[] { maxOrders, intervals, values };
-			} else {
-				// If no data found, calculate and save the quarter report
-				return calculateAndSaveQuarterReport(restaurantNumber, quarter);
 			}
-		} catch (SQLException e) {
-			e.printStackTrace();
+			return null;
 		}
-		return null; // Return null if something goes wrong
 	}
 
 	/**
@@ -1391,15 +1588,17 @@ public class DbController {
 				+ "GROUP BY DATE(OrderDateTime)) AS dailyOrders";
 
 		int maxOrders = 0;
-		try (PreparedStatement stmtMaxOrders = conn.prepareStatement(queryMaxOrders)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement stmtMaxOrders = conn.prepareStatement(queryMaxOrders)) {
 			stmtMaxOrders.setInt(1, restaurantNumber);
 			stmtMaxOrders.setString(2, months[0]);
 			stmtMaxOrders.setString(3, months[1]);
 			stmtMaxOrders.setString(4, months[2]);
 
-			ResultSet rsMaxOrders = stmtMaxOrders.executeQuery();
-			if (rsMaxOrders.next()) {
-				maxOrders = rsMaxOrders.getInt("MaxOrders");
+			try (ResultSet rsMaxOrders = stmtMaxOrders.executeQuery()) {
+				if (rsMaxOrders.next()) {
+					maxOrders = rsMaxOrders.getInt("MaxOrders");
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -1443,7 +1642,8 @@ public class DbController {
 					+ "FROM orders " + "WHERE RestaurantNumber = ? AND MONTH(OrderDateTime) IN (?, ?, ?) "
 					+ "GROUP BY DATE(OrderDateTime) " + "HAVING orderCount BETWEEN ? AND ?) AS intervalOrders";
 
-			try (PreparedStatement stmtInterval = conn.prepareStatement(queryInterval)) {
+			try (Connection conn = analytical.getConnection();
+					PreparedStatement stmtInterval = conn.prepareStatement(queryInterval)) {
 				stmtInterval.setInt(1, restaurantNumber);
 				stmtInterval.setString(2, months[0]);
 				stmtInterval.setString(3, months[1]);
@@ -1451,9 +1651,10 @@ public class DbController {
 				stmtInterval.setInt(5, lowerBound);
 				stmtInterval.setInt(6, upperBound);
 
-				ResultSet rsInterval = stmtInterval.executeQuery();
-				if (rsInterval.next()) {
-					values[i] = rsInterval.getInt("dayCount");
+				try (ResultSet rsInterval = stmtInterval.executeQuery()) {
+					if (rsInterval.next()) {
+						values[i] = rsInterval.getInt("dayCount");
+					}
 				}
 			} catch (SQLException e) {
 				e.printStackTrace();
@@ -1461,14 +1662,19 @@ public class DbController {
 			}
 		}
 
-		// Step 4: Save the data to the quarter_reports table
+		// Step 4: Save the data to the quarter_reports table, unless the report was
+		// given up meanwhile
+		if (abandoned()) {
+			return null;
+		}
 		String insertQuery = "INSERT INTO quarter_reports (Quarter, Year, RestaurantNumber, MaxOrders, "
 				+ "Interval1, value1, Interval2, value2, Interval3, value3, "
 				+ "Interval4, value4, Interval5, value5, Interval6, value6, "
 				+ "Interval7, value7, Interval8, value8, Interval9, value9, " + "Interval10, value10) "
 				+ "VALUES (?, '2024', ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-		try (PreparedStatement stmtInsert = conn.prepareStatement(insertQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement stmtInsert = conn.prepareStatement(insertQuery)) {
 			stmtInsert.setString(1, quarter);
 			stmtInsert.setInt(2, restaurantNumber);
 			stmtInsert.setInt(3, maxOrders);
@@ -1531,18 +1737,19 @@ public class DbController {
 				+ "Week7, Week8, Week9, Week10, Week11, Week12 "
 				+ "FROM quarter_income_reports WHERE RestaurantNumber = ? AND Quarter = ? AND Year = '2024'";
 
-		try (PreparedStatement stmt = conn.prepareStatement(queryCheck)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement stmt = conn.prepareStatement(queryCheck)) {
 			stmt.setInt(1, restaurantNumber);
 			stmt.setString(2, quarter);
-			ResultSet rs = stmt.executeQuery();
-
-			if (rs.next()) {
-				int totalIncome = rs.getInt("TotalIncome");
-				int[] values = new int[12];
-				for (int i = 0; i < 12; i++) {
-					values[i] = rs.getInt("Week" + (i + 1));
+			try (ResultSet rs = stmt.executeQuery()) {
+				if (rs.next()) {
+					int totalIncome = rs.getInt("TotalIncome");
+					int[] values = new int[12];
+					for (int i = 0; i < 12; i++) {
+						values[i] = rs.getInt("Week" + (i + 1));
+					}
+					return new Object[] { totalIncome, values };
 				}
-				return new Object[] { totalIncome, values };
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
@@ -1566,37 +1773,44 @@ public class DbController {
 		String queryCalculate = "SELECT OrderDateTime, TotalPrice " + "FROM orders "
 				+ "WHERE RestaurantNumber = ? AND DATE_FORMAT(OrderDateTime, '%c') IN (?, ?, ?)";
 
-		try (PreparedStatement stmtCalc = conn.prepareStatement(queryCalculate)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement stmtCalc = conn.prepareStatement(queryCalculate)) {
 			stmtCalc.setInt(1, restaurantNumber);
 			stmtCalc.setString(2, months[0]);
 			stmtCalc.setString(3, months[1]);
 			stmtCalc.setString(4, months[2]);
 
-			ResultSet rsCalc = stmtCalc.executeQuery();
-			while (rsCalc.next()) {
-				LocalDate orderDate = rsCalc.getDate("OrderDateTime").toLocalDate();
-				int income = rsCalc.getInt("TotalPrice");
+			try (ResultSet rsCalc = stmtCalc.executeQuery()) {
+				while (rsCalc.next()) {
+					LocalDate orderDate = rsCalc.getDate("OrderDateTime").toLocalDate();
+					int income = rsCalc.getInt("TotalPrice");
 
-				for (int i = 0; i < 12; i++) {
-					if (!orderDate.isBefore(weekStartDates[i]) && !orderDate.isAfter(weekEndDates[i])) {
-						values[i] += income;
-						break;
+					for (int i = 0; i < 12; i++) {
+						if (!orderDate.isBefore(weekStartDates[i]) && !orderDate.isAfter(weekEndDates[i])) {
+							values[i] += income;
+							break;
+						}
 					}
-				}
 
-				totalIncome += income;
+					totalIncome += income;
+				}
 			}
 		} catch (SQLException e) {
 			e.printStackTrace();
 			return null;
 		}
 
-		// Step 3: Save the data to the quarter_income_reports table
+		// Step 3: Save the data to the quarter_income_reports table, unless the
+		// report was given up meanwhile
+		if (abandoned()) {
+			return null;
+		}
 		String insertQuery = "INSERT INTO quarter_income_reports (Quarter, Year, RestaurantNumber, TotalIncome, "
 				+ "Week1, Week2, Week3, Week4, Week5, Week6, Week7, Week8, Week9, Week10, Week11, Week12) "
 				+ "VALUES (?, '2024', ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-		try (PreparedStatement stmtInsert = conn.prepareStatement(insertQuery)) {
+		try (Connection conn = analytical.getConnection();
+				PreparedStatement stmtInsert = conn.prepareStatement(insertQuery)) {
 			stmtInsert.setString(1, quarter);
 			stmtInsert.setInt(2, restaurantNumber);
 			stmtInsert.setInt(3, totalIncome);
@@ -1632,6 +1846,14 @@ public class DbController {
 		String insertOrderItemQuery = "INSERT INTO restaurants_orders (OrderID, DishID, Size, Specification, Quantity) VALUES (?, ?, ?, ?, ?)";
 		String insertCustomerOrderQuery = "INSERT INTO customer_orders (OrderID) VALUES (?)";
 
+		Connection conn;
+		try {
+			conn = transactional.getConnection();
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return;
+		}
+
 		try {
 			conn.setAutoCommit(false);
 			System.out.println("Auto-commit set to false");
@@ -1718,6 +1940,7 @@ public class DbController {
 			} catch (SQLException e) {
 				System.err.println("Error resetting auto-commit: " + e.getMessage());
 			}
+			release(conn);
 		}
 	}
 
@@ -1741,7 +1964,8 @@ public class DbController {
 
 		String updateQuery = "UPDATE customers SET Credit = ? WHERE CustomerNumber = ?";
 
-		try (PreparedStatement pstmt = conn.prepareStatement(updateQuery)) {
+		try (Connection conn = transactional.getConnection();
+				PreparedStatement pstmt = conn.prepareStatement(updateQuery)) {
 			pstmt.setInt(1, newCreditBalance);
 			pstmt.setInt(2, customerNumber);
 
@@ -1759,13 +1983,14 @@ public class DbController {
 	 * ,employee, orders tables in bite_me DB
 	 */
 	public void importExternalData() {
-		try {
+		try (Connection conn = analytical.getConnection()) {
 
 			// Import data from user_management.users to bite_me.users
 			String importUsersQuery = "INSERT INTO users (ID, UserName, Password, FirstName, LastName, Email, Phone, Type, IsLoggedIn, District) "
 					+ "SELECT ID, UserName, Password, FirstName, LastName, Email, Phone, Type, IsLoggedIn, District FROM user_management.users";
-			PreparedStatement importStmt = conn.prepareStatement(importUsersQuery);
-			importStmt.executeUpdate();
+			try (PreparedStatement importStmt = conn.prepareStatement(importUsersQuery)) {
+				importStmt.executeUpdate();
+			}
 
 			// Insert into customers table
 			String insertCustomersQuery = "INSERT INTO customers (ID, IsBusiness, PaymentCardNumber, PaymentCardDate) VALUES "
@@ -1773,164 +1998,222 @@ public class DbController {
 					+ "(33, 0, 654123841, '01/2026'), " + "(44, 1, 961782346, '06/2028'), "
 					+ "(55, 0, 627183285, '04/2024'), " + "(66, 1, 627175285, '04/2029')";
 
-			PreparedStatement insertCustomersStmt = conn.prepareStatement(insertCustomersQuery);
-			insertCustomersStmt.executeUpdate();
+			try (PreparedStatement insertCustomersStmt = conn.prepareStatement(insertCustomersQuery)) {
+				insertCustomersStmt.executeUpdate();
+			}
 
 			// Update customers table
 			String updateCustomersQuery1 = "UPDATE customers SET Credit = 20, Status = 'active' WHERE ID = 11";
-			PreparedStatement updateCustomersStmt1 = conn.prepareStatement(updateCustomersQuery1);
-			updateCustomersStmt1.executeUpdate();
+			try (PreparedStatement updateCustomersStmt1 = conn.prepareStatement(updateCustomersQuery1)) {
+				updateCustomersStmt1.executeUpdate();
+			}
 
 			String updateCustomersQuery2 = "UPDATE customers SET Credit = 15, Status = 'active' WHERE ID = 55";
-			PreparedStatement updateCustomersStmt2 = conn.prepareStatement(updateCustomersQuery2);
-			updateCustomersStmt2.executeUpdate();
+			try (PreparedStatement updateCustomersStmt2 = conn.prepareStatement(updateCustomersQuery2)) {
+				updateCustomersStmt2.executeUpdate();
+			}
 
 			String updateCustomersQuery3 = "UPDATE customers SET Status = 'active' WHERE ID = 33";
-			PreparedStatement updateCustomersStmt3 = conn.prepareStatement(updateCustomersQuery3);
-			updateCustomersStmt3.executeUpdate();
+			try (PreparedStatement updateCustomersStmt3 = conn.prepareStatement(updateCustomersQuery3)) {
+				updateCustomersStmt3.executeUpdate();
+			}
 
 			// Insert into employee table
 			String insertEmployeeQuery = "INSERT INTO employee (ID, RestaurantNumber) VALUES " + "(10, 1), "
 					+ "(20, 2), " + "(30, 3), " + "(40, 4), " + "(50, 5), " + "(100, 1), " + "(200, 2), " + "(300, 3), "
 					+ "(400, 4), " + "(500, 5)";
 
-			PreparedStatement insertEmployeeStmt = conn.prepareStatement(insertEmployeeQuery);
-			insertEmployeeStmt.executeUpdate();
+			try (PreparedStatement insertEmployeeStmt = conn.prepareStatement(insertEmployeeQuery)) {
+				insertEmployeeStmt.executeUpdate();
+			}
 
 			// Insert into orders table - order 1
 			String insertOrderQuery = "INSERT INTO orders (CustomerNumber, RestaurantNumber, TotalPrice, Salad, MainCourse, Dessert, Drink, IsDelivery, IsEarlyOrder, RequestedDateTime, OrderDateTime, StatusRestaurant) "
 					+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-			// Use PreparedStatement.RETURN_GENERATED_KEYS to get the generated OrderID
-			PreparedStatement insertOrderStmt = conn.prepareStatement(insertOrderQuery,
-					PreparedStatement.RETURN_GENERATED_KEYS);
-			insertOrderStmt.setInt(1, 1); // CustomerNumber
-			insertOrderStmt.setInt(2, 1); // RestaurantNumber
-			insertOrderStmt.setInt(3, 191); // TotalPrice
-			insertOrderStmt.setInt(4, 1); // Salad
-			insertOrderStmt.setInt(5, 2); // MainCourse
-			insertOrderStmt.setInt(6, 0); // Dessert
-			insertOrderStmt.setInt(7, 2); // Drink
-			insertOrderStmt.setInt(8, 1); // IsDelivery
-			insertOrderStmt.setInt(9, 0); // IsEarlyOrder
-			insertOrderStmt.setString(10, "2024-08-14 13:00:00"); // RequestedDateTime
-			insertOrderStmt.setString(11, "2024-08-14 09:00:00"); // OrderDateTime
-			insertOrderStmt.setString(12, "completed"); // StatusRestaurant
-
-			insertOrderStmt.executeUpdate();
-
-			// Retrieve the generated OrderID
-			ResultSet generatedKeys = insertOrderStmt.getGeneratedKeys();
 			int orderId = 0;
-			if (generatedKeys.next()) {
-				orderId = generatedKeys.getInt(1);
+			// Use PreparedStatement.RETURN_GENERATED_KEYS to get the generated OrderID
+			try (PreparedStatement insertOrderStmt = conn.prepareStatement(insertOrderQuery,
+					PreparedStatement.RETURN_GENERATED_KEYS)) {
+				insertOrderStmt.setInt(1, 1); // CustomerNumber
+				insertOrderStmt.setInt(2, 1); // RestaurantNumber
+				insertOrderStmt.setInt(3, 191); // TotalPrice
+				insertOrderStmt.setInt(4, 1); // Salad
+				insertOrderStmt.setInt(5, 2); // MainCourse
+				insertOrderStmt.setInt(6, 0); // Dessert
+				insertOrderStmt.setInt(7, 2); // Drink
+				insertOrderStmt.setInt(8, 1); // IsDelivery
+				insertOrderStmt.setInt(9, 0); // IsEarlyOrder
+				insertOrderStmt.setString(10, "2024-08-14 13:00:00"); // RequestedDateTime
+				insertOrderStmt.setString(11, "2024-08-14 09:00:00"); // OrderDateTime
+				insertOrderStmt.setString(12, "completed"); // StatusRestaurant
+
+				insertOrderStmt.executeUpdate();
+
+				// Retrieve the generated OrderID
+				try (ResultSet generatedKeys = insertOrderStmt.getGeneratedKeys()) {
+					if (generatedKeys.next()) {
+						orderId = generatedKeys.getInt(1);
+					}
+				}
 			}
 
 			// Insert into restaurant_orders table
 			String insertRestaurantOrdersQuery = "INSERT INTO restaurants_orders (OrderID, DishID, Size, Quantity) VALUES (?, ?, ?, ?)";
-			PreparedStatement insertRestaurantOrdersStmt = conn.prepareStatement(insertRestaurantOrdersQuery);
-
-			insertRestaurantOrdersStmt.setInt(1, orderId);
-			insertRestaurantOrdersStmt.setInt(2, 1); // DishID
-			insertRestaurantOrdersStmt.setString(3, "regular"); // Size
-			insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt.addBatch();
-
-			insertRestaurantOrdersStmt.setInt(1, orderId);
-			insertRestaurantOrdersStmt.setInt(2, 7); // DishID
-			insertRestaurantOrdersStmt.setString(3, "regular"); // Size
-			insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt.addBatch();
-
-			insertRestaurantOrdersStmt.setInt(1, orderId);
-			insertRestaurantOrdersStmt.setInt(2, 8); // DishID
-			insertRestaurantOrdersStmt.setString(3, "regular"); // Size
-			insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt.addBatch();
-
-			insertRestaurantOrdersStmt.setInt(1, orderId);
-			insertRestaurantOrdersStmt.setInt(2, 16); // DishID
-			insertRestaurantOrdersStmt.setString(3, "small"); // Size
-			insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt.addBatch();
-
-			insertRestaurantOrdersStmt.setInt(1, orderId);
-			insertRestaurantOrdersStmt.setInt(2, 13); // DishID
-			insertRestaurantOrdersStmt.setString(3, "regular"); // Size
-			insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt.addBatch();
-
-			insertRestaurantOrdersStmt.executeBatch();
+			try (PreparedStatement insertRestaurantOrdersStmt = conn.prepareStatement(insertRestaurantOrdersQuery)) {
+				insertRestaurantOrdersStmt.setInt(1, orderId);
+				insertRestaurantOrdersStmt.setInt(2, 1); // DishID
+				insertRestaurantOrdersStmt.setString(3, "regular"); // Size
+				insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt.addBatch();
+
+				insertRestaurantOrdersStmt.setInt(1, orderId);
+				insertRestaurantOrdersStmt.setInt(2, 7); // DishID
+				insertRestaurantOrdersStmt.setString(3, "regular"); // Size
+				insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt.addBatch();
+
+				insertRestaurantOrdersStmt.setInt(1, orderId);
+				insertRestaurantOrdersStmt.setInt(2, 8); // DishID
+				insertRestaurantOrdersStmt.setString(3, "regular"); // Size
+				insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt.addBatch();
+
+				insertRestaurantOrdersStmt.setInt(1, orderId);
+				insertRestaurantOrdersStmt.setInt(2, 16); // DishID
+				insertRestaurantOrdersStmt.setString(3, "small"); // Size
+				insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt.addBatch();
+
+				insertRestaurantOrdersStmt.setInt(1, orderId);
+				insertRestaurantOrdersStmt.setInt(2, 13); // DishID
+				insertRestaurantOrdersStmt.setString(3, "regular"); // Size
+				insertRestaurantOrdersStmt.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt.addBatch();
+
+				insertRestaurantOrdersStmt.executeBatch();
+			}
 
 			// Insert into customer_orders table
 			String insertCustomerOrdersQuery = "INSERT INTO customer_orders (OrderID) VALUES (?)";
-			PreparedStatement insertCustomerOrdersStmt = conn.prepareStatement(insertCustomerOrdersQuery);
-			insertCustomerOrdersStmt.setInt(1, orderId);
-			insertCustomerOrdersStmt.executeUpdate();
+			try (PreparedStatement insertCustomerOrdersStmt = conn.prepareStatement(insertCustomerOrdersQuery)) {
+				insertCustomerOrdersStmt.setInt(1, orderId);
+				insertCustomerOrdersStmt.executeUpdate();
+			}
 
 			// Insert into orders table - order 2
 			String insertOrderQuery1 = "INSERT INTO orders (CustomerNumber, RestaurantNumber, TotalPrice, Salad, MainCourse, Dessert, Drink, IsDelivery, IsEarlyOrder, RequestedDateTime, OrderDateTime) "
 					+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-			// Use PreparedStatement.RETURN_GENERATED_KEYS to get the generated OrderID
-			PreparedStatement insertOrderStmt1 = conn.prepareStatement(insertOrderQuery1,
-					PreparedStatement.RETURN_GENERATED_KEYS);
-			insertOrderStmt1.setInt(1, 1); // CustomerNumber
-			insertOrderStmt1.setInt(2, 1); // RestaurantNumber
-			insertOrderStmt1.setInt(3, 124); // TotalPrice
-			insertOrderStmt1.setInt(4, 1); // Salad
-			insertOrderStmt1.setInt(5, 1); // MainCourse
-			insertOrderStmt1.setInt(6, 1); // Dessert
-			insertOrderStmt1.setInt(7, 1); // Drink
-			insertOrderStmt1.setInt(8, 1); // IsDelivery
-			insertOrderStmt1.setInt(9, 1); // IsEarlyOrder
-			insertOrderStmt1.setString(10, "2024-08-15 11:00:00"); // RequestedDateTime
-			insertOrderStmt1.setString(11, "2024-08-15 09:00:00"); // OrderDateTime
-
-			insertOrderStmt1.executeUpdate();
-
-			// Retrieve the generated OrderID
-			ResultSet generatedKeys1 = insertOrderStmt1.getGeneratedKeys();
 			int orderId1 = 0;
-			if (generatedKeys1.next()) {
-				orderId1 = generatedKeys1.getInt(1);
+			// Use PreparedStatement.RETURN_GENERATED_KEYS to get the generated OrderID
+			try (PreparedStatement insertOrderStmt1 = conn.prepareStatement(insertOrderQuery1,
+					PreparedStatement.RETURN_GENERATED_KEYS)) {
+				insertOrderStmt1.setInt(1, 1); // CustomerNumber
+				insertOrderStmt1.setInt(2, 1); // RestaurantNumber
+				insertOrderStmt1.setInt(3, 124); // TotalPrice
+				insertOrderStmt1.setInt(4, 1); // Salad
+				insertOrderStmt1.setInt(5, 1); // MainCourse
+				insertOrderStmt1.setInt(6, 1); // Dessert
+				insertOrderStmt1.setInt(7, 1); // Drink
+				insertOrderStmt1.setInt(8, 1); // IsDelivery
+				insertOrderStmt1.setInt(9, 1); // IsEarlyOrder
+				insertOrderStmt1.setString(10, "2024-08-15 11:00:00"); // RequestedDateTime
+				insertOrderStmt1.setString(11, "2024-08-15 09:00:00"); // OrderDateTime
+
+				insertOrderStmt1.executeUpdate();
+
+				// Retrieve the generated OrderID
+				try (ResultSet generatedKeys1 = insertOrderStmt1.getGeneratedKeys()) {
+					if (generatedKeys1.next()) {
+						orderId1 = generatedKeys1.getInt(1);
+					}
+				}
 			}
 
 			// Insert into restaurant_orders table
 			String insertRestaurantOrdersQuery1 = "INSERT INTO restaurants_orders (OrderID, DishID, Size, Quantity) VALUES (?, ?, ?, ?)";
-			PreparedStatement insertRestaurantOrdersStmt1 = conn.prepareStatement(insertRestaurantOrdersQuery1);
-
-			insertRestaurantOrdersStmt1.setInt(1, orderId1);
-			insertRestaurantOrdersStmt1.setInt(2, 2); // DishID
-			insertRestaurantOrdersStmt1.setString(3, "large"); // Size
-			insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt1.addBatch();
-
-			insertRestaurantOrdersStmt1.setInt(1, orderId1);
-			insertRestaurantOrdersStmt1.setInt(2, 5); // DishID
-			insertRestaurantOrdersStmt1.setString(3, "regular"); // Size
-			insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt1.addBatch();
-
-			insertRestaurantOrdersStmt1.setInt(1, orderId1);
-			insertRestaurantOrdersStmt1.setInt(2, 11); // DishID
-			insertRestaurantOrdersStmt1.setString(3, "regular"); // Size
-			insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt1.addBatch();
-
-			insertRestaurantOrdersStmt1.setInt(1, orderId1);
-			insertRestaurantOrdersStmt1.setInt(2, 15); // DishID
-			insertRestaurantOrdersStmt1.setString(3, "small"); // Size
-			insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
-			insertRestaurantOrdersStmt1.addBatch();
-
-			insertRestaurantOrdersStmt1.executeBatch();
+			try (PreparedStatement insertRestaurantOrdersStmt1 = conn.prepareStatement(insertRestaurantOrdersQuery1)) {
+				insertRestaurantOrdersStmt1.setInt(1, orderId1);
+				insertRestaurantOrdersStmt1.setInt(2, 2); // DishID
+				insertRestaurantOrdersStmt1.setString(3, "large"); // Size
+				insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt1.addBatch();
+
+				insertRestaurantOrdersStmt1.setInt(1, orderId1);
+				insertRestaurantOrdersStmt1.setInt(2, 5); // DishID
+				insertRestaurantOrdersStmt1.setString(3, "regular"); // Size
+				insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt1.addBatch();
+
+				insertRestaurantOrdersStmt1.setInt(1, orderId1);
+				insertRestaurantOrdersStmt1.setInt(2, 11); // DishID
+				insertRestaurantOrdersStmt1.setString(3, "regular"); // Size
+				insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt1.addBatch();
+
+				insertRestaurantOrdersStmt1.setInt(1, orderId1);
+				insertRestaurantOrdersStmt1.setInt(2, 15); // DishID
+				insertRestaurantOrdersStmt1.setString(3, "small"); // Size
+				insertRestaurantOrdersStmt1.setInt(4, 1); // Quantity
+				insertRestaurantOrdersStmt1.addBatch();
+
+				insertRestaurantOrdersStmt1.executeBatch();
+			}
 
 			// Insert into customer_orders table
 			String insertCustomerOrdersQuery1 = "INSERT INTO customer_orders (OrderID) VALUES (?)";
-			PreparedStatement insertCustomerOrdersStmt1 = conn.prepareStatement(insertCustomerOrdersQuery1);
-			insertCustomerOrdersStmt1.setInt(1, orderId1);
-			insertCustomerOrdersStmt1.executeUpdate();
+			try (PreparedStatement insertCustomerOrdersStmt1 = conn.prepareStatement(insertCustomerOrdersQuery1)) {
+				insertCustomerOrdersStmt1.setInt(1, orderId1);
+				insertCustomerOrdersStmt1.executeUpdate();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Borrows a connection for a query that only reads, from a read replica that
+	 * is caught up if there is one.
+	 * 
+	 * @param primary   the pool of the primary, for when no replica is caught up
+	 * @param writtenAt the time in milliseconds of the last write the query must
+	 *                  see, 0 if none
+	 * @return the connection
+	 * @throws SQLException if no connection could be had
+	 */
+	private Connection read(ConnectionPool primary, long writtenAt) throws SQLException {
+		return replicas == null ? primary.getConnection() : replicas.getConnection(primary, writtenAt);
+	}
+
+	/**
+	 * Tells whether the operation running on the current thread was given up,
+	 * which the asynchronous controller signals by interrupting the thread. A
+	 * report given up is not saved, as the cancellation of its statements may
+	 * have come between two of its queries.
+	 * 
+	 * @return true if the operation was given up
+	 */
+	private static boolean abandoned() {
+		return Thread.currentThread().isInterrupted();
+	}
+
+	/**
+	 * Records that a menu changed, so that the menus are read from the replicas
+	 * only once they hold the change.
+	 */
+	private void menuChanged() {
+		menuWrittenAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns a connection borrowed for a transaction to the pool.
+	 * 
+	 * @param conn the connection
+	 */
+	private static void release(Connection conn) {
+		try {
+			conn.close();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
@@ -0,0 +1,266 @@
+package JDBC;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * The ReplicaSet class lends connections to the read replicas of the database,
+ * for the queries that only read and may see data a little behind the primary.
+ * <p>
+ * The replication lag of each replica is measured every second with the lag
+ * query, which returns the number of seconds the replica is behind: by default
+ * {@code SHOW REPLICA STATUS}, whose Seconds_Behind_Source (or
+ * Seconds_Behind_Master) column is read. A replica that does not answer, or
+ * does not replicate, is not used until it does again.
+ * <p>
+ * A read goes to a replica only if the data it serves is no older than the
+ * maximum lag, and includes the last write the read depends on, so that a user
+ * reading what they just changed sees the change. Otherwise, and whenever the
+ * thread already holds a connection to the primary, the read goes to the
+ * primary.
+ */
+public class ReplicaSet {
+
+	/**
+	 * The time in milliseconds between two measures of the lag.
+	 */
+	private static final long LAG_CHECK_INTERVAL = 1000;
+
+	/**
+	 * The precision in milliseconds of the lag reported by the database, which
+	 * counts whole seconds.
+	 */
+	private static final long LAG_RESOLUTION = 1000;
+
+	/**
+	 * The time in seconds the lag query may take.
+	 */
+	private static final int LAG_QUERY_TIMEOUT = 2;
+
+	/**
+	 * The replicas.
+	 */
+	private final List<Replica> replicas = new ArrayList<>();
+
+	/**
+	 * Measures the lag of a replica in seconds, -1 if it is not known.
+	 */
+	private final ToLongFunction<ConnectionPool> lagProbe;
+
+	/**
+	 * The time in milliseconds the data read from a replica may be behind.
+	 */
+	private final long maxLag;
+
+	/**
+	 * The replica the next read starts looking from.
+	 */
+	private final AtomicInteger next = new AtomicInteger();
+
+	/**
+	 * The number of reads sent to a replica.
+	 */
+	private final AtomicLong replicaReads = new AtomicLong();
+
+	/**
+	 * The number of reads sent to the primary because no replica was caught up.
+	 */
+	private final AtomicLong primaryReads = new AtomicLong();
+
+	/**
+	 * Measures the lag of the replicas.
+	 */
+	private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(task -> {
+		Thread thread = new Thread(task, "BiteMe replica monitor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Constructs a replica set and starts measuring the lag of the replicas.
+	 *
+	 * @param pools    the connection pools of the replicas
+	 * @param lagQuery the query returning the lag of a replica in seconds
+	 * @param maxLag   the time in milliseconds the data read from a replica may be
+	 *                 behind, at least a second
+	 * @throws IllegalArgumentException if the maximum lag is shorter than a second
+	 */
+	public ReplicaSet(List<ConnectionPool> pools, String lagQuery, long maxLag) {
+		this(pools, pool -> measureLag(pool, lagQuery), maxLag);
+	}
+
+	/**
+	 * Constructs a replica set measuring the lag of the replicas with the given
+	 * probe.
+	 *
+	 * @param pools    the connection pools of the replicas
+	 * @param lagProbe measures the lag of a replica in seconds, -1 if it is not
+	 *                 known
+	 * @param maxLag   the time in milliseconds the data read from a replica may be
+	 *                 behind, at least a second
+	 * @throws IllegalArgumentException if the maximum lag is shorter than a second
+	 */
+	ReplicaSet(List<ConnectionPool> pools, ToLongFunction<ConnectionPool> lagProbe, long maxLag) {
+		// The data of a replica reporting no lag may still be a second old
+		if (maxLag < LAG_RESOLUTION) {
+			throw new IllegalArgumentException(
+					"Maximum lag must be at least " + LAG_RESOLUTION + " ms, the precision of the lag: " + maxLag);
+		}
+		for (ConnectionPool pool : pools) {
+			replicas.add(new Replica(pool));
+		}
+		this.lagProbe = lagProbe;
+		this.maxLag = maxLag;
+		monitor.scheduleWithFixedDelay(this::checkLag, 0, LAG_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a connection for a read, from a replica that is caught up or else
+	 * from the primary.
+	 *
+	 * @param primary   the pool of the primary
+	 * @param writtenAt the time in milliseconds of the last write the read must
+	 *                  see, 0 if none
+	 * @return the connection, to be returned by closing it
+	 * @throws SQLException if no connection to the primary could be had either
+	 */
+	public Connection getConnection(ConnectionPool primary, long writtenAt) throws SQLException {
+		if (!primary.isHeldByCurrentThread()) {
+			long now = System.currentTimeMillis();
+			int start = Math.floorMod(next.getAndIncrement(), Math.max(1, replicas.size()));
+			for (int i = 0; i < replicas.size(); i++) {
+				Replica replica = replicas.get((start + i) % replicas.size());
+				long position = replica.position;
+				if (position < writtenAt || now - position > maxLag) {
+					continue;
+				}
+				try {
+					Connection conn = replica.pool.getConnection();
+					replicaReads.incrementAndGet();
+					return conn;
+				} catch (SQLException e) {
+					// Full or down, try the next one
+					System.out.println("Replica " + replica.pool.getName() + " unavailable: " + e.getMessage());
+				}
+			}
+		}
+		primaryReads.incrementAndGet();
+		return primary.getConnection();
+	}
+
+	/**
+	 * Stops measuring the lag and closes the pools of the replicas.
+	 */
+	public void close() {
+		monitor.shutdownNow();
+		for (Replica replica : replicas) {
+			replica.pool.close();
+		}
+	}
+
+	/**
+	 * @return the number of reads sent to a replica
+	 */
+	public long getReplicaReads() {
+		return replicaReads.get();
+	}
+
+	/**
+	 * @return the number of reads sent to the primary
+	 */
+	public long getPrimaryReads() {
+		return primaryReads.get();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("replicas: " + getReplicaReads() + " reads, " + getPrimaryReads()
+				+ " sent to the primary");
+		for (Replica replica : replicas) {
+			text.append("\n").append(replica.pool);
+			text.append(replica.lag < 0 ? "; not replicating" : "; " + replica.lag + " s behind");
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Measures the lag of each replica.
+	 */
+	synchronized void checkLag() {
+		for (Replica replica : replicas) {
+			long checkedAt = System.currentTimeMillis();
+			long lag = lagProbe.applyAsLong(replica.pool);
+			replica.lag = lag;
+			replica.position = lag < 0 ? Long.MIN_VALUE / 2 : checkedAt - lag * 1000 - LAG_RESOLUTION;
+		}
+	}
+
+	/**
+	 * Runs the lag query on a replica.
+	 *
+	 * @param pool     the pool of the replica
+	 * @param lagQuery the query returning the lag in seconds
+	 * @return the lag in seconds, or -1 if it is not known
+	 */
+	private static long measureLag(ConnectionPool pool, String lagQuery) {
+		try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+			stmt.setQueryTimeout(LAG_QUERY_TIMEOUT);
+			try (ResultSet rs = stmt.executeQuery(lagQuery)) {
+				if (!rs.next()) {
+					return -1;
+				}
+				long lag = rs.getLong(lagColumn(rs.getMetaData()));
+				return rs.wasNull() ? -1 : lag;
+			}
+		} catch (SQLException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Finds the column holding the lag: the one MySQL names in its replica status,
+	 * or else the first one.
+	 *
+	 * @param metaData the columns of the result of the lag query
+	 * @return the index of the column
+	 * @throws SQLException if the columns cannot be read
+	 */
+	private static int lagColumn(ResultSetMetaData metaData) throws SQLException {
+		for (int i = 1; i <= metaData.getColumnCount(); i++) {
+			String name = metaData.getColumnLabel(i);
+			if (name.equalsIgnoreCase("Seconds_Behind_Source") || name.equalsIgnoreCase("Seconds_Behind_Master")) {
+				return i;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * A replica and its last measured lag.
+	 */
+	private static final class Replica {
+		private final ConnectionPool pool;
+		/** The last measured lag in seconds, -1 if not known. */
+		private volatile long lag = -1;
+		/**
+		 * The time in milliseconds up to which the replica is known to hold every
+		 * write of the primary.
+		 */
+		private volatile long position = Long.MIN_VALUE / 2;
+
+		Replica(ConnectionPool pool) {
+			this.pool = pool;
+		}
+	}
+}
@@ -52,6 +52,35 @@ public class SqlConnection {
 	 	}
         return null; 
     }
+
+    /**
+     * Opens a new connection to the database, for the connection pool.
+     *
+     * @return Database connection
+     * @throws SQLException if the driver is missing or the connection fails
+     */
+    public Connection openConnection() throws SQLException {
+        // Other drivers, such as H2 for local testing, register themselves
+        if (dbUrl.startsWith("jdbc:mysql:")) {
+            try {
+                Class.forName("com.mysql.cj.jdbc.Driver");
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("JDBC driver not found", e);
+            }
+        }
+        return DriverManager.getConnection(dbUrl, dbName, dbPassword);
+    }
+
+    /**
+     * Returns the connection settings of another database with the same user,
+     * such as a read replica.
+     *
+     * @param dbUrl the JDBC URL of the other database
+     * @return the connection settings
+     */
+    public SqlConnection withUrl(String dbUrl) {
+        return new SqlConnection(dbUrl, dbName, dbPassword);
+    }
     
 }
 
@@ -0,0 +1,403 @@
+package JDBC;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The StatementCache class keeps the prepared statements of a pooled connection
+ * open between the operations borrowing the connection, so that a query run
+ * again is not parsed again. Statements are cached by SQL text, the least
+ * recently used one being closed when the cache is full.
+ * <p>
+ * The statements handed out are proxies: closing one puts the statement back in
+ * the cache, its parameters cleared and its result sets closed. A statement
+ * still open when its connection is returned to the pool is closed then, along
+ * with its result sets. The operations close their statements and result sets
+ * themselves, so this is only a safety net against leaking cursors, counted as
+ * reclaimed statements. Statements other than the plain prepared statements are
+ * not cached but are cleaned up the same way.
+ * <p>
+ * A cache is used by one lease of its connection at a time, except for
+ * {@link #cancel()} which another thread may call. The thread of an operation
+ * given up is interrupted as well, and its statements fail instead of running.
+ */
+final class StatementCache {
+
+	/**
+	 * The connection preparing the statements.
+	 */
+	private final Connection connection;
+
+	/**
+	 * The largest number of statements cached, 0 to cache none.
+	 */
+	private final int capacity;
+
+	/**
+	 * The counters shared by the caches of a pool.
+	 */
+	private final Counters counters;
+
+	/**
+	 * The cached statements by SQL text, the least recently used first.
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * The statements handed out and not closed yet.
+	 */
+	private final List<Handle> open = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Constructs the statement cache of a connection.
+	 *
+	 * @param connection the connection
+	 * @param capacity   the largest number of statements cached, 0 to cache none
+	 * @param counters   the counters shared by the caches of the pool
+	 */
+	StatementCache(Connection connection, int capacity, Counters counters) {
+		this.connection = connection;
+		this.capacity = capacity;
+		this.counters = counters;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= StatementCache.this.capacity) {
+					return false;
+				}
+				evict(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Creates a statement for the holder of a lease, taking a prepared statement
+	 * from the cache if possible.
+	 *
+	 * @param owner  the connection proxy of the lease
+	 * @param method the method of the connection creating the statement
+	 * @param args   the arguments of the method
+	 * @return the proxy of the statement
+	 * @throws Throwable what the connection throws
+	 */
+	Statement create(Connection owner, Method method, Object[] args) throws Throwable {
+		String key = keyOf(method, args);
+		Entry entry = key == null || capacity == 0 ? null : entries.get(key);
+		if (entry != null && !entry.inUse) {
+			counters.hits.incrementAndGet();
+		} else {
+			if (key != null && capacity > 0) {
+				counters.misses.incrementAndGet();
+			}
+			Statement statement = (Statement) invoke(connection, method, args);
+			if (key == null || capacity == 0 || entry != null) {
+				// Not cached, or the cached statement is in use by the same lease
+				return hand(owner, method.getReturnType(), statement, null);
+			}
+			entry = new Entry((PreparedStatement) statement);
+			entries.put(key, entry);
+		}
+		entry.inUse = true;
+		return hand(owner, method.getReturnType(), entry.statement, entry);
+	}
+
+	/**
+	 * Closes the statements still open at the end of a lease, with their result
+	 * sets.
+	 *
+	 * @return the number of statements that were still open
+	 */
+	int reclaim() {
+		int reclaimed = open.size();
+		for (Handle handle : new ArrayList<>(open)) {
+			handle.release();
+		}
+		counters.reclaimed.addAndGet(reclaimed);
+		return reclaimed;
+	}
+
+	/**
+	 * Cancels the statements handed out, from another thread than the one running
+	 * them. The statements running fail with an SQLException.
+	 *
+	 * @return the number of statements cancelled
+	 */
+	int cancel() {
+		int cancelled = 0;
+		for (Handle handle : open) {
+			try {
+				handle.statement.cancel();
+				cancelled++;
+			} catch (SQLException e) {
+				// Closed meanwhile
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Closes the cached statements, when the connection is closed.
+	 */
+	void close() {
+		for (Handle handle : new ArrayList<>(open)) {
+			handle.release();
+		}
+		for (Entry entry : entries.values()) {
+			closeQuietly(entry.statement);
+		}
+		entries.clear();
+	}
+
+	/**
+	 * Closes a statement leaving the cache, at once unless it is in use.
+	 *
+	 * @param entry the statement
+	 */
+	private void evict(Entry entry) {
+		counters.evictions.incrementAndGet();
+		entry.evicted = true;
+		if (!entry.inUse) {
+			closeQuietly(entry.statement);
+		}
+	}
+
+	/**
+	 * Hands out the proxy of a statement.
+	 *
+	 * @param owner     the connection proxy of the lease
+	 * @param type      the interface of the statement
+	 * @param statement the statement
+	 * @param entry     its cache entry, or null if it is not cached
+	 * @return the proxy
+	 */
+	private Statement hand(Connection owner, Class<?> type, Statement statement, Entry entry) {
+		Handle handle = new Handle(owner, statement, entry);
+		open.add(handle);
+		handle.proxy = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type },
+				handle);
+		return handle.proxy;
+	}
+
+	/**
+	 * Returns the cache key of a statement: the SQL text of a prepared statement,
+	 * with the kind of generated keys it returns if any.
+	 *
+	 * @param method the method of the connection creating the statement
+	 * @param args   the arguments of the method
+	 * @return the key, or null if the statement is not cached
+	 */
+	private static String keyOf(Method method, Object[] args) {
+		if (!method.getName().equals("prepareStatement")) {
+			return null;
+		}
+		Class<?>[] parameters = method.getParameterTypes();
+		if (parameters.length == 1) {
+			return (String) args[0];
+		}
+		if (parameters.length == 2 && parameters[1] == int.class) {
+			return args[1] + "|" + args[0];
+		}
+		return null;
+	}
+
+	/**
+	 * Calls a method, throwing what it throws.
+	 */
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void closeQuietly(AutoCloseable closeable) {
+		try {
+			closeable.close();
+		} catch (Exception e) {
+		}
+	}
+
+	/**
+	 * The counters of the statement caches of a pool.
+	 */
+	static final class Counters {
+		/** The statements taken from a cache. */
+		final AtomicLong hits = new AtomicLong();
+		/** The statements prepared because none was cached. */
+		final AtomicLong misses = new AtomicLong();
+		/** The statements closed to make room in a cache. */
+		final AtomicLong evictions = new AtomicLong();
+		/** The result sets open. */
+		final AtomicLong openCursors = new AtomicLong();
+		/** The statements closed when their connection was returned. */
+		final AtomicLong reclaimed = new AtomicLong();
+	}
+
+	/**
+	 * A cached statement.
+	 */
+	private static final class Entry {
+		private final PreparedStatement statement;
+		/** Indicates that the statement is handed out. */
+		private boolean inUse;
+		/** Indicates that the statement left the cache. */
+		private boolean evicted;
+
+		Entry(PreparedStatement statement) {
+			this.statement = statement;
+		}
+	}
+
+	/**
+	 * A statement handed out, until it is closed.
+	 */
+	private final class Handle implements InvocationHandler {
+		private final Connection owner;
+		private final Statement statement;
+		private final Entry entry;
+		private Statement proxy;
+		/** The result sets of the statement not closed yet. */
+		private final List<Cursor> cursors = new ArrayList<>();
+		/** Indicates that the statement was closed. */
+		private boolean closed;
+
+		Handle(Connection owner, Statement statement, Entry entry) {
+			this.owner = owner;
+			this.statement = statement;
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			switch (name) {
+			case "close":
+				release();
+				return null;
+			case "isClosed":
+				return closed;
+			case "getConnection":
+				return owner;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "cached " + statement;
+			default:
+				break;
+			}
+			if (closed) {
+				throw new SQLException("The statement is closed");
+			}
+			if (name.startsWith("execute")) {
+				if (Thread.currentThread().isInterrupted()) {
+					// Cancelling the statements came before this one ran
+					throw new SQLException("The operation running the statement was given up");
+				}
+				// Executing the statement again closes its result sets
+				closeCursors();
+			}
+			Object result = StatementCache.invoke(statement, method, args);
+			if (result instanceof ResultSet) {
+				Cursor cursor = new Cursor(this, (ResultSet) result);
+				cursors.add(cursor);
+				counters.openCursors.incrementAndGet();
+				return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+						cursor);
+			}
+			return result;
+		}
+
+		/**
+		 * Closes the statement for its holder: puts it back in the cache, or closes
+		 * it if it is not cached.
+		 */
+		void release() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			open.remove(this);
+			closeCursors();
+
+			if (entry == null || entry.evicted) {
+				closeQuietly(statement);
+				return;
+			}
+			try {
+				entry.statement.clearParameters();
+				statement.clearBatch();
+				entry.inUse = false;
+			} catch (SQLException e) {
+				// The statement cannot be reused
+				entries.values().remove(entry);
+				closeQuietly(statement);
+			}
+		}
+
+		private void closeCursors() {
+			for (Cursor cursor : new ArrayList<>(cursors)) {
+				cursor.close();
+			}
+		}
+	}
+
+	/**
+	 * A result set handed out, until it is closed.
+	 */
+	private final class Cursor implements InvocationHandler {
+		private final Handle handle;
+		private final ResultSet resultSet;
+		private boolean closed;
+
+		Cursor(Handle handle, ResultSet resultSet) {
+			this.handle = handle;
+			this.resultSet = resultSet;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				close();
+				return null;
+			case "getStatement":
+				return handle.proxy;
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return StatementCache.invoke(resultSet, method, args);
+			}
+		}
+
+		void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			handle.cursors.remove(this);
+			counters.openCursors.decrementAndGet();
+			closeQuietly(resultSet);
+		}
+	}
+}
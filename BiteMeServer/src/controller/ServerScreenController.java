@@ -3,6 +3,7 @@ package controller;
 import JDBC.DbController;
 import JDBC.SqlConnection;
 
+import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -102,24 +103,26 @@ public class ServerScreenController {
 	}
 
 	/**
-     * Loads client details into the TableView.
+     * Loads client details into the TableView. May be called from any thread, the
+     * table is changed on the JavaFX application thread.
      * 
      * @param clientDetail the ClientDetails object containing client information
      */
 	public void loadTable(ClientDetails clientDetail) {// Client : {String IP, String Host, String Status}
 
-		tableView.getItems().add(clientDetail);
+		Platform.runLater(() -> tableView.getItems().add(clientDetail));
 
 	}
 
 	/**
-     * Updates the TableView by removing the specified client details.
+     * Updates the TableView by removing the specified client details. May be
+     * called from any thread, including the server thread closing idle clients.
      * 
      * @param clientDetail the ClientDetails object to be removed
      */
 	public void updateTable(ClientDetails clientDetail) {
 
-		boolean returnVal = tableView.getItems().remove(clientDetail);
+		Platform.runLater(() -> tableView.getItems().remove(clientDetail));
 
 	}
 
@@ -154,8 +157,13 @@ public class ServerScreenController {
 			// The server is not running, so start it
 			if (ServerUI.runServer(this.getPort())) {
 				SqlConnection sqlconn = new SqlConnection(getDbName(), getDbUsername(), getDbPassword());
-				DbController dbconn = new DbController(sqlconn.connectToDB());
+				// Each database operation borrows a connection of its own, reports from a
+				// pool of their own so that they never delay the orders, and menus and
+				// reports are read from the replicas if there are any
+				DbController dbconn = new DbController(ServerUI.createTransactionalPool(sqlconn),
+						ServerUI.createAnalyticalPool(sqlconn), ServerUI.createReplicaSet(sqlconn));
 				ServerUI.sv.setDbController(dbconn);
+				ServerUI.sv.setAsyncDbController(ServerUI.createAsyncDbController(dbconn));
 				ServerUI.sv.setServerScreenController(this);
 				disableDataInput(true);
 				startServer.setDisable(true);
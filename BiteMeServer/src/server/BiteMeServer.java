@@ -12,6 +12,9 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+
+import JDBC.AsyncDbController;
 import JDBC.DbController;
 import enums.Commands;
 import ocsf.server.*;
@@ -27,9 +30,28 @@ import entites.*;
 public class BiteMeServer extends AbstractServer {
 	
 	/**
-     * A static list of client connections currently connected to the server.
+     * The clients currently connected to the server, with the user logged in on
+     * each of them.
      */
-	static public ArrayList<ConnectionToClient> ClientList;
+	private final ClientRegistry clients = new ClientRegistry();
+
+	/**
+	 * The time in milliseconds after which a client refused because the server
+	 * is full is told to try again.
+	 */
+	private int busyRetryAfter = 5000;
+
+	/**
+	 * The key under which the user logged in on a connection is saved with
+	 * setInfo, so that the login survives a reconnection of the client.
+	 */
+	private static final String USER_INFO = "user";
+
+	/**
+	 * The key under which the restaurant of the employee logged in on a
+	 * connection is saved with setInfo.
+	 */
+	private static final String RESTAURANT_INFO = "restaurant";
 
 	 /**
      * Constructs a new BiteMeServer instance with the specified port.
@@ -39,7 +61,6 @@ public class BiteMeServer extends AbstractServer {
 	public BiteMeServer(int port) {
 		super(port);
 		System.out.println(port);
-		ClientList = new ArrayList<ConnectionToClient>();
 
 		// SalertThread = new NotifyThread(); no idea if it's supposed to be here
 
@@ -71,6 +92,31 @@ public class BiteMeServer extends AbstractServer {
 		this.dbController = dbController;
 	}
 
+	/**
+	 * The database controller running the reports away from the dispatch workers.
+	 */
+	private AsyncDbController asyncDbController;
+
+	/**
+	 * Sets the database controller running the reports away from the dispatch
+	 * workers.
+	 *
+	 * @param asyncDbController The asynchronous database controller to set.
+	 */
+	public void setAsyncDbController(AsyncDbController asyncDbController) {
+		this.asyncDbController = asyncDbController;
+	}
+
+	/**
+	 * Gets the database controller running the reports away from the dispatch
+	 * workers.
+	 *
+	 * @return The asynchronous database controller.
+	 */
+	public AsyncDbController getAsyncDbController() {
+		return asyncDbController;
+	}
+
 
 	// TODO :Create Switch case for msgs from user (SHOW,UPDATE,ect...)
 
@@ -89,17 +135,11 @@ public class BiteMeServer extends AbstractServer {
 		switch (m.getCmd()) {
 
 		case ClientConnect:
-			ClientDetails newClient = new ClientDetails(client.getInetAddress().getCanonicalHostName(),
-					client.getInetAddress().getHostAddress(), true);
-			this.serverScreenController.loadTable(newClient);
-			ClientList.add(client);
+			registerClient(client);
 			break;
 
 		case ClientDisconnect:
-			ClientDetails removedClient = new ClientDetails(client.getInetAddress().getCanonicalHostName(),
-					client.getInetAddress().getHostAddress(), true);
-			this.serverScreenController.updateTable(removedClient);
-			ServerUI.gotResponse = true;
+			forgetClient(client);
 			break;
 
 		case CheckUsername:
@@ -107,7 +147,7 @@ public class BiteMeServer extends AbstractServer {
 			boolean usernameExists = dbController.isUsernameExists(user.getUsername());
 			if (!usernameExists) {
 				try {
-					client.sendToClient(new Message("username not found", Commands.CheckUsername));
+					reply(client, m, new Message("username not found", Commands.CheckUsername));
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
@@ -115,14 +155,22 @@ public class BiteMeServer extends AbstractServer {
 				boolean passwordCorrect = dbController.isPasswordCorrect(user.getUsername(), user.getPassword());
 				if (!passwordCorrect) {
 					try {
-						client.sendToClient(new Message("incorrect password", Commands.CheckUsername));
+						reply(client, m, new Message("incorrect password", Commands.CheckUsername));
 					} catch (IOException e) {
 						e.printStackTrace();
 					}
 				} else {
 					User completeUser = dbController.getUserDetails(user.getUsername());
+					client.setInfo(USER_INFO, completeUser);
+					clients.setUser(client, completeUser);
+					if (completeUser != null && completeUser.getType().endsWith("Employee")) {
+						int restaurant = dbController.getRestaurantNum(completeUser);
+						client.setInfo(RESTAURANT_INFO, restaurant);
+						clients.setRestaurant(client, restaurant);
+					}
+					updateSubscriptions(client);
 					try {
-						client.sendToClient(new Message(completeUser, Commands.CheckUsername));
+						reply(client, m, new Message(completeUser, Commands.CheckUsername));
 					} catch (IOException e) {
 						e.printStackTrace();
 					}
@@ -136,6 +184,10 @@ public class BiteMeServer extends AbstractServer {
 		case LogoutUser:
 			int logoutUserId = (int) m.getObj();
 			dbController.updateLoginStatus(logoutUserId, 0);
+			client.setInfo(USER_INFO, null);
+			client.setInfo(RESTAURANT_INFO, null);
+			clients.setUser(client, null);
+			updateSubscriptions(client);
 			break;
 		case UpdateStatus:
 			Object[] requestData = (Object[]) m.getObj();
@@ -145,13 +197,13 @@ public class BiteMeServer extends AbstractServer {
 
 			if (user1 == null) {
 				try {
-					client.sendToClient(new Message("user not found", Commands.UpdateStatus));
+					reply(client, m, new Message("user not found", Commands.UpdateStatus));
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			} else if (!user1.getDistrict().equals(branchManagerDistrict) || !user1.getType().equals("Customer")) {
 				try {
-					client.sendToClient(new Message("no permission", Commands.UpdateStatus));
+					reply(client, m, new Message("no permission", Commands.UpdateStatus));
 				} catch (IOException e) {
 					e.printStackTrace();
 				}
@@ -159,14 +211,14 @@ public class BiteMeServer extends AbstractServer {
 				String customerStatus = dbController.getCustomerStatus(userId1);
 				if (customerStatus.equals("active")) {
 					try {
-						client.sendToClient(new Message("user already active", Commands.UpdateStatus));
+						reply(client, m, new Message("user already active", Commands.UpdateStatus));
 					} catch (IOException e) {
 						e.printStackTrace();
 					}
 				} else {
 					dbController.updateCustomerStatus(userId1, "active");
 					try {
-						client.sendToClient(new Message("status updated successfully", Commands.UpdateStatus));
+						reply(client, m, new Message("status updated successfully", Commands.UpdateStatus));
 					} catch (IOException e) {
 						e.printStackTrace();
 					}
@@ -178,7 +230,7 @@ public class BiteMeServer extends AbstractServer {
 			int customerId = (int) m.getObj();
 			List<Order> pendingOrders = dbController.getPendingOrders(customerId);
 			try {
-				client.sendToClient(new Message(pendingOrders, Commands.getPendingOrders));
+				reply(client, m, new Message(pendingOrders, Commands.getPendingOrders));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -187,7 +239,7 @@ public class BiteMeServer extends AbstractServer {
 			int id = (int) m.getObj();
 			String status = dbController.getCustomerStatus(id);
 			try {
-				client.sendToClient(new Message(status, Commands.CheckStatus));
+				reply(client, m, new Message(status, Commands.CheckStatus));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -200,7 +252,7 @@ public class BiteMeServer extends AbstractServer {
 				orderId = (Integer) updateData[0];
 				receivedDateTime = (String) updateData[1];
 				Object[] orderDetails = dbController.updateOrderStatus(orderId, receivedDateTime);
-				client.sendToClient(new Message(orderDetails, Commands.UpdateCustomerOrdersStatus));
+				reply(client, m, new Message(orderDetails, Commands.UpdateCustomerOrdersStatus));
 			} catch (Exception e) {
 				System.err.println("Error processing UpdateCustomerOrdersStatus: " + e.getMessage());
 				e.printStackTrace();
@@ -221,7 +273,7 @@ public class BiteMeServer extends AbstractServer {
 			Object RestaurantOrdersData = dbController.getRestaurantOrders((int) m.getObj());
 			// setRestaurantPendingOrders
 			try {
-				client.sendToClient(new Message(RestaurantOrdersData, Commands.setRestaurantOrders));
+				reply(client, m, new Message(RestaurantOrdersData, Commands.setRestaurantOrders));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -232,13 +284,19 @@ public class BiteMeServer extends AbstractServer {
 			int orderId = (int) data1[0];
 			String status1 = (String) data1[1];
 			dbController.updateRestaurantOrderStatus(orderId, status1);
+			// The other terminals of the restaurant show the new status
+			ClientSession employeeSession = clients.get(client);
+			if (employeeSession != null && employeeSession.getRestaurant() > 0) {
+				publish(restaurantOrdersTopic(employeeSession.getRestaurant()),
+						new Message(employeeSession.getRestaurant(), Commands.updateRestaurantOrdersTable));
+			}
 			break;
 
 		case updateCoustomerToContactByCoustomerId:
 			int customerNumber = (int) m.getObj();
 			User customer = dbController.getCustomerDetailsByNumber(customerNumber);
 			try {
-				client.sendToClient(new Message(customer, Commands.updateCoustomerToContactByCoustomerId));
+				reply(client, m, new Message(customer, Commands.updateCoustomerToContactByCoustomerId));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -250,44 +308,28 @@ public class BiteMeServer extends AbstractServer {
 			int restaurantNumber = (int) data2[1];
 			String monthYear = (String) data2[2];
 
-			int[] orderReportDetails = dbController.getOrderReport(district, restaurantNumber, monthYear);	
-			
-			try {
-			client.sendToClient(new Message(orderReportDetails, Commands.OrderReport));
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			replyLater(client, m, db -> db.getOrderReport(district, restaurantNumber, monthYear), Commands.OrderReport);
 			break;
 		case getIncomeReport:
 			Object[] incomeReportData = (Object[]) m.getObj();
 			int restaurantId = (int) incomeReportData[0];
 			String monthYear1 = (String) incomeReportData[1];
 			String district1 = (String) incomeReportData[2];
-			int[] incomeReportResultData = dbController.IncomeReport(restaurantId, monthYear1, district1);
-			try {
-				client.sendToClient(new Message(incomeReportResultData, Commands.setIncomeReport));
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			replyLater(client, m, db -> db.IncomeReport(restaurantId, monthYear1, district1), Commands.setIncomeReport);
 
 			break;
 		case getPerformanceReport:
 			Object[] data3 = (Object[]) m.getObj();
 			String district2 = (String) data3[0];
 			String monthYear2 = (String) data3[1];
-			int[] PerformanceReportDetails = dbController.performanceReport(monthYear2, district2);
-			try {
-				client.sendToClient(new Message(PerformanceReportDetails, Commands.getPerformanceReport));
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			replyLater(client, m, db -> db.performanceReport(monthYear2, district2), Commands.getPerformanceReport);
 			break;
 			
 		 case GetRestaurantDishes:
 	          User employeeUser = (User) m.getObj();
 	          List<Object[]> dishes = dbController.getDishesByCertifiedEmployee(employeeUser);
 	          try {
-	              client.sendToClient(new Message(dishes, Commands.GetRestaurantDishes));
+	              reply(client, m, new Message(dishes, Commands.GetRestaurantDishes));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -310,7 +352,7 @@ public class BiteMeServer extends AbstractServer {
 	          }
 	 
 	          try {
-	              client.sendToClient(new Message(added ? "Dish added successfully" : "Failed to add dish", Commands.AddDish));
+	              reply(client, m, new Message(added ? "Dish added successfully" : "Failed to add dish", Commands.AddDish));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -320,7 +362,7 @@ public class BiteMeServer extends AbstractServer {
 	          DishUpdate dishToDelete = (DishUpdate) m.getObj();
 	          boolean deleted = dbController.deleteDish(dishToDelete);
 	          try {
-	              client.sendToClient(new Message(deleted ? "Dish deleted successfully" : "Failed to delete dish", Commands.DeleteDish));
+	              reply(client, m, new Message(deleted ? "Dish deleted successfully" : "Failed to delete dish", Commands.DeleteDish));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -330,7 +372,7 @@ public class BiteMeServer extends AbstractServer {
 	          Price priceToUpdate = (Price) m.getObj();
 	          boolean updated = dbController.updateDishPrice(priceToUpdate);
 	          try {
-	              client.sendToClient(new Message(updated ? "Dish price updated successfully" : "Failed to update dish price", Commands.UpdateDishPrice));
+	              reply(client, m, new Message(updated ? "Dish price updated successfully" : "Failed to update dish price", Commands.UpdateDishPrice));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -338,8 +380,11 @@ public class BiteMeServer extends AbstractServer {
 	      case GetRestaurantNum:
 	    	  User employeeRestuarant = (User) m.getObj();
 	          int restaurantNumber1 = dbController.getRestaurantNum(employeeRestuarant);
+	          client.setInfo(RESTAURANT_INFO, restaurantNumber1);
+	          clients.setRestaurant(client, restaurantNumber1);
+	          updateSubscriptions(client);
 	          try {
-	              client.sendToClient(new Message(restaurantNumber1, Commands.GetRestaurantNum));
+	              reply(client, m, new Message(restaurantNumber1, Commands.GetRestaurantNum));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -348,7 +393,7 @@ public class BiteMeServer extends AbstractServer {
 	    	  User employee_Restuarant = (User) m.getObj();
 	          String restaurantName = dbController.getRestaurantName(employee_Restuarant);
 	          try {
-	              client.sendToClient(new Message(restaurantName, Commands.GetRestaurantName));
+	              reply(client, m, new Message(restaurantName, Commands.GetRestaurantName));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -359,7 +404,7 @@ public class BiteMeServer extends AbstractServer {
 	          String size = (String) dish_Data[1];
 	          boolean dishExists = dbController.isDishExists(dishName, size);
 	          try {
-	              client.sendToClient(new Message(dishExists, Commands.CheckDishExists));
+	              reply(client, m, new Message(dishExists, Commands.CheckDishExists));
 	          } catch (IOException e) {
 	              e.printStackTrace();
 	          }
@@ -398,7 +443,7 @@ public class BiteMeServer extends AbstractServer {
 	    	  ArrayList<String> restaurantNames = new ArrayList<>();
 	    	  restaurantNames = dbController.getRestaurantNamesFromDB();
 	    	  try {
-	    	        client.sendToClient(new Message(restaurantNames, Commands.gotMyRestaurantList));
+	    	        reply(client, m, new Message(restaurantNames, Commands.gotMyRestaurantList));
 	    	    } catch (IOException e) {
 	    	        e.printStackTrace();
 	    	    }
@@ -411,7 +456,7 @@ public class BiteMeServer extends AbstractServer {
 	    	  	menu = dbController.getRestaurantMenuFromDB(restaurantName2);
 	    	  	System.out.println(menu);
 	      	  try {
-	      	        client.sendToClient(new Message(menu, Commands.gotMyRestaurantMenu));
+	      	        reply(client, m, new Message(menu, Commands.gotMyRestaurantMenu));
 	      	    } catch (IOException e) {
 	      	        e.printStackTrace();
 	      	    }
@@ -423,7 +468,7 @@ public class BiteMeServer extends AbstractServer {
 	    	  Customer customerDetails = dbController.getCustomerFromDB(userID);
 	    	  System.out.println(customerDetails);
 	    	  try {
-	    	        client.sendToClient(new Message(customerDetails, Commands.gotMyCustomerDetails));
+	    	        reply(client, m, new Message(customerDetails, Commands.gotMyCustomerDetails));
 	    	    } catch (IOException e) {
 	    	        e.printStackTrace();
 	    	    }
@@ -434,14 +479,8 @@ public class BiteMeServer extends AbstractServer {
 	    	    int restaurantId1 = (int) requestData1[0];
 	    	    String quarter = (String) requestData1[1];
 
-	    	    Object[] reportData = dbController.getQuarterReportData(restaurantId1, quarter);
-	    	    
-
-	    	    try {
-	    	        client.sendToClient(new Message(reportData, Commands.RestaurantQuarterReport1));
-	    	    } catch (IOException e) {
-	    	        e.printStackTrace();
-	    	    }
+	    	    replyLater(client, m, db -> db.getQuarterReportData(restaurantId1, quarter),
+	    	    		Commands.RestaurantQuarterReport1);
 
 	    	  break;
 	      case RestaurantQuarterIncomeReport:
@@ -449,70 +488,8 @@ public class BiteMeServer extends AbstractServer {
 	    	    int restaurantNumber4 = (int) requestData2[0];
 	    	    String quarter1 = (String) requestData2[1];
 
-	    	    Object[] incomeReportData3 = dbController.getQuarterIncomeReport(restaurantNumber4, quarter1);
-
-	    	    try {
-	    	        client.sendToClient(new Message(incomeReportData3, Commands.RestaurantQuarterIncomeReport));
-	    	    } catch (IOException e) {
-	    	        e.printStackTrace();
-	    	    }
-	    	    break;
-	      case RestaurantQuarterReport2:
-	    	  Object[] requestData3 = (Object[]) m.getObj();
-	    	    int restaurantId2 = (int) requestData3[0];
-	    	    String quarter2 = (String) requestData3[1];
-
-	    	    Object[] reportData1 = dbController.getQuarterReportData(restaurantId2, quarter2);
-	    	    
-
-	    	    try {
-	    	        client.sendToClient(new Message(reportData1, Commands.RestaurantQuarterReport2));
-	    	    } catch (IOException e) {
-	    	        e.printStackTrace();
-	    	    }
-
-	    	  break;
-	      case RestaurantQuarterIncomeReport1:
-	    	    Object[] requestData4 = (Object[]) m.getObj();
-	    	    int restaurantNumber5 = (int) requestData4[0];
-	    	    String quarter4 = (String) requestData4[1];
-
-	    	    Object[] incomeReportData4 = dbController.getQuarterIncomeReport(restaurantNumber5, quarter4);
-
-	    	    try {
-	    	        client.sendToClient(new Message(incomeReportData4, Commands.RestaurantQuarterIncomeReport1));
-	    	    } catch (IOException e) {
-	    	        e.printStackTrace();
-	    	    }
-	    	    break;
-
-	      case RestaurantQuarterReport3:
-	    	  Object[] requestDat = (Object[]) m.getObj();
-	    	    int restaurantID = (int) requestDat[0];
-	    	    String quarter5 = (String) requestDat[1];
-
-	    	    Object[] reportData5 = dbController.getQuarterReportData(restaurantID, quarter5);
-	    	    
-
-	    	    try {
-	    	        client.sendToClient(new Message(reportData5, Commands.RestaurantQuarterReport3));
-	    	    } catch (IOException e) {
-	    	        e.printStackTrace();
-	    	    }
-
-	    	  break;
-	      case RestaurantQuarterIncomeReport2:
-	    	    Object[] requestDat1 = (Object[]) m.getObj();
-	    	    int restaurantNumber6 = (int) requestDat1[0];
-	    	    String quarter6 = (String) requestDat1[1];
-
-	    	    Object[] incomeReportData5 = dbController.getQuarterIncomeReport(restaurantNumber6, quarter6);
-
-	    	    try {
-	    	        client.sendToClient(new Message(incomeReportData5, Commands.RestaurantQuarterIncomeReport2));
-	    	    } catch (IOException e) {
-	    	        e.printStackTrace();
-	    	    }
+	    	    replyLater(client, m, db -> db.getQuarterIncomeReport(restaurantNumber4, quarter1),
+	    	    		Commands.RestaurantQuarterIncomeReport);
 	    	    break;
 	      case updateCustomerCredit:
 	    	    Map<String, Object> creditUpdateData = (Map<String, Object>) m.getObj();
@@ -525,6 +502,10 @@ public class BiteMeServer extends AbstractServer {
 	    	    Map<String, Object> orderDetails = (Map<String, Object>) orderData.get(0);
 	    	    List<Map<String, Object>> orderItems = (List<Map<String, Object>>) orderData.get(1);
 	    	    dbController.addCustomerOrder(orderDetails, orderItems);
+	    	    // Only the terminals of the restaurant hear about the new order
+	    	    int orderRestaurant = (Integer) orderDetails.get("restaurantNumber");
+	    	    publish(restaurantOrdersTopic(orderRestaurant),
+	    	    		new Message(orderRestaurant, Commands.updateRestaurantOrdersTable));
 
 	    	    break;
 		default:
@@ -532,6 +513,61 @@ public class BiteMeServer extends AbstractServer {
 		}
 	}
 
+	/**
+	 * Runs a report on the database threads and sends its result once it is
+	 * ready, so that the dispatch worker handles other messages meanwhile. A
+	 * report that fails, or takes longer than the database timeout, is answered
+	 * as if the server were busy. Without an asynchronous controller the report
+	 * runs on the calling thread.
+	 *
+	 * @param client  The connection from which the request originated.
+	 * @param request The request being answered.
+	 * @param report  Runs the report.
+	 * @param command The command of the reply.
+	 */
+	private <T> void replyLater(ConnectionToClient client, Message request, Function<DbController, T> report,
+			Commands command) {
+		AsyncDbController async = asyncDbController;
+		if (async == null) {
+			try {
+				reply(client, request, new Message(report.apply(dbController), command));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		async.call(report).whenComplete((result, error) -> {
+			Message response;
+			if (error == null) {
+				response = new Message(result, command);
+			} else {
+				System.out.println("Report " + request.getCmd() + " failed: " + error);
+				response = new Message("The server is busy, please try again", Commands.serverBusy);
+			}
+			try {
+				reply(client, request, response);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Sends the reply to a request, carrying the id of the request so that a
+	 * client with several requests outstanding can tell which one it answers.
+	 *
+	 * @param client   The connection from which the request originated.
+	 * @param request  The request being answered.
+	 * @param response The reply to send.
+	 * @throws IOException if the reply cannot be sent.
+	 */
+	private static void reply(ConnectionToClient client, Object request, Message response) throws IOException {
+		if (request instanceof Message) {
+			response.setRequestId(((Message) request).getRequestId());
+		}
+		client.sendToClient(response);
+	}
+
 	// TODO: CONNECTION TO DB CONTROLLER
 	// TODO DB CONTROLLER
 	
@@ -554,6 +590,197 @@ public class BiteMeServer extends AbstractServer {
 
 	}
 
+	/**
+     * This method is called when a request is not handled because all the
+     * dispatch workers are busy. The client is told to retry later.
+     *
+     * @param msg    The message that was rejected.
+     * @param client The connection from which the message originated.
+     */
+	@Override
+	protected void messageRejected(Object msg, ConnectionToClient client) {
+		try {
+			reply(client, msg, new Message("Server is busy, please try again", Commands.serverBusy));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+     * This method is called when a client connection is closed, by the server or
+     * because the client was idle for too long.
+     *
+     * @param client The connection that was closed.
+     */
+	@Override
+	protected synchronized void clientDisconnected(ConnectionToClient client) {
+		forgetClient(client);
+	}
+
+	/**
+     * This method is called when the connection with a client fails, which is
+     * how a client that quits or crashes is noticed.
+     *
+     * @param client    The connection that failed.
+     * @param exception The exception thrown.
+     */
+	@Override
+	protected synchronized void clientException(ConnectionToClient client, Throwable exception) {
+		forgetClient(client);
+	}
+
+	/**
+     * This method is called when a client that lost its connection resumed its
+     * session on a new one. The user logged in on the lost connection is logged
+     * in on the new one without a new login, and its subscriptions are already
+     * restored, so the client screens keep their data.
+     *
+     * @param client The new connection with the client.
+     */
+	@Override
+	protected void clientResumed(ConnectionToClient client) {
+		registerClient(client);
+		clients.setUser(client, (User) client.getInfo(USER_INFO));
+		Integer restaurant = (Integer) client.getInfo(RESTAURANT_INFO);
+		if (restaurant != null) {
+			clients.setRestaurant(client, restaurant);
+		}
+		System.out.println("Resumed session of client " + clients.get(client));
+	}
+
+	/**
+     * This method is called when a client is about to be closed because it sent
+     * nothing, not even a heartbeat, for longer than the idle timeout.
+     *
+     * @param client The idle connection.
+     */
+	@Override
+	protected void clientTimedOut(ConnectionToClient client) {
+		System.out.println("Closing idle client " + client + " after " + client.getIdleTime() + " ms");
+	}
+
+	/**
+     * This method is called when a new client is refused because the server
+     * reached its connection limits. The client is told when to try again before
+     * its connection is closed; it never appears in the client list.
+     *
+     * @param client The refused connection.
+     * @param reason The limit that was reached.
+     */
+	@Override
+	protected void clientRefused(ConnectionToClient client, String reason) {
+		System.out.println("Refused client " + client + ": " + reason);
+		try {
+			client.sendToClient(new Message(busyRetryAfter, Commands.serverFull));
+		} catch (IOException e) {
+			// The client is gone already
+		}
+	}
+
+	/**
+     * Sets the time after which a client refused because the server is full is
+     * told to try again.
+     *
+     * @param busyRetryAfter The time in milliseconds.
+     */
+	public void setBusyRetryAfter(int busyRetryAfter) {
+		this.busyRetryAfter = busyRetryAfter;
+	}
+
+	/**
+     * Returns the clients currently connected to the server.
+     *
+     * @return The client registry.
+     */
+	public ClientRegistry getClients() {
+		return clients;
+	}
+
+	/**
+     * Returns the topic on which the events of a customer are published.
+     *
+     * @param userId The id of the customer.
+     * @return The name of the topic.
+     */
+	public static String customerTopic(int userId) {
+		return "customer:" + userId;
+	}
+
+	/**
+     * Returns the topic on which the events of a district are published.
+     *
+     * @param district The district.
+     * @return The name of the topic.
+     */
+	public static String districtTopic(String district) {
+		return "district:" + district;
+	}
+
+	/**
+     * Returns the topic on which the changes to the orders of a restaurant are
+     * published.
+     *
+     * @param restaurant The restaurant number.
+     * @return The name of the topic.
+     */
+	public static String restaurantOrdersTopic(int restaurant) {
+		return "restaurant:" + restaurant + ":orders";
+	}
+
+	/**
+     * Subscribes a connection to the topics matching the user logged in on it:
+     * its own events for a customer, those of its district, and the orders of
+     * its restaurant for an employee. The previous subscriptions are dropped.
+     *
+     * @param client The connection.
+     */
+	private void updateSubscriptions(ConnectionToClient client) {
+		client.unsubscribeAll();
+		ClientSession session = clients.get(client);
+		if (session == null || session.getUser() == null) {
+			return;
+		}
+		if ("Customer".equals(session.getRole())) {
+			client.subscribe(customerTopic(session.getUserId()));
+		}
+		if (session.getDistrict() != null) {
+			client.subscribe(districtTopic(session.getDistrict()));
+		}
+		if (session.getRestaurant() > 0) {
+			client.subscribe(restaurantOrdersTopic(session.getRestaurant()));
+		}
+	}
+
+	/**
+     * Adds a new connection to the client registry, and its row to the server
+     * screen table once the host name of the client is known.
+     *
+     * @param client The new connection.
+     */
+	private void registerClient(ConnectionToClient client) {
+		ClientSession session = clients.register(client);
+		// The reverse lookup may block for seconds, the row is shown once done
+		clients.resolveHostName(client.getInetAddress()).thenAccept(hostName -> {
+			ClientDetails newClient = new ClientDetails(hostName, session.getIp(), true);
+			if (session.setDetails(newClient) && serverScreenController != null)
+				serverScreenController.loadTable(newClient);
+		});
+	}
+
+	/**
+     * Removes a closed connection from the client registry and its row from the
+     * server screen table, so that both only hold live clients.
+     *
+     * @param client The closed connection.
+     */
+	private void forgetClient(ConnectionToClient client) {
+		ClientSession session = clients.unregister(client);
+		ClientDetails details = session == null ? null : session.close();
+		if (details != null && serverScreenController != null) {
+			serverScreenController.updateTable(details);
+		}
+	}
+
 	/**
      * Sets the server screen controller used by this server.
      *
@@ -0,0 +1,322 @@
+package server;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entites.User;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * The ClientRegistry class keeps track of the clients connected to the server.
+ * It may be used from any thread: connections are registered and removed by
+ * the threads serving them while the server screen and other features look
+ * them up.
+ * <p>
+ * Each connection gets a {@link ClientSession} and an id. Sessions can be found
+ * by connection, by id, by logged in user, by district and by restaurant in
+ * constant time, without scanning the connections.
+ * <p>
+ * Host names are resolved on a thread of the registry, since a reverse DNS
+ * lookup may block for seconds, and the result is cached per address.
+ */
+public class ClientRegistry {
+
+	/**
+	 * The number of threads resolving host names.
+	 */
+	private static final int RESOLVER_THREADS = 2;
+
+	/**
+	 * The host name shown for the clients running on the server host.
+	 */
+	private static final String LOCAL_HOST_NAME = "localhost";
+
+	/**
+	 * Gives each connection its id.
+	 */
+	private final AtomicLong nextId = new AtomicLong();
+
+	/**
+	 * The sessions, by connection.
+	 */
+	private final ConcurrentHashMap<ConnectionToClient, ClientSession> byConnection = new ConcurrentHashMap<>();
+
+	/**
+	 * The sessions, by id.
+	 */
+	private final ConcurrentHashMap<Long, ClientSession> byId = new ConcurrentHashMap<>();
+
+	/**
+	 * The sessions with a logged in user, by user id. A user logged in on several
+	 * clients has several sessions.
+	 */
+	private final ConcurrentHashMap<Integer, Set<ClientSession>> byUser = new ConcurrentHashMap<>();
+
+	/**
+	 * The sessions with a logged in user, by district of the user.
+	 */
+	private final ConcurrentHashMap<String, Set<ClientSession>> byDistrict = new ConcurrentHashMap<>();
+
+	/**
+	 * The sessions of employees, by restaurant number.
+	 */
+	private final ConcurrentHashMap<Integer, Set<ClientSession>> byRestaurant = new ConcurrentHashMap<>();
+
+	/**
+	 * The host names resolved or being resolved, by address.
+	 */
+	private final ConcurrentHashMap<InetAddress, CompletableFuture<String>> hostNames = new ConcurrentHashMap<>();
+
+	/**
+	 * Resolves the host names.
+	 */
+	private final ExecutorService resolver = Executors.newFixedThreadPool(RESOLVER_THREADS, task -> {
+		Thread thread = new Thread(task, "BiteMe host resolver");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Registers a new connection. Registering a connection twice returns the
+	 * session it already has.
+	 *
+	 * @param connection The new connection.
+	 * @return The session of the connection.
+	 */
+	public ClientSession register(ConnectionToClient connection) {
+		return byConnection.computeIfAbsent(connection, c -> {
+			ClientSession session = new ClientSession(nextId.incrementAndGet(), c);
+			byId.put(session.getId(), session);
+			return session;
+		});
+	}
+
+	/**
+	 * Removes a connection that was closed.
+	 *
+	 * @param connection The closed connection.
+	 * @return The session of the connection, or null if it was not registered.
+	 */
+	public ClientSession unregister(ConnectionToClient connection) {
+		ClientSession session = byConnection.remove(connection);
+		if (session != null) {
+			byId.remove(session.getId());
+			synchronized (session) {
+				unindex(session);
+			}
+		}
+		return session;
+	}
+
+	/**
+	 * Records the user who logged in on a connection.
+	 *
+	 * @param connection The connection.
+	 * @param user       The user, or null once the user logged out.
+	 */
+	public void setUser(ConnectionToClient connection, User user) {
+		ClientSession session = byConnection.get(connection);
+		if (session == null)
+			return;
+
+		synchronized (session) {
+			unindex(session);
+			session.setUser(user);
+			if (byConnection.containsKey(connection))
+				index(session);
+		}
+	}
+
+	/**
+	 * Records the restaurant the employee logged in on a connection works for.
+	 *
+	 * @param connection The connection.
+	 * @param restaurant The restaurant number.
+	 */
+	public void setRestaurant(ConnectionToClient connection, int restaurant) {
+		ClientSession session = byConnection.get(connection);
+		if (session == null)
+			return;
+
+		synchronized (session) {
+			unindex(session);
+			session.setRestaurant(restaurant);
+			if (byConnection.containsKey(connection))
+				index(session);
+		}
+	}
+
+	/**
+	 * Returns the session of a connection.
+	 *
+	 * @param connection The connection.
+	 * @return The session, or null if the connection is not registered.
+	 */
+	public ClientSession get(ConnectionToClient connection) {
+		return byConnection.get(connection);
+	}
+
+	/**
+	 * Returns the session with an id.
+	 *
+	 * @param id The id of the connection.
+	 * @return The session, or null if there is no such connection.
+	 */
+	public ClientSession get(long id) {
+		return byId.get(id);
+	}
+
+	/**
+	 * Returns the sessions a user is logged in on.
+	 *
+	 * @param userId The id of the user.
+	 * @return The sessions, read only, empty if the user is not connected.
+	 */
+	public Collection<ClientSession> getByUser(int userId) {
+		return view(byUser.get(userId));
+	}
+
+	/**
+	 * Returns the sessions of the users of a district.
+	 *
+	 * @param district The district.
+	 * @return The sessions, read only, empty if nobody from the district is
+	 *         connected.
+	 */
+	public Collection<ClientSession> getByDistrict(String district) {
+		return district == null ? Collections.<ClientSession>emptySet() : view(byDistrict.get(district));
+	}
+
+	/**
+	 * Returns the sessions of the employees of a restaurant.
+	 *
+	 * @param restaurant The restaurant number.
+	 * @return The sessions, read only, empty if no employee of the restaurant
+	 *         is connected.
+	 */
+	public Collection<ClientSession> getByRestaurant(int restaurant) {
+		return view(byRestaurant.get(restaurant));
+	}
+
+	/**
+	 * Returns every session.
+	 *
+	 * @return A live view of the sessions.
+	 */
+	public Collection<ClientSession> getAll() {
+		return Collections.unmodifiableCollection(byConnection.values());
+	}
+
+	/**
+	 * Returns the number of connections registered.
+	 *
+	 * @return The number of connections.
+	 */
+	public int size() {
+		return byConnection.size();
+	}
+
+	/**
+	 * Forgets every connection. The cached host names are kept.
+	 */
+	public void clear() {
+		for (ConnectionToClient connection : byConnection.keySet())
+			unregister(connection);
+	}
+
+	/**
+	 * Resolves the host name of an address without blocking the caller. The
+	 * lookup is made once per address; if it fails, the address itself is used
+	 * as the host name.
+	 *
+	 * @param address The address to resolve, or null for a client connected
+	 *                through the Unix domain socket of the server.
+	 * @return The host name, once resolved.
+	 */
+	public CompletableFuture<String> resolveHostName(InetAddress address) {
+		if (address == null)
+			return CompletableFuture.completedFuture(LOCAL_HOST_NAME);
+		return hostNames.computeIfAbsent(address,
+				a -> CompletableFuture.supplyAsync(a::getCanonicalHostName, resolver)
+						.exceptionally(e -> a.getHostAddress()));
+	}
+
+	/**
+	 * Adds a session to the indexes matching its user and restaurant. Called with
+	 * the session locked.
+	 *
+	 * @param session The session.
+	 */
+	private void index(ClientSession session) {
+		if (session.getUser() != null) {
+			add(byUser, session.getUserId(), session);
+			if (session.getDistrict() != null)
+				add(byDistrict, session.getDistrict(), session);
+		}
+		if (session.getRestaurant() != 0)
+			add(byRestaurant, session.getRestaurant(), session);
+	}
+
+	/**
+	 * Removes a session from the indexes matching its user and restaurant. Called
+	 * with the session locked.
+	 *
+	 * @param session The session.
+	 */
+	private void unindex(ClientSession session) {
+		if (session.getUser() != null) {
+			remove(byUser, session.getUserId(), session);
+			if (session.getDistrict() != null)
+				remove(byDistrict, session.getDistrict(), session);
+		}
+		if (session.getRestaurant() != 0)
+			remove(byRestaurant, session.getRestaurant(), session);
+	}
+
+	/**
+	 * Adds a session to the set of an index.
+	 *
+	 * @param index   The index.
+	 * @param key     The key of the set.
+	 * @param session The session.
+	 */
+	private static <K> void add(ConcurrentHashMap<K, Set<ClientSession>> index, K key, ClientSession session) {
+		index.compute(key, (k, set) -> {
+			if (set == null)
+				set = ConcurrentHashMap.newKeySet();
+			set.add(session);
+			return set;
+		});
+	}
+
+	/**
+	 * Removes a session from the set of an index, and the set once empty.
+	 *
+	 * @param index   The index.
+	 * @param key     The key of the set.
+	 * @param session The session.
+	 */
+	private static <K> void remove(ConcurrentHashMap<K, Set<ClientSession>> index, K key, ClientSession session) {
+		index.computeIfPresent(key, (k, set) -> {
+			set.remove(session);
+			return set.isEmpty() ? null : set;
+		});
+	}
+
+	/**
+	 * Returns a read only view of a set of an index.
+	 *
+	 * @param set The set, or null if there is none.
+	 * @return The view.
+	 */
+	private static Collection<ClientSession> view(Set<ClientSession> set) {
+		return set == null ? Collections.<ClientSession>emptySet() : Collections.unmodifiableSet(set);
+	}
+}
@@ -0,0 +1,203 @@
+package server;
+
+import entites.ClientDetails;
+import entites.User;
+import ocsf.server.ConnectionToClient;
+
+/**
+ * The ClientSession class holds what the server knows about one connected
+ * client: its connection, the user logged in on it and the row it was given in
+ * the server screen table. Sessions are created and kept up to date by the
+ * {@link ClientRegistry}.
+ */
+public class ClientSession {
+
+	/**
+	 * The id given to the connection by the registry, unique for the lifetime of
+	 * the server.
+	 */
+	private final long id;
+
+	/**
+	 * The connection to the client.
+	 */
+	private final ConnectionToClient connection;
+
+	/**
+	 * The IP address of the client, known without any lookup, or "local" for a
+	 * client connected through the Unix domain socket of the server.
+	 */
+	private final String ip;
+
+	/**
+	 * The user logged in on the connection, or null before the login.
+	 */
+	private volatile User user;
+
+	/**
+	 * The number of the restaurant the logged in employee works for, or 0 if it
+	 * is not known.
+	 */
+	private volatile int restaurant;
+
+	/**
+	 * The row of the client in the server screen table, or null until the host
+	 * name of the client is resolved.
+	 */
+	private ClientDetails details;
+
+	/**
+	 * Indicates that the connection was removed from the registry.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructs a session for a new connection.
+	 *
+	 * @param id         The id given to the connection.
+	 * @param connection The connection to the client.
+	 */
+	ClientSession(long id, ConnectionToClient connection) {
+		this.id = id;
+		this.connection = connection;
+		if (connection.isLocal())
+			this.ip = "local";
+		else
+			this.ip = connection.getInetAddress() == null ? "" : connection.getInetAddress().getHostAddress();
+	}
+
+	/**
+	 * Returns the id given to the connection.
+	 *
+	 * @return The id of the connection.
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the connection to the client.
+	 *
+	 * @return The connection.
+	 */
+	public ConnectionToClient getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns the IP address of the client.
+	 *
+	 * @return The IP address.
+	 */
+	public String getIp() {
+		return ip;
+	}
+
+	/**
+	 * Returns the user logged in on the connection.
+	 *
+	 * @return The user, or null if nobody is logged in.
+	 */
+	public User getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the id of the user logged in on the connection.
+	 *
+	 * @return The id of the user, or 0 if nobody is logged in.
+	 */
+	public int getUserId() {
+		User current = user;
+		return current == null ? 0 : current.getId();
+	}
+
+	/**
+	 * Returns the role of the user logged in on the connection, such as Customer
+	 * or CEO.
+	 *
+	 * @return The role, or null if nobody is logged in.
+	 */
+	public String getRole() {
+		User current = user;
+		return current == null ? null : current.getType();
+	}
+
+	/**
+	 * Returns the district of the user logged in on the connection.
+	 *
+	 * @return The district, or null if nobody is logged in.
+	 */
+	public String getDistrict() {
+		User current = user;
+		return current == null ? null : current.getDistrict();
+	}
+
+	/**
+	 * Returns the number of the restaurant the logged in employee works for.
+	 *
+	 * @return The restaurant number, or 0 if it is not known.
+	 */
+	public int getRestaurant() {
+		return restaurant;
+	}
+
+	/**
+	 * Sets the user logged in on the connection. Called by the registry, which
+	 * keeps its indexes in step.
+	 *
+	 * @param user The user, or null once the user logged out.
+	 */
+	void setUser(User user) {
+		this.user = user;
+		if (user == null)
+			restaurant = 0;
+	}
+
+	/**
+	 * Sets the restaurant the logged in employee works for. Called by the
+	 * registry, which keeps its indexes in step.
+	 *
+	 * @param restaurant The restaurant number, or 0 if it is not known.
+	 */
+	void setRestaurant(int restaurant) {
+		this.restaurant = restaurant;
+	}
+
+	/**
+	 * Saves the row given to the client in the server screen table, unless the
+	 * connection is already closed.
+	 *
+	 * @param details The row of the client.
+	 * @return true if the row was saved and should be shown, false if the
+	 *         connection is closed.
+	 */
+	synchronized boolean setDetails(ClientDetails details) {
+		if (closed)
+			return false;
+		this.details = details;
+		return true;
+	}
+
+	/**
+	 * Marks the session as closed.
+	 *
+	 * @return The row given to the client in the server screen table, or null if
+	 *         it was not shown yet.
+	 */
+	synchronized ClientDetails close() {
+		closed = true;
+		return details;
+	}
+
+	/**
+	 * Returns a description of the session for the server log.
+	 *
+	 * @return The id, address and user of the session.
+	 */
+	@Override
+	public String toString() {
+		User current = user;
+		return "#" + id + " " + ip + (current == null ? "" : " " + current.getUsername() + " (" + current.getType() + ")");
+	}
+}
@@ -2,9 +2,16 @@ package server;
 
 import javafx.application.Application;
 import javafx.stage.Stage;
-import ocsf.server.ConnectionToClient;
 import controller.ServerScreenController;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import JDBC.AsyncDbController;
+import JDBC.ConnectionPool;
+import JDBC.DbController;
+import JDBC.ReplicaSet;
+import JDBC.SqlConnection;
+import entites.BiteMeCodec;
 import entites.Message;
 import enums.Commands;
 
@@ -31,9 +38,225 @@ public class ServerUI extends Application {
 	public static BiteMeServer sv = null;
 
 	/**
-	 * A flag to indicate whether a response has been received from the client.
+	 * System property that, when set to true, makes the server serve its clients
+	 * with non-blocking selector event loops instead of one thread per client.
 	 */
-	public static boolean gotResponse = false;
+	public static final String NON_BLOCKING_PROPERTY = "biteme.server.nonBlocking";
+
+	/**
+	 * System property holding the number of worker threads that handle client
+	 * requests in parallel. When unset or 0, requests are handled one at a time.
+	 */
+	public static final String DISPATCH_THREADS_PROPERTY = "biteme.server.dispatchThreads";
+
+	/**
+	 * System property holding the maximum number of requests waiting for a worker
+	 * before the server answers that it is busy.
+	 */
+	public static final String DISPATCH_QUEUE_LIMIT_PROPERTY = "biteme.server.dispatchQueueLimit";
+
+	/**
+	 * System property holding the number of bytes sent to a client after which
+	 * the objects kept by its output stream are released. When unset or 0, they
+	 * are released after every message.
+	 */
+	public static final String OUTPUT_RESET_BYTES_PROPERTY = "biteme.server.outputResetBytes";
+
+	/**
+	 * System property that, when set to true, makes each client connection write
+	 * its replies on a thread of its own, so a slow client never holds up the
+	 * thread handling requests.
+	 */
+	public static final String ASYNC_WRITES_PROPERTY = "biteme.server.asyncWrites";
+
+	/**
+	 * System property holding the number of reply bytes waiting for a client
+	 * above which the server stops reading its requests, or drops it.
+	 */
+	public static final String OUTPUT_HIGH_WATERMARK_PROPERTY = "biteme.server.outputHighWatermark";
+
+	/**
+	 * System property holding the number of reply bytes waiting for a paused
+	 * client at which the server reads its requests again.
+	 */
+	public static final String OUTPUT_LOW_WATERMARK_PROPERTY = "biteme.server.outputLowWatermark";
+
+	/**
+	 * System property that, when set to true, makes the server drop a client above
+	 * the high watermark instead of pausing it.
+	 */
+	public static final String DROP_SLOW_CLIENTS_PROPERTY = "biteme.server.dropSlowClients";
+
+	/**
+	 * System property holding the size in bytes from which messages to clients
+	 * using the binary codec are compressed, 0 to never compress. Defaults to
+	 * 1024.
+	 */
+	public static final String COMPRESSION_THRESHOLD_PROPERTY = "biteme.server.compressionThreshold";
+
+	/**
+	 * System property holding the time in milliseconds after which a client that
+	 * sent nothing, not even a heartbeat, is disconnected, 0 to never disconnect
+	 * idle clients. Defaults to 60000, four client heartbeat intervals.
+	 */
+	public static final String IDLE_TIMEOUT_PROPERTY = "biteme.server.idleTimeout";
+
+	/**
+	 * System property holding the number of connected clients above which new
+	 * clients are refused, 0 for no limit. Defaults to 256.
+	 */
+	public static final String MAX_CONNECTIONS_PROPERTY = "biteme.server.maxConnections";
+
+	/**
+	 * System property holding the number of clients connected from one address
+	 * above which new clients from that address are refused, 0 for no limit.
+	 * Defaults to 0, since kiosks may share an address behind a router.
+	 */
+	public static final String MAX_CONNECTIONS_PER_ADDRESS_PROPERTY = "biteme.server.maxConnectionsPerAddress";
+
+	/**
+	 * System property holding the number of connections the operating system
+	 * queues until the server accepts them. Defaults to 50.
+	 */
+	public static final String BACKLOG_PROPERTY = "biteme.server.backlog";
+
+	/**
+	 * System property holding the time in milliseconds after which a refused
+	 * client is told to try again. Defaults to 5000.
+	 */
+	public static final String BUSY_RETRY_AFTER_PROPERTY = "biteme.server.busyRetryAfter";
+
+	/**
+	 * System property holding the time in milliseconds the clients are given to
+	 * acknowledge the shutdown and leave, and the requests already received to be
+	 * handled, before the remaining clients are disconnected. Defaults to 5000.
+	 */
+	public static final String SHUTDOWN_TIMEOUT_PROPERTY = "biteme.server.shutdownTimeout";
+
+	/**
+	 * System property holding the path of a Unix domain socket on which the
+	 * server listens besides its port, for clients running on the same host. It
+	 * implies the non-blocking mode. Not set by default.
+	 */
+	public static final String UNIX_SOCKET_PROPERTY = "biteme.server.unixSocket";
+
+	/**
+	 * System property holding the time in milliseconds a client that lost its
+	 * connection may reconnect and resume its session, staying logged in, 0 to
+	 * resume none. Defaults to 120000.
+	 */
+	public static final String SESSION_TIMEOUT_PROPERTY = "biteme.server.sessionTimeout";
+
+	/**
+	 * System property holding the number of database connections kept open by the
+	 * transactional pool, which serves logging in, orders and menus. Defaults to
+	 * 2.
+	 */
+	public static final String DB_POOL_MIN_PROPERTY = "biteme.server.dbPoolMin";
+
+	/**
+	 * System property holding the largest number of database connections of the
+	 * transactional pool, that is of such operations running at once. Defaults to
+	 * 10.
+	 */
+	public static final String DB_POOL_MAX_PROPERTY = "biteme.server.dbPoolMax";
+
+	/**
+	 * System property holding the largest number of requests waiting for a
+	 * connection of the transactional pool, 0 for no limit. Defaults to 50.
+	 */
+	public static final String DB_POOL_QUEUE_PROPERTY = "biteme.server.dbPoolQueue";
+
+	/**
+	 * System property holding the number of database connections kept open by the
+	 * analytical pool, which serves the reports and the import. Defaults to 0.
+	 */
+	public static final String DB_REPORT_POOL_MIN_PROPERTY = "biteme.server.dbReportPoolMin";
+
+	/**
+	 * System property holding the largest number of database connections of the
+	 * analytical pool. Defaults to 2.
+	 */
+	public static final String DB_REPORT_POOL_MAX_PROPERTY = "biteme.server.dbReportPoolMax";
+
+	/**
+	 * System property holding the largest number of requests waiting for a
+	 * connection of the analytical pool, 0 for no limit. Defaults to 4.
+	 */
+	public static final String DB_REPORT_POOL_QUEUE_PROPERTY = "biteme.server.dbReportPoolQueue";
+
+	/**
+	 * System property holding the query checking that a database connection idle
+	 * for a while still works. Defaults to "SELECT 1".
+	 */
+	public static final String DB_VALIDATION_QUERY_PROPERTY = "biteme.server.dbValidationQuery";
+
+	/**
+	 * System property holding the time in milliseconds after which a database
+	 * connection is replaced, 0 to keep it. Defaults to 1800000, half an hour,
+	 * within the wait_timeout of MySQL.
+	 */
+	public static final String DB_MAX_LIFETIME_PROPERTY = "biteme.server.dbMaxLifetime";
+
+	/**
+	 * System property holding the time in milliseconds after which a database
+	 * connection not returned to the pool is reported as leaked, 0 to report none.
+	 * Defaults to 60000.
+	 */
+	public static final String DB_LEAK_DETECTION_PROPERTY = "biteme.server.dbLeakDetection";
+
+	/**
+	 * System property holding the time in milliseconds a request waits for a
+	 * database connection when all of them are in use. Defaults to 10000.
+	 */
+	public static final String DB_BORROW_TIMEOUT_PROPERTY = "biteme.server.dbBorrowTimeout";
+
+	/**
+	 * System property holding the number of prepared statements kept open per
+	 * database connection, 0 to prepare every statement again. Defaults to 64.
+	 */
+	public static final String DB_STATEMENT_CACHE_PROPERTY = "biteme.server.dbStatementCache";
+
+	/**
+	 * System property holding the time in milliseconds a report may take, from
+	 * when it is asked for, before its statements are cancelled and the client is
+	 * told to try again, 0 for no limit. Defaults to 30000.
+	 */
+	public static final String DB_CALL_TIMEOUT_PROPERTY = "biteme.server.dbCallTimeout";
+
+	/**
+	 * System property holding the largest number of reports waiting for a
+	 * database thread. Defaults to 100.
+	 */
+	public static final String DB_CALL_QUEUE_PROPERTY = "biteme.server.dbCallQueue";
+
+	/**
+	 * System property holding the JDBC URLs of the read replicas of the database,
+	 * separated by commas, which the menus and the reports are read from. The user
+	 * and password are those of the primary. Defaults to none.
+	 */
+	public static final String DB_REPLICA_URLS_PROPERTY = "biteme.server.dbReplicaUrls";
+
+	/**
+	 * System property holding the largest number of database connections to each
+	 * read replica. Defaults to 4.
+	 */
+	public static final String DB_REPLICA_POOL_MAX_PROPERTY = "biteme.server.dbReplicaPoolMax";
+
+	/**
+	 * System property holding the time in milliseconds the data read from a replica
+	 * may be behind the primary, beyond which it is read from the primary. The lag
+	 * is measured in whole seconds, so the value must be at least 1000. Defaults to
+	 * 5000.
+	 */
+	public static final String DB_REPLICA_MAX_LAG_PROPERTY = "biteme.server.dbReplicaMaxLag";
+
+	/**
+	 * System property holding the query returning the lag of a replica in seconds.
+	 * Defaults to "SHOW REPLICA STATUS"; "SELECT 0" suits test databases that do
+	 * not replicate.
+	 */
+	public static final String DB_REPLICA_LAG_QUERY_PROPERTY = "biteme.server.dbReplicaLagQuery";
 
 	/**
 	 * The main method that launches the JavaFX application.
@@ -60,31 +283,39 @@ public class ServerUI extends Application {
 	}
 
 	/**
-	 * Starts the JavaFX application by initializing the server's GUI.
-	 *
+	 * Stops the server. New clients are refused, every client is told to
+	 * terminate at once and the server waits, up to the shutdown timeout, for the
+	 * clients to leave and for the requests already received to be handled. The
+	 * clients still connected then are disconnected.
 	 */
 	public static void disconnect() {
 		if (isServerRunning() == true) {
-			for (ConnectionToClient client : BiteMeServer.ClientList) {
-				gotResponse = false;
-				try {
-					Message msg = new Message(null, Commands.terminate);
-					client.sendToClient(msg);
-					while (!gotResponse) {
-						Thread.sleep(100);
-					}
-					client.close();
-				} catch (Exception e) {
-					e.printStackTrace(); // Handle the exception as needed
-				}
-			}
+			int forced = 0;
 			try {
-				sv.stopListening();
-				sv.close();
+				forced = sv.shutdown(new Message(null, Commands.terminate),
+						Integer.getInteger(SHUTDOWN_TIMEOUT_PROPERTY, 5000));
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
-			BiteMeServer.ClientList.clear();
+			sv.getClients().clear();
+			if (sv.getAsyncDbController() != null) {
+				System.out.println(sv.getAsyncDbController());
+				sv.getAsyncDbController().close();
+			}
+			if (sv.getDbController() != null) {
+				// Statement cache hit rate and cursors left open over the session
+				System.out.println(sv.getDbController().getTransactionalPool());
+				System.out.println(sv.getDbController().getAnalyticalPool());
+				if (sv.getDbController().getReplicas() != null) {
+					System.out.println(sv.getDbController().getReplicas());
+				}
+				sv.getDbController().close();
+			}
+			// Compression ratio and CPU time per command over the session
+			System.out.print(sv.getCompressionStats());
+			System.out.println(sv.getFanOutStats());
+			if (forced > 0)
+				System.out.println(forced + " client(s) did not answer and were disconnected");
 			System.out.println("Server Disconnected");
 		}
 
@@ -120,6 +351,32 @@ public class ServerUI extends Application {
 
 			// Opening server
 			sv = new BiteMeServer(port);
+			sv.setNonBlocking(Boolean.getBoolean(NON_BLOCKING_PROPERTY));
+			// Co-located clients skip the TCP stack, served by the event loops
+			String unixSocket = System.getProperty(UNIX_SOCKET_PROPERTY);
+			if (unixSocket != null && !unixSocket.isEmpty()) {
+				sv.setNonBlocking(true);
+				sv.setUnixSocketPath(unixSocket);
+			}
+			sv.setDispatchThreads(Integer.getInteger(DISPATCH_THREADS_PROPERTY, 0));
+			sv.setDispatchQueueLimit(Integer.getInteger(DISPATCH_QUEUE_LIMIT_PROPERTY, 1000));
+			sv.setOutputResetThreshold(Integer.getInteger(OUTPUT_RESET_BYTES_PROPERTY, 0));
+			sv.setAsyncWrites(Boolean.getBoolean(ASYNC_WRITES_PROPERTY));
+			sv.setOutputWatermarks(Integer.getInteger(OUTPUT_HIGH_WATERMARK_PROPERTY, 1024 * 1024),
+					Integer.getInteger(OUTPUT_LOW_WATERMARK_PROPERTY, 256 * 1024));
+			sv.setDropSlowClients(Boolean.getBoolean(DROP_SLOW_CLIENTS_PROPERTY));
+			sv.setCompressionThreshold(Integer.getInteger(COMPRESSION_THRESHOLD_PROPERTY, 1024));
+			sv.setIdleTimeout(Integer.getInteger(IDLE_TIMEOUT_PROPERTY, 60000));
+			// Refusing clients above the limits keeps the connected staff responsive
+			// during spikes
+			sv.setMaxConnections(Integer.getInteger(MAX_CONNECTIONS_PROPERTY, 256));
+			sv.setMaxConnectionsPerAddress(Integer.getInteger(MAX_CONNECTIONS_PER_ADDRESS_PROPERTY, 0));
+			sv.setBacklog(Integer.getInteger(BACKLOG_PROPERTY, 50));
+			sv.setBusyRetryAfter(Integer.getInteger(BUSY_RETRY_AFTER_PROPERTY, 5000));
+			sv.setSessionTimeout(Integer.getInteger(SESSION_TIMEOUT_PROPERTY, 120000));
+			// Clients offering the same codec exchange binary frames, others keep
+			// using serialized objects
+			sv.setMessageCodec(new BiteMeCodec());
 
 			try {
 				sv.listen(); // Start listening for connections
@@ -136,6 +393,88 @@ public class ServerUI extends Application {
 		return flag;
 	}
 
+	/**
+	 * Creates the pool of database connections serving logging in, orders and
+	 * menus, configured by the system properties.
+	 *
+	 * @param source opens the database connections
+	 * @return the connection pool
+	 */
+	public static ConnectionPool createTransactionalPool(SqlConnection source) {
+		ConnectionPool pool = new ConnectionPool("transactional", source, Integer.getInteger(DB_POOL_MIN_PROPERTY, 2),
+				Integer.getInteger(DB_POOL_MAX_PROPERTY, 10));
+		pool.setMaxWaiting(Integer.getInteger(DB_POOL_QUEUE_PROPERTY, 50));
+		return configure(pool);
+	}
+
+	/**
+	 * Creates the pool of database connections serving the reports and the import,
+	 * configured by the system properties. It is kept apart from the transactional
+	 * pool so that reports never hold the connections the orders need.
+	 *
+	 * @param source opens the database connections
+	 * @return the connection pool
+	 */
+	public static ConnectionPool createAnalyticalPool(SqlConnection source) {
+		ConnectionPool pool = new ConnectionPool("analytical", source,
+				Integer.getInteger(DB_REPORT_POOL_MIN_PROPERTY, 0), Integer.getInteger(DB_REPORT_POOL_MAX_PROPERTY, 2));
+		pool.setMaxWaiting(Integer.getInteger(DB_REPORT_POOL_QUEUE_PROPERTY, 4));
+		return configure(pool);
+	}
+
+	/**
+	 * Creates the read replicas of the database, configured by the system
+	 * properties.
+	 *
+	 * @param primary the connection settings of the primary, whose user and
+	 *                password open the replicas
+	 * @return the read replicas, or null if there are none
+	 */
+	public static ReplicaSet createReplicaSet(SqlConnection primary) {
+		String urls = System.getProperty(DB_REPLICA_URLS_PROPERTY, "").trim();
+		if (urls.isEmpty()) {
+			return null;
+		}
+		List<ConnectionPool> pools = new ArrayList<>();
+		for (String url : urls.split(",")) {
+			ConnectionPool pool = new ConnectionPool("replica " + (pools.size() + 1), primary.withUrl(url.trim()), 0,
+					Integer.getInteger(DB_REPLICA_POOL_MAX_PROPERTY, 4));
+			configure(pool);
+			// A full replica sends the read to the primary rather than making it wait
+			pool.setBorrowTimeout(0);
+			pools.add(pool);
+		}
+		return new ReplicaSet(pools, System.getProperty(DB_REPLICA_LAG_QUERY_PROPERTY, "SHOW REPLICA STATUS"),
+				Long.getLong(DB_REPLICA_MAX_LAG_PROPERTY, 5000));
+	}
+
+	/**
+	 * Creates the controller running database operations on threads of their own,
+	 * configured by the system properties.
+	 *
+	 * @param db the controller running the operations
+	 * @return the asynchronous database controller
+	 */
+	public static AsyncDbController createAsyncDbController(DbController db) {
+		return new AsyncDbController(db, Integer.getInteger(DB_CALL_QUEUE_PROPERTY, 100),
+				Long.getLong(DB_CALL_TIMEOUT_PROPERTY, 30 * 1000));
+	}
+
+	/**
+	 * Applies the settings the pools share.
+	 *
+	 * @param pool the connection pool
+	 * @return the connection pool
+	 */
+	private static ConnectionPool configure(ConnectionPool pool) {
+		pool.setValidationQuery(System.getProperty(DB_VALIDATION_QUERY_PROPERTY, "SELECT 1"));
+		pool.setMaxLifetime(Long.getLong(DB_MAX_LIFETIME_PROPERTY, 30 * 60 * 1000));
+		pool.setLeakDetectionThreshold(Long.getLong(DB_LEAK_DETECTION_PROPERTY, 60 * 1000));
+		pool.setBorrowTimeout(Long.getLong(DB_BORROW_TIMEOUT_PROPERTY, 10 * 1000));
+		pool.setStatementCacheSize(Integer.getInteger(DB_STATEMENT_CACHE_PROPERTY, 64));
+		return pool;
+	}
+
 	/**
 	 * Checks if the server is currently running and listening for client
 	 * connections.
@@ -0,0 +1,246 @@
+package JDBC;
+
+import java.sql.Connection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Tests the running of the database operations on the threads of the
+ * asynchronous controller: an operation taking too long fails and its statement
+ * is cancelled on the database, a report given up is not saved, and the
+ * operations beyond the queue are refused. The pools have one connection each,
+ * so there are two threads.
+ * <p>
+ * Run with {@code java JDBC.AsyncDbControllerTest}; a failure throws an
+ * AssertionError.
+ */
+public class AsyncDbControllerTest {
+
+	/**
+	 * The longest time in milliseconds a test waits for an operation.
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private final FakeDatabase database = new FakeDatabase("primary");
+	private final ConnectionPool transactional = new ConnectionPool("transactional", database, 0, 1);
+	private final FakeDatabase reports = new FakeDatabase("analytical");
+	private final ConnectionPool analytical = new ConnectionPool("analytical", reports, 0, 1);
+	private final DbController db = new DbController(transactional, analytical);
+
+	/**
+	 * The controller tested, created by the test.
+	 */
+	private AsyncDbController async;
+
+	/**
+	 * Lets the blocking operations end.
+	 */
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	public static void main(String[] args) throws Exception {
+		run(AsyncDbControllerTest::slowOperationTimesOutAndIsCancelled);
+		run(AsyncDbControllerTest::abandonedReportIsNotSaved);
+		run(AsyncDbControllerTest::operationsBeyondTheQueueAreRejected);
+		run(AsyncDbControllerTest::cancelledWaitingOperationDoesNotRun);
+		System.out.println("AsyncDbControllerTest passed");
+	}
+
+	/**
+	 * An operation whose query hangs fails with a TimeoutException once its
+	 * timeout is over, and the query is cancelled on the database so that the
+	 * thread and the connection are freed.
+	 */
+	private void slowOperationTimesOutAndIsCancelled() throws Exception {
+		async = new AsyncDbController(db, 4, 300);
+		database.hang = true;
+		long start = System.currentTimeMillis();
+		Throwable failure = failure(async.call(db -> db.getRestaurantMenuFromDB("Pizza")));
+		long waited = System.currentTimeMillis() - start;
+		check(failure instanceof TimeoutException, "the operation to time out, got " + failure);
+		check(waited >= 300 && waited < TIMEOUT, "the operation to time out after 300 ms, took " + waited + " ms");
+
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (transactional.getActive() > 0 && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		check(transactional.getActive() == 0, "the connection of the cancelled operation to be returned");
+		check(cancelledQueries() == 1, "the query to be cancelled, got " + database.events);
+		check(async.getTimedOut() == 1 && async.getCompleted() == 0, "the timeout to be counted, got " + async);
+
+		database.hang = false;
+		async.call(db -> db.getRestaurantMenuFromDB("Pizza")).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		awaitCompleted(1);
+		check(cancelledQueries() == 1, "the next operation not to be cancelled");
+	}
+
+	/**
+	 * A report timing out while it waits for a connection gives up once it gets
+	 * one, and a report whose query is cancelled does not go on with the next
+	 * queries: neither is saved.
+	 */
+	private void abandonedReportIsNotSaved() throws Exception {
+		async = new AsyncDbController(db, 4, 300);
+		analytical.setBorrowTimeout(TIMEOUT);
+		Connection held = analytical.getConnection();
+		Throwable failure = failure(async.call(db -> db.getQuarterIncomeReport(1, "Q1")));
+		check(failure instanceof TimeoutException, "the report waiting for a connection to time out, got " + failure);
+		held.close();
+
+		reports.hang = true;
+		failure = failure(async.call(db -> db.IncomeReport(1, "3/2024", "North")));
+		check(failure instanceof TimeoutException, "the report whose query hangs to time out, got " + failure);
+
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while ((analytical.getActive() > 0 || analytical.getWaiting() > 0) && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		check(analytical.getActive() == 0, "the reports given up to return their connection");
+		sleep(100);
+		synchronized (reports.events) {
+			check(reports.events.stream().noneMatch(event -> event.startsWith("prepare INSERT")),
+					"the reports given up not to be saved, got " + reports.events);
+		}
+		check(async.getTimedOut() == 2, "both timeouts to be counted, got " + async);
+	}
+
+	/**
+	 * Once every thread is busy and the queue is full, an operation fails at once
+	 * with a RejectedExecutionException, and the waiting ones still run.
+	 */
+	private void operationsBeyondTheQueueAreRejected() throws Exception {
+		async = new AsyncDbController(db, 1, 0);
+		CountDownLatch running = new CountDownLatch(2);
+		CompletableFuture<?> first = async.call(blocking(running));
+		CompletableFuture<?> second = async.call(blocking(running));
+		check(running.await(TIMEOUT, TimeUnit.MILLISECONDS), "both threads to be busy");
+
+		CompletableFuture<?> waiting = async.call(blocking(new CountDownLatch(1)));
+		CompletableFuture<?> refused = async.call(blocking(new CountDownLatch(1)));
+		check(refused.isCompletedExceptionally(), "the operation beyond the queue to fail at once");
+		Throwable failure = failure(refused);
+		check(failure instanceof RejectedExecutionException, "the operation to be rejected, got " + failure);
+		check(async.getRejected() == 1, "the rejection to be counted, got " + async);
+
+		release.countDown();
+		for (CompletableFuture<?> future : new CompletableFuture<?>[] { first, second, waiting }) {
+			future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		}
+		awaitCompleted(3);
+	}
+
+	/**
+	 * An operation cancelled while it waits for a thread is never run.
+	 */
+	private void cancelledWaitingOperationDoesNotRun() throws Exception {
+		async = new AsyncDbController(db, 2, 0);
+		CountDownLatch running = new CountDownLatch(2);
+		CompletableFuture<?> first = async.call(blocking(running));
+		CompletableFuture<?> second = async.call(blocking(running));
+		check(running.await(TIMEOUT, TimeUnit.MILLISECONDS), "both threads to be busy");
+
+		AtomicInteger runs = new AtomicInteger();
+		CompletableFuture<?> cancelled = async.call(db -> runs.incrementAndGet());
+		cancelled.cancel(false);
+		CompletableFuture<?> next = async.call(db -> runs.addAndGet(10));
+
+		release.countDown();
+		first.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		next.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		check(runs.get() == 10, "the cancelled operation not to run, got " + runs);
+		check(async.getCancelled() == 1, "the cancellation to be counted, got " + async);
+	}
+
+	/**
+	 * @param running counted down once the operation runs
+	 * @return an operation blocking its thread until the test releases it
+	 */
+	private Function<DbController, Boolean> blocking(CountDownLatch running) {
+		return db -> {
+			running.countDown();
+			try {
+				return release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Waits until a number of operations are counted as completed, which happens
+	 * just after their future completes.
+	 *
+	 * @param count the number of operations
+	 */
+	private void awaitCompleted(long count) {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (async.getCompleted() < count && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		check(async.getCompleted() == count, count + " operations completed, got " + async);
+	}
+
+	/**
+	 * @return the number of queries cancelled on the database
+	 */
+	private int cancelledQueries() {
+		synchronized (database.events) {
+			return (int) database.events.stream().filter(event -> event.startsWith("cancel SELECT")).count();
+		}
+	}
+
+	/**
+	 * @param future the future result of an operation
+	 * @return why the operation failed, or null if it did not
+	 */
+	private static Throwable failure(CompletableFuture<?> future) throws Exception {
+		try {
+			future.get(TIMEOUT, TimeUnit.MILLISECONDS);
+			return null;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void run(Case test) throws Exception {
+		AsyncDbControllerTest instance = new AsyncDbControllerTest();
+		try {
+			test.run(instance);
+		} finally {
+			instance.release.countDown();
+			if (instance.async != null) {
+				instance.async.close();
+			}
+			instance.transactional.close();
+			instance.analytical.close();
+		}
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+
+	/**
+	 * A test, run on new pools.
+	 */
+	private interface Case {
+		void run(AsyncDbControllerTest test) throws Exception;
+	}
+}
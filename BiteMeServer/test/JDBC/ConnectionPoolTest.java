@@ -0,0 +1,221 @@
+package JDBC;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the lending of the connections of a pool of one connection: the
+ * borrowers wait up to the borrow timeout, are refused when too many wait, get
+ * back a connection rolled back, and get the connection they hold already.
+ * <p>
+ * Run with {@code java JDBC.ConnectionPoolTest}; a failure throws an
+ * AssertionError.
+ */
+public class ConnectionPoolTest {
+
+	/**
+	 * The longest time in milliseconds a test waits for another thread.
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private final FakeDatabase database = new FakeDatabase("pool");
+	private final ConnectionPool pool = new ConnectionPool("test", database, 0, 1);
+
+	public static void main(String[] args) throws Exception {
+		run(ConnectionPoolTest::borrowerTimesOut);
+		run(ConnectionPoolTest::waitingBorrowerGetsReturnedConnection);
+		run(ConnectionPoolTest::borrowerIsRefusedWhenTooManyWait);
+		run(ConnectionPoolTest::uncommittedWorkIsRolledBack);
+		run(ConnectionPoolTest::holderGetsItsConnection);
+		System.out.println("ConnectionPoolTest passed");
+	}
+
+	/**
+	 * A thread asking for a connection while the only one is lent gives up after
+	 * the borrow timeout.
+	 */
+	private void borrowerTimesOut() throws Exception {
+		pool.setBorrowTimeout(200);
+		Connection held = pool.getConnection();
+		try {
+			long start = System.currentTimeMillis();
+			String failure = failure(borrowElsewhere());
+			long waited = System.currentTimeMillis() - start;
+			check(failure != null && failure.startsWith("Timed out after 200 ms"),
+					"the borrower to time out, got " + failure);
+			check(waited >= 200 && waited < TIMEOUT, "the borrower to wait for the timeout, waited " + waited + " ms");
+		} finally {
+			held.close();
+		}
+		check(pool.getTotal() == 1 && database.count("open connection 1") == 1, "no connection opened for the borrower");
+	}
+
+	/**
+	 * A thread waiting for a connection gets the one returned, without another
+	 * being opened.
+	 */
+	private void waitingBorrowerGetsReturnedConnection() throws Exception {
+		pool.setBorrowTimeout(TIMEOUT);
+		Connection held = pool.getConnection();
+		CompletableFuture<Connection> borrowed;
+		try {
+			borrowed = borrowElsewhere();
+			awaitWaiting(1);
+		} finally {
+			held.close();
+		}
+		Connection conn = borrowed.get(TIMEOUT, TimeUnit.MILLISECONDS);
+		check(pool.getActive() == 1 && pool.getTotal() == 1, "the waiting borrower to get the connection returned");
+		conn.close();
+		check(pool.getIdle() == 1 && pool.getActive() == 0, "the connection to be returned");
+	}
+
+	/**
+	 * Once as many threads wait as the pool allows, the next one is refused at
+	 * once instead of waiting.
+	 */
+	private void borrowerIsRefusedWhenTooManyWait() throws Exception {
+		pool.setBorrowTimeout(TIMEOUT);
+		pool.setMaxWaiting(1);
+		Connection held = pool.getConnection();
+		CompletableFuture<Connection> waiter;
+		try {
+			waiter = borrowElsewhere();
+			awaitWaiting(1);
+
+			long start = System.currentTimeMillis();
+			String failure = failure(borrowElsewhere());
+			check(failure != null && failure.contains("saturated"), "the borrower to be refused, got " + failure);
+			check(System.currentTimeMillis() - start < TIMEOUT / 2, "the borrower to be refused without waiting");
+		} finally {
+			held.close();
+		}
+		waiter.get(TIMEOUT, TimeUnit.MILLISECONDS).close();
+		check(pool.getWaiting() == 0 && pool.getIdle() == 1, "the waiting borrower to be served");
+	}
+
+	/**
+	 * A connection returned in the middle of a transaction is rolled back and lent
+	 * again in auto-commit mode.
+	 */
+	private void uncommittedWorkIsRolledBack() throws SQLException {
+		try (Connection conn = pool.getConnection()) {
+			conn.setAutoCommit(false);
+			conn.prepareStatement("UPDATE dishes SET price = ?").executeUpdate();
+		}
+		check(database.count("rollback connection 1") == 1, "the uncommitted work to be rolled back");
+		check(database.count("commit connection 1") == 0, "the uncommitted work not to be committed");
+
+		try (Connection conn = pool.getConnection()) {
+			check(conn.getAutoCommit(), "the connection to be lent in auto-commit mode");
+		}
+		check(database.count("rollback connection 1") == 1, "a connection in auto-commit mode not to be rolled back");
+		check(database.count("close connection 1") == 0, "the connection to be kept");
+	}
+
+	/**
+	 * A thread asking for a connection while it holds one gets the same one, and
+	 * it is returned once every holder closed it.
+	 */
+	private void holderGetsItsConnection() throws SQLException {
+		Connection outer = pool.getConnection();
+		try (Connection inner = pool.getConnection()) {
+			check(inner == outer, "the holder to get its connection again");
+			check(pool.isHeldByCurrentThread(), "the connection to be held");
+		}
+		check(pool.getActive() == 1 && !outer.isClosed(), "the connection to be held until the outer holder closes it");
+		outer.prepareStatement("SELECT 1").close();
+
+		outer.close();
+		outer.close();
+		check(pool.getActive() == 0 && pool.getIdle() == 1 && !pool.isHeldByCurrentThread(),
+				"the connection to be returned once");
+		check(outer.isClosed(), "the returned connection to be closed");
+		try {
+			outer.prepareStatement("SELECT 1");
+			throw new AssertionError("Expected a returned connection to be refused");
+		} catch (SQLException e) {
+			// Expected
+		}
+		check(pool.getTotal() == 1, "a single connection to be opened");
+	}
+
+	/**
+	 * Borrows a connection from a new thread.
+	 *
+	 * @return the connection, once borrowed
+	 */
+	private CompletableFuture<Connection> borrowElsewhere() {
+		CompletableFuture<Connection> result = new CompletableFuture<>();
+		Thread borrower = new Thread(() -> {
+			try {
+				result.complete(pool.getConnection());
+			} catch (SQLException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		borrower.setDaemon(true);
+		borrower.start();
+		return result;
+	}
+
+	/**
+	 * @param borrowed a connection borrowed from another thread
+	 * @return the message of the SQLException the borrower got, or null if it got
+	 *         the connection
+	 */
+	private static String failure(CompletableFuture<Connection> borrowed) throws Exception {
+		try {
+			borrowed.get(TIMEOUT, TimeUnit.MILLISECONDS).close();
+			return null;
+		} catch (ExecutionException e) {
+			return e.getCause().getMessage();
+		}
+	}
+
+	/**
+	 * Waits until a number of threads wait for a connection.
+	 *
+	 * @param count the number of threads
+	 */
+	private void awaitWaiting(int count) {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (pool.getWaiting() < count && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		check(pool.getWaiting() == count, count + " threads waiting, got " + pool.getWaiting());
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void run(Case test) throws Exception {
+		ConnectionPoolTest instance = new ConnectionPoolTest();
+		try {
+			test.run(instance);
+		} finally {
+			instance.pool.close();
+		}
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+
+	/**
+	 * A test, run on a new pool.
+	 */
+	private interface Case {
+		void run(ConnectionPoolTest test) throws Exception;
+	}
+}
@@ -0,0 +1,137 @@
+package JDBC;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the split of the database operations between the two pools of the
+ * controller: the reports borrow from the analytical pool and the operations of
+ * the users from the transactional pool, so that reports waiting for a
+ * connection never hold up orders.
+ * <p>
+ * Run with {@code java JDBC.DbControllerTest}; a failure throws an
+ * AssertionError.
+ */
+public class DbControllerTest {
+
+	/**
+	 * The longest time in milliseconds a test waits for an operation.
+	 */
+	private static final long TIMEOUT = 10000;
+
+	private final FakeDatabase primary = new FakeDatabase("primary");
+	private final FakeDatabase reports = new FakeDatabase("reports");
+	private final ConnectionPool transactional = new ConnectionPool("transactional", primary, 0, 1);
+	private final ConnectionPool analytical = new ConnectionPool("analytical", reports, 0, 1);
+	private final DbController db = new DbController(transactional, analytical);
+
+	/**
+	 * Lets the holder of the analytical connection return it.
+	 */
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	public static void main(String[] args) throws Exception {
+		run(DbControllerTest::operationsUseTheirOwnPool);
+		run(DbControllerTest::waitingReportDoesNotHoldUpOrders);
+		System.out.println("DbControllerTest passed");
+	}
+
+	/**
+	 * A report runs on the analytical pool only, and a lookup of the users on the
+	 * transactional pool only. The operations close their statements, leaving
+	 * none for the pool to reclaim.
+	 */
+	private void operationsUseTheirOwnPool() {
+		check(Arrays.equals(db.performanceReport("3/2024", "North"), new int[4]), "an empty report");
+		check(primary.events.isEmpty(), "the report not to use the transactional pool, got " + primary.events);
+		check(reports.count("open connection 1") == 1, "the report to use the analytical pool");
+
+		int reportEvents = reports.events.size();
+		db.getRestaurantNamesFromDB();
+		check(primary.count("prepare SELECT RestaurantName FROM restaurants") == 1,
+				"the lookup to use the transactional pool, got " + primary.events);
+		check(reports.events.size() == reportEvents, "the lookup not to use the analytical pool");
+
+		db.updateLoginStatus(1, 1);
+		db.getCustomerStatus(1);
+		check(transactional.getReclaimedStatements() == 0 && analytical.getReclaimedStatements() == 0,
+				"the operations to close their statements themselves");
+	}
+
+	/**
+	 * While every analytical connection is lent and a report waits for one, the
+	 * operations of the users still get a transactional connection at once.
+	 */
+	private void waitingReportDoesNotHoldUpOrders() throws Exception {
+		analytical.setBorrowTimeout(TIMEOUT);
+		CountDownLatch held = new CountDownLatch(1);
+		Thread holder = new Thread(() -> {
+			try {
+				Connection conn = analytical.getConnection();
+				held.countDown();
+				release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+				conn.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		});
+		holder.setDaemon(true);
+		holder.start();
+		check(held.await(TIMEOUT, TimeUnit.MILLISECONDS), "the analytical connection to be lent");
+
+		CompletableFuture<int[]> report = new CompletableFuture<>();
+		Thread reporter = new Thread(() -> report.complete(db.performanceReport("3/2024", "North")));
+		reporter.setDaemon(true);
+		reporter.start();
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (analytical.getWaiting() == 0 && System.currentTimeMillis() < deadline) {
+			sleep(10);
+		}
+		check(analytical.getWaiting() == 1, "the report to wait for an analytical connection");
+
+		long start = System.currentTimeMillis();
+		db.getRestaurantNamesFromDB();
+		long took = System.currentTimeMillis() - start;
+		check(took < TIMEOUT / 2, "the lookup not to wait for the report, took " + took + " ms");
+		check(!report.isDone() && analytical.getWaiting() == 1, "the report to still wait");
+
+		release.countDown();
+		check(Arrays.equals(report.get(TIMEOUT, TimeUnit.MILLISECONDS), new int[4]),
+				"the report to run once the connection is returned");
+		check(transactional.getTotal() == 1 && analytical.getTotal() == 1, "one connection opened in each pool");
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void run(Case test) throws Exception {
+		DbControllerTest instance = new DbControllerTest();
+		try {
+			test.run(instance);
+		} finally {
+			instance.release.countDown();
+			instance.db.close();
+		}
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+
+	/**
+	 * A test, run on new pools.
+	 */
+	private interface Case {
+		void run(DbControllerTest test) throws Exception;
+	}
+}
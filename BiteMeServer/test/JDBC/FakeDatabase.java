@@ -0,0 +1,200 @@
+package JDBC;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The FakeDatabase class stands for a database in the tests of the pools: its
+ * connections and statements are proxies that record what is done to them.
+ * Every query returns the given number of rows, each column of which holds the
+ * given value. Queries can be made to hang until their statement is cancelled or
+ * their thread interrupted; cancelling a statement fails the query it runs, not
+ * the next ones.
+ */
+final class FakeDatabase extends SqlConnection {
+
+	/**
+	 * What was done to the connections and statements, in order.
+	 */
+	final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * The number of rows returned by a query.
+	 */
+	volatile int rows;
+
+	/**
+	 * The value of every column of the rows.
+	 */
+	volatile long value;
+
+	/**
+	 * Indicates that the queries hang until their statement is cancelled.
+	 */
+	volatile boolean hang;
+
+	/**
+	 * The number of connections opened.
+	 */
+	private int opened;
+
+	/**
+	 * Constructs a fake database.
+	 *
+	 * @param name the name of the database, for the events
+	 */
+	FakeDatabase(String name) {
+		super("jdbc:fake:" + name, "user", "password");
+	}
+
+	@Override
+	public synchronized Connection openConnection() throws SQLException {
+		String name = "connection " + ++opened;
+		events.add("open " + name);
+		boolean[] autoCommit = { true };
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "createStatement":
+						return statement(Statement.class, null);
+					case "prepareStatement":
+						events.add("prepare " + args[0]);
+						return statement(PreparedStatement.class, (String) args[0]);
+					case "getAutoCommit":
+						return autoCommit[0];
+					case "setAutoCommit":
+						autoCommit[0] = (Boolean) args[0];
+						return null;
+					case "commit":
+					case "rollback":
+					case "close":
+						events.add(method.getName() + " " + name);
+						return null;
+					case "isValid":
+						return true;
+					case "isClosed":
+						return false;
+					case "toString":
+						return name;
+					default:
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	/**
+	 * @param event the event
+	 * @return the number of times the event happened
+	 */
+	int count(String event) {
+		synchronized (events) {
+			return (int) events.stream().filter(event::equals).count();
+		}
+	}
+
+	/**
+	 * Creates a statement.
+	 *
+	 * @param type the interface of the statement
+	 * @param sql  the SQL text of a prepared statement, or null
+	 * @return the statement
+	 */
+	private Statement statement(Class<? extends Statement> type, String sql) {
+		AtomicReference<CountDownLatch> running = new AtomicReference<>(new CountDownLatch(1));
+		InvocationHandler handler = (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "executeQuery":
+				CountDownLatch cancelled = new CountDownLatch(1);
+				running.set(cancelled);
+				try {
+					if (hang && !cancelled.await(10, TimeUnit.SECONDS)) {
+						throw new SQLException("The query was never cancelled");
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Query execution was interrupted", e);
+				}
+				if (cancelled.getCount() == 0) {
+					throw new SQLException("Query execution was interrupted");
+				}
+				return resultSet();
+			case "executeUpdate":
+				return 1;
+			case "execute":
+				return true;
+			case "executeBatch":
+				return new int[0];
+			case "cancel":
+				events.add("cancel " + sql);
+				running.get().countDown();
+				return null;
+			case "close":
+				events.add("close " + sql);
+				return null;
+			case "toString":
+				return "statement " + sql;
+			default:
+				return defaultValue(method.getReturnType());
+			}
+		};
+		return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	/**
+	 * @return the result of a query
+	 */
+	private ResultSet resultSet() {
+		int[] left = { rows };
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+				new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "next":
+						return left[0]-- > 0;
+					case "getInt":
+						return (int) value;
+					case "getLong":
+						return value;
+					case "getString":
+						return String.valueOf(value);
+					case "getMetaData":
+						return Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+								new Class<?>[] { ResultSetMetaData.class },
+								(meta, column, index) -> column.getName().equals("getColumnCount") ? 1 : "value");
+					default:
+						return defaultValue(method.getReturnType());
+					}
+				});
+	}
+
+	/**
+	 * @param type the return type of a method
+	 * @return what a method doing nothing returns
+	 */
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == double.class) {
+			return 0.0;
+		}
+		return null;
+	}
+}
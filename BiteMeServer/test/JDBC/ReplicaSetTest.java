@@ -0,0 +1,161 @@
+package JDBC;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import entites.Price;
+
+/**
+ * Tests the routing of the reads between the replicas and the primary. The lag
+ * of the replicas is faked with the lag probe.
+ * <p>
+ * Run with {@code java JDBC.ReplicaSetTest}; a failure throws an
+ * AssertionError.
+ */
+public class ReplicaSetTest {
+
+	/**
+	 * The maximum lag of the replicas in the tests, in milliseconds.
+	 */
+	private static final long MAX_LAG = 5000;
+
+	/**
+	 * The lag of the replica in seconds as the probe reports it, -1 if it is not
+	 * known.
+	 */
+	private volatile long lag;
+
+	private final ConnectionPool primary = new ConnectionPool("primary", new FakeDatabase("primary"), 0, 2);
+	private final ConnectionPool analytical = new ConnectionPool("analytical", new FakeDatabase("analytical"), 0, 2);
+	private final ConnectionPool replica = new ConnectionPool("replica", new FakeDatabase("replica"), 0, 2);
+	private final ReplicaSet replicas = new ReplicaSet(Arrays.asList(replica), pool -> lag, MAX_LAG);
+
+	public static void main(String[] args) throws Exception {
+		run(ReplicaSetTest::caughtUpReplicaServesReads);
+		run(laggingReplicaIsSkipped(10));
+		run(laggingReplicaIsSkipped(-1));
+		run(ReplicaSetTest::heldPrimaryServesReads);
+		run(ReplicaSetTest::menuChangeIsReadFromPrimary);
+		run(ReplicaSetTest::maxLagBelowResolutionIsRefused);
+		System.out.println("ReplicaSetTest passed");
+	}
+
+	/**
+	 * A replica no more behind than the maximum lag serves the reads.
+	 */
+	private void caughtUpReplicaServesReads() throws SQLException {
+		setLag(0);
+		Connection conn = replicas.getConnection(primary, 0);
+		check(replica.getActive() == 1 && primary.getActive() == 0, "a caught up replica serves the read");
+		conn.close();
+		check(replicas.getReplicaReads() == 1 && replicas.getPrimaryReads() == 0, "the read is counted");
+	}
+
+	/**
+	 * Returns the test of a replica that is behind or not replicating.
+	 *
+	 * @param lag the lag in seconds, -1 for a replica whose lag is NULL
+	 * @return the test
+	 */
+	private static Case laggingReplicaIsSkipped(long lag) {
+		return test -> {
+			test.setLag(lag);
+			Connection conn = test.replicas.getConnection(test.primary, 0);
+			check(test.replica.getActive() == 0 && test.primary.getActive() == 1,
+					"a replica " + lag + " s behind is skipped");
+			conn.close();
+			check(test.replicas.getPrimaryReads() == 1, "the read is counted");
+		};
+	}
+
+	/**
+	 * A thread holding a connection to the primary reads from it, so that it sees
+	 * its own writes.
+	 */
+	private void heldPrimaryServesReads() throws SQLException {
+		setLag(0);
+		Connection held = primary.getConnection();
+		Connection conn = replicas.getConnection(primary, 0);
+		check(replica.getActive() == 0 && primary.getTotal() == 1, "the held primary serves the read");
+		conn.close();
+		held.close();
+	}
+
+	/**
+	 * The menus are read from the primary after a change, until the replica holds
+	 * the change.
+	 */
+	private void menuChangeIsReadFromPrimary() throws SQLException {
+		setLag(0);
+		DbController db = new DbController(primary, analytical, replicas);
+		db.getRestaurantMenuFromDB("Pizza");
+		check(replicas.getReplicaReads() == 1, "the menu is read from the replica");
+
+		db.updateDishPrice(new Price(1, "Small", 40));
+		db.getRestaurantMenuFromDB("Pizza");
+		check(replicas.getPrimaryReads() == 1, "the changed menu is read from the primary");
+
+		// A replica 0 s behind holds the writes older than a second
+		sleep(1100);
+		setLag(0);
+		db.getRestaurantMenuFromDB("Pizza");
+		check(replicas.getReplicaReads() == 2, "the menu is read from the replica once it caught up");
+	}
+
+	/**
+	 * A maximum lag shorter than a second is refused: the lag is measured in whole
+	 * seconds, so no replica would ever be recent enough.
+	 */
+	private void maxLagBelowResolutionIsRefused() {
+		try {
+			new ReplicaSet(Arrays.asList(replica), pool -> lag, 999).close();
+			check(false, "a maximum lag of 999 ms to be refused");
+		} catch (IllegalArgumentException e) {
+			check(e.getMessage().contains("at least 1000 ms"), "the message to give the limit, got " + e.getMessage());
+		}
+		new ReplicaSet(Arrays.asList(replica), pool -> lag, 1000).close();
+	}
+
+	/**
+	 * Sets the lag of the replica and measures it.
+	 *
+	 * @param lag the lag in seconds, -1 if it is not known
+	 */
+	private void setLag(long lag) {
+		this.lag = lag;
+		replicas.checkLag();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void run(Case test) throws Exception {
+		ReplicaSetTest instance = new ReplicaSetTest();
+		try {
+			test.run(instance);
+		} finally {
+			instance.replicas.close();
+			instance.primary.close();
+			instance.analytical.close();
+		}
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+
+	/**
+	 * A test, run on a new replica set.
+	 */
+	private interface Case {
+		void run(ReplicaSetTest test) throws Exception;
+	}
+}
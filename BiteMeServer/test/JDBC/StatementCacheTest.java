@@ -0,0 +1,168 @@
+package JDBC;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tests the caching of the prepared statements of the connections of a pool: the
+ * least recently used statement is evicted, a statement in use is not handed
+ * out twice, and the statements left open are reclaimed when the connection is
+ * returned.
+ * <p>
+ * Run with {@code java JDBC.StatementCacheTest}; a failure throws an
+ * AssertionError.
+ */
+public class StatementCacheTest {
+
+	private static final String A = "SELECT a FROM dishes", B = "SELECT b FROM dishes", C = "SELECT c FROM dishes";
+
+	private final FakeDatabase database = new FakeDatabase("statements");
+	private final ConnectionPool pool = new ConnectionPool("test", database, 0, 1);
+
+	public static void main(String[] args) throws Exception {
+		run(StatementCacheTest::leastRecentlyUsedIsEvicted);
+		run(StatementCacheTest::statementInUseIsNotShared);
+		run(StatementCacheTest::evictedStatementInUseIsClosedOnRelease);
+		run(StatementCacheTest::openStatementsAreReclaimed);
+		System.out.println("StatementCacheTest passed");
+	}
+
+	/**
+	 * A full cache closes the statement used least recently to make room, and
+	 * keeps the others for the next leases.
+	 */
+	private void leastRecentlyUsedIsEvicted() throws SQLException {
+		pool.setStatementCacheSize(2);
+		try (Connection conn = pool.getConnection()) {
+			prepareAndClose(conn, A);
+			prepareAndClose(conn, B);
+			prepareAndClose(conn, A);
+			prepareAndClose(conn, C);
+		}
+		check(database.count("close " + B) == 1, "the least recently used statement to be closed");
+		check(database.count("close " + A) == 0 && database.count("close " + C) == 0,
+				"the other statements to be kept");
+		check(pool.getStatementEvictions() == 1, "one eviction, got " + pool.getStatementEvictions());
+
+		try (Connection conn = pool.getConnection()) {
+			prepareAndClose(conn, A);
+			prepareAndClose(conn, C);
+		}
+		check(database.count("prepare " + A) == 1 && database.count("prepare " + C) == 1,
+				"the cached statements to be reused by the next lease");
+		check(pool.getStatementHits() == 3 && pool.getStatementMisses() == 3,
+				"3 hits and 3 misses, got " + pool.getStatementHits() + " and " + pool.getStatementMisses());
+	}
+
+	/**
+	 * A statement prepared again while it is open is prepared anew, and the copy
+	 * is closed with its proxy instead of taking the place of the cached one.
+	 */
+	private void statementInUseIsNotShared() throws SQLException {
+		pool.setStatementCacheSize(2);
+		try (Connection conn = pool.getConnection()) {
+			PreparedStatement outer = conn.prepareStatement(A);
+			PreparedStatement inner = conn.prepareStatement(A);
+			check(inner != outer, "a statement in use not to be handed out again");
+			check(database.count("prepare " + A) == 2, "the statement to be prepared again");
+
+			inner.close();
+			check(database.count("close " + A) == 1, "the copy to be closed");
+			check(!outer.isClosed(), "the statement in use to stay open");
+			outer.executeQuery().close();
+			outer.close();
+
+			prepareAndClose(conn, A);
+		}
+		check(database.count("prepare " + A) == 2 && database.count("close " + A) == 1,
+				"the cached statement to be reused once closed");
+	}
+
+	/**
+	 * A statement evicted while it is in use is closed once its holder closes it,
+	 * not before.
+	 */
+	private void evictedStatementInUseIsClosedOnRelease() throws SQLException {
+		pool.setStatementCacheSize(1);
+		try (Connection conn = pool.getConnection()) {
+			PreparedStatement held = conn.prepareStatement(A);
+			prepareAndClose(conn, B);
+			check(pool.getStatementEvictions() == 1, "the statement in use to be evicted");
+			check(database.count("close " + A) == 0, "the statement in use to stay open");
+			held.executeQuery().close();
+
+			held.close();
+			check(database.count("close " + A) == 1, "the evicted statement to be closed once released");
+			prepareAndClose(conn, A);
+		}
+		check(database.count("prepare " + A) == 2, "the evicted statement to be prepared again");
+	}
+
+	/**
+	 * The statements and result sets left open by the holder of a connection are
+	 * closed when it is returned; the cached statements go back to the cache.
+	 */
+	private void openStatementsAreReclaimed() throws SQLException {
+		pool.setStatementCacheSize(2);
+		database.rows = 3;
+		PreparedStatement prepared;
+		Statement plain;
+		try (Connection conn = pool.getConnection()) {
+			prepared = conn.prepareStatement(A);
+			prepared.executeQuery();
+			plain = conn.createStatement();
+			plain.executeQuery(B);
+			check(pool.getOpenCursors() == 2, "2 open cursors, got " + pool.getOpenCursors());
+		}
+		check(pool.getReclaimedStatements() == 2, "2 reclaimed statements, got " + pool.getReclaimedStatements());
+		check(pool.getOpenCursors() == 0, "the cursors to be closed, got " + pool.getOpenCursors());
+		check(prepared.isClosed() && plain.isClosed(), "the statements of the holder to be closed");
+		check(database.count("close null") == 1, "the plain statement to be closed");
+		check(database.count("close " + A) == 0, "the cached statement to be kept");
+		try {
+			prepared.executeQuery();
+			throw new AssertionError("Expected a reclaimed statement to be refused");
+		} catch (SQLException e) {
+			// Expected
+		}
+
+		try (Connection conn = pool.getConnection()) {
+			prepareAndClose(conn, A);
+		}
+		check(database.count("prepare " + A) == 1, "the reclaimed statement to be reused");
+		check(pool.getReclaimedStatements() == 2, "a closed statement not to be reclaimed");
+	}
+
+	private static void prepareAndClose(Connection conn, String sql) throws SQLException {
+		try (PreparedStatement stmt = conn.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
+			while (rs.next()) {
+				rs.getLong(1);
+			}
+		}
+	}
+
+	private static void run(Case test) throws Exception {
+		StatementCacheTest instance = new StatementCacheTest();
+		try {
+			test.run(instance);
+		} finally {
+			instance.pool.close();
+		}
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+
+	/**
+	 * A test, run on a new pool.
+	 */
+	private interface Case {
+		void run(StatementCacheTest test) throws Exception;
+	}
+}
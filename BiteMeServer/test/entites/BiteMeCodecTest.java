@@ -0,0 +1,229 @@
+package entites;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import enums.Commands;
+import ocsf.common.Heartbeat;
+import ocsf.common.Session;
+
+/**
+ * Tests that every payload shape the client and the server exchange comes out
+ * of the binary codec as it went in, field by field, and that the values the
+ * codec does not know are serialized instead.
+ * <p>
+ * Run with {@code java entites.BiteMeCodecTest}; a failure throws an
+ * AssertionError.
+ */
+public class BiteMeCodecTest {
+
+	private static final BiteMeCodec CODEC = new BiteMeCodec();
+
+	public static void main(String[] args) throws Exception {
+		roundTripsTheBasicValues();
+		roundTripsTheCollections();
+		roundTripsTheBiteMeTypes();
+		roundTripsTheMessagesOfTheCommands();
+		serializesTheOtherValues();
+		System.out.println("BiteMeCodecTest passed");
+	}
+
+	private static void roundTripsTheBasicValues() throws Exception {
+		char[] longText = new char[70000];
+		Arrays.fill(longText, 'x');
+		for (Object value : new Object[] { null, "", "Pizza \u05e4\u05d9\u05e6\u05d4", new String(longText), 0, -1,
+				Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MIN_VALUE, 3.5, Double.NaN, true, false, Heartbeat.PING,
+				Heartbeat.PONG, new Session("token", true) }) {
+			checkRoundTrip(value);
+		}
+	}
+
+	private static void roundTripsTheCollections() throws Exception {
+		checkRoundTrip(new int[] { 0, -7, 300, Integer.MIN_VALUE });
+		checkRoundTrip(new String[] { "Q1", null, "Q1", "" });
+		checkRoundTrip(new Object[] { 5, new String[] { "0-1", "1-2" }, new int[] { 3, 4 } });
+
+		ArrayList<Object> list = new ArrayList<>(Arrays.asList("North", 2, null, new int[] { 1 }));
+		checkRoundTrip(list);
+
+		HashMap<String, Object> dish = new HashMap<>();
+		dish.put("dishName", "Salad");
+		dish.put("dishPrice", 42);
+		dish.put("options", new ArrayList<>(Arrays.asList("Small", "Large")));
+		checkRoundTrip(dish);
+
+		LinkedHashMap<String, Object> menu = new LinkedHashMap<>();
+		for (int i = 20; i > 0; i--) {
+			menu.put("dish " + i, dish);
+		}
+		checkRoundTrip(menu);
+	}
+
+	private static void roundTripsTheBiteMeTypes() throws Exception {
+		checkRoundTrip(new User(7, "dana", "1234", "Dana", "Levi", "dana@biteme.com", "0501234567", "customer", 1,
+				"North"));
+		checkRoundTrip(new User(8, null, null, null, null, null, null, null, 0, null));
+		checkRoundTrip(new Customer(12, 7, -30, true, "active"));
+		checkRoundTrip(new Order(100, 12, "Pizza", Order.OrderStatus.READY, Order.DelieveredOnTime.NO, 95,
+				"2024-12-01 12:00:00", "2024-12-01 13:00:00", 1));
+		checkRoundTrip(new Order(101, 12, null, null, null, 0, null, null, 0));
+
+		RestaurantOrder order = new RestaurantOrder(100, 12, "2024-12-01 12:00:00", "Salad", 2, 1, "pending");
+		order.setSize("Large");
+		order.setSpecification("No onions");
+		checkRoundTrip(order);
+	}
+
+	private static void roundTripsTheMessagesOfTheCommands() throws Exception {
+		ArrayList<RestaurantOrder> orders = new ArrayList<>();
+		orders.add(new RestaurantOrder(1, 2, "2024-12-01 12:00:00", "Salad", 1, 0, "pending"));
+		orders.add(new RestaurantOrder(1, 2, "2024-12-01 12:00:00", "Soup", 3, 0, "pending"));
+
+		Object[] payloads = { null, "dana", new User("dana", "1234"), orders, new int[] { 1, 2, 3, 4 },
+				new Object[] { 12, new String[10], new int[10] } };
+		for (Commands command : Commands.values()) {
+			for (Object payload : payloads) {
+				checkRoundTrip(new Message(payload, command));
+			}
+		}
+
+		Message request = new Message("North", Commands.OrderReport);
+		request.setRequestId(123456);
+		checkRoundTrip(request);
+		checkRoundTrip(new Message("no command", null));
+	}
+
+	private static void serializesTheOtherValues() throws Exception {
+		checkRoundTrip(new Price(3, "Small", 40));
+		checkRoundTrip(new Timestamp(1733054400000L));
+		ArrayList<Price> prices = new ArrayList<>(Arrays.asList(new Price(3, "Small", 40), new Price(3, "Large", 55)));
+		checkRoundTrip(new Message(prices, Commands.AddDish));
+
+		try {
+			encode(new Object());
+			throw new AssertionError("Expected a value that cannot be serialized to be refused");
+		} catch (NotSerializableException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Encodes and decodes a value, and checks that the copy holds the same data.
+	 *
+	 * @param value the value
+	 */
+	private static void checkRoundTrip(Object value) throws Exception {
+		byte[] bytes = encode(value);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		Object copy = CODEC.decode(in);
+		checkSame(value, copy, describe(value));
+		try {
+			in.readByte();
+			throw new AssertionError("Expected " + describe(value) + " to be read to the end");
+		} catch (EOFException e) {
+			// Expected
+		}
+	}
+
+	private static byte[] encode(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CODEC.encode(value, new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Checks that two values hold the same data: equal values, arrays and
+	 * collections of the same data, or objects of the same class whose fields hold
+	 * the same data.
+	 *
+	 * @param expected the value encoded
+	 * @param actual   the value decoded
+	 * @param path     where the values are, for the message
+	 */
+	private static void checkSame(Object expected, Object actual, String path) throws IllegalAccessException {
+		if (expected == null || actual == null) {
+			check(expected == actual, path + " to be " + expected + ", got " + actual);
+			return;
+		}
+		check(expected.getClass() == actual.getClass(),
+				path + " to be a " + expected.getClass().getName() + ", got a " + actual.getClass().getName());
+
+		if (expected.getClass().isArray()) {
+			check(Array.getLength(expected) == Array.getLength(actual), path + " to keep its length");
+			for (int i = 0; i < Array.getLength(expected); i++) {
+				checkSame(Array.get(expected, i), Array.get(actual, i), path + "[" + i + "]");
+			}
+		} else if (expected instanceof Collection) {
+			checkSameElements(((Collection<?>) expected).iterator(), ((Collection<?>) actual).iterator(), path);
+		} else if (expected instanceof LinkedHashMap) {
+			// The order of the entries is kept too
+			checkSameElements(((Map<?, ?>) expected).keySet().iterator(), ((Map<?, ?>) actual).keySet().iterator(),
+					path + " keys");
+			checkSameElements(((Map<?, ?>) expected).values().iterator(), ((Map<?, ?>) actual).values().iterator(),
+					path);
+		} else if (expected instanceof Map) {
+			check(((Map<?, ?>) expected).size() == ((Map<?, ?>) actual).size(), path + " to keep its size");
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) expected).entrySet()) {
+				checkSame(entry.getValue(), ((Map<?, ?>) actual).get(entry.getKey()), path + "[" + entry.getKey() + "]");
+			}
+		} else if (isDataClass(expected.getClass())) {
+			for (Field field : expected.getClass().getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				field.setAccessible(true);
+				checkSame(field.get(expected), field.get(actual), path + "." + field.getName());
+			}
+		} else {
+			check(expected.equals(actual), path + " to be " + expected + ", got " + actual);
+		}
+	}
+
+	private static void checkSameElements(Iterator<?> expected, Iterator<?> actual, String path)
+			throws IllegalAccessException {
+		for (int i = 0; expected.hasNext(); i++) {
+			check(actual.hasNext(), path + " to keep element " + i);
+			checkSame(expected.next(), actual.next(), path + "[" + i + "]");
+		}
+		check(!actual.hasNext(), path + " to get no extra element");
+	}
+
+	/**
+	 * @param type a class
+	 * @return true if the class is one of the messages, compared field by field
+	 */
+	private static boolean isDataClass(Class<?> type) {
+		return type.getPackage() == BiteMeCodecTest.class.getPackage() || type == Session.class;
+	}
+
+	private static String describe(Object value) {
+		if (value instanceof Message) {
+			Object payload = ((Message) value).getObj();
+			return "a " + ((Message) value).getCmd() + " message of "
+					+ (payload == null ? "null" : payload.getClass().getSimpleName());
+		}
+		return value == null ? "null" : "a " + value.getClass().getSimpleName();
+	}
+
+	private static void check(boolean condition, String expected) {
+		if (!condition) {
+			throw new AssertionError("Expected " + expected);
+		}
+	}
+}
@@ -1 +1 @@
-// This file contains material supporting section 3.7 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.com package ocsf.client;import java.io.*;import java.net.*;import java.util.*;/*** The <code> AbstractClient </code> contains all the* methods necessary to set up the client side of a client-server* architecture.  When a client is thus connected to the* server, the two programs can then exchange <code> Object </code>* instances.<p>** Method <code> handleMessageFromServer </code> must be defined by* a concrete subclass. Several other hook methods may also be* overriden.<p>** Several public service methods are provided to* application that use this framework.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @author Dr. Robert Lagani&egrave;re* @author Dr. Timothy C. Lethbridge* @author Fran&ccedil;ois  B&eacutel;langer* @author Paul Holden* @version February 2001 (2.12)*/public abstract class AbstractClient implements Runnable{// INSTANCE VARIABLES ***********************************************  /**  * Sockets are used in the operating system as channels  * of communication between two processes.  * @see java.net.Socket  */  private Socket clientSocket;  /**  * The stream to handle data going to the server.  */  private ObjectOutputStream output;  /**  * The stream to handle data from the server.  */  private ObjectInputStream input;  /**  * The thread created to read data from the server.  */  private Thread clientReader;  /**  * Indicates if the thread is ready to stop.  * Needed so that the loop in the run method knows when to stop  * waiting for incoming messages.  */  private boolean readyToStop= false;  /**  * The server's host name.  */  private String host;  /**  * The port number.  */  private int port;// CONSTRUCTORS *****************************************************  /**   * Constructs the client.   *   * @param  host  the server's host name.   * @param  port  the port number.   */  public AbstractClient(String host, int port)  {    // Initialize variables    this.host = host;    this.port = port;  }// INSTANCE METHODS *************************************************  /**   * Opens the connection with the server.   * If the connection is already opened, this call has no effect.   *   * @exception IOException if an I/O error occurs when opening.   */  final public void openConnection() throws IOException  {    // Do not do anything if the connection is already open    if(isConnected())      return;    //Create the sockets and the data streams    try    {      clientSocket= new Socket(host, port);      output = new ObjectOutputStream(clientSocket.getOutputStream());      input = new ObjectInputStream(clientSocket.getInputStream());    }    catch (IOException ex)    // All three of the above must be closed when there is a failure    // to create any of them    {      try      {        closeAll();      }      catch (Exception exc) { }      throw ex; // Rethrow the exception.    }    clientReader = new Thread(this);  //Create the data reader thread    readyToStop = false;    clientReader.start();  //Start the thread  }  /**   * Sends an object to the server. This is the only way that   * methods should communicate with the server.   *   * @param msg   The message to be sent.   * @exception IOException if an I/O error occurs when sending   */  final public void sendToServer(Object msg) throws IOException  {    if (clientSocket == null || output == null)      throw new SocketException("socket does not exist");    output.writeObject(msg);    output.reset();  }  /**   * Closes the connection to the server.   *   * @exception IOException if an I/O error occurs when closing.   */  final public void closeConnection() throws IOException  {    // Prevent the thread from looping any more    readyToStop= true;    try    {      closeAll();    }    finally    {      // Call the hook method      connectionClosed();    }  }// ACCESSING METHODS ------------------------------------------------  /**   * @return true if the client is connnected.   */  final public boolean isConnected()  {    return clientReader!=null && clientReader.isAlive();  }  /**   * @return the port number.   */  final public int getPort()  {    return port;  }  /**   * Sets the server port number for the next connection.   * The change in port only takes effect at the time of the   * next call to openConnection().   *   * @param port the port number.   */  final public void setPort(int port)  {    this.port = port;  }  /**   * @return the host name.   */  final public String getHost()  {    return host;  }  /**   * Sets the server host for the next connection.   * The change in host only takes effect at the time of the   * next call to openConnection().   *   * @param host the host name.   */  final public void setHost(String host)  {    this.host = host;  }  /**   * returns the client's description.   *   * @return the client's Inet address.   */  final public InetAddress getInetAddress()  {    return clientSocket.getInetAddress();  }// RUN METHOD -------------------------------------------------------  /**   * Waits for messages from the server. When each arrives,   * a call is made to <code>handleMessageFromServer()</code>.   * Not to be explicitly called.   */  final public void run()  {    connectionEstablished();    // The message from the server    Object msg;    // Loop waiting for data    try    {      while(!readyToStop)      {        // Get data from Server and send it to the handler        // The thread waits indefinitely at the following        // statement until something is received from the server        msg = input.readObject();        // Concrete subclasses do what they want with the        // msg by implementing the following method        handleMessageFromServer(msg);      }    }    catch (Exception exception)    {      if(!readyToStop)      {        try        {          closeAll();        }        catch (Exception ex) { }        connectionException(exception);      }    }    finally    {      clientReader = null;    }  }// METHODS DESIGNED TO BE OVERRIDDEN BY CONCRETE SUBCLASSES ---------  /**   * Hook method called after the connection has been closed.   * The default implementation does nothing. The method   * may be overriden by subclasses to perform special processing   * such as cleaning up and terminating, or attempting to   * reconnect.   */  protected void connectionClosed() {}  /**   * Hook method called each time an exception is thrown by the   * client's thread that is waiting for messages from the server.   * The method may be overridden by subclasses.   *   * @param exception the exception raised.   */  protected void connectionException(Exception exception) {}  /**   * Hook method called after a connection has been established.   * The default implementation does nothing.   * It may be overridden by subclasses to do anything they wish.   */  protected void connectionEstablished() {}  /**   * Handles a message sent from the server to this client.   * This MUST be implemented by subclasses, who should respond to   * messages.   *   * @param msg   the message sent.   */  protected abstract void handleMessageFromServer(Object msg);// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------  /**   * Closes all aspects of the connection to the server.   *   * @exception IOException if an I/O error occurs when closing.   */  private void closeAll() throws IOException  {    try    {      //Close the socket      if (clientSocket != null)        clientSocket.close();      //Close the output stream      if (output != null)        output.close();      //Close the input stream      if (input != null)        input.close();    }    finally    {      // Set the streams and the sockets to NULL no matter what      // Doing so allows, but does not require, any finalizers      // of these objects to reclaim system resources if and      // when they are garbage collected.      output = null;      input = null;      clientSocket = null;    }  }}// end of AbstractClient class
\ No newline at end of file
+// This file contains material supporting section 3.7 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.com package ocsf.client;import java.io.*;import java.net.*;import java.nio.channels.SocketChannel;import java.util.*;import java.util.concurrent.*;import java.util.concurrent.atomic.AtomicInteger;import java.util.function.BiConsumer;import ocsf.common.CompressionStats;import ocsf.common.Correlated;import ocsf.common.FrameCompressor;import ocsf.common.Framing;import ocsf.common.Heartbeat;import ocsf.common.MessageCodec;import ocsf.common.Session;import ocsf.common.UnixSockets;import ocsf.common.VirtualThreads;/*** The <code> AbstractClient </code> contains all the* methods necessary to set up the client side of a client-server* architecture.  When a client is thus connected to the* server, the two programs can then exchange <code> Object </code>* instances.<p>** Method <code> handleMessageFromServer </code> must be defined by* a concrete subclass. Several other hook methods may also be* overriden.<p>** Several public service methods are provided to* application that use this framework.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @author Dr. Robert Lagani&egrave;re* @author Dr. Timothy C. Lethbridge* @author Fran&ccedil;ois  B&eacutel;langer* @author Paul Holden* @version February 2001 (2.12)*/public abstract class AbstractClient implements Runnable{// INSTANCE VARIABLES ***********************************************  /**  * Sockets are used in the operating system as channels  * of communication between two processes.  * @see java.net.Socket  */  private Socket clientSocket;  /**  * The channel to the server when connected through a Unix domain  * socket, in place of <code>clientSocket</code>.  */  private SocketChannel localChannel;  /**  * The stream to handle data going to the server.  */  private ObjectOutputStream output;  /**  * The stream to handle data from the server.  */  private ObjectInputStream input;  /**  * The codec offered to the server when connecting, or null.  */  private MessageCodec messageCodec;  /**  * The codec agreed on with the server, or null if objects are  * exchanged with the object streams.  */  private MessageCodec codec;  /**  * The stream to write frames to the server when a codec is used.  */  private DataOutputStream frameOutput;  /**  * The stream to read frames from the server when a codec is used.  */  private DataInputStream frameInput;  /**  * The length of the smallest frame compressed, offered to the server  * with the codec, or 0 to never compress.  */  private int compressionThreshold = 0;  /**  * Compresses the frames exchanged with the server, or null if  * compression was not agreed on.  */  private FrameCompressor compressor;  /**  * The statistics of the frames compressed and inflated.  */  private final CompressionStats compressionStats = new CompressionStats();  /**  * The thread created to read data from the server.  */  private Thread clientReader;  /**  * Indicates if the thread is ready to stop.  * Needed so that the loop in the run method knows when to stop  * waiting for incoming messages.  */  private boolean readyToStop= false;  /**  * The server's host name.  */  private String host;  /**  * The port number.  */  private int port;  /**  * The path of the Unix domain socket of the server, or null to  * connect to the host and port.  */  private String unixSocketPath;  /**  * Indicates if the data reader runs on a virtual thread.  */  private boolean virtualThreads = false;  /**  * Lock held while a message is written, since requests may be sent  * by several threads at once.  */  private final Object outputLock = new Object();  /**  * The handlers of the requests waiting for their reply, by id.  */  private final Map<Integer, ResponseHandler> pendingRequests =    new ConcurrentHashMap<Integer, ResponseHandler>();  /**  * The id given to the last request sent.  */  private final AtomicInteger lastRequestId = new AtomicInteger();  /**  * The time in milliseconds a request made with <code>request</code>  * waits for its reply, or 0 to wait until the connection closes.  */  private volatile long requestTimeout = 30000;  /**  * The thread sending the requests made with <code>request</code> and  * timing them out, created with the first such request.  */  private ScheduledThreadPoolExecutor requestExecutor;  /**  * The time in milliseconds without sending anything after which a  * heartbeat is sent, or 0 to send none.  */  private volatile int heartbeatInterval = 0;  /**  * Sends the heartbeats of the current connection, or null.  */  private ScheduledFuture<?> heartbeatTask;  /**  * The time in milliseconds of the last message sent to the server.  */  private volatile long lastSent;  /**  * The time in milliseconds of the last message received from the  * server.  */  private volatile long lastReceived;  /**  * The reason the client closed the connection by itself, reported in  * place of the exception of the data reader, or null.  */  private volatile IOException closeCause;  /**  * The number of messages that may wait to be written by the writer  * thread, or 0 to write each message on the thread sending it. Set  * to 0 by default.  */  private volatile int outboundCapacity = 0;  /**  * Writes the messages to the server on a thread of its own, or null  * if they are written by the thread sending them.  */  private volatile ClientWriter writer;  /**  * Indicates if the client reconnects by itself when the connection  * is lost. Set to false by default.  */  private volatile boolean autoReconnect = false;  /**  * The time in milliseconds before the first attempt to reconnect.  */  private volatile int reconnectInitialDelay = 500;  /**  * The longest time in milliseconds between two attempts to  * reconnect.  */  private volatile int reconnectMaxDelay = 30000;  /**  * The shortest time in milliseconds before the next attempt to  * reconnect, as asked by the server, or 0.  */  private volatile long reconnectHint;  /**  * The thread reconnecting to the server, or null.  */  private Thread reconnector;  /**  * Indicates that the connection opened by the reconnecting thread  * was lost before the thread finished.  */  private boolean reconnectAgain;  /**  * The token of the session given by the server, presented to resume  * the session after reconnecting, or null.  */  private volatile String sessionToken;// CLASS VARIABLES **************************************************  /**  * The number of heartbeat intervals without any message from the  * server after which the connection is considered dead.  */  private static final int HEARTBEAT_MISSES = 3;  /**  * The time in milliseconds a connection closed by the client waits  * for the writer thread to write the messages still queued.  */  private static final long CLOSE_DRAIN_TIMEOUT = 2000;  /**  * Spreads the attempts to reconnect of the clients of a server that  * went away, so that they do not all come back at once.  */  private static final Random JITTER = new Random();// CONSTRUCTORS *****************************************************  /**   * Constructs the client.   *   * @param  host  the server's host name.   * @param  port  the port number.   */  public AbstractClient(String host, int port)  {    // Initialize variables    this.host = host;    this.port = port;  }// INSTANCE METHODS *************************************************  /**   * Opens the connection with the server.   * If the connection is already opened, this call has no effect.   *   * @exception IOException if an I/O error occurs when opening.   */  final public void openConnection() throws IOException  {    // Do not do anything if the connection is already open    if(isConnected())      return;    //Create the sockets and the data streams    try    {      connect();      if (!negotiateCodec())      {        output = new ObjectOutputStream(getSocketOutput());        input = new ObjectInputStream(getSocketInput());      }      if (outboundCapacity > 0)        startWriter();    }    catch (IOException ex)    // All three of the above must be closed when there is a failure    // to create any of them    {      try      {        closeAll();      }      catch (Exception exc) { }      throw ex; // Rethrow the exception.    }    ThreadFactory readers = virtualThreads ?      VirtualThreads.factory("AbstractClient reader ") : null;    //Create the data reader thread    clientReader = readers == null ? new Thread(this) : readers.newThread(this);    readyToStop = false;    closeCause = null;    lastSent = lastReceived = System.currentTimeMillis();    clientReader.start();  //Start the thread    if (heartbeatInterval > 0)      startHeartbeat();    // A client that reconnects by itself has a session to resume    if (autoReconnect)      sendToServer(new Session(sessionToken, false));  }  /**   * Sends an object to the server. This is the only way that   * methods should communicate with the server.<p>   *   * With an outbound capacity, the message is only queued for the   * writer thread and the call returns at once; a message that cannot   * be written later is reported to <code>sendFailed</code>. Without a   * codec, such a message is serialized by the writer thread and must   * not be changed once sent.   *   * @param msg   The message to be sent.   * @exception IOException if an I/O error occurs when sending, or if   *    the outbound queue is full.   */  final public void sendToServer(Object msg) throws IOException  {    // Encode before taking the lock, other senders need not wait    byte[] frame = codec == null ?      null : Framing.encode(codec, msg, compressor);    ClientWriter current = writer;    if (current != null)    {      if (!current.enqueue(msg, frame))      {        throw new IOException(          "too many messages waiting to be sent to the server");      }      return;    }    synchronized(outputLock)    {      write(msg, frame);      flush();    }  }  /**   * Sends a request to the server and registers the handler of its   * reply. The request is given a new id, which the server copies into   * its reply; the reply is then passed to the handler instead of   * <code>handleMessageFromServer</code>. Any number of requests may   * be outstanding at once, and their replies may arrive in any order.   *   * @param request the request to send.   * @param handler the handler of the reply.   * @return the id given to the request.   * @exception IOException if an I/O error occurs when sending.   */  final public int sendRequest(Correlated request, ResponseHandler handler)    throws IOException  {    int id;    do    {      id = lastRequestId.incrementAndGet();    }    while (id == 0); // 0 marks messages outside of a request    request.setRequestId(id);    pendingRequests.put(id, handler);    try    {      sendToServer(request);    }    catch (IOException ex)    {      pendingRequests.remove(id);      throw ex;    }    return id;  }  /**   * Sends a request to the server without waiting, and returns the   * future reply. The request is written by a thread of the client,   * so the caller never blocks on the socket. The future completes   * with the reply, or exceptionally with a   * <code>TimeoutException</code> if none arrives within the request   * timeout, or with the exception that closed the connection.   * Cancelling the future forgets the request; a late reply is then   * passed to <code>handleMessageFromServer</code>.   *   * @param request the request to send.   * @return the future reply.   * @see #setRequestTimeout(long)   */  final public CompletableFuture<Object> request(Correlated request)  {    return request(request, requestTimeout, TimeUnit.MILLISECONDS);  }  /**   * Sends a request to the server without waiting, and returns the   * future reply, as <code>request(Correlated)</code> does with the   * given timeout.   *   * @param request the request to send.   * @param timeout the time to wait for the reply, or 0 to wait until   *    the connection closes.   * @param unit the unit of the timeout.   * @return the future reply.   */  final public CompletableFuture<Object> request(Correlated request,    long timeout, TimeUnit unit)  {    AsyncRequest pending = new AsyncRequest(request, unit.toMillis(timeout));    getRequestExecutor().execute(pending);    return pending.future;  }  /**   * Closes the connection to the server.   *   * @exception IOException if an I/O error occurs when closing.   */  final public void closeConnection() throws IOException  {    // Prevent the thread from looping any more    readyToStop= true;    // A connection closed on purpose is not resumed    stopReconnecting();    sessionToken = null;    // The messages sent before closing, such as a farewell to the    // server, are written first; they are dropped only if the    // connection fails or the writer does not catch up in time    ClientWriter current = writer;    if (current != null)      current.drain(CLOSE_DRAIN_TIMEOUT);    try    {      closeAll();    }    finally    {      failPendingRequests(new SocketException("connection closed"));      // Call the hook method      connectionClosed();    }  }// ACCESSING METHODS ------------------------------------------------  /**   * @return true if the client is connnected.   */  final public boolean isConnected()  {    return clientReader!=null && clientReader.isAlive();  }  /**   * @return the port number.   */  final public int getPort()  {    return port;  }  /**   * Sets the server port number for the next connection.   * The change in port only takes effect at the time of the   * next call to openConnection().   *   * @param port the port number.   */  final public void setPort(int port)  {    this.port = port;  }  /**   * @return the host name.   */  final public String getHost()  {    return host;  }  /**   * Sets the server host for the next connection.   * The change in host only takes effect at the time of the   * next call to openConnection().   *   * @param host the host name.   */  final public void setHost(String host)  {    this.host = host;  }  /**   * Sets the server for the next connection by URL. A URL such as   * "tcp://host:port" sets the host and the port; a URL such as   * "unix:/var/run/server.sock" selects the Unix domain socket of a   * server running on the same host, which bypasses the TCP stack.   * The change only takes effect at the time of the next call to   * openConnection().   *   * @param url the URL of the server.   * @exception IllegalArgumentException if the URL is not understood.   */  final public void setUrl(String url)  {    String path = UnixSockets.pathOf(url);    if (path != null)    {      unixSocketPath = path;      return;    }    URI uri;    try    {      uri = new URI(url);    }    catch (URISyntaxException ex)    {      throw new IllegalArgumentException(ex.getMessage());    }    if (!"tcp".equals(uri.getScheme()) || uri.getHost() == null      || uri.getPort() < 0)    {      throw new IllegalArgumentException("Unsupported server URL: " + url);    }    host = uri.getHost();    port = uri.getPort();    unixSocketPath = null;  }  /**   * Returns the URL of the server, as accepted by <code>setUrl</code>.   *   * @return the URL of the Unix domain socket if one is used, the URL   *    of the host and port otherwise.   */  final public String getUrl()  {    return unixSocketPath != null ?      UnixSockets.URL_PREFIX + unixSocketPath : "tcp://" + host + ":" + port;  }  /**   * Sets the codec offered to the server by the next call to   * openConnection(). If the server accepts it, messages are exchanged   * as frames encoded by the codec instead of serialized objects;   * otherwise the connection falls back to object streams.   *   * @param messageCodec the codec to offer, or null.   */  final public void setMessageCodec(MessageCodec messageCodec)  {    this.messageCodec = messageCodec;  }  /**   * Returns the codec used to exchange messages with the server.   *   * @return the codec agreed on, or null if objects are exchanged   *    with object streams.   */  final public MessageCodec getNegotiatedCodec()  {    return codec;  }  /**   * Sets the length of the smallest frame compressed, offered to the   * server along with the codec by the next call to openConnection().   * Compression is used if the server compresses too.   *   * @param compressionThreshold the length in bytes, or 0 to never   *    compress.   */  final public void setCompressionThreshold(int compressionThreshold)  {    if (compressionThreshold < 0)      throw new IllegalArgumentException("negative compression threshold");    this.compressionThreshold = compressionThreshold;  }  /**   * @return true if frames exchanged with the server may be compressed.   */  final public boolean isCompressionNegotiated()  {    return compressor != null;  }  /**   * Returns the statistics of the frames compressed and inflated, per   * type of message as named by the codec.   *   * @return the statistics, kept across connections.   */  final public CompressionStats getCompressionStats()  {    return compressionStats;  }  /**   * Selects whether the data reader created by the next call to   * openConnection() runs on a virtual thread instead of a platform   * thread. Virtual threads require Java 21; on older runtimes a   * platform thread is used.   *   * @param virtualThreads true to read on a virtual thread.   */  final public void setVirtualThreads(boolean virtualThreads)  {    this.virtualThreads = virtualThreads;  }  /**   * Sets the time a request made with <code>request</code> waits for   * its reply. The default is 30 seconds.   *   * @param requestTimeout the timeout in milliseconds, or 0 to wait   *    until the connection closes.   */  final public void setRequestTimeout(long requestTimeout)  {    this.requestTimeout = requestTimeout;  }  /**   * @return the time in milliseconds a request waits for its reply.   */  final public long getRequestTimeout()  {    return requestTimeout;  }  /**   * Returns the number of requests waiting for their reply.   *   * @return the number of outstanding requests.   */  final public int getPendingRequestCount()  {    return pendingRequests.size();  }  /**   * Sets the time without sending anything after which the client   * sends a heartbeat, so that a server with an idle timeout keeps   * the connection open. The server answers every heartbeat, and the   * connection is closed and reported to   * <code>connectionException</code> when nothing is received for   * three intervals, so a server that went away without closing its   * socket is noticed as well.   * The change applies from the next call to openConnection().   *   * @param heartbeatInterval the time in milliseconds, or 0 to send   *    no heartbeat.   */  final public void setHeartbeatInterval(int heartbeatInterval)  {    if (heartbeatInterval < 0)      throw new IllegalArgumentException("negative heartbeat interval");    this.heartbeatInterval = heartbeatInterval;  }  /**   * Returns the time without sending anything after which the client   * sends a heartbeat.   *   * @return the time in milliseconds, or 0 if no heartbeat is sent.   */  final public int getHeartbeatInterval()  {    return heartbeatInterval;  }  /**   * Sets the number of messages that may wait to be written to the   * server. With a capacity, messages are written by a writer thread   * of the connection, so that <code>sendToServer</code> returns at   * once whatever the network, and the thread of a user interface   * never waits for the socket. Once the capacity is reached, further   * messages are refused until the writer catches up. Closing the   * connection waits a moment for the queued messages to be written.   * Messages that are queued but never written, because the connection   * failed or the writer did not catch up in time, are reported to   * <code>sendFailed</code>.   * The change applies from the next call to openConnection().   *   * @param outboundCapacity the number of messages, or 0 to write each   *    message on the thread sending it.   */  final public void setOutboundCapacity(int outboundCapacity)  {    if (outboundCapacity < 0)      throw new IllegalArgumentException("negative outbound capacity");    this.outboundCapacity = outboundCapacity;  }  /**   * @return the number of messages that may wait to be written, or 0   *    if messages are written by the thread sending them.   */  final public int getOutboundCapacity()  {    return outboundCapacity;  }  /**   * Returns the number of messages waiting to be written.   *   * @return the number of messages queued for the writer thread.   */  final public int getOutboundQueueSize()  {    ClientWriter current = writer;    return current == null ? 0 : current.size();  }  /**   * Selects whether the client reconnects by itself when the connection   * is lost, rather than only reporting it to   * <code>connectionException</code>. Attempts are made after a delay   * that doubles after each failure, from the initial delay up to the   * maximum delay, each shortened at random by up to a half so that   * the clients of a server that went away do not all come back at   * once. Each attempt is reported to <code>reconnecting</code>.<p>   *   * Such a client asks the server for a session when it connects, and   * presents its token on the next connection, so that a server with   * a session timeout restores what it knew about the client. The   * answer is reported to <code>sessionStarted</code>. Sessions   * require a server of this version of the framework.   *   * @param autoReconnect true to reconnect by itself.   * @see ocsf.server.AbstractServer#setSessionTimeout(int)   */  final public void setAutoReconnect(boolean autoReconnect)  {    this.autoReconnect = autoReconnect;    if (!autoReconnect)      stopReconnecting();  }  /**   * @return true if the client reconnects by itself.   */  final public boolean isAutoReconnect()  {    return autoReconnect;  }  /**   * Sets the delays between the attempts to reconnect. The defaults are   * half a second and 30 seconds.   *   * @param initialDelay the time in milliseconds before the first   *    attempt.   * @param maxDelay the longest time in milliseconds between two   *    attempts.   */  final public void setReconnectDelays(int initialDelay, int maxDelay)  {    if (initialDelay <= 0 || maxDelay < initialDelay)      throw new IllegalArgumentException("invalid reconnect delays");    this.reconnectInitialDelay = initialDelay;    this.reconnectMaxDelay = maxDelay;  }  /**   * @return the time in milliseconds before the first attempt to   *    reconnect.   */  final public int getReconnectInitialDelay()  {    return reconnectInitialDelay;  }  /**   * @return the longest time in milliseconds between two attempts to   *    reconnect.   */  final public int getReconnectMaxDelay()  {    return reconnectMaxDelay;  }  /**   * Delays the next attempt to reconnect, as asked by a server that   * refuses the client for a while, such as a full server. Attempts   * after that one are made with the usual delays.   *   * @param delay the shortest time in milliseconds before the next   *    attempt.   */  final public void delayReconnect(long delay)  {    reconnectHint = delay;  }  /**   * Returns the token of the session given by the server.   *   * @return the token, or null if the client has no session.   */  final public String getSessionToken()  {    return sessionToken;  }  /**   * returns the client's description.   *   * @return the client's Inet address, or null if the client is not   *    connected or is connected through a Unix domain socket.   */  final public InetAddress getInetAddress()  {    Socket socket = clientSocket;    return socket == null ? null : socket.getInetAddress();  }// RUN METHOD -------------------------------------------------------  /**   * Waits for messages from the server. When each arrives,   * a call is made to <code>handleMessageFromServer()</code>.   * Not to be explicitly called.   */  final public void run()  {    connectionEstablished();    // The message from the server    Object msg;    // Loop waiting for data    try    {      while(!readyToStop)      {        // Get data from Server and send it to the handler        // The thread waits indefinitely at the following        // statement until something is received from the server        msg = codec != null ?          Framing.readFrame(frameInput, codec, compressor) :          input.readObject();        lastReceived = System.currentTimeMillis();        // Heartbeats only show that the server is alive        if (msg instanceof Heartbeat)        {          if (msg == Heartbeat.PING)            sendToServer(Heartbeat.PONG);          continue;        }        if (msg instanceof Session)        {          sessionToken = ((Session)msg).getToken();          sessionStarted(((Session)msg).isResumed());          continue;        }        // Replies go to the handler of their request; concrete        // subclasses do what they want with the other messages        // by implementing the following method        if (!dispatchResponse(msg))          handleMessageFromServer(msg);      }    }    catch (Exception exception)    {      if(!readyToStop)      {        try        {          closeAll();        }        catch (Exception ex) { }        // A connection closed by the client itself reports why        Exception cause = closeCause != null ? closeCause : exception;        failPendingRequests(cause);        connectionException(cause);        if (autoReconnect)        {          // This thread no longer counts as a connection          clientReader = null;          startReconnecting();        }      }    }    finally    {      // The connection may have been opened again already      if (clientReader == Thread.currentThread())        clientReader = null;    }  }// METHODS DESIGNED TO BE OVERRIDDEN BY CONCRETE SUBCLASSES ---------  /**   * Hook method called after the connection has been closed.   * The default implementation does nothing. The method   * may be overriden by subclasses to perform special processing   * such as cleaning up and terminating, or attempting to   * reconnect.   */  protected void connectionClosed() {}  /**   * Hook method called each time an exception is thrown by the   * client's thread that is waiting for messages from the server.   * The method may be overridden by subclasses.   *   * @param exception the exception raised.   */  protected void connectionException(Exception exception) {}  /**   * Hook method called after a connection has been established.   * The default implementation does nothing.   * It may be overridden by subclasses to do anything they wish.   */  protected void connectionEstablished() {}  /**   * Hook method called before each attempt to reconnect, when the   * client reconnects by itself. The default implementation does   * nothing.   *   * @param attempt the number of the attempt, from 1.   * @param delay the time in milliseconds before the attempt is made.   */  protected void reconnecting(int attempt, long delay) {}  /**   * Hook method called when the server answered the session offer   * made on connecting, when the client reconnects by itself. Messages   * may arrive before it, as may the call to   * <code>connectionEstablished</code>. The default implementation   * does nothing.   *   * @param resumed true if the server restored the session of the   *    previous connection, false for a new session: on the first   *    connection, or once the previous session expired or the server   *    restarted.   */  protected void sessionStarted(boolean resumed) {}  /**   * Hook method called for each message that was queued for the writer   * thread but could not be written, because the connection failed or   * was closed. It is called on the thread closing the connection, in   * the order the messages were sent. The default implementation does   * nothing.   *   * @param msg the message that was not sent.   * @param exception the reason it was not sent.   */  protected void sendFailed(Object msg, Exception exception) {}  /**   * Handles a message sent from the server to this client.   * This MUST be implemented by subclasses, who should respond to   * messages.   *   * @param msg   the message sent.   */  protected abstract void handleMessageFromServer(Object msg);// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------  /**   * Writes a message to the server, without flushing. Called by the   * thread sending the message, or by the writer thread.   *   * @param msg the message.   * @param frame the frame encoding the message, or null to write the   *    message to the object stream.   * @exception IOException if the message cannot be written.   */  void write(Object msg, byte[] frame) throws IOException  {    synchronized(outputLock)    {      if ((clientSocket == null && localChannel == null)        || (output == null && frameOutput == null))        throw new SocketException("socket does not exist");      if (frame != null)      {        frameOutput.write(frame);      }      else      {        output.writeObject(msg);        output.reset();      }      lastSent = System.currentTimeMillis();    }  }  /**   * Flushes the messages written to the server.   *   * @exception IOException if the stream cannot be flushed.   */  void flush() throws IOException  {    synchronized(outputLock)    {      if (frameOutput != null)        frameOutput.flush();      else if (output != null)        output.flush();    }  }  /**   * Called by the writer thread when the socket fails. The messages it   * did not write are reported, and the connection is closed so that   * the data reader stops and reports the failure.   *   * @param unsent the messages taken by the writer and not written.   * @param exception the exception thrown.   */  void writeFailed(List<Object> unsent, IOException exception)  {    closeCause = exception;    for (Object msg : unsent)      sendFailed(msg, exception);    try    {      closeAll();    }    catch (IOException ex) {}  }  /**   * Offers the codec to the server, if there is one. A server that   * does not know about codecs closes the connection when it reads   * the offer; the socket is then opened again without an offer.   *   * @return true if the server accepted the codec.   * @exception IOException if an I/O error occurs.   */  private boolean negotiateCodec() throws IOException  {    codec = null;    compressor = null;    if (messageCodec == null)      return false;    DataOutputStream out = new DataOutputStream(      new BufferedOutputStream(getSocketOutput()));    DataInputStream in = new DataInputStream(      new BufferedInputStream(getSocketInput()));    int threshold = compressionThreshold;    boolean accepted;    int features;    try    {      Framing.writeOffer(out, messageCodec.getName(),        threshold > 0 ? Framing.COMPRESSION : 0);      out.flush();      accepted = Framing.readAnswer(in);      features = Framing.readFeatures(in);    }    catch (IOException ex)    {      closeSocket();      connect();      return false;    }    if (!accepted)      return false;    if ((features & Framing.COMPRESSION) != 0 && threshold > 0)      compressor = new FrameCompressor(threshold, compressionStats);    codec = messageCodec;    frameOutput = out;    frameInput = in;    return true;  }  /**   * Returns the thread sending asynchronous requests, creating it if   * needed. It ends after a minute without requests.   *   * @return the request executor.   */  private synchronized ScheduledExecutorService getRequestExecutor()  {    if (requestExecutor == null)    {      requestExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()      {        public Thread newThread(Runnable task)        {          Thread thread = new Thread(task, "AbstractClient requests");          thread.setDaemon(true);          return thread;        }      });      requestExecutor.setKeepAliveTime(1, TimeUnit.MINUTES);      requestExecutor.allowCoreThreadTimeOut(true);      requestExecutor.setRemoveOnCancelPolicy(true);    }    return requestExecutor;  }  /**   * Schedules the heartbeats of the connection just opened on the   * request executor. It wakes up twice per interval.   */  private synchronized void startHeartbeat()  {    long period = Math.max(heartbeatInterval / 2, 10);    heartbeatTask = getRequestExecutor().scheduleWithFixedDelay(      new Runnable()      {        public void run()        {          checkHeartbeat();        }      }, period, period, TimeUnit.MILLISECONDS);  }  /**   * Cancels the heartbeats of the connection, if any.   */  private synchronized void stopHeartbeat()  {    if (heartbeatTask != null)      heartbeatTask.cancel(false);    heartbeatTask = null;  }  /**   * Sends a heartbeat if nothing was sent for an interval, and closes   * the connection if nothing was received for too long.   */  private void checkHeartbeat()  {    long interval = heartbeatInterval;    long now = System.currentTimeMillis();    if (interval == 0)      return;    if (now - lastReceived > HEARTBEAT_MISSES * interval)    {      // The data reader fails and reports the cause      closeCause = new SocketTimeoutException(        "no message from the server for " + (now - lastReceived) + " ms");      try      {        closeAll();      }      catch (IOException ex) {}      return;    }    if (now - lastSent >= interval)    {      try      {        sendToServer(Heartbeat.PING);      }      catch (IOException ex) {}    }  }  /**   * Passes a reply to the handler of its request.   *   * @param msg the message from the server.   * @return true if the message was the reply to a pending request.   */  private boolean dispatchResponse(Object msg)  {    if (!(msg instanceof Correlated))      return false;    int id = ((Correlated)msg).getRequestId();    ResponseHandler handler = id == 0 ? null : pendingRequests.remove(id);    if (handler == null)      return false;    handler.responseReceived(msg);    return true;  }  /**   * Fails the requests still waiting for their reply.   *   * @param exception the cause of the failure.   */  private void failPendingRequests(Exception exception)  {    Iterator<Map.Entry<Integer, ResponseHandler>> entries =      pendingRequests.entrySet().iterator();    while (entries.hasNext())    {      ResponseHandler handler = entries.next().getValue();      entries.remove();      handler.requestFailed(exception);    }  }  /**   * Starts the thread reconnecting to the server, unless it runs   * already.   */  private synchronized void startReconnecting()  {    if (reconnector != null)    {      reconnectAgain = true;      return;    }    reconnectAgain = false;    reconnector = new Thread(new Runnable()    {      public void run()      {        reconnect();      }    }, "AbstractClient reconnector");    reconnector.setDaemon(true);    reconnector.start();  }  /**   * Stops the thread reconnecting to the server, if any.   */  private synchronized void stopReconnecting()  {    if (reconnector != null)      reconnector.interrupt();    reconnector = null;  }  /**   * @return true if the calling thread is still the thread   *    reconnecting to the server.   */  private synchronized boolean isReconnector()  {    return reconnector == Thread.currentThread();  }  /**   * Tries to open the connection again until it succeeds, or until the   * client is closed or stops reconnecting by itself. Run by the   * reconnecting thread.   */  private void reconnect()  {    long delay = reconnectInitialDelay;    try    {      for (int attempt = 1; isReconnector(); attempt++)      {        long wait = delay / 2 + (long)(JITTER.nextDouble() * (delay / 2 + 1));        long hint = reconnectHint;        reconnectHint = 0;        wait = Math.max(wait, hint);        reconnecting(attempt, wait);        Thread.sleep(wait);        if (!isReconnector() || isConnected())          return;        try        {          openConnection();        }        catch (IOException ex)        {          delay = Math.min(delay * 2, reconnectMaxDelay);          continue;        }        // The server may have dropped the new connection at once        synchronized(this)        {          if (!reconnectAgain)            return;          reconnectAgain = false;        }        delay = Math.min(delay * 2, reconnectMaxDelay);      }    }    catch (InterruptedException ex) {}    finally    {      synchronized(this)      {        if (reconnector == Thread.currentThread())          reconnector = null;      }    }  }  /**   * Connects to the server, through its Unix domain socket if one was   * set, to its host and port otherwise.   *   * @exception IOException if the connection cannot be made.   */  private void connect() throws IOException  {    if (unixSocketPath != null)      localChannel = UnixSockets.connect(unixSocketPath);    else      clientSocket = new Socket(host, port);  }  /**   * @return the stream reading from the server.   * @exception IOException if the stream cannot be created.   */  private InputStream getSocketInput() throws IOException  {    return localChannel != null ?      UnixSockets.inputStream(localChannel) : clientSocket.getInputStream();  }  /**   * @return the stream writing to the server.   * @exception IOException if the stream cannot be created.   */  private OutputStream getSocketOutput() throws IOException  {    return localChannel != null ?      UnixSockets.outputStream(localChannel) : clientSocket.getOutputStream();  }  /**   * Closes the socket or the channel to the server.   *   * @exception IOException if an I/O error occurs when closing.   */  private void closeSocket() throws IOException  {    try    {      if (clientSocket != null)        clientSocket.close();      if (localChannel != null)        localChannel.close();    }    finally    {      clientSocket = null;      localChannel = null;    }  }  /**   * Starts the writer thread of the connection just opened.   */  private void startWriter()  {    ClientWriter current = new ClientWriter(this, outboundCapacity);    Thread thread = new Thread(current, "AbstractClient writer");    thread.setDaemon(true);    writer = current;    thread.start();  }  /**   * Closes all aspects of the connection to the server.   *   * @exception IOException if an I/O error occurs when closing.   */  private void closeAll() throws IOException  {    stopHeartbeat();    // The messages still queued are never written; a connection closed    // on purpose has drained them already    ClientWriter current = writer;    writer = null;    if (current != null)    {      IOException cause = closeCause != null ?        closeCause : new SocketException("connection closed");      for (Object msg : current.close())        sendFailed(msg, cause);    }    try    {      //Close the socket      closeSocket();      //Close the output streams once no message is being written; the      //writer thread fails at once now that the socket is closed, and      //what it left in their buffers can no longer be flushed      synchronized(outputLock)      {        try        {          if (output != null)            output.close();          if (frameOutput != null)            frameOutput.close();        }        catch (IOException ex) {}      }      //Close the input streams      if (input != null)        input.close();      if (frameInput != null)        frameInput.close();    }    finally    {      //Release the native memory of the compressor      if (compressor != null)        compressor.close();      // Set the streams and the sockets to NULL no matter what      // Doing so allows, but does not require, any finalizers      // of these objects to reclaim system resources if and      // when they are garbage collected.      output = null;      input = null;      frameOutput = null;      frameInput = null;      clientSocket = null;    }  }// INNER CLASSES ****************************************************  /**   * A request made with <code>request</code>: sent when run by the   * request executor, then completing its future with the reply or a   * failure.   */  private class AsyncRequest implements Runnable, ResponseHandler  {    /**     * The future reply.     */    final CompletableFuture<Object> future = new CompletableFuture<Object>();    /**     * The request to send.     */    private final Correlated request;    /**     * The time in milliseconds to wait for the reply, or 0.     */    private final long timeout;    /**     * Constructs the request.     *     * @param request the request to send.     * @param timeout the time in milliseconds to wait for the reply.     */    AsyncRequest(Correlated request, long timeout)    {      this.request = request;      this.timeout = timeout;    }    /**     * Sends the request, unless it was cancelled meanwhile, and     * schedules its timeout.     */    public void run()    {      if (future.isDone())        return;      final int id;      try      {        id = sendRequest(request, this);      }      catch (IOException ex)      {        future.completeExceptionally(ex);        return;      }      final ScheduledFuture<?> timer = timeout <= 0 ? null :        requestExecutor.schedule(new Runnable()        {          public void run()          {            if (pendingRequests.remove(id) != null)              future.completeExceptionally(new TimeoutException(                "no reply to request " + id + " after " + timeout + "ms"));          }        }, timeout, TimeUnit.MILLISECONDS);      // However the future completes, the request is forgotten      future.whenComplete(new BiConsumer<Object, Throwable>()      {        public void accept(Object reply, Throwable failure)        {          pendingRequests.remove(id);          if (timer != null)            timer.cancel(false);        }      });    }    public void responseReceived(Object response)    {      future.complete(response);    }    public void requestFailed(Exception exception)    {      future.completeExceptionally(exception);    }  }}// end of AbstractClient class
\ No newline at end of file
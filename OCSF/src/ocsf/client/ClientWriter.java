@@ -0,0 +1,231 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.client;
+
+import java.io.*;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the messages a client sends to the server on a thread of its
+ * own, so that the thread sending a message, typically the thread of
+ * the user interface, never waits for the network.<p>
+ *
+ * Frames are encoded by the sender and queued as bytes; without a
+ * codec the message itself is queued and serialized by the writer.
+ * The writer takes every message queued at once, writes them and
+ * flushes the socket a single time. The queue holds a bounded number
+ * of messages, beyond which new messages are refused at once rather
+ * than letting the sender wait.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.client.AbstractClient#setOutboundCapacity(int)
+ */
+class ClientWriter implements Runnable
+{
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The client whose messages are written.
+   */
+  private final AbstractClient client;
+
+  /**
+   * The largest number of messages the queue holds.
+   */
+  private final int capacity;
+
+  /**
+   * The messages waiting to be written. Also the lock of the writer.
+   */
+  private final ArrayDeque<Outbound> queue = new ArrayDeque<Outbound>();
+
+  /**
+   * Indicates if the writer was closed.
+   */
+  private boolean closed = false;
+
+  /**
+   * Indicates if the writer is writing messages taken from the queue
+   * and not flushed yet.
+   */
+  private boolean writing = false;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the writer of a connection.
+   *
+   * @param client the client whose messages are written.
+   * @param capacity the largest number of messages waiting.
+   */
+  ClientWriter(AbstractClient client, int capacity)
+  {
+    this.client = client;
+    this.capacity = capacity;
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Queues a message.
+   *
+   * @param msg the message.
+   * @param frame the frame encoding the message, or null if it is
+   *    written to the object stream.
+   * @return true if the message was queued, false if the queue is
+   *    full.
+   * @exception SocketException if the writer was closed.
+   */
+  boolean enqueue(Object msg, byte[] frame) throws SocketException
+  {
+    synchronized(queue)
+    {
+      if (closed)
+        throw new SocketException("socket does not exist");
+      if (queue.size() >= capacity)
+        return false;
+
+      queue.add(new Outbound(msg, frame));
+      queue.notifyAll();
+      return true;
+    }
+  }
+
+  /**
+   * Stops the writer.
+   *
+   * @return the messages that were still waiting, in order.
+   */
+  List<Object> close()
+  {
+    List<Object> unsent = new ArrayList<Object>();
+    synchronized(queue)
+    {
+      closed = true;
+      for (Outbound outbound : queue)
+        unsent.add(outbound.msg);
+      queue.clear();
+      queue.notifyAll();
+    }
+    return unsent;
+  }
+
+  /**
+   * Waits until the messages queued are written and flushed, the
+   * writer fails or the time is up.
+   *
+   * @param timeout the time in milliseconds to wait at most.
+   * @return true if every message was written.
+   */
+  boolean drain(long timeout)
+  {
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized(queue)
+    {
+      try
+      {
+        while (!closed && (writing || !queue.isEmpty()))
+        {
+          long left = deadline - System.currentTimeMillis();
+          if (left <= 0)
+            return false;
+          queue.wait(left);
+        }
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      return !closed;
+    }
+  }
+
+  /**
+   * @return the number of messages waiting to be written.
+   */
+  int size()
+  {
+    synchronized(queue)
+    {
+      return queue.size();
+    }
+  }
+
+// RUN METHOD -------------------------------------------------------
+
+  /**
+   * Writes the queued messages until the writer is closed.
+   * Not to be called.
+   */
+  public void run()
+  {
+    ArrayList<Outbound> batch = new ArrayList<Outbound>();
+    int written = 0;
+
+    try
+    {
+      while (true)
+      {
+        synchronized(queue)
+        {
+          writing = false;
+          queue.notifyAll();
+
+          while (queue.isEmpty() && !closed)
+            queue.wait();
+
+          if (closed)
+            return;
+
+          batch.addAll(queue);
+          queue.clear();
+          writing = true;
+        }
+
+        for (written = 0; written < batch.size(); written++)
+          client.write(batch.get(written).msg, batch.get(written).frame);
+        client.flush();
+        batch.clear();
+      }
+    }
+    catch (InterruptedException ex)
+    {
+      // Stopped along with the connection
+    }
+    catch (IOException ex)
+    {
+      // The messages of the batch not written are lost with the socket
+      List<Object> unsent = new ArrayList<Object>();
+      for (int i = written; i < batch.size(); i++)
+        unsent.add(batch.get(i).msg);
+      client.writeFailed(unsent, ex);
+    }
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * A message waiting to be written.
+   */
+  private static final class Outbound
+  {
+    /** The message. */
+    final Object msg;
+    /** The frame encoding it, or null. */
+    final byte[] frame;
+
+    Outbound(Object msg, byte[] frame)
+    {
+      this.msg = msg;
+      this.frame = frame;
+    }
+  }
+}
+// End of ClientWriter class
@@ -0,0 +1,35 @@
+// This file contains material supporting section 3.7 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.client;
+
+/**
+ * Receives the reply to a request sent with
+ * <code>AbstractClient.sendRequest</code>. Exactly one of the methods
+ * is called, on the thread reading from the server, or on the thread
+ * closing the connection.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.client.AbstractClient#sendRequest(ocsf.common.Correlated, ResponseHandler)
+ */
+public interface ResponseHandler
+{
+  /**
+   * Called when the reply to the request arrives. The reply is not
+   * passed to <code>handleMessageFromServer</code>.
+   *
+   * @param response the reply of the server.
+   */
+  void responseReceived(Object response);
+
+  /**
+   * Called when the connection is closed or fails before the reply
+   * arrives.
+   *
+   * @param exception the cause of the failure.
+   */
+  void requestFailed(Exception exception);
+}
+// End of ResponseHandler interface
@@ -0,0 +1,588 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A <code>MessageCodec</code> writing each value as a one byte tag
+ * followed by its content.<p>
+ *
+ * The values that make up most messages are encoded directly: null,
+ * strings, boxed primitives, <code>int[]</code>, <code>String[]</code>,
+ * <code>Object[]</code>, <code>ArrayList</code>, <code>HashMap</code> and
+ * <code>LinkedHashMap</code>, nested to any depth, as well as the
+ * <code>Heartbeat</code> and <code>Session</code> of the framework. Subclasses add their
+ * own types by overriding <code>writeCustom</code> and
+ * <code>readCustom</code> with tags from <code>FIRST_CUSTOM_TAG</code>
+ * on. Any other serializable value is written with Java serialization
+ * inside the frame, so every message that an object stream can carry
+ * can also be carried by this codec.<p>
+ *
+ * Collections are only encoded directly when their class is exactly
+ * one of the above, so that the receiver gets the same class back.<p>
+ *
+ * Integers and lengths are written as variable length integers, and a
+ * string repeated within a message, such as a status or a date shared
+ * by many rows, is written once and then referred to by its index.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public abstract class BinaryCodec implements MessageCodec
+{
+// CLASS VARIABLES **************************************************
+
+  /** Tag of null. */
+  protected static final int NULL = 0;
+  /** Tag of a String. */
+  protected static final int STRING = 1;
+  /** Tag of an Integer. */
+  protected static final int INT = 2;
+  /** Tag of a Long. */
+  protected static final int LONG = 3;
+  /** Tag of a Double. */
+  protected static final int DOUBLE = 4;
+  /** Tag of Boolean.TRUE. */
+  protected static final int TRUE = 5;
+  /** Tag of Boolean.FALSE. */
+  protected static final int FALSE = 6;
+  /** Tag of an int[]. */
+  protected static final int INT_ARRAY = 7;
+  /** Tag of a String[]. */
+  protected static final int STRING_ARRAY = 8;
+  /** Tag of an Object[]. */
+  protected static final int OBJECT_ARRAY = 9;
+  /** Tag of an ArrayList. */
+  protected static final int LIST = 10;
+  /** Tag of a HashMap. */
+  protected static final int MAP = 11;
+  /** Tag of a LinkedHashMap. */
+  protected static final int LINKED_MAP = 12;
+  /** Tag of a value written with Java serialization. */
+  protected static final int SERIALIZED = 13;
+  /** Tag of a Heartbeat, followed by its ordinal. */
+  protected static final int HEARTBEAT = 14;
+  /** Tag of a Session, followed by its token and resumed flag. */
+  protected static final int SESSION = 15;
+
+  /**
+   * The first tag that subclasses may use for their own types.
+   */
+  protected static final int FIRST_CUSTOM_TAG = 64;
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Writes a message as a tagged value.
+   *
+   * @param msg the message to encode.
+   * @param out the stream receiving the encoded message.
+   * @exception IOException if the message cannot be written.
+   */
+  public void encode(Object msg, DataOutputStream out) throws IOException
+  {
+    writeValue(msg, new Output(out));
+  }
+
+  /**
+   * Reads a message written by <code>encode</code>.
+   *
+   * @param in the stream holding the encoded message.
+   * @return the decoded message.
+   * @exception IOException if the message cannot be read.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  public Object decode(DataInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    return readValue(new Input(in));
+  }
+
+  /**
+   * Writes any value with its tag.
+   *
+   * @param value the value to write, possibly null.
+   * @param out the stream to write to.
+   * @exception IOException if the value cannot be written.
+   */
+  protected final void writeValue(Object value, DataOutputStream out)
+    throws IOException
+  {
+    if (value == null)
+    {
+      out.writeByte(NULL);
+      return;
+    }
+
+    Class<?> type = value.getClass();
+
+    if (type == String.class)
+    {
+      out.writeByte(STRING);
+      writeString((String)value, out);
+    }
+    else if (type == Integer.class)
+    {
+      out.writeByte(INT);
+      writeSignedVarInt((Integer)value, out);
+    }
+    else if (type == Long.class)
+    {
+      out.writeByte(LONG);
+      out.writeLong((Long)value);
+    }
+    else if (type == Double.class)
+    {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double)value);
+    }
+    else if (type == Boolean.class)
+    {
+      out.writeByte((Boolean)value ? TRUE : FALSE);
+    }
+    else if (type == int[].class)
+    {
+      int[] array = (int[])value;
+      out.writeByte(INT_ARRAY);
+      writeVarInt(array.length, out);
+      for (int i = 0; i < array.length; i++)
+        writeSignedVarInt(array[i], out);
+    }
+    else if (type == String[].class)
+    {
+      String[] array = (String[])value;
+      out.writeByte(STRING_ARRAY);
+      writeVarInt(array.length, out);
+      for (int i = 0; i < array.length; i++)
+        writeString(array[i], out);
+    }
+    else if (type == Object[].class)
+    {
+      Object[] array = (Object[])value;
+      out.writeByte(OBJECT_ARRAY);
+      writeVarInt(array.length, out);
+      for (int i = 0; i < array.length; i++)
+        writeValue(array[i], out);
+    }
+    else if (type == ArrayList.class)
+    {
+      List<?> list = (List<?>)value;
+      out.writeByte(LIST);
+      writeVarInt(list.size(), out);
+      for (Object element : list)
+        writeValue(element, out);
+    }
+    else if (type == Heartbeat.class)
+    {
+      out.writeByte(HEARTBEAT);
+      out.writeByte(((Heartbeat)value).ordinal());
+    }
+    else if (type == Session.class)
+    {
+      Session session = (Session)value;
+      out.writeByte(SESSION);
+      writeString(session.getToken(), out);
+      out.writeBoolean(session.isResumed());
+    }
+    else if (type == HashMap.class || type == LinkedHashMap.class)
+    {
+      Map<?, ?> map = (Map<?, ?>)value;
+      out.writeByte(type == HashMap.class ? MAP : LINKED_MAP);
+      writeVarInt(map.size(), out);
+      for (Map.Entry<?, ?> entry : map.entrySet())
+      {
+        writeValue(entry.getKey(), out);
+        writeValue(entry.getValue(), out);
+      }
+    }
+    else if (!writeCustom(value, out))
+    {
+      writeSerialized(value, out);
+    }
+  }
+
+  /**
+   * Reads a value written by <code>writeValue</code>.
+   *
+   * @param in the stream to read from.
+   * @return the value read, possibly null.
+   * @exception IOException if the value cannot be read.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  protected final Object readValue(DataInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    int tag = in.readUnsignedByte();
+
+    switch (tag)
+    {
+      case NULL:
+        return null;
+
+      case STRING:
+        return readString(in);
+
+      case INT:
+        return readSignedVarInt(in);
+
+      case LONG:
+        return in.readLong();
+
+      case DOUBLE:
+        return in.readDouble();
+
+      case TRUE:
+        return Boolean.TRUE;
+
+      case FALSE:
+        return Boolean.FALSE;
+
+      case INT_ARRAY:
+      {
+        int[] array = new int[readCount(in)];
+        for (int i = 0; i < array.length; i++)
+          array[i] = readSignedVarInt(in);
+        return array;
+      }
+
+      case STRING_ARRAY:
+      {
+        String[] array = new String[readCount(in)];
+        for (int i = 0; i < array.length; i++)
+          array[i] = readString(in);
+        return array;
+      }
+
+      case OBJECT_ARRAY:
+      {
+        Object[] array = new Object[readCount(in)];
+        for (int i = 0; i < array.length; i++)
+          array[i] = readValue(in);
+        return array;
+      }
+
+      case LIST:
+      {
+        int size = readCount(in);
+        ArrayList<Object> list = new ArrayList<Object>(size);
+        for (int i = 0; i < size; i++)
+          list.add(readValue(in));
+        return list;
+      }
+
+      case MAP:
+      case LINKED_MAP:
+      {
+        int size = readCount(in);
+        Map<Object, Object> map = tag == MAP ?
+          new HashMap<Object, Object>(size * 4 / 3 + 1) :
+          new LinkedHashMap<Object, Object>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++)
+          map.put(readValue(in), readValue(in));
+        return map;
+      }
+
+      case SERIALIZED:
+        return readSerialized(in);
+
+      case HEARTBEAT:
+      {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Heartbeat.values().length)
+          throw new StreamCorruptedException("invalid heartbeat " + ordinal);
+        return Heartbeat.values()[ordinal];
+      }
+
+      case SESSION:
+        return new Session(readString(in), in.readBoolean());
+
+      default:
+        return readCustom(tag, in);
+    }
+  }
+
+  /**
+   * Writes a string, which may be null, without the 64K limit of
+   * <code>writeUTF</code>. A string already written in the same message
+   * is written as a reference to the first occurrence.
+   *
+   * @param value the string to write.
+   * @param out the stream to write to.
+   * @exception IOException if the string cannot be written.
+   */
+  protected final void writeString(String value, DataOutputStream out)
+    throws IOException
+  {
+    // The header is 0 for null, odd for a reference to the string
+    // with index header / 2, and even for a new string of
+    // header / 2 - 1 bytes
+    if (value == null)
+    {
+      writeVarInt(0, out);
+      return;
+    }
+
+    Map<String, Integer> written = ((Output)out).strings;
+    Integer index = written.get(value);
+    if (index != null)
+    {
+      writeVarInt(index * 2 + 1, out);
+      return;
+    }
+    written.put(value, written.size());
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarInt((bytes.length + 1) * 2, out);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string written by <code>writeString</code>.
+   *
+   * @param in the stream to read from.
+   * @return the string read, possibly null.
+   * @exception IOException if the string cannot be read.
+   */
+  protected final String readString(DataInputStream in) throws IOException
+  {
+    int header = readVarInt(in);
+    if (header == 0)
+      return null;
+
+    List<String> read = ((Input)in).strings;
+    if ((header & 1) == 1)
+    {
+      int index = header >>> 1;
+      if (index >= read.size())
+        throw new StreamCorruptedException("invalid string reference " + index);
+      return read.get(index);
+    }
+
+    int length = (header >>> 1) - 1;
+    if (length > in.available())
+      throw new StreamCorruptedException("invalid string length " + length);
+
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    String value = new String(bytes, StandardCharsets.UTF_8);
+    read.add(value);
+    return value;
+  }
+
+  /**
+   * Writes a non negative int in one to five bytes, seven bits at a
+   * time, small values first.
+   *
+   * @param value the value to write.
+   * @param out the stream to write to.
+   * @exception IOException if the value cannot be written.
+   */
+  protected final void writeVarInt(int value, DataOutputStream out)
+    throws IOException
+  {
+    while ((value & ~0x7F) != 0)
+    {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * Reads an int written by <code>writeVarInt</code>.
+   *
+   * @param in the stream to read from.
+   * @return the value read.
+   * @exception IOException if the value cannot be read.
+   */
+  protected final int readVarInt(DataInputStream in) throws IOException
+  {
+    int value = 0;
+
+    for (int shift = 0; shift < 35; shift += 7)
+    {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new StreamCorruptedException("invalid variable length int");
+  }
+
+  /**
+   * Writes any int so that values close to zero, negative or not,
+   * take few bytes.
+   *
+   * @param value the value to write.
+   * @param out the stream to write to.
+   * @exception IOException if the value cannot be written.
+   */
+  protected final void writeSignedVarInt(int value, DataOutputStream out)
+    throws IOException
+  {
+    writeVarInt((value << 1) ^ (value >> 31), out);
+  }
+
+  /**
+   * Reads an int written by <code>writeSignedVarInt</code>.
+   *
+   * @param in the stream to read from.
+   * @return the value read.
+   * @exception IOException if the value cannot be read.
+   */
+  protected final int readSignedVarInt(DataInputStream in) throws IOException
+  {
+    int value = readVarInt(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+// METHODS DESIGNED TO BE OPTIONALLY OVERRIDDEN BY CONCRETE SUBCLASSES ---------
+
+  /**
+   * Hook method writing a value of a type known to the subclass, tag
+   * first. The default implementation writes nothing.
+   *
+   * @param value the value to write, never null.
+   * @param out the stream to write to.
+   * @return false if the type of the value is not handled, in which
+   *    case the value is serialized.
+   * @exception IOException if the value cannot be written.
+   */
+  protected boolean writeCustom(Object value, DataOutputStream out)
+    throws IOException
+  {
+    return false;
+  }
+
+  /**
+   * Hook method reading a value written by <code>writeCustom</code>.
+   * The default implementation rejects every tag.
+   *
+   * @param tag the tag of the value, already read.
+   * @param in the stream to read from.
+   * @return the value read.
+   * @exception IOException if the tag is unknown or the value cannot
+   *    be read.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  protected Object readCustom(int tag, DataInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    throw new StreamCorruptedException("unknown tag " + tag);
+  }
+
+// METHODS TO BE USED FROM WITHIN THE CLASS ONLY --------------------
+
+  /**
+   * Reads the number of elements of an array or collection. Every
+   * element takes at least one byte, so a count larger than what is
+   * left of the frame is rejected before anything is allocated.
+   *
+   * @param in the stream to read from.
+   * @return the number of elements.
+   * @exception IOException if the number is invalid.
+   */
+  private int readCount(DataInputStream in) throws IOException
+  {
+    int count = readVarInt(in);
+    if (count < 0 || count > in.available())
+      throw new StreamCorruptedException("invalid element count " + count);
+
+    return count;
+  }
+
+  /**
+   * Writes a value of an unknown type with Java serialization.
+   *
+   * @param value the value to write.
+   * @param out the stream to write to.
+   * @exception IOException if the value is not serializable.
+   */
+  private void writeSerialized(Object value, DataOutputStream out)
+    throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream objects = new ObjectOutputStream(bytes);
+    objects.writeObject(value);
+    objects.close();
+
+    out.writeByte(SERIALIZED);
+    writeVarInt(bytes.size(), out);
+    bytes.writeTo(out);
+  }
+
+  /**
+   * Reads a value written with Java serialization.
+   *
+   * @param in the stream to read from.
+   * @return the value read.
+   * @exception IOException if the value cannot be read.
+   * @exception ClassNotFoundException if the class of the value
+   *    cannot be found.
+   */
+  private Object readSerialized(DataInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    byte[] bytes = new byte[readCount(in)];
+    in.readFully(bytes);
+
+    ObjectInputStream objects =
+      new ObjectInputStream(new ByteArrayInputStream(bytes));
+    return objects.readObject();
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * The stream a message is encoded to, remembering the strings
+   * already written so that the codec itself holds no state and may
+   * be shared by several threads.
+   */
+  private static class Output extends DataOutputStream
+  {
+    /**
+     * The strings written, with their index.
+     */
+    final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * Constructs the stream.
+     *
+     * @param out the stream receiving the encoded message.
+     */
+    Output(OutputStream out)
+    {
+      super(out);
+    }
+  }
+
+  /**
+   * The stream a message is decoded from, remembering the strings
+   * already read.
+   */
+  private static class Input extends DataInputStream
+  {
+    /**
+     * The strings read, by index.
+     */
+    final List<String> strings = new ArrayList<String>();
+
+    /**
+     * Constructs the stream.
+     *
+     * @param in the stream holding the encoded message.
+     */
+    Input(InputStream in)
+    {
+      super(in);
+    }
+  }
+}
+// End of BinaryCodec class
@@ -0,0 +1,315 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accounts for the frames compressed and decompressed by
+ * <code>FrameCompressor</code>, per type of message as named by
+ * <code>MessageCodec.getMessageType</code>.<p>
+ *
+ * For each type it counts the frames sent, their size before and
+ * after compression and the time spent compressing them, as well as
+ * the compressed frames received and the time spent inflating them.
+ * It also tells the compressor which types are not worth compressing.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.common.FrameCompressor
+ */
+public class CompressionStats
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The number of frames of a type compressed before deciding whether
+   * compressing that type pays off.
+   */
+  static final int PROBE_COUNT = 16;
+
+  /**
+   * Once compression stopped paying off for a type, one frame in this
+   * many is still compressed, in case the content changed.
+   */
+  static final int PROBE_INTERVAL = 64;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The statistics of each type of message.
+   */
+  private final ConcurrentHashMap<String, Entry> entries =
+    new ConcurrentHashMap<String, Entry>();
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Returns the statistics of a type of message, created if needed.
+   *
+   * @param type the type of message.
+   * @return the statistics of the type.
+   */
+  public Entry get(String type)
+  {
+    Entry entry = entries.get(type);
+    if (entry == null)
+    {
+      Entry created = new Entry(type);
+      entry = entries.putIfAbsent(type, created);
+      if (entry == null)
+        entry = created;
+    }
+    return entry;
+  }
+
+  /**
+   * @return the statistics of every type seen, sorted by type.
+   */
+  public List<Entry> getEntries()
+  {
+    List<Entry> list = new ArrayList<Entry>(entries.values());
+    Collections.sort(list, new Comparator<Entry>()
+    {
+      public int compare(Entry a, Entry b)
+      {
+        return a.type.compareTo(b.type);
+      }
+    });
+    return list;
+  }
+
+  /**
+   * Forgets every statistic.
+   */
+  public void clear()
+  {
+    entries.clear();
+  }
+
+  /**
+   * @return one line per type of message.
+   */
+  public String toString()
+  {
+    StringBuilder report = new StringBuilder();
+    for (Entry entry : getEntries())
+      report.append(entry).append('\n');
+    return report.toString();
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * The statistics of one type of message.
+   */
+  public static class Entry
+  {
+    /**
+     * The type of message.
+     */
+    private final String type;
+
+    /** The number of frames sent. */
+    private long sentFrames;
+    /** The number of frames sent compressed. */
+    private long compressedFrames;
+    /** The bytes of the frames sent, before compression. */
+    private long sentRawBytes;
+    /** The bytes of the frames sent, as sent. */
+    private long sentWireBytes;
+    /** The time spent compressing, in nanoseconds. */
+    private long compressNanos;
+    /** The number of compressed frames received. */
+    private long receivedFrames;
+    /** The bytes of the compressed frames received, once inflated. */
+    private long receivedRawBytes;
+    /** The bytes of the compressed frames received, as received. */
+    private long receivedWireBytes;
+    /** The time spent inflating, in nanoseconds. */
+    private long inflateNanos;
+
+    /**
+     * The number of frames compressed that did not get smaller enough
+     * to be sent compressed.
+     */
+    private long ineffective;
+
+    /**
+     * The number of frames sent uncompressed since the last probe.
+     */
+    private int skipped;
+
+    /**
+     * Constructs the statistics of a type.
+     *
+     * @param type the type of message.
+     */
+    Entry(String type)
+    {
+      this.type = type;
+    }
+
+    /**
+     * Tells whether a frame of this type large enough to be compressed
+     * should be. Once most frames of the type did not shrink, only
+     * one in <code>PROBE_INTERVAL</code> is tried.
+     *
+     * @return true to compress the frame.
+     */
+    synchronized boolean shouldCompress()
+    {
+      long attempts = compressedFrames + ineffective;
+      if (attempts < PROBE_COUNT || ineffective * 4 < attempts * 3)
+        return true;
+
+      if (++skipped < PROBE_INTERVAL)
+        return false;
+
+      skipped = 0;
+      return true;
+    }
+
+    /**
+     * Records a frame sent.
+     *
+     * @param rawBytes the length of the payload before compression.
+     * @param wireBytes the length of the frame sent.
+     * @param nanos the time spent compressing, 0 if not tried.
+     * @param compressed true if the frame was sent compressed.
+     */
+    synchronized void sent(int rawBytes, int wireBytes, long nanos,
+      boolean compressed)
+    {
+      sentFrames++;
+      sentRawBytes += rawBytes + 4;
+      sentWireBytes += wireBytes;
+      compressNanos += nanos;
+      if (compressed)
+        compressedFrames++;
+      else if (nanos > 0)
+        ineffective++;
+    }
+
+    /**
+     * Records a compressed frame received.
+     *
+     * @param rawBytes the length of the payload once inflated.
+     * @param wireBytes the length of the frame received.
+     * @param nanos the time spent inflating.
+     */
+    synchronized void received(int rawBytes, int wireBytes, long nanos)
+    {
+      receivedFrames++;
+      receivedRawBytes += rawBytes + 4;
+      receivedWireBytes += wireBytes;
+      inflateNanos += nanos;
+    }
+
+// ACCESSING METHODS ------------------------------------------------
+
+    /**
+     * @return the type of message.
+     */
+    public String getType()
+    {
+      return type;
+    }
+
+    /**
+     * @return the number of frames sent.
+     */
+    public synchronized long getSentFrames()
+    {
+      return sentFrames;
+    }
+
+    /**
+     * @return the number of frames sent compressed.
+     */
+    public synchronized long getCompressedFrames()
+    {
+      return compressedFrames;
+    }
+
+    /**
+     * @return the bytes the frames sent would have taken uncompressed.
+     */
+    public synchronized long getSentRawBytes()
+    {
+      return sentRawBytes;
+    }
+
+    /**
+     * @return the bytes actually sent.
+     */
+    public synchronized long getSentWireBytes()
+    {
+      return sentWireBytes;
+    }
+
+    /**
+     * @return the bytes sent divided by the bytes they would have
+     *    taken uncompressed, 1 if nothing was sent.
+     */
+    public synchronized double getRatio()
+    {
+      return sentRawBytes == 0 ? 1 : (double)sentWireBytes / sentRawBytes;
+    }
+
+    /**
+     * @return the time spent compressing, in nanoseconds.
+     */
+    public synchronized long getCompressNanos()
+    {
+      return compressNanos;
+    }
+
+    /**
+     * @return the number of compressed frames received.
+     */
+    public synchronized long getReceivedFrames()
+    {
+      return receivedFrames;
+    }
+
+    /**
+     * @return the bytes of the compressed frames received once
+     *    inflated.
+     */
+    public synchronized long getReceivedRawBytes()
+    {
+      return receivedRawBytes;
+    }
+
+    /**
+     * @return the bytes of the compressed frames received.
+     */
+    public synchronized long getReceivedWireBytes()
+    {
+      return receivedWireBytes;
+    }
+
+    /**
+     * @return the time spent inflating, in nanoseconds.
+     */
+    public synchronized long getInflateNanos()
+    {
+      return inflateNanos;
+    }
+
+    public synchronized String toString()
+    {
+      return String.format(
+        "%s: sent %d (%d compressed) %d -> %d bytes, ratio %.2f, %.3f ms;"
+        + " received %d compressed %d -> %d bytes, %.3f ms",
+        type, sentFrames, compressedFrames, sentRawBytes, sentWireBytes,
+        getRatio(), compressNanos / 1e6, receivedFrames, receivedWireBytes,
+        receivedRawBytes, inflateNanos / 1e6);
+    }
+  }
+}
+// End of CompressionStats class
@@ -0,0 +1,43 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+/**
+ * A message carrying the id of the request it belongs to, so that a
+ * client may have many requests outstanding on one connection and
+ * match each reply to its request.<p>
+ *
+ * The client gives each request a new id when sending it with
+ * <code>AbstractClient.sendRequest</code>; the server copies the id
+ * into its reply. An id of 0 marks a message that is not part of a
+ * request, such as a notification pushed by the server.<p>
+ *
+ * Since a reply is matched by its id rather than by its position in
+ * the stream, a server dispatching messages to worker threads handles
+ * requests with an id in parallel, and may answer them out of
+ * order.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.client.AbstractClient#sendRequest(Correlated, ocsf.client.ResponseHandler)
+ */
+public interface Correlated
+{
+  /**
+   * Returns the id of the request this message belongs to.
+   *
+   * @return the request id, or 0 if the message is not part of a
+   *    request.
+   */
+  int getRequestId();
+
+  /**
+   * Sets the id of the request this message belongs to.
+   *
+   * @param requestId the request id, or 0.
+   */
+  void setRequestId(int requestId);
+}
+// End of Correlated interface
@@ -0,0 +1,259 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * Compresses the large frames sent on one connection and inflates the
+ * compressed frames received on it.<p>
+ *
+ * A frame whose payload reaches the threshold is deflated and sent
+ * compressed only if it got at least an eighth smaller; otherwise the
+ * original frame is sent, so small or already dense messages cost no
+ * more than before. Types of message that mostly fail to shrink are
+ * only tried now and then, as decided by <code>CompressionStats</code>.
+ * A compressed frame has the <code>Framing.COMPRESSED</code> bit set in
+ * its length and its payload is the length of the original payload
+ * followed by the deflated bytes.<p>
+ *
+ * The <code>Deflater</code> and the <code>Inflater</code> are created
+ * once per connection and reset for every frame, since creating them
+ * allocates native memory. The sending threads share the deflater and
+ * the reading thread uses the inflater, each under its own lock.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.common.Framing
+ */
+public class FrameCompressor
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The size of the largest output buffer kept from frame to frame.
+   */
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The length of the smallest payload compressed.
+   */
+  private final int threshold;
+
+  /**
+   * The statistics updated for every frame.
+   */
+  private final CompressionStats stats;
+
+  /**
+   * Compresses the frames sent.
+   */
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+  /**
+   * Inflates the frames received.
+   */
+  private final Inflater inflater = new Inflater();
+
+  /**
+   * Receives the output of the deflater, reused from frame to frame.
+   */
+  private byte[] deflated = new byte[0];
+
+  /**
+   * True once the compressor was closed. Read under either lock.
+   */
+  private boolean closed = false;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the compressor of a connection.
+   *
+   * @param threshold the length of the smallest payload compressed.
+   * @param stats the statistics to update.
+   */
+  public FrameCompressor(int threshold, CompressionStats stats)
+  {
+    this.threshold = threshold;
+    this.stats = stats;
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * @return the length of the smallest payload compressed.
+   */
+  public int getThreshold()
+  {
+    return threshold;
+  }
+
+  /**
+   * Compresses a frame if it is worth it.
+   *
+   * @param frame the frame produced by <code>Framing.encode</code>.
+   * @param type the type of the message, for the statistics.
+   * @return the compressed frame, or the frame given.
+   */
+  public byte[] compress(byte[] frame, String type)
+  {
+    int length = frame.length - 4;
+    CompressionStats.Entry entry = stats.get(type);
+    if (length < threshold || !entry.shouldCompress())
+    {
+      entry.sent(length, frame.length, 0, false);
+      return frame;
+    }
+
+    long start = System.nanoTime();
+    byte[] result = frame;
+    synchronized(deflater)
+    {
+      // Left to the write to fail on a closed connection
+      if (closed)
+        return frame;
+
+      // Anything larger than this is not worth sending compressed
+      int limit = 8 + length - length / 8;
+      byte[] buffer = deflated;
+      if (buffer.length < limit)
+      {
+        buffer = new byte[limit];
+        if (limit <= MAX_RETAINED_BUFFER)
+          deflated = buffer;
+      }
+
+      deflater.reset();
+      deflater.setInput(frame, 4, length);
+      deflater.finish();
+
+      int size = 8;
+      while (!deflater.finished() && size < limit)
+        size += deflater.deflate(buffer, size, limit - size);
+
+      if (deflater.finished())
+      {
+        writeInt((size - 4) | Framing.COMPRESSED, buffer, 0);
+        writeInt(length, buffer, 4);
+        result = new byte[size];
+        System.arraycopy(buffer, 0, result, 0, size);
+      }
+    }
+
+    entry.sent(length, result.length, Math.max(1, System.nanoTime() - start),
+      result != frame);
+    return result;
+  }
+
+  /**
+   * Inflates and decodes the payload of a compressed frame.
+   *
+   * @param codec the codec agreed on.
+   * @param payload the bytes following the length of the frame.
+   * @param offset the offset of the payload.
+   * @param length the length of the payload.
+   * @return the decoded message.
+   * @exception IOException if the payload is corrupted or the message
+   *    cannot be decoded.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  public Object decode(MessageCodec codec, byte[] payload, int offset,
+    int length) throws IOException, ClassNotFoundException
+  {
+    if (length < 4)
+      throw new StreamCorruptedException("invalid compressed frame");
+
+    long start = System.nanoTime();
+    byte[] raw = new byte[Framing.checkLength(readInt(payload, offset))];
+    synchronized(inflater)
+    {
+      if (closed)
+        throw new java.net.SocketException("connection closed");
+
+      inflater.reset();
+      inflater.setInput(payload, offset + 4, length - 4);
+      try
+      {
+        int count = 0;
+        while (count < raw.length)
+        {
+          int read = inflater.inflate(raw, count, raw.length - count);
+          if (read == 0 && (inflater.finished() || inflater.needsInput()
+            || inflater.needsDictionary()))
+            throw new StreamCorruptedException("truncated compressed frame");
+          count += read;
+        }
+      }
+      catch (DataFormatException ex)
+      {
+        throw new StreamCorruptedException(ex.getMessage());
+      }
+    }
+    long nanos = System.nanoTime() - start;
+
+    Object msg = Framing.decode(codec, raw, 0, raw.length);
+    stats.get(codec.getMessageType(msg)).received(raw.length, 4 + length,
+      nanos);
+    return msg;
+  }
+
+  /**
+   * Releases the native memory of the deflater and the inflater. The
+   * compressor cannot be used afterwards.
+   */
+  public void close()
+  {
+    synchronized(deflater)
+    {
+      synchronized(inflater)
+      {
+        if (closed)
+          return;
+
+        closed = true;
+        deflater.end();
+        inflater.end();
+      }
+    }
+  }
+
+// METHODS DESIGNED TO BE USED WITHIN THE CLASS ONLY ----------------
+
+  /**
+   * Writes a big-endian int into a buffer.
+   *
+   * @param value the int to write.
+   * @param buffer the buffer.
+   * @param offset the offset of the int.
+   */
+  private static void writeInt(int value, byte[] buffer, int offset)
+  {
+    buffer[offset] = (byte)(value >>> 24);
+    buffer[offset + 1] = (byte)(value >>> 16);
+    buffer[offset + 2] = (byte)(value >>> 8);
+    buffer[offset + 3] = (byte)value;
+  }
+
+  /**
+   * Reads a big-endian int from a buffer.
+   *
+   * @param buffer the buffer.
+   * @param offset the offset of the int.
+   * @return the int read.
+   */
+  private static int readInt(byte[] buffer, int offset)
+  {
+    return ((buffer[offset] & 0xFF) << 24) |
+      ((buffer[offset + 1] & 0xFF) << 16) |
+      ((buffer[offset + 2] & 0xFF) << 8) |
+      (buffer[offset + 3] & 0xFF);
+  }
+}
+// End of FrameCompressor class
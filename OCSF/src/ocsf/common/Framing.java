@@ -0,0 +1,397 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The wire format used when a client and a server agree on a
+ * <code>MessageCodec</code>.<p>
+ *
+ * Before creating its object streams, a client with a codec writes an
+ * offer: the <code>MAGIC</code> number followed by the name of the
+ * codec and a byte of optional features it supports, such as
+ * <code>COMPRESSION</code>. The server answers with the same number, a
+ * byte telling if it accepts and the features both sides support. A
+ * Java object stream starts with 0xACED, so the server
+ * tells an offer from a client without a codec by peeking at the first
+ * bytes of the connection. If the offer is refused, the client simply
+ * goes on with object streams on the same socket.<p>
+ *
+ * Once a codec is agreed on, every message is sent as a frame: its
+ * length as an int followed by the bytes produced by the codec. When
+ * compression was agreed on, the highest bit of the length marks a
+ * frame compressed by a <code>FrameCompressor</code>.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public final class Framing
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * Starts an offer and its answer: "OCSF" in ASCII.
+   */
+  public static final int MAGIC = 0x4F435346;
+
+  /**
+   * The length of the largest frame accepted, to protect the reader
+   * from a corrupted length.
+   */
+  public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+  /**
+   * The feature of compressing large frames.
+   */
+  public static final int COMPRESSION = 1;
+
+  /**
+   * The bit set in the length of a compressed frame.
+   */
+  public static final int COMPRESSED = 0x80000000;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Not to be instantiated.
+   */
+  private Framing() {}
+
+// CLASS METHODS ****************************************************
+
+  /**
+   * Writes the offer of a codec. The caller flushes the stream.
+   *
+   * @param out the stream to the server.
+   * @param codecName the name of the codec offered.
+   * @param features the features the client supports.
+   * @exception IOException if the offer cannot be written.
+   */
+  public static void writeOffer(DataOutputStream out, String codecName,
+    int features) throws IOException
+  {
+    out.writeInt(MAGIC);
+    out.writeUTF(codecName);
+    out.writeByte(features);
+  }
+
+  /**
+   * Reads the name of the codec offered, once <code>MAGIC</code> has
+   * been read. The features offered follow and are read by
+   * <code>readFeatures</code>.
+   *
+   * @param in the stream from the client.
+   * @return the name of the codec offered.
+   * @exception IOException if the offer cannot be read.
+   */
+  public static String readOffer(DataInputStream in) throws IOException
+  {
+    return in.readUTF();
+  }
+
+  /**
+   * Writes the answer to an offer. The caller flushes the stream.
+   *
+   * @param out the stream to the client.
+   * @param accepted true if the codec offered is used.
+   * @param features the features both sides support.
+   * @exception IOException if the answer cannot be written.
+   */
+  public static void writeAnswer(DataOutputStream out, boolean accepted,
+    int features) throws IOException
+  {
+    out.writeInt(MAGIC);
+    out.writeBoolean(accepted);
+    out.writeByte(features);
+  }
+
+  /**
+   * Reads the answer to an offer. The features agreed on follow and
+   * are read by <code>readFeatures</code>.
+   *
+   * @param in the stream from the server.
+   * @return true if the codec offered is used.
+   * @exception IOException if the answer is missing or malformed.
+   */
+  public static boolean readAnswer(DataInputStream in) throws IOException
+  {
+    if (in.readInt() != MAGIC)
+      throw new StreamCorruptedException("invalid codec answer");
+
+    return in.readBoolean();
+  }
+
+  /**
+   * Reads the features of an offer or of an answer.
+   *
+   * @param in the stream to read.
+   * @return the features.
+   * @exception IOException if the features cannot be read.
+   */
+  public static int readFeatures(DataInputStream in) throws IOException
+  {
+    return in.readUnsignedByte();
+  }
+
+  /**
+   * Encodes a message into a complete frame.
+   *
+   * @param codec the codec agreed on.
+   * @param msg the message to encode.
+   * @return the frame, length included.
+   * @exception IOException if the message cannot be encoded.
+   */
+  public static byte[] encode(MessageCodec codec, Object msg)
+    throws IOException
+  {
+    FrameBuffer bytes = new FrameBuffer();
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeInt(0); // Patched once the length is known
+    codec.encode(msg, out);
+    out.flush();
+
+    byte[] frame = bytes.toByteArray();
+    int length = frame.length - 4;
+    frame[0] = (byte)(length >>> 24);
+    frame[1] = (byte)(length >>> 16);
+    frame[2] = (byte)(length >>> 8);
+    frame[3] = (byte)length;
+    return frame;
+  }
+
+  /**
+   * Encodes a message into a complete frame, compressed if that was
+   * agreed on and the compressor finds it worth it.
+   *
+   * @param codec the codec agreed on.
+   * @param msg the message to encode.
+   * @param compressor the compressor of the connection, or null.
+   * @return the frame, length included.
+   * @exception IOException if the message cannot be encoded.
+   */
+  public static byte[] encode(MessageCodec codec, Object msg,
+    FrameCompressor compressor) throws IOException
+  {
+    byte[] frame = encode(codec, msg);
+    return compressor == null ?
+      frame : compressor.compress(frame, codec.getMessageType(msg));
+  }
+
+  /**
+   * Checks the length read at the start of a frame.
+   *
+   * @param length the length read.
+   * @return the length.
+   * @exception StreamCorruptedException if the length is invalid.
+   */
+  public static int checkLength(int length) throws StreamCorruptedException
+  {
+    if (length < 0 || length > MAX_FRAME_LENGTH)
+      throw new StreamCorruptedException("invalid frame length " + length);
+
+    return length;
+  }
+
+  /**
+   * Decodes the payload of a frame.
+   *
+   * @param codec the codec agreed on.
+   * @param payload the bytes following the length of the frame.
+   * @param offset the offset of the payload.
+   * @param length the length of the payload.
+   * @return the decoded message.
+   * @exception IOException if the message cannot be decoded.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  public static Object decode(MessageCodec codec, byte[] payload,
+    int offset, int length) throws IOException, ClassNotFoundException
+  {
+    return codec.decode(new DataInputStream(
+      new FrameReader(payload, offset, length)));
+  }
+
+  /**
+   * Decodes the payload of a frame that may be compressed.
+   *
+   * @param codec the codec agreed on.
+   * @param header the int read at the start of the frame.
+   * @param payload the bytes following the length of the frame.
+   * @param offset the offset of the payload.
+   * @param compressor the compressor of the connection, or null if
+   *    compression was not agreed on.
+   * @return the decoded message.
+   * @exception IOException if the message cannot be decoded.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  public static Object decode(MessageCodec codec, int header,
+    byte[] payload, int offset, FrameCompressor compressor)
+    throws IOException, ClassNotFoundException
+  {
+    int length = frameLength(header, compressor);
+    return (header & COMPRESSED) == 0 ?
+      decode(codec, payload, offset, length) :
+      compressor.decode(codec, payload, offset, length);
+  }
+
+  /**
+   * Returns the length of the payload given by the int read at the
+   * start of a frame.
+   *
+   * @param header the int read.
+   * @param compressor the compressor of the connection, or null if
+   *    compression was not agreed on.
+   * @return the length of the payload.
+   * @exception StreamCorruptedException if the length is invalid.
+   */
+  public static int frameLength(int header, FrameCompressor compressor)
+    throws StreamCorruptedException
+  {
+    return checkLength(compressor == null ? header : header & ~COMPRESSED);
+  }
+
+  /**
+   * Reads a frame from a blocking stream and decodes it.
+   *
+   * @param in the stream to read.
+   * @param codec the codec agreed on.
+   * @return the decoded message.
+   * @exception IOException if the frame cannot be read or decoded.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  public static Object readFrame(DataInputStream in, MessageCodec codec)
+    throws IOException, ClassNotFoundException
+  {
+    return readFrame(in, codec, null);
+  }
+
+  /**
+   * Reads a frame that may be compressed from a blocking stream and
+   * decodes it.
+   *
+   * @param in the stream to read.
+   * @param codec the codec agreed on.
+   * @param compressor the compressor of the connection, or null if
+   *    compression was not agreed on.
+   * @return the decoded message.
+   * @exception IOException if the frame cannot be read or decoded.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  public static Object readFrame(DataInputStream in, MessageCodec codec,
+    FrameCompressor compressor) throws IOException, ClassNotFoundException
+  {
+    int header = in.readInt();
+    byte[] payload = new byte[frameLength(header, compressor)];
+    in.readFully(payload);
+    return decode(codec, header, payload, 0, compressor);
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * Collects the bytes of a frame. Codecs write a byte at a time, so
+   * unlike <code>ByteArrayOutputStream</code> no lock is taken.
+   */
+  private static final class FrameBuffer extends OutputStream
+  {
+    /**
+     * The bytes written, followed by free space.
+     */
+    private byte[] bytes = new byte[256];
+
+    /**
+     * The number of bytes written.
+     */
+    private int count = 0;
+
+    public void write(int b)
+    {
+      if (count == bytes.length)
+        bytes = Arrays.copyOf(bytes, count * 2);
+      bytes[count++] = (byte)b;
+    }
+
+    public void write(byte[] b, int off, int len)
+    {
+      if (count + len > bytes.length)
+        bytes = Arrays.copyOf(bytes, Math.max(count * 2, count + len));
+      System.arraycopy(b, off, bytes, count, len);
+      count += len;
+    }
+
+    /**
+     * @return a copy of the bytes written.
+     */
+    byte[] toByteArray()
+    {
+      return Arrays.copyOf(bytes, count);
+    }
+  }
+
+  /**
+   * Reads the payload of a frame without taking a lock for every
+   * byte, as <code>ByteArrayInputStream</code> does.
+   */
+  private static final class FrameReader extends InputStream
+  {
+    /**
+     * The buffer holding the payload.
+     */
+    private final byte[] bytes;
+
+    /**
+     * The offset of the next byte to read.
+     */
+    private int position;
+
+    /**
+     * The offset one past the end of the payload.
+     */
+    private final int end;
+
+    /**
+     * Constructs a reader of a payload.
+     *
+     * @param bytes the buffer holding the payload.
+     * @param offset the offset of the payload.
+     * @param length the length of the payload.
+     */
+    FrameReader(byte[] bytes, int offset, int length)
+    {
+      this.bytes = bytes;
+      this.position = offset;
+      this.end = offset + length;
+    }
+
+    public int read()
+    {
+      return position < end ? bytes[position++] & 0xFF : -1;
+    }
+
+    public int read(byte[] b, int off, int len)
+    {
+      if (len == 0)
+        return 0;
+      if (position >= end)
+        return -1;
+
+      len = Math.min(len, end - position);
+      System.arraycopy(bytes, position, b, off, len);
+      position += len;
+      return len;
+    }
+
+    public int available()
+    {
+      return end - position;
+    }
+  }
+}
+// End of Framing class
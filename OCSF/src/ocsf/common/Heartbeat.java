@@ -0,0 +1,36 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+/**
+ * The messages a client and a server exchange to show that the
+ * connection is alive. They are handled by the framework and never
+ * reach <code>handleMessageFromClient</code> or
+ * <code>handleMessageFromServer</code>.<p>
+ *
+ * A client sends <code>PING</code> when it has not sent anything for
+ * its heartbeat interval, and the server answers <code>PONG</code>.
+ * Each side closes a connection on which nothing was received for too
+ * long, so a peer that crashed or lost its network is noticed even
+ * though its socket was never closed.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#setIdleTimeout(int)
+ * @see ocsf.client.AbstractClient#setHeartbeatInterval(int)
+ */
+public enum Heartbeat
+{
+  /**
+   * Sent by a client, asking for an answer.
+   */
+  PING,
+
+  /**
+   * The answer of the server to <code>PING</code>.
+   */
+  PONG
+}
+// End of Heartbeat enum
@@ -0,0 +1,70 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+
+/**
+ * Converts the messages exchanged by a client and a server to and from
+ * bytes, in place of Java object serialization.<p>
+ *
+ * A client offers its codec when it opens a connection; the server
+ * accepts the offer if its own codec has the same name. Otherwise both
+ * sides fall back to object streams, so a codec never prevents a
+ * client from connecting.<p>
+ *
+ * Each message is encoded into its own frame, so an implementation
+ * may read exactly what it wrote and does not need to delimit
+ * messages itself.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.common.BinaryCodec
+ * @see ocsf.common.Framing
+ */
+public interface MessageCodec
+{
+  /**
+   * Returns the name identifying this codec and the version of its
+   * encoding. Two codecs with the same name must be able to read each
+   * other's messages.
+   *
+   * @return the name of the codec.
+   */
+  String getName();
+
+  /**
+   * Writes a message.
+   *
+   * @param msg the message to encode.
+   * @param out the stream receiving the encoded message.
+   * @exception IOException if the message cannot be written.
+   */
+  void encode(Object msg, DataOutputStream out) throws IOException;
+
+  /**
+   * Reads a message written by <code>encode</code>.
+   *
+   * @param in the stream holding the encoded message.
+   * @return the decoded message.
+   * @exception IOException if the message cannot be read.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  Object decode(DataInputStream in) throws IOException, ClassNotFoundException;
+
+  /**
+   * Names the type of a message, under which the statistics of its
+   * compression are kept. By default, the simple name of its class.
+   *
+   * @param msg the message.
+   * @return the type of the message.
+   */
+  default String getMessageType(Object msg)
+  {
+    return msg == null ? "null" : msg.getClass().getSimpleName();
+  }
+}
+// End of MessageCodec interface
@@ -0,0 +1,80 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.Serializable;
+
+/**
+ * The message a client and a server exchange to resume the session
+ * of a lost connection on a new one. It is handled by the framework
+ * and never reaches <code>handleMessageFromClient</code> or
+ * <code>handleMessageFromServer</code>.<p>
+ *
+ * A client that reconnects by itself sends a <code>Session</code>
+ * right after connecting, with the token of its previous connection
+ * or none. The server answers with a new token, and tells whether it
+ * restored the previous session: the information saved on the
+ * connection and the topics it was subscribed to. A token is only
+ * valid once.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.client.AbstractClient#setAutoReconnect(boolean)
+ * @see ocsf.server.AbstractServer#setSessionTimeout(int)
+ */
+public final class Session implements Serializable
+{
+// CLASS VARIABLES **************************************************
+
+  private static final long serialVersionUID = 1L;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The token of the session, or null.
+   */
+  private final String token;
+
+  /**
+   * Indicates if the server restored the previous session.
+   */
+  private final boolean resumed;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs a session message.
+   *
+   * @param token the token of the previous session when sent by the
+   *    client, possibly null; the token of the new session when sent
+   *    by the server.
+   * @param resumed true if the server restored the previous session;
+   *    always false when sent by the client.
+   */
+  public Session(String token, boolean resumed)
+  {
+    this.token = token;
+    this.resumed = resumed;
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * @return the token carried by the message, or null.
+   */
+  public String getToken()
+  {
+    return token;
+  }
+
+  /**
+   * @return true if the server restored the previous session.
+   */
+  public boolean isResumed()
+  {
+    return resumed;
+  }
+}
+// End of Session class
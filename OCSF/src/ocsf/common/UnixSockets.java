@@ -0,0 +1,291 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+
+/**
+ * Opens Unix domain socket channels when the Java runtime provides
+ * them, for clients running on the same host as the server. Such a
+ * connection bypasses the TCP/IP stack of the loopback interface.<p>
+ *
+ * The framework is compiled for older runtimes, on which Unix domain
+ * sockets do not exist, so the classes and methods involved are looked
+ * up by reflection. On such runtimes <code>isSupported</code> returns
+ * false and opening a channel throws an <code>IOException</code>.<p>
+ *
+ * A Unix domain channel has no <code>Socket</code> adapter, so the
+ * streams of a blocking channel are provided here. Unlike those of
+ * <code>Channels</code>, they let one thread read while another
+ * writes.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public final class UnixSockets
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The prefix of the URL of a Unix domain socket.
+   */
+  public static final String URL_PREFIX = "unix:";
+
+  /**
+   * The <code>StandardProtocolFamily.UNIX</code> constant, or null if
+   * the runtime does not provide Unix domain sockets.
+   */
+  private static final ProtocolFamily UNIX = lookupFamily();
+
+  /**
+   * The <code>UnixDomainSocketAddress.of(String)</code> method.
+   */
+  private static final Method ADDRESS_OF = lookup(
+    "java.net.UnixDomainSocketAddress", "of", String.class);
+
+  /**
+   * The <code>SocketChannel.open(ProtocolFamily)</code> method.
+   */
+  private static final Method OPEN_CHANNEL = lookup(
+    "java.nio.channels.SocketChannel", "open", ProtocolFamily.class);
+
+  /**
+   * The <code>ServerSocketChannel.open(ProtocolFamily)</code> method.
+   */
+  private static final Method OPEN_SERVER_CHANNEL = lookup(
+    "java.nio.channels.ServerSocketChannel", "open", ProtocolFamily.class);
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Not to be instantiated.
+   */
+  private UnixSockets() {}
+
+// CLASS METHODS ****************************************************
+
+  /**
+   * @return true if the runtime provides Unix domain sockets.
+   */
+  public static boolean isSupported()
+  {
+    return UNIX != null && ADDRESS_OF != null && OPEN_CHANNEL != null
+      && OPEN_SERVER_CHANNEL != null;
+  }
+
+  /**
+   * Returns the path of the socket file named by a URL such as
+   * "unix:/var/run/biteme.sock" or "unix:///var/run/biteme.sock".
+   *
+   * @param url the URL.
+   * @return the path, or null if the URL does not name a Unix domain
+   *    socket.
+   */
+  public static String pathOf(String url)
+  {
+    if (url == null || !url.startsWith(URL_PREFIX))
+      return null;
+
+    String path = url.substring(URL_PREFIX.length());
+    if (path.startsWith("//"))
+      path = path.substring(2);
+    return path.isEmpty() ? null : path;
+  }
+
+  /**
+   * Returns the address of a socket file.
+   *
+   * @param path the path of the socket file.
+   * @return the address.
+   * @exception IOException if the runtime does not provide Unix domain
+   *    sockets.
+   */
+  public static SocketAddress address(String path) throws IOException
+  {
+    return (SocketAddress)invoke(ADDRESS_OF, path);
+  }
+
+  /**
+   * Opens a Unix domain socket channel, in blocking mode.
+   *
+   * @return the channel, not yet connected.
+   * @exception IOException if the channel cannot be opened.
+   */
+  public static SocketChannel openChannel() throws IOException
+  {
+    return (SocketChannel)invoke(OPEN_CHANNEL, UNIX);
+  }
+
+  /**
+   * Opens a Unix domain server socket channel, in blocking mode.
+   *
+   * @return the channel, not yet bound.
+   * @exception IOException if the channel cannot be opened.
+   */
+  public static ServerSocketChannel openServerChannel() throws IOException
+  {
+    return (ServerSocketChannel)invoke(OPEN_SERVER_CHANNEL, UNIX);
+  }
+
+  /**
+   * Connects to a socket file.
+   *
+   * @param path the path of the socket file.
+   * @return the connected channel, in blocking mode.
+   * @exception IOException if the connection cannot be made.
+   */
+  public static SocketChannel connect(String path) throws IOException
+  {
+    SocketChannel channel = openChannel();
+    try
+    {
+      channel.connect(address(path));
+    }
+    catch (IOException ex)
+    {
+      channel.close();
+      throw ex;
+    }
+    return channel;
+  }
+
+  /**
+   * Returns a stream reading a blocking channel.
+   *
+   * @param channel the channel.
+   * @return the stream; closing it closes the channel.
+   */
+  public static InputStream inputStream(final SocketChannel channel)
+  {
+    return new InputStream()
+    {
+      public int read() throws IOException
+      {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+        if (len == 0)
+          return 0;
+
+        return channel.read(ByteBuffer.wrap(b, off, len));
+      }
+
+      public void close() throws IOException
+      {
+        channel.close();
+      }
+    };
+  }
+
+  /**
+   * Returns a stream writing to a blocking channel.
+   *
+   * @param channel the channel.
+   * @return the stream; closing it closes the channel.
+   */
+  public static OutputStream outputStream(final SocketChannel channel)
+  {
+    return new OutputStream()
+    {
+      public void write(int b) throws IOException
+      {
+        write(new byte[] {(byte)b}, 0, 1);
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+        ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+        while (bytes.hasRemaining())
+          channel.write(bytes);
+      }
+
+      public void close() throws IOException
+      {
+        channel.close();
+      }
+    };
+  }
+
+// METHODS DESIGNED TO BE USED WITHIN THE CLASS ONLY ----------------
+
+  /**
+   * Calls a static method looked up by reflection.
+   *
+   * @param method the method, or null if it does not exist.
+   * @param argument the argument of the method.
+   * @return the result of the method.
+   * @exception IOException if the method does not exist or fails.
+   */
+  private static Object invoke(Method method, Object argument)
+    throws IOException
+  {
+    if (!isSupported())
+      throw new IOException("Unix domain sockets are not supported");
+
+    try
+    {
+      return method.invoke(null, argument);
+    }
+    catch (InvocationTargetException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException)
+        throw (IOException)cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      throw new IOException(cause);
+    }
+    catch (IllegalAccessException ex)
+    {
+      throw new IOException(ex);
+    }
+  }
+
+  /**
+   * Looks up <code>StandardProtocolFamily.UNIX</code>.
+   *
+   * @return the constant, or null if it does not exist.
+   */
+  private static ProtocolFamily lookupFamily()
+  {
+    try
+    {
+      return StandardProtocolFamily.valueOf("UNIX");
+    }
+    catch (IllegalArgumentException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Looks up a public static method.
+   *
+   * @param className the name of the class.
+   * @param name the name of the method.
+   * @param parameter the type of its parameter.
+   * @return the method, or null if it does not exist.
+   */
+  private static Method lookup(String className, String name,
+    Class<?> parameter)
+  {
+    try
+    {
+      return Class.forName(className).getMethod(name, parameter);
+    }
+    catch (Exception ex)
+    {
+      return null;
+    }
+  }
+}
+// End of UnixSockets class
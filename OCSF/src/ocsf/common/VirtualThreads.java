@@ -0,0 +1,91 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads when the Java runtime provides them.<p>
+ *
+ * The framework is compiled for older runtimes, on which virtual
+ * threads do not exist, so the builder is looked up by reflection.
+ * On such runtimes <code>factory</code> returns null and callers
+ * fall back to platform threads.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public final class VirtualThreads
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The <code>Thread.ofVirtual()</code> method, or null if the
+   * runtime does not provide virtual threads.
+   */
+  private static final Method OF_VIRTUAL = lookup();
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Not to be instantiated.
+   */
+  private VirtualThreads() {}
+
+// CLASS METHODS ****************************************************
+
+  /**
+   * @return true if the runtime provides virtual threads.
+   */
+  public static boolean isSupported()
+  {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Returns a factory of virtual threads named with the given prefix
+   * followed by a counter.
+   *
+   * @param prefix the prefix of the thread names.
+   * @return the factory, or null if the runtime does not provide
+   *    virtual threads.
+   */
+  public static ThreadFactory factory(String prefix)
+  {
+    if (OF_VIRTUAL == null)
+      return null;
+
+    try
+    {
+      Object builder = OF_VIRTUAL.invoke(null);
+      Class<?> builderClass = OF_VIRTUAL.getReturnType();
+      builder = builderClass.getMethod("name", String.class, long.class)
+        .invoke(builder, prefix, 0L);
+      return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+    }
+    catch (Exception ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Looks up <code>Thread.ofVirtual()</code>.
+   *
+   * @return the method, or null if it does not exist.
+   */
+  private static Method lookup()
+  {
+    try
+    {
+      return Thread.class.getMethod("ofVirtual");
+    }
+    catch (Exception ex)
+    {
+      return null;
+    }
+  }
+}
+// End of VirtualThreads class
@@ -1 +1 @@
-// This file contains material supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.com package ocsf.server;import java.net.*;import java.util.*;import java.io.*;/*** The <code> AbstractServer </code> class maintains a thread that waits* for connection attempts from clients. When a connection attempt occurs* it creates a new <code> ConnectionToClient </code> instance which* runs as a thread. When a client is thus connected to the* server, the two programs can then exchange <code> Object </code>* instances.<p>** Method <code> handleMessageFromClient </code> must be defined by* a concrete subclass. Several other hook methods may also be* overriden.<p>** Several public service methods are provided to applications that use* this framework, and several hook methods are also available<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @author Dr Robert Lagani&egrave;re* @author Dr Timothy C. Lethbridge* @author Fran&ccedil;ois B&eacute;langer* @author Paul Holden* @version February 2001 (2.12)* @see ocsf.server.ConnectionToClient*/public abstract class AbstractServer implements Runnable{  // INSTANCE VARIABLES *********************************************  /**   * The server socket: listens for clients who want to connect.   */  private ServerSocket serverSocket = null;  /**   * The connection listener thread.   */  private Thread connectionListener;  /**   * The port number   */  private int port;  /**   * The server timeout while for accepting connections.   * After timing out, the server will check to see if a command to   * stop the server has been issued; it not it will resume accepting   * connections.   * Set to half a second by default.   */  private int timeout = 500;  /**   * The maximum queue length; i.e. the maximum number of clients that   * can be waiting to connect.   * Set to 10 by default.   */  private int backlog = 10;  /**   * The thread group associated with client threads. Each member of the   * thread group is a <code> ConnectionToClient </code>.   */  private ThreadGroup clientThreadGroup;  /**   * Indicates if the listening thread is ready to stop.  Set to   * false by default.   */  private boolean readyToStop = false;// CONSTRUCTOR ******************************************************  /**   * Constructs a new server.   *   * @param port the port number on which to listen.   */  public AbstractServer(int port)  {    this.port = port;    this.clientThreadGroup =      new ThreadGroup("ConnectionToClient threads")      {        // All uncaught exceptions in connection threads will        // be sent to the clientException callback method.        public void uncaughtException(          Thread thread, Throwable exception)        {          clientException((ConnectionToClient)thread, exception);        }      };  }// INSTANCE METHODS *************************************************  /**   * Begins the thread that waits for new clients.   * If the server is already in listening mode, this   * call has no effect.   *   * @exception IOException if an I/O error occurs   * when creating the server socket.   */  final public void listen() throws IOException  {    if (!isListening())    {      if (serverSocket == null)      {        serverSocket = new ServerSocket(getPort(), backlog);      }      serverSocket.setSoTimeout(timeout);      readyToStop = false;      connectionListener = new Thread(this);      connectionListener.start();    }  }  /**   * Causes the server to stop accepting new connections.   */  final public void stopListening()  {    readyToStop = true;  }  /**   * Closes the server socket and the connections with all clients.   * Any exception thrown while closing a client is ignored.   * If one wishes to catch these exceptions, then clients   * should be individually closed before calling this method.   * The method also stops listening if this thread is running.   * If the server is already closed, this   * call has no effect.   *   * @exception IOException if an I/O error occurs while   * closing the server socket.   */  final synchronized public void close() throws IOException  {    if (serverSocket == null)      return;      stopListening();    try    {      serverSocket.close();    }    finally    {      // Close the client sockets of the already connected clients      Thread[] clientThreadList = getClientConnections();      for (int i=0; i<clientThreadList.length; i++)      {         try         {           ((ConnectionToClient)clientThreadList[i]).close();         }         // Ignore all exceptions when closing clients.         catch(Exception ex) {}      }      serverSocket = null;      serverClosed();    }  }  /**   * Sends a message to every client connected to the server.   * This is merely a utility; a subclass may want to do some checks   * before actually sending messages to all clients.  This method   * can be overriden, but if so it should still perform the general   * function of sending to all clients, perhaps after some kind   * of filtering is done. Any exception thrown while   * sending the message to a particular client is ignored.   *   * @param msg   Object The message to be sent   */  public void sendToAllClients(Object msg)  {    Thread[] clientThreadList = getClientConnections();    for (int i=0; i<clientThreadList.length; i++)    {      try      {        ((ConnectionToClient)clientThreadList[i]).sendToClient(msg);      }      catch (Exception ex) {}    }  }// ACCESSING METHODS ------------------------------------------------  /**   * Returns true if the server is ready to accept new clients.   *   * @return true if the server is listening.   */  final public boolean isListening()  {    return (connectionListener != null);  }  /**   * Returns an array containing the existing   * client connections. This can be used by   * concrete subclasses to implement messages that do something with   * each connection (e.g. kill it, send a message to it etc.).   * Remember that after this array is obtained, some clients   * in this migth disconnect. New clients can also connect,   * these later will not appear in the array.   *   * @return an array of <code>Thread</code> containing   * <code>ConnectionToClient</code> instances.   */  synchronized final public Thread[] getClientConnections()  {    Thread[] clientThreadList = new      Thread[clientThreadGroup.activeCount()];    clientThreadGroup.enumerate(clientThreadList);    return clientThreadList;  }  /**   * Counts the number of clients currently connected.   *   * @return the number of clients currently connected.   */  final public int getNumberOfClients()  {    return clientThreadGroup.activeCount();  }  /**   * Returns the port number.   *   * @return the port number.   */  final public int getPort()  {    return port;  }  /**   * Sets the port number for the next connection.   * The server must be closed and restarted for the port   * change to be in effect.   *   * @param port the port number.   */  final public void setPort(int port)  {    this.port = port;  }  /**   * Sets the timeout time when accepting connections.   * The default is half a second. This means that stopping the   * server may take up to timeout duration to actually stop.   * The server must be stopped and restarted for the timeout   * change to be effective.   *   * @param timeout the timeout time in ms.   */  final public void setTimeout(int timeout)  {    this.timeout = timeout;  }  /**   * Sets the maximum number of waiting connections accepted by the   * operating system. The default is 20.   * The server must be closed and restarted for the backlog   * change to be in effect.   *   * @param backlog the maximum number of connections.   */  final public void setBacklog(int backlog)  {    this.backlog = backlog;  }// RUN METHOD -------------------------------------------------------  /**   * Runs the listening thread that allows clients to connect.   * Not to be called.   */  final public void run()  {    // call the hook method to notify that the server is starting    serverStarted();    try    {      // Repeatedly waits for a new client connection, accepts it, and      // starts a new thread to handle data exchange.      while(!readyToStop)      {        try        {          // Wait here for new connection attempts, or a timeout          Socket clientSocket = serverSocket.accept();          // When a client is accepted, create a thread to handle          // the data exchange, then add it to thread group          synchronized(this)          {            ConnectionToClient c = new ConnectionToClient(              this.clientThreadGroup, clientSocket, this);          }        }        catch (InterruptedIOException exception)        {          // This will be thrown when a timeout occurs.          // The server will continue to listen if not ready to stop.        }      }      // call the hook method to notify that the server has stopped      serverStopped();    }    catch (IOException exception)    {      if (!readyToStop)      {        // Closing the socket must have thrown a SocketException        listeningException(exception);      }      else      {        serverStopped();      }    }    finally    {      readyToStop = true;      connectionListener = null;    }  }// METHODS DESIGNED TO BE OVERRIDDEN BY CONCRETE SUBCLASSES ---------  /**   * Hook method called each time a new client connection is   * accepted. The default implementation does nothing.   * @param client the connection connected to the client.   */  protected void clientConnected(ConnectionToClient client) {}  /**   * Hook method called each time a client disconnects.   * The default implementation does nothing. The method   * may be overridden by subclasses but should remains synchronized.   *   * @param client the connection with the client.   */  synchronized protected void clientDisconnected(    ConnectionToClient client) {}  /**   * Hook method called each time an exception is thrown in a   * ConnectionToClient thread.   * The method may be overridden by subclasses but should remains   * synchronized.   *   * @param client the client that raised the exception.   * @param Throwable the exception thrown.   */  synchronized protected void clientException(    ConnectionToClient client, Throwable exception) {}  /**   * Hook method called when the server stops accepting   * connections because an exception has been raised.   * The default implementation does nothing.   * This method may be overriden by subclasses.   *   * @param exception the exception raised.   */  protected void listeningException(Throwable exception) {}  /**   * Hook method called when the server starts listening for   * connections.  The default implementation does nothing.   * The method may be overridden by subclasses.   */  protected void serverStarted() {}  /**   * Hook method called when the server stops accepting   * connections.  The default implementation   * does nothing. This method may be overriden by subclasses.   */  protected void serverStopped() {}  /**   * Hook method called when the server is clased.   * The default implementation does nothing. This method may be   * overriden by subclasses. When the server is closed while still   * listening, serverStopped() will also be called.   */  protected void serverClosed() {}  /**   * Handles a command sent from one client to the server.   * This MUST be implemented by subclasses, who should respond to   * messages.   * This method is called by a synchronized method so it is also   * implcitly synchronized.   *   * @param msg   the message sent.   * @param client the connection connected to the client that   *  sent the message.   */  protected abstract void handleMessageFromClient(    Object msg, ConnectionToClient client);// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------  /**   * Receives a command sent from the client to the server.   * Called by the run method of <code>ConnectionToClient</code>   * instances that are watching for messages coming from the server   * This method is synchronized to ensure that whatever effects it has   * do not conflict with work being done by other threads. The method   * simply calls the <code>handleMessageFromClient</code> slot method.   *   * @param msg   the message sent.   * @param client the connection connected to the client that   *  sent the message.   */  final synchronized void receiveMessageFromClient(    Object msg, ConnectionToClient client)  {    this.handleMessageFromClient(msg, client);  }}// End of AbstractServer Class
\ No newline at end of file
+// This file contains material supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.com package ocsf.server;import java.net.*;import java.util.*;import java.util.concurrent.*;import java.util.concurrent.atomic.AtomicInteger;import java.io.*;import ocsf.common.CompressionStats;import ocsf.common.FrameCompressor;import ocsf.common.Framing;import ocsf.common.Heartbeat;import ocsf.common.MessageCodec;import ocsf.common.Session;import ocsf.common.UnixSockets;import ocsf.common.VirtualThreads;/*** The <code> AbstractServer </code> class maintains a thread that waits* for connection attempts from clients. When a connection attempt occurs* it creates a new <code> ConnectionToClient </code> instance which* runs as a thread. When a client is thus connected to the* server, the two programs can then exchange <code> Object </code>* instances.<p>** Method <code> handleMessageFromClient </code> must be defined by* a concrete subclass. Several other hook methods may also be* overriden.<p>** Several public service methods are provided to applications that use* this framework, and several hook methods are also available<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @author Dr Robert Lagani&egrave;re* @author Dr Timothy C. Lethbridge* @author Fran&ccedil;ois B&eacute;langer* @author Paul Holden* @version February 2001 (2.12)* @see ocsf.server.ConnectionToClient*/public abstract class AbstractServer implements Runnable{  // CLASS VARIABLES ************************************************  /**   * The largest number of threads sending the farewell message of   * <code>shutdown</code>.   */  private static final int SHUTDOWN_SENDERS = 16;  // INSTANCE VARIABLES *********************************************  /**   * The server socket: listens for clients who want to connect.   */  private ServerSocket serverSocket = null;  /**   * The connection listener thread.   */  private Thread connectionListener;  /**   * The port number   */  private int port;  /**   * The server timeout while for accepting connections.   * After timing out, the server will check to see if a command to   * stop the server has been issued; it not it will resume accepting   * connections.   * Set to half a second by default.   */  private int timeout = 500;  /**   * The maximum queue length; i.e. the maximum number of clients that   * can be waiting to connect.   * Set to 10 by default.   */  private int backlog = 10;  /**   * The thread group associated with client threads. Each member of the   * thread group is a <code> ConnectionToClient </code>.   */  private ThreadGroup clientThreadGroup;  /**   * Indicates if the listening thread is ready to stop.  Set to   * false by default.   */  private boolean readyToStop = false;  /**   * Indicates if clients are served by non-blocking event loops   * instead of one thread each. Set to false by default.   */  private boolean nonBlocking = false;  /**   * The number of event loops used in non-blocking mode.   * Set to the number of processors by default.   */  private int eventLoopCount = Runtime.getRuntime().availableProcessors();  /**   * The path of the Unix domain socket on which the server listens   * besides its port, or null. Set to null by default.   */  private String unixSocketPath = null;  /**   * The engine serving the clients in non-blocking mode, or null.   */  private NioServerEngine nioEngine;  /**   * The number of worker threads handling messages, or 0 if each   * message is handled by the thread that read it while holding the   * server lock. Set to 0 by default.   */  private int dispatchThreads = 0;  /**   * The maximum number of messages waiting for a dispatch worker.   */  private int dispatchQueueLimit = 1000;  /**   * Hands the messages to the worker threads, or null if messages are   * handled by the thread that read them.   */  private volatile MessageDispatcher dispatcher;  /**   * Indicates if connections read their sockets, and dispatch workers   * run, on virtual threads instead of platform threads. Set to false   * by default.   */  private boolean virtualThreads = false;  /**   * Creates the threads reading the client sockets, or null if each   * connection runs as a thread of the client thread group.   */  private ThreadFactory readerFactory;  /**   * The codec accepted when clients offer it, or null if clients   * always exchange objects with object streams.   */  private volatile MessageCodec messageCodec;  /**   * The length of the smallest frame compressed for clients that   * agree to it, or 0 if frames are never compressed. Set to 0 by   * default.   */  private volatile int compressionThreshold = 0;  /**   * The statistics of the frames compressed for all clients.   */  private final CompressionStats compressionStats = new CompressionStats();  /**   * The statistics of the messages sent to several clients at once.   */  private final FanOutStats fanOutStats = new FanOutStats();  /**   * The number of bytes written to a client after which its object   * stream is reset, or 0 to reset it after every message. Set to 0   * by default.   */  private int outputResetThreshold = 0;  /**   * Indicates if each blocking connection writes its messages on a   * thread of its own. Set to false by default.   */  private boolean asyncWrites = false;  /**   * The number of bytes waiting to be written to a client above which   * it is paused or dropped. Set to 1MB by default.   */  private volatile int outputHighWatermark = 1024 * 1024;  /**   * The number of bytes waiting to be written to a paused client at   * which reading from it resumes. Set to 256KB by default.   */  private volatile int outputLowWatermark = 256 * 1024;  /**   * Indicates if a client above the high watermark is dropped instead   * of paused. Set to false by default.   */  private volatile boolean dropSlowClients = false;  /**   * The time in milliseconds after which a connection on which   * nothing happened is closed, or 0 to keep idle connections open.   * Set to 0 by default.   */  private volatile int idleTimeout = 0;  /**   * The thread closing idle connections, or null if there is no idle   * timeout.   */  private ScheduledExecutorService reaper;  /**   * The number of connections above which new clients are refused,   * or 0 for no limit. Set to 0 by default.   */  private volatile int maxConnections = 0;  /**   * The number of connections from one address above which new   * clients from that address are refused, or 0 for no limit. Set to   * 0 by default.   */  private volatile int maxConnectionsPerAddress = 0;  /**   * The number of clients refused since the server was created.   */  private final AtomicInteger refusedConnectionCount = new AtomicInteger();  /**   * The clients subscribed to each topic. A topic is removed once it   * has no subscriber left; changes are made under the lock of the map.   */  private final ConcurrentHashMap<String, Set<ConnectionToClient>> subscribers =    new ConcurrentHashMap<String, Set<ConnectionToClient>>();  /**   * The time in milliseconds the session of a lost connection is kept   * for the client to resume it, or 0 to keep none. Set to 0 by   * default.   */  private volatile int sessionTimeout = 0;  /**   * The sessions of the clients that asked for one.   */  private final SessionStore sessions = new SessionStore();  /**   * Indicates that <code>shutdown</code> is in progress, so that new   * clients are refused.   */  private volatile boolean shuttingDown = false;  /**   * Notified each time a connection is forgotten, for   * <code>shutdown</code> to wait for the clients to leave.   */  private final Object connectionsLock = new Object();  /**   * The connections currently open, in every mode.   */  private final Set<ConnectionToClient> connections =    Collections.newSetFromMap(new ConcurrentHashMap<ConnectionToClient, Boolean>());// CONSTRUCTOR ******************************************************  /**   * Constructs a new server.   *   * @param port the port number on which to listen.   */  public AbstractServer(int port)  {    this.port = port;    this.clientThreadGroup =      new ThreadGroup("ConnectionToClient threads")      {        // All uncaught exceptions in connection threads will        // be sent to the clientException callback method.        public void uncaughtException(          Thread thread, Throwable exception)        {          clientException((ConnectionToClient)thread, exception);        }      };  }// INSTANCE METHODS *************************************************  /**   * Begins the thread that waits for new clients.   * If the server is already in listening mode, this   * call has no effect.   *   * @exception IOException if an I/O error occurs   * when creating the server socket, or if a Unix domain socket is   * asked for but cannot be provided.   */  final public void listen() throws IOException  {    if (!isListening())    {      if (unixSocketPath != null && !nonBlocking)      {        throw new IOException(          "A Unix domain socket requires the non-blocking mode");      }      if (unixSocketPath != null && !UnixSockets.isSupported())      {        throw new IOException(          "Unix domain sockets are not supported by this runtime");      }      if (nonBlocking)      {        if (nioEngine == null)        {          nioEngine = new NioServerEngine(            this, clientThreadGroup, eventLoopCount);        }        nioEngine.open(getPort(), backlog, unixSocketPath);      }      else      {        if (serverSocket == null)        {          serverSocket = new ServerSocket(getPort(), backlog);        }        serverSocket.setSoTimeout(timeout);      }      readerFactory = virtualThreads ?        VirtualThreads.factory("ConnectionToClient reader ") : null;      if (dispatchThreads > 0 && dispatcher == null)      {        dispatcher = new MessageDispatcher(this, dispatchThreads,          dispatchQueueLimit, virtualThreads ?            VirtualThreads.factory("OCSF dispatch worker ") : null);      }      if (idleTimeout > 0 && reaper == null)        startReaper();      shuttingDown = false;      readyToStop = false;      connectionListener = new Thread(this);      connectionListener.start();    }  }  /**   * Causes the server to stop accepting new connections.   */  final public void stopListening()  {    readyToStop = true;  }  /**   * Closes the server socket and the connections with all clients.   * Any exception thrown while closing a client is ignored.   * If one wishes to catch these exceptions, then clients   * should be individually closed before calling this method.   * The method also stops listening if this thread is running.   * If the server is already closed, this   * call has no effect.   *   * @exception IOException if an I/O error occurs while   * closing the server socket.   */  final synchronized public void close() throws IOException  {    if (serverSocket == null && nioEngine == null)      return;      stopListening();    try    {      if (serverSocket != null)        serverSocket.close();    }    finally    {      // Close the client sockets of the already connected clients      Thread[] clientThreadList = getClientConnections();      for (int i=0; i<clientThreadList.length; i++)      {         try         {           ((ConnectionToClient)clientThreadList[i]).close();         }         // Ignore all exceptions when closing clients.         catch(Exception ex) {}      }      if (nioEngine != null)        nioEngine.close();      nioEngine = null;      if (dispatcher != null)        dispatcher.shutdown();      dispatcher = null;      if (reaper != null)        reaper.shutdownNow();      reaper = null;      serverSocket = null;      sessions.clear();      serverClosed();    }  }  /**   * Shuts the server down gracefully. New clients are refused at once,   * the farewell message is sent to every client in parallel, so that   * a slow client does not hold up the others, and the server waits   * for the clients to close their connections. Once they are gone,   * or the deadline is reached, the messages already received are   * handled by the dispatch workers and the handler running, if any,   * is let finish. Finally the server is closed like by   * <code>close</code>, which forcibly closes the clients still   * connected.<p>   *   * The timeout bounds the whole shutdown, except for the handler   * running at the deadline in the absence of dispatch workers.   *   * @param farewell the message sent to every client, or null to send   *    nothing and only wait for the clients to leave.   * @param timeout the time in milliseconds allowed to the clients to   *    leave and to the workers to finish.   * @return the number of clients that had to be closed forcibly.   * @exception IOException if an I/O error occurs while closing the   *    server socket.   */  final public int shutdown(final Object farewell, long timeout)    throws IOException  {    // Not synchronized: handlers must keep running to let clients go    long deadline = System.nanoTime()      + TimeUnit.MILLISECONDS.toNanos(Math.max(0, timeout));    shuttingDown = true;    stopListening();    ConnectionToClient[] clients =      connections.toArray(new ConnectionToClient[0]);    ExecutorService senders = null;    if (farewell != null && clients.length > 0)    {      final SharedMessage shared = new SharedMessage(farewell, fanOutStats);      senders = Executors.newFixedThreadPool(        Math.min(clients.length, SHUTDOWN_SENDERS), new ThreadFactory()        {          public Thread newThread(Runnable task)          {            Thread thread = new Thread(task, "OCSF shutdown sender");            thread.setDaemon(true);            return thread;          }        });      for (final ConnectionToClient client : clients)      {        senders.execute(new Runnable()        {          public void run()          {            try            {              client.sendToClient(shared);            }            // The client will be closed forcibly            catch (Exception ex) {}          }        });      }      senders.shutdown();    }    try    {      synchronized(connectionsLock)      {        long remaining;        while (!connections.isEmpty()          && (remaining = deadline - System.nanoTime()) > 0)        {          TimeUnit.NANOSECONDS.timedWait(connectionsLock, remaining);        }      }      MessageDispatcher current = dispatcher;      if (current != null)        current.awaitTermination(Math.max(0, deadline - System.nanoTime()));    }    catch (InterruptedException ex)    {      // Close at once      Thread.currentThread().interrupt();    }    int forced = connections.size();    try    {      close();    }    finally    {      // Senders stuck on a client are released by closing it      if (senders != null)        senders.shutdownNow();    }    return forced;  }  /**   * Sends a message to every client connected to the server.   * This is merely a utility; a subclass may want to do some checks   * before actually sending messages to all clients.  This method   * can be overriden, but if so it should still perform the general   * function of sending to all clients, perhaps after some kind   * of filtering is done. Any exception thrown while   * sending the message to a particular client is ignored.   * The message is encoded once for all the clients sharing a wire   * format, as accounted for by <code>getFanOutStats</code>.   *   * @param msg   Object The message to be sent   */  public void sendToAllClients(Object msg)  {    SharedMessage shared = new SharedMessage(msg, fanOutStats);    for (ConnectionToClient client : connections)    {      try      {        client.sendToClient(shared);      }      catch (Exception ex) {}    }  }  /**   * Sends a message to the clients subscribed to a topic. The message   * is encoded once for all the clients sharing a wire format. Any   * exception thrown while sending the message to a particular client   * is ignored.   *   * @param topic the name of the topic.   * @param msg the message to be sent.   * @return the number of clients the message was sent to.   * @see ocsf.server.ConnectionToClient#subscribe(String)   */  public int publish(String topic, Object msg)  {    Set<ConnectionToClient> clients = subscribers.get(topic);    if (clients == null)      return 0;    SharedMessage shared = new SharedMessage(msg, fanOutStats);    int count = 0;    for (ConnectionToClient client : clients)    {      try      {        client.sendToClient(shared);        count++;      }      catch (Exception ex) {}    }    return count;  }// ACCESSING METHODS ------------------------------------------------  /**   * Returns true if the server is ready to accept new clients.   *   * @return true if the server is listening.   */  final public boolean isListening()  {    return (connectionListener != null);  }  /**   * Returns an array containing the existing   * client connections. This can be used by   * concrete subclasses to implement messages that do something with   * each connection (e.g. kill it, send a message to it etc.).   * Remember that after this array is obtained, some clients   * in this migth disconnect. New clients can also connect,   * these later will not appear in the array.   *   * @return an array of <code>Thread</code> containing   * <code>ConnectionToClient</code> instances.   */  final public Thread[] getClientConnections()  {    return connections.toArray(new Thread[0]);  }  /**   * Returns the existing client connections. Unlike   * <code>getClientConnections</code>, no array is copied: the   * collection is a live, thread safe view that may be iterated while   * clients connect and disconnect. The connections are tracked in   * every mode, including those whose connections are not running as   * threads of the client thread group.   *   * @return the connections currently open.   */  final public Collection<ConnectionToClient> getConnections()  {    return Collections.unmodifiableSet(connections);  }  /**   * Returns the clients subscribed to a topic.   *   * @param topic the name of the topic.   * @return a read only view of the subscribers, empty if there is   *    none.   */  final public Collection<ConnectionToClient> getSubscribers(String topic)  {    Set<ConnectionToClient> clients = subscribers.get(topic);    return clients == null ? Collections.<ConnectionToClient>emptySet() :      Collections.unmodifiableSet(clients);  }  /**   * Returns the topics at least one client is subscribed to.   *   * @return a read only view of the topics.   */  final public Set<String> getTopics()  {    return Collections.unmodifiableSet(subscribers.keySet());  }  /**   * Counts the number of clients currently connected.   *   * @return the number of clients currently connected.   */  final public int getNumberOfClients()  {    return connections.size();  }  /**   * Returns the port number.   *   * @return the port number.   */  final public int getPort()  {    return port;  }  /**   * Sets the port number for the next connection.   * The server must be closed and restarted for the port   * change to be in effect.   *   * @param port the port number.   */  final public void setPort(int port)  {    this.port = port;  }  /**   * Sets the timeout time when accepting connections.   * The default is half a second. This means that stopping the   * server may take up to timeout duration to actually stop.   * The server must be stopped and restarted for the timeout   * change to be effective.   *   * @param timeout the timeout time in ms.   */  final public void setTimeout(int timeout)  {    this.timeout = timeout;  }  /**   * Sets the maximum number of waiting connections accepted by the   * operating system. The default is 20.   * The server must be closed and restarted for the backlog   * change to be in effect.   *   * @param backlog the maximum number of connections.   */  final public void setBacklog(int backlog)  {    this.backlog = backlog;  }  /**   * Returns the maximum number of waiting connections accepted by the   * operating system.   *   * @return the backlog.   */  final public int getBacklog()  {    return backlog;  }  /**   * Sets the number of open connections above which new clients are   * refused, so that a spike of connections does not slow down the   * clients already connected. A refused client still completes its   * handshake so that <code>clientRefused</code> can tell it why, then   * its connection is closed without being reported as connected.   *   * @param maxConnections the number of connections, or 0 for no   *    limit.   */  final public void setMaxConnections(int maxConnections)  {    if (maxConnections < 0)      throw new IllegalArgumentException("negative connection limit");    this.maxConnections = maxConnections;  }  /**   * Returns the number of open connections above which new clients   * are refused.   *   * @return the number of connections, or 0 if there is no limit.   */  final public int getMaxConnections()  {    return maxConnections;  }  /**   * Sets the number of open connections from one address above which   * new clients from that address are refused, as   * <code>setMaxConnections</code> does for all clients.   *   * @param maxConnectionsPerAddress the number of connections, or 0   *    for no limit.   */  final public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress)  {    if (maxConnectionsPerAddress < 0)      throw new IllegalArgumentException("negative connection limit");    this.maxConnectionsPerAddress = maxConnectionsPerAddress;  }  /**   * Returns the number of open connections from one address above   * which new clients from that address are refused.   *   * @return the number of connections, or 0 if there is no limit.   */  final public int getMaxConnectionsPerAddress()  {    return maxConnectionsPerAddress;  }  /**   * Returns the number of clients refused because of the connection   * limits.   *   * @return the number of refused clients.   */  final public int getRefusedConnectionCount()  {    return refusedConnectionCount.get();  }  /**   * Sets the time the session of a lost connection is kept for the   * client to resume it. A client reconnecting by itself, see   * <code>AbstractClient.setAutoReconnect</code>, presents the token   * of its session on the new connection; within the timeout, the   * information saved with <code>setInfo</code> and the topics of the   * lost connection are given to the new one, and   * <code>clientResumed</code> is called. Sessions are not kept during   * <code>shutdown</code>, and are forgotten when the server closes.   *   * @param sessionTimeout the time in milliseconds, or 0 to let no   *    session be resumed.   */  final public void setSessionTimeout(int sessionTimeout)  {    if (sessionTimeout < 0)      throw new IllegalArgumentException("negative session timeout");    this.sessionTimeout = sessionTimeout;  }  /**   * Returns the time the session of a lost connection is kept.   *   * @return the time in milliseconds, or 0 if no session is kept.   */  final public int getSessionTimeout()  {    return sessionTimeout;  }  /**   * Returns the number of sessions of lost connections kept for their   * clients to resume.   *   * @return the number of suspended sessions.   */  final public int getSuspendedSessionCount()  {    return sessions.getSuspendedCount();  }  /**   * Selects how clients are served. In blocking mode, the default,   * each client has its own <code>ConnectionToClient</code> thread   * blocked on the socket. In non-blocking mode, a small pool of event   * loops multiplexes all the client channels with selectors, so idle   * clients do not cost a thread each. The hook methods are called in   * both modes; in non-blocking mode they run on the event loops, so   * a slow <code>handleMessageFromClient</code> delays the other   * clients of the same loop.   * The server must be closed and restarted for the mode   * change to be in effect.   *   * @param nonBlocking true to serve clients with event loops.   */  final public void setNonBlocking(boolean nonBlocking)  {    this.nonBlocking = nonBlocking;  }  /**   * Sets the path of a Unix domain socket on which the server listens   * besides its port. Clients running on the same host connect to it   * with a URL such as "unix:/var/run/server.sock", bypassing the TCP   * stack. Such clients have no Internet address.<p>   *   * The socket requires the non-blocking mode and a runtime providing   * Unix domain sockets. The file is created when the server starts   * listening and deleted when it closes.   * The server must be closed and restarted for the change   * to be in effect.   *   * @param path the path of the socket file, or null for none.   */  final public void setUnixSocketPath(String path)  {    this.unixSocketPath = path;  }  /**   * Returns the path of the Unix domain socket of the server.   *   * @return the path, or null if the server only listens on its port.   */  final public String getUnixSocketPath()  {    return unixSocketPath;  }  /**   * Returns true if clients are served by non-blocking event loops.   *   * @return true if the server runs in non-blocking mode.   */  final public boolean isNonBlocking()  {    return nonBlocking;  }  /**   * Sets the number of event loops used in non-blocking mode.   * The default is the number of processors.   * The server must be closed and restarted for the change   * to be in effect.   *   * @param eventLoopCount the number of event loops.   */  final public void setEventLoopCount(int eventLoopCount)  {    this.eventLoopCount = eventLoopCount;  }  /**   * Sets the codec accepted when a connecting client offers one with   * the same name. Messages of such clients are exchanged as frames   * encoded by the codec; other clients keep exchanging serialized   * objects. The change applies to clients connecting afterwards.   *   * @param messageCodec the codec, or null to refuse every offer.   */  final public void setMessageCodec(MessageCodec messageCodec)  {    this.messageCodec = messageCodec;  }  /**   * Returns the codec accepted when clients offer it.   *   * @return the codec, or null if every offer is refused.   */  final public MessageCodec getMessageCodec()  {    return messageCodec;  }  /**   * Sets the length of the smallest frame compressed. Clients whose   * codec is accepted and that support compression get their large   * frames compressed and may send compressed frames in turn. Large   * messages such as reports and menus shrink several times, at the   * cost of the CPU time reported by <code>getCompressionStats</code>.   * The change applies to clients connecting afterwards.   *   * @param compressionThreshold the length in bytes, or 0 to never   *    compress.   */  final public void setCompressionThreshold(int compressionThreshold)  {    if (compressionThreshold < 0)      throw new IllegalArgumentException("negative compression threshold");    this.compressionThreshold = compressionThreshold;  }  /**   * Returns the length of the smallest frame compressed.   *   * @return the length in bytes, or 0 if frames are never compressed.   */  final public int getCompressionThreshold()  {    return compressionThreshold;  }  /**   * Returns the statistics of the frames compressed and inflated, per   * type of message as named by the codec.   *   * @return the statistics, updated as clients exchange messages.   */  final public CompressionStats getCompressionStats()  {    return compressionStats;  }  /**   * Returns the statistics of the messages sent to several clients at   * once: the bytes encoded, the bytes sent and the bytes saved by   * encoding each message once rather than once per client.   *   * @return the statistics, updated as messages are sent.   */  final public FanOutStats getFanOutStats()  {    return fanOutStats;  }  /**   * Selects the threads used in blocking mode. By default, each   * connection reads its socket as a platform thread of the client   * thread group. With virtual threads, the same blocking read loop   * runs on a virtual thread instead, as do the dispatch workers, so   * that tens of thousands of connections need neither a large heap   * nor many operating system threads. The connections then are not   * members of the thread group and are not themselves alive; use   * <code>getConnections</code> to find them.   * Virtual threads require Java 21; on older runtimes platform threads   * are used.   * The server must be closed and restarted for the change   * to be in effect.   *   * @param virtualThreads true to use virtual threads.   */  final public void setVirtualThreads(boolean virtualThreads)  {    this.virtualThreads = virtualThreads;  }  /**   * Returns true if connections are served by virtual threads.   *   * @return true if virtual threads are requested and available.   */  final public boolean isVirtualThreads()  {    return virtualThreads && VirtualThreads.isSupported();  }  /**   * Selects how messages are handled. With 0 threads, the default,   * each message is handled by the thread that read it, while holding   * the lock of the server, so only one message of all the clients is   * handled at a time. With more threads, messages are handed to a pool   * of that many workers: the messages of one client are still handled   * one at a time and in order, but the messages of different clients   * are handled in parallel, so <code>handleMessageFromClient</code>   * must then be thread safe.   * The server must be closed and restarted for the change   * to be in effect.   *   * @param dispatchThreads the number of worker threads, or 0.   */  final public void setDispatchThreads(int dispatchThreads)  {    this.dispatchThreads = dispatchThreads;  }  /**   * Sets the maximum number of messages waiting for a dispatch worker.   * Messages received when the limit is reached are passed to   * <code>messageRejected</code> instead of being handled.   * The default is 1000.   * The server must be closed and restarted for the change   * to be in effect.   *   * @param dispatchQueueLimit the maximum number of waiting messages.   */  final public void setDispatchQueueLimit(int dispatchQueueLimit)  {    this.dispatchQueueLimit = dispatchQueueLimit;  }  /**   * Sets when the object stream to a client is reset. An object   * stream keeps every object it wrote reachable until it is reset,   * and sends an object written again as a reference to the first   * copy, without its later changes. With 0, the default, the stream   * is reset after every message, so each message is sent as it is   * at the time and released once written. Otherwise the stream is   * reset once that many bytes were written since the last reset,   * which bounds the memory held per client while objects repeated   * between resets are only sent once; they must then not be changed   * once sent. Frames of a codec hold no references and are not   * affected. Only connections opened afterwards use the new value.   *   * @param outputResetThreshold the number of bytes between resets,   *    or 0 to reset after every message.   */  final public void setOutputResetThreshold(int outputResetThreshold)  {    this.outputResetThreshold = outputResetThreshold;  }  /**   * Returns when the object stream to a client is reset.   *   * @return the number of bytes between resets, or 0 if the stream is   *    reset after every message.   */  final public int getOutputResetThreshold()  {    return outputResetThreshold;  }  /**   * Selects how messages are written to a client of a blocking   * connection. By default they are written by the thread sending   * them, which waits as long as the client is slow to read. When set   * to true, each connection queues its messages for a writer thread   * of its own, which writes every queued message with a single flush,   * and the sender goes on at once. Non-blocking connections always   * queue their messages for their event loop.   * Only connections opened afterwards use the new value.   *   * @param asyncWrites true to write on a thread per connection.   */  final public void setAsyncWrites(boolean asyncWrites)  {    this.asyncWrites = asyncWrites;  }  /**   * Returns true if blocking connections write on a thread of their   * own.   *   * @return true if writes are asynchronous.   */  final public boolean isAsyncWrites()  {    return asyncWrites;  }  /**   * Sets the watermarks of the messages queued for a client. When more   * bytes than the high watermark wait to be written to a client, the   * server stops reading its requests, so that it stops asking for   * replies, until they fall to the low watermark; or it drops the   * client if <code>setDropSlowClients</code> was called. Only queued   * messages count: a blocking connection without asynchronous writes   * never queues any.   * The defaults are 1MB and 256KB.   *   * @param high the number of bytes above which a client is paused.   * @param low the number of bytes at which a paused client resumes.   * @exception IllegalArgumentException if low is negative or above   *    high.   */  final public void setOutputWatermarks(int high, int low)  {    if (low < 0 || low > high)      throw new IllegalArgumentException(        "invalid watermarks " + high + "/" + low);    this.outputLowWatermark = low;    this.outputHighWatermark = high;  }  /**   * @return the number of queued bytes above which a client is   *    paused or dropped.   */  final public int getOutputHighWatermark()  {    return outputHighWatermark;  }  /**   * @return the number of queued bytes at which a paused client   *    resumes.   */  final public int getOutputLowWatermark()  {    return outputLowWatermark;  }  /**   * Selects what happens to a client above the high watermark: by   * default reading from it is paused; when set to true it is closed   * and reported to <code>clientException</code> instead.   *   * @param dropSlowClients true to drop slow clients.   */  final public void setDropSlowClients(boolean dropSlowClients)  {    this.dropSlowClients = dropSlowClients;  }  /**   * @return true if clients above the high watermark are dropped.   */  final public boolean isDropSlowClients()  {    return dropSlowClients;  }  /**   * Sets the time after which a connection on which nothing happened   * is closed. Clients show they are alive by sending heartbeats, see   * <code>AbstractClient.setHeartbeatInterval</code>, so that a client   * that crashed or lost its network without closing its socket does   * not keep its thread, its socket and its buffers forever. Bytes   * received and bytes the client accepts both count as activity.   * A client closed this way is reported to <code>clientTimedOut</code>   * and then to <code>clientDisconnected</code>.   * The change applies from the next call to <code>listen</code>.   *   * @param idleTimeout the time in milliseconds, or 0 to keep idle   *    connections open.   */  final public void setIdleTimeout(int idleTimeout)  {    if (idleTimeout < 0)      throw new IllegalArgumentException("negative idle timeout");    this.idleTimeout = idleTimeout;  }  /**   * Returns the time after which an idle connection is closed.   *   * @return the time in milliseconds, or 0 if idle connections are   *    kept open.   */  final public int getIdleTimeout()  {    return idleTimeout;  }  /**   * Returns the memory held for the output of all the clients: the   * bytes retained by their object streams until the next reset, and   * the bytes waiting to be written to their sockets.   *   * @return the number of bytes held for output.   * @see ocsf.server.ConnectionToClient#getRetainedOutputBytes()   * @see ocsf.server.ConnectionToClient#getPendingOutputBytes()   */  final public long getOutputMemory()  {    long total = 0;    for (ConnectionToClient client : connections)      total += client.getRetainedOutputBytes()        + client.getPendingOutputBytes();    return total;  }  /**   * Returns the number of messages waiting for a dispatch worker.   *   * @return the number of waiting messages, or 0 if messages are not   *    dispatched to workers.   */  final public int getDispatchQueueDepth()  {    MessageDispatcher current = dispatcher;    return current == null ? 0 : current.getQueuedCount();  }  /**   * Returns the number of messages rejected because the dispatch   * workers were saturated, since the server was last started.   *   * @return the number of rejected messages.   */  final public int getRejectedMessageCount()  {    MessageDispatcher current = dispatcher;    return current == null ? 0 : current.getRejectedCount();  }// RUN METHOD -------------------------------------------------------  /**   * Runs the listening thread that allows clients to connect.   * Not to be called.   */  final public void run()  {    // call the hook method to notify that the server is starting    serverStarted();    // The engine is captured since close() may clear it at any time    NioServerEngine engine = nioEngine;    try    {      // Repeatedly waits for a new client connection, accepts it, and      // starts a new thread to handle data exchange.      while(!readyToStop)      {        if (engine != null)        {          // Wait for connection attempts, or a timeout, and hand          // the new channels over to the event loops          engine.accept(timeout);          continue;        }        try        {          // Wait here for new connection attempts, or a timeout          Socket clientSocket = serverSocket.accept();          // When a client is accepted, create a thread to handle          // the data exchange, then add it to thread group          synchronized(this)          {            try            {              ConnectionToClient c = new ConnectionToClient(                this.clientThreadGroup, clientSocket, this);            }            catch (IOException exception)            {              // The client closed or sent garbage before its streams              // were set up; its socket is closed, keep listening            }          }        }        catch (InterruptedIOException exception)        {          // This will be thrown when a timeout occurs.          // The server will continue to listen if not ready to stop.        }      }      // call the hook method to notify that the server has stopped      serverStopped();    }    catch (IOException exception)    {      if (!readyToStop)      {        // Closing the socket must have thrown a SocketException        listeningException(exception);      }      else      {        serverStopped();      }    }    finally    {      readyToStop = true;      connectionListener = null;    }  }// METHODS DESIGNED TO BE OVERRIDDEN BY CONCRETE SUBCLASSES ---------  /**   * Hook method called each time a new client connection is   * accepted. The default implementation does nothing.   * @param client the connection connected to the client.   */  protected void clientConnected(ConnectionToClient client) {}  /**   * Hook method called each time a client disconnects.   * The default implementation does nothing. The method   * may be overridden by subclasses but should remains synchronized.   *   * @param client the connection with the client.   */  synchronized protected void clientDisconnected(    ConnectionToClient client) {}  /**   * Hook method called each time an exception is thrown in a   * ConnectionToClient thread.   * The method may be overridden by subclasses but should remains   * synchronized.   *   * @param client the client that raised the exception.   * @param Throwable the exception thrown.   */  synchronized protected void clientException(    ConnectionToClient client, Throwable exception) {}  /**   * Hook method called when the server stops accepting   * connections because an exception has been raised.   * The default implementation does nothing.   * This method may be overriden by subclasses.   *   * @param exception the exception raised.   */  protected void listeningException(Throwable exception) {}  /**   * Hook method called when the server starts listening for   * connections.  The default implementation does nothing.   * The method may be overridden by subclasses.   */  protected void serverStarted() {}  /**   * Hook method called when the server stops accepting   * connections.  The default implementation   * does nothing. This method may be overriden by subclasses.   */  protected void serverStopped() {}  /**   * Hook method called when the server is clased.   * The default implementation does nothing. This method may be   * overriden by subclasses. When the server is closed while still   * listening, serverStopped() will also be called.   */  protected void serverClosed() {}  /**   * Hook method called when a message is not handled because the   * dispatch workers are saturated. It is called on the thread that   * read the message and should return quickly, for instance after   * telling the client to retry later.   * The default implementation does nothing.   * This method may be overriden by subclasses.   *   * @param msg the message rejected.   * @param client the connection connected to the client that   *  sent the message.   */  protected void messageRejected(Object msg, ConnectionToClient client) {}  /**   * Hook method called when a connection is about to be closed because   * nothing happened on it for longer than the idle timeout. It is   * called on the thread closing idle connections and should return   * quickly. clientDisconnected() is called once the connection is   * closed.   * The default implementation does nothing.   * This method may be overriden by subclasses.   *   * @param client the connection with the client.   */  protected void clientTimedOut(ConnectionToClient client) {}  /**   * Hook method called when a client is refused because of the   * connection limits. Its handshake is complete, so a message sent   * to it now, such as telling it when to try again, reaches it   * before its connection is closed. It is called on the thread   * accepting or reading connections and should return quickly.   * Neither clientConnected() nor clientDisconnected() is called for   * a refused client.   * The default implementation does nothing.   * This method may be overriden by subclasses.   *   * @param client the connection with the client.   * @param reason the limit that was reached.   */  protected void clientRefused(ConnectionToClient client, String reason) {}  /**   * Hook method called when a client resumed the session of a lost   * connection on a new one. The information saved on the lost   * connection and its topics are already given to the new one; the   * lost connection has been forgotten, and closed if the server had   * not noticed it was lost yet. The client is told the session was   * resumed once this method returns.   * The default implementation does nothing.   * Unless messages are dispatched to worker threads, the call is   * synchronized like <code>handleMessageFromClient</code>.   *   * @param client the new connection with the client.   */  protected void clientResumed(ConnectionToClient client) {}  /**   * Handles a command sent from one client to the server.   * This MUST be implemented by subclasses, who should respond to   * messages.   * Unless messages are dispatched to worker threads, this method is   * called by a synchronized method so it is also implcitly   * synchronized.   *   * @param msg   the message sent.   * @param client the connection connected to the client that   *  sent the message.   */  protected abstract void handleMessageFromClient(    Object msg, ConnectionToClient client);// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------  /**   * Returns the factory of the threads reading the client sockets.   *   * @return the factory, or null if connections run as threads of   *    the client thread group.   */  ThreadFactory getReaderFactory()  {    return readerFactory;  }  /**   * Creates the compressor of a connection whose codec is accepted,   * if the client offered compression and the server compresses.   *   * @param features the features offered by the client.   * @return the compressor, or null if frames are not compressed.   */  FrameCompressor createCompressor(int features)  {    int threshold = compressionThreshold;    if (threshold == 0 || (features & Framing.COMPRESSION) == 0)      return null;    return new FrameCompressor(threshold, compressionStats);  }  /**   * Tells if a new client may connect, according to the connection   * limits. Called by the thread accepting connections, so that the   * counts cannot change under it other than by decreasing.   *   * @param address the address of the client.   * @return null if the client may connect, otherwise the limit that   *    was reached.   */  String checkAdmission(InetAddress address)  {    int limit = maxConnections;    String refusal = null;    if (shuttingDown)    {      refusal = "server shutting down";    }    else if (limit > 0 && connections.size() >= limit)    {      refusal = "too many connections";    }    else if ((limit = maxConnectionsPerAddress) > 0 && address != null)    {      int count = 0;      for (ConnectionToClient client : connections)      {        if (address.equals(client.getInetAddress()))          count++;      }      if (count >= limit)        refusal = "too many connections from " + address.getHostAddress();    }    if (refusal != null)      refusedConnectionCount.incrementAndGet();    return refusal;  }  /**   * Records a connection that has been opened.   *   * @param client the new connection.   */  void addConnection(ConnectionToClient client)  {    connections.add(client);  }  /**   * Forgets a connection that has been closed.   *   * @param client the closed connection.   */  void removeConnection(ConnectionToClient client)  {    boolean removed = connections.remove(client);    sessions.suspend(client, shuttingDown ? 0 : sessionTimeout);    for (String topic : client.getTopics())      removeSubscriber(topic, client);    if (removed && shuttingDown)    {      synchronized(connectionsLock)      {        connectionsLock.notifyAll();      }    }  }  /**   * Records that a client subscribed to a topic. A client already   * closed is not kept.   *   * @param topic the name of the topic.   * @param client the subscribed client.   */  void addSubscriber(String topic, ConnectionToClient client)  {    synchronized(subscribers)    {      Set<ConnectionToClient> clients = subscribers.get(topic);      if (clients == null)      {        clients = Collections.newSetFromMap(          new ConcurrentHashMap<ConnectionToClient, Boolean>());        subscribers.put(topic, clients);      }      clients.add(client);    }    // The connection may have closed while subscribing    if (!connections.contains(client))      removeSubscriber(topic, client);  }  /**   * Records that a client unsubscribed from a topic.   *   * @param topic the name of the topic.   * @param client the client.   */  void removeSubscriber(String topic, ConnectionToClient client)  {    synchronized(subscribers)    {      Set<ConnectionToClient> clients = subscribers.get(topic);      if (clients != null && clients.remove(client) && clients.isEmpty())        subscribers.remove(topic);    }  }  /**   * Receives a command sent from the client to the server.   * Called by the run method of <code>ConnectionToClient</code>   * instances that are watching for messages coming from the server   * Unless messages are dispatched to worker threads, the call is   * synchronized to ensure that whatever effects it has do not conflict   * with work being done by other threads.  The method then simply   * calls the <code>handleMessageFromClient</code> slot method.   *   * @param msg   the message sent.   * @param client the connection connected to the client that   *  sent the message.   */  final void receiveMessageFromClient(    Object msg, ConnectionToClient client)  {    client.recordActivity();    // Heartbeats only show that the client is alive    if (msg instanceof Heartbeat)    {      if (msg == Heartbeat.PING)      {        try        {          client.sendToClient(Heartbeat.PONG);        }        catch (IOException ex) {}      }      return;    }    // So does the session offer of a client reconnecting by itself    if (msg instanceof Session)    {      startSession((Session)msg, client);      return;    }    MessageDispatcher current = dispatcher;    if (current == null)    {      synchronized(this)      {        this.handleMessageFromClient(msg, client);      }    }    else if (!current.dispatch(msg, client))    {      messageRejected(msg, client);    }  }// METHODS DESIGNED TO BE USED WITHIN THE CLASS ONLY ----------------  /**   * Gives a client a new session, resuming the session of its lost   * connection if the token it presents is still valid, and tells the   * client the new token.   *   * @param offer the session offer of the client.   * @param client the connection with the client.   */  private void startSession(Session offer, ConnectionToClient client)  {    SessionStore.Saved saved = null;    if (offer.getToken() != null && sessionTimeout > 0)    {      // The lost connection may still look open to the server      ConnectionToClient lost = sessions.takeLive(offer.getToken());      if (lost != null && lost != client)      {        saved = new SessionStore.Saved(lost.copyInfo(),          new HashSet<String>(lost.getTopics()), 0);        try        {          lost.close();        }        catch (IOException ex) {}      }      else      {        saved = sessions.takeSuspended(offer.getToken());      }    }    String token = sessions.issue(client);    // The connection may have closed meanwhile    if (!connections.contains(client))    {      sessions.suspend(client, 0);      return;    }    if (saved != null)    {      client.restoreInfo(saved.info);      for (String topic : saved.topics)        client.subscribe(topic);      if (dispatcher == null)      {        synchronized(this)        {          clientResumed(client);        }      }      else      {        clientResumed(client);      }    }    try    {      client.sendToClient(new Session(token, saved != null));    }    catch (IOException ex) {}  }  /**   * Starts the thread closing idle connections. It looks at the   * connections four times per idle timeout, so a dead connection is   * closed at most a quarter of the timeout late.   */  private void startReaper()  {    reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()    {      public Thread newThread(Runnable task)      {        // Not in the client thread group, whose handler expects        // every thread to be a connection        Thread thread = new Thread(task, "OCSF idle reaper");        thread.setDaemon(true);        return thread;      }    });    long period = Math.max(idleTimeout / 4, 10);    reaper.scheduleWithFixedDelay(new Runnable()    {      public void run()      {        // An exception would cancel the next runs        try        {          closeIdleConnections();        }        catch (RuntimeException ex) {}      }    }, period, period, TimeUnit.MILLISECONDS);  }  /**   * Closes the connections on which nothing happened for longer than   * the idle timeout.   */  private void closeIdleConnections()  {    int limit = idleTimeout;    if (limit == 0)      return;    for (ConnectionToClient client : getConnections())    {      if (client.getIdleTime() <= limit)        continue;      try      {        clientTimedOut(client);        client.close();      }      // A failure to close one client must not stop the others      catch (Exception ex) {}    }  }}// End of AbstractServer Class
\ No newline at end of file
@@ -1 +1 @@
-// This file contains material supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import java.io.*;import java.net.*;import java.util.*;/*** An instance of this class is created by the server when a client* connects. It accepts messages coming from the client and is* responsible for sending data to the client since the socket is* private to this class. The AbstractServer contains a set of* instances of this class and is responsible for adding and deleting* them.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @author Dr Robert Lagani&egrave;re* @author Dr Timothy C. Lethbridge* @author Fran&ccedil;ois B&eacute;langer* @author Paul Holden* @version February 2001 (2.12)*/public class ConnectionToClient extends Thread{// INSTANCE VARIABLES ***********************************************  /**  * A reference to the Server that created this instance.  */  private AbstractServer server;  /**  * Sockets are used in the operating system as channels  * of communication between two processes.  * @see java.net.Socket  */  private Socket clientSocket;  /**  * Stream used to read from the client.  */  private ObjectInputStream input;  /**  * Stream used to write to the client.  */  private ObjectOutputStream output;  /**  * Indicates if the thread is ready to stop. Set to true when closing  * of the connection is initiated.  */  private boolean readyToStop;  /**   * Map to save information about the client such as its login ID.   * The initial size of the map is small since it is not expected   * that concrete servers will want to store many different types of   * information about each client. Used by the setInfo and getInfo   * methods.   */  private HashMap savedInfo = new HashMap(10);// CONSTRUCTORS *****************************************************  /**   * Constructs a new connection to a client.   *   * @param group the thread group that contains the connections.   * @param clientSocket contains the client's socket.   * @param server a reference to the server that created   *        this instance   * @exception IOException if an I/O error occur when creating   *        the connection.   */  ConnectionToClient(ThreadGroup group, Socket clientSocket,    AbstractServer server) throws IOException  {    super(group,(Runnable)null);    // Initialize variables    this.clientSocket = clientSocket;    this.server = server;    clientSocket.setSoTimeout(0); // make sure timeout is infinite    //Initialize the objects streams    try    {      input = new ObjectInputStream(clientSocket.getInputStream());      output = new ObjectOutputStream(clientSocket.getOutputStream());    }    catch (IOException ex)    {      try      {        closeAll();      }      catch (Exception exc) { }      throw ex;  // Rethrow the exception.    }    readyToStop = false;    start(); // Start the thread waits for data from the socket  }// INSTANCE METHODS *************************************************  /**   * Sends an object to the client.   *   * @param msg the message to be sent.   * @exception IOException if an I/O error occur when sending the   *    message.   */  final public void sendToClient(Object msg) throws IOException  {    if (clientSocket == null || output == null)      throw new SocketException("socket does not exist");    output.writeObject(msg);  }  /**   * Closes the client.   * If the connection is already closed, this   * call has no effect.   *   * @exception IOException if an error occurs when closing the socket.   */  final public void close() throws IOException  {    readyToStop = true; // Set the flag that tells the thread to stop    try    {      closeAll();    }    finally    {      server.clientDisconnected(this);    }  }// ACCESSING METHODS ------------------------------------------------  /**   * Returns the address of the client.   *   * @return the client's Internet address.   */  final public InetAddress getInetAddress()  {    return clientSocket == null ? null : clientSocket.getInetAddress();  }  /**   * Returns a string representation of the client.   *   * @return the client's description.   */  public String toString()  {    return clientSocket == null ? null :      clientSocket.getInetAddress().getHostName()        +" (" + clientSocket.getInetAddress().getHostAddress() + ")";  }  /**   * Saves arbitrary information about this client. Designed to be   * used by concrete subclasses of AbstractServer. Based on a hash map.   *   * @param infoType   identifies the type of information   * @param info       the information itself.   */  public void setInfo(String infoType, Object info)  {    savedInfo.put(infoType, info);  }  /**   * Returns information about the client saved using setInfo.   * Based on a hash map.   *   * @param infoType   identifies the type of information   */  public Object getInfo(String infoType)  {    return savedInfo.get(infoType);  }// RUN METHOD -------------------------------------------------------  /**   * Constantly reads the client's input stream.   * Sends all objects that are read to the server.   * Not to be called.   */  final public void run()  {    server.clientConnected(this);    // This loop reads the input stream and responds to messages    // from clients    try    {      // The message from the client      Object msg;      while (!readyToStop)      {        // This block waits until it reads a message from the client        // and then sends it for handling by the server        msg = input.readObject();        server.receiveMessageFromClient(msg, this);      }    }    catch (Exception exception)    {      if (!readyToStop)      {        try        {          closeAll();        }        catch (Exception ex) { }        server.clientException(this, exception);      }    }  }// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------  /**   * Closes all connection to the server.   *   * @exception IOException if an I/O error occur when closing the   *     connection.   */  private void closeAll() throws IOException  {    try    {      // Close the socket      if (clientSocket != null)        clientSocket.close();      // Close the output stream      if (output != null)        output.close();      // Close the input stream      if (input != null)        input.close();    }    finally    {      // Set the streams and the sockets to NULL no matter what      // Doing so allows, but does not require, any finalizers      // of these objects to reclaim system resources if and      // when they are garbage collected.      output = null;      input = null;      clientSocket = null;    }  }  /**   * This method is called by garbage collection.   */  protected void finalize()  {    try    {      closeAll();    }    catch(IOException e) {}  }}// End of ConnectionToClient class
\ No newline at end of file
+// This file contains material supporting section 3.8 of the textbook:// "Object Oriented Software Engineering" and is issued under the open-source// license found at www.lloseng.compackage ocsf.server;import java.io.*;import java.net.*;import java.util.Collections;import java.util.HashMap;import java.util.Map;import java.util.Set;import java.util.concurrent.ConcurrentHashMap;import java.util.concurrent.ThreadFactory;import ocsf.common.FrameCompressor;import ocsf.common.Framing;import ocsf.common.MessageCodec;/*** An instance of this class is created by the server when a client* connects. It accepts messages coming from the client and is* responsible for sending data to the client since the socket is* private to this class. The AbstractServer contains a set of* instances of this class and is responsible for adding and deleting* them.<p>** Project Name: OCSF (Object Client-Server Framework)<p>** @author Dr Robert Lagani&egrave;re* @author Dr Timothy C. Lethbridge* @author Fran&ccedil;ois B&eacute;langer* @author Paul Holden* @version February 2001 (2.12)*/public class ConnectionToClient extends Thread{// INSTANCE VARIABLES ***********************************************  /**  * A reference to the Server that created this instance.  */  private AbstractServer server;  /**  * Sockets are used in the operating system as channels  * of communication between two processes.  * @see java.net.Socket  */  private Socket clientSocket;  /**  * Stream used to read from the client.  */  private ObjectInputStream input;  /**  * Pipeline used to write objects or frames to the client.  */  private OutputPipeline output;  /**  * The codec agreed on with the client, or null if objects are  * exchanged with the object streams.  */  private MessageCodec codec;  /**  * Stream used to read frames from the client when a codec is used.  */  private DataInputStream frameInput;  /**   * Compresses the frames exchanged with the client, or null if   * compression was not agreed on.   */  private FrameCompressor compressor;  /**  * The non-blocking transport of this connection, or null if the  * connection runs as a thread reading a blocking socket.  */  private NioChannel transport;  /**  * Indicates if the thread is ready to stop. Set to true when closing  * of the connection is initiated.  */  private boolean readyToStop;  /**   * Map to save information about the client such as its login ID.   * The initial size of the map is small since it is not expected   * that concrete servers will want to store many different types of   * information about each client. Used by the setInfo and getInfo   * methods.   */  private HashMap<String, Object> savedInfo = new HashMap<String, Object>(10);  /**  * The token of the session of the client, or null if the client did  * not ask for one.  */  private volatile String sessionToken;  /**  * The messages of this client waiting for a dispatch worker, when  * the server dispatches messages to a worker pool.  */  private final MessageDispatcher.Lane dispatchLane =    new MessageDispatcher.Lane();  /**  * The topics the client subscribed to.  */  private final Set<String> topics =    Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());  /**  * Lock held while an object is written to the output stream, since  * dispatch workers of other clients may send to this client at the  * same time as its own worker.  */  private final Object outputLock = new Object();  /**  * Writes the messages to the client on a thread of its own, or null  * if they are written by the thread sending them.  */  private ConnectionWriter writer;  /**  * Receives the bytes produced by the output pipeline when they are  * queued for the writer.  */  private ByteArrayOutputStream outBytes;  /**  * Indicates if reading from the client is paused until the messages  * queued for it drain.  */  private volatile boolean readPaused = false;  /**  * The time in milliseconds of the last message received from the  * client or of the last bytes it accepted.  */  private volatile long lastActivity = System.currentTimeMillis();  /**  * Indicates if the client was dropped for reading too slowly.  */  private boolean dropped = false;  /**  * Lock on which the read loop waits while reading is paused.  */  private final Object readPauseLock = new Object();// CONSTRUCTORS *****************************************************  /**   * Constructs a new connection to a client.   *   * @param group the thread group that contains the connections.   * @param clientSocket contains the client's socket.   * @param server a reference to the server that created   *        this instance   * @exception IOException if an I/O error occur when creating   *        the connection.   */  ConnectionToClient(ThreadGroup group, Socket clientSocket,    AbstractServer server) throws IOException  {    super(group,(Runnable)null);    // Initialize variables    this.clientSocket = clientSocket;    this.server = server;    // A client that connects but never sends its stream header must    // not hold the listening thread longer than the idle timeout    clientSocket.setSoTimeout(server.getIdleTimeout());    // A refused client only gets the message of clientRefused, written    // directly since its writer would never run    String refusal = server.checkAdmission(clientSocket.getInetAddress());    //Initialize the objects streams, unless the client offers a codec    //the server accepts    try    {      InputStream in = new BufferedInputStream(clientSocket.getInputStream());      boolean negotiated = negotiateCodec(in);      if (server.isAsyncWrites() && refusal == null)      {        writer = new ConnectionWriter(this, clientSocket.getOutputStream());        outBytes = new ByteArrayOutputStream();        output = new OutputPipeline(outBytes, false,          server.getOutputResetThreshold());      }      else        output = new OutputPipeline(clientSocket.getOutputStream(), true,          server.getOutputResetThreshold());      if (!negotiated)      {        input = new ObjectInputStream(in);        output.startObjectStream();        if (writer != null)          writer.enqueue(takeOutput());      }      // Idle connections are closed by the server, reads wait forever      clientSocket.setSoTimeout(0);    }    catch (IOException ex)    {      try      {        closeAll();      }      catch (Exception exc) { }      throw ex;  // Rethrow the exception.    }    if (refusal != null)    {      refuse(refusal);      throw new SocketException("connection refused: " + refusal);    }    readyToStop = false;    server.addConnection(this);    ThreadFactory readers = server.getReaderFactory();    if (writer != null)    {      Thread writing = readers != null ? readers.newThread(writer) :        new Thread(group, writer, getName() + " writer");      writing.setDaemon(true);      writing.start();    }    if (readers == null)    {      start(); // Start the thread waits for data from the socket      return;    }    // The connection is not started itself: a virtual thread runs    // its read loop and reports what a connection thread would    Thread reader = readers.newThread(this);    reader.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler()    {      public void uncaughtException(Thread thread, Throwable exception)      {        ConnectionToClient.this.server.clientException(          ConnectionToClient.this, exception);      }    });    reader.start();  }  /**   * Constructs a new connection served by a non-blocking event loop.   * The thread of such a connection is never started; the event loop   * reads the channel and calls the server instead.   *   * @param group the thread group that contains the connections.   * @param transport the non-blocking transport of the client.   * @param server a reference to the server that created   *        this instance.   */  ConnectionToClient(ThreadGroup group, NioChannel transport,    AbstractServer server)  {    super(group,(Runnable)null);    this.transport = transport;    this.server = server;    readyToStop = false;  }// INSTANCE METHODS *************************************************  /**   * Sends an object to the client.   *   * @param msg the message to be sent.   * @exception IOException if an I/O error occur when sending the   *    message.   */  final public void sendToClient(Object msg) throws IOException  {    if (transport != null)    {      transport.send(msg);      return;    }    // Encode before taking the lock, other senders need not wait    send(msg, codec == null ?      null : Framing.encode(codec, msg, compressor), null);  }  /**   * Subscribes the client to a topic, so that it receives the messages   * published on it by <code>AbstractServer.publish</code>. The   * subscriptions end when the connection closes.   *   * @param topic the name of the topic, such as "customer:42".   */  final public void subscribe(String topic)  {    if (topics.add(topic))      server.addSubscriber(topic, this);  }  /**   * Unsubscribes the client from a topic.   *   * @param topic the name of the topic.   */  final public void unsubscribe(String topic)  {    if (topics.remove(topic))      server.removeSubscriber(topic, this);  }  /**   * Unsubscribes the client from every topic.   */  final public void unsubscribeAll()  {    for (String topic : topics)      unsubscribe(topic);  }  /**   * Returns the topics the client subscribed to.   *   * @return a read only view of the topics.   */  final public Set<String> getTopics()  {    return Collections.unmodifiableSet(topics);  }  /**   * Writes an object, or the bytes encoding it, to the client.   *   * @param msg the message to be sent.   * @param frame the frame encoding the message, or null if no codec   *    was agreed on.   * @param serialized the message serialized by a shared object   *    stream, or null to serialize it with the stream of the client.   * @exception IOException if an I/O error occur when sending the   *    message.   */  private void send(Object msg, byte[] frame, byte[] serialized)    throws IOException  {    long pending;    synchronized(outputLock)    {      if (clientSocket == null || output == null)        throw new SocketException("socket does not exist");      if (frame != null)        output.writeFrame(frame);      else if (serialized != null)        output.writeSerialized(serialized);      else        output.writeObject(msg);      if (writer == null)        return;      // Queued under the lock to keep the order of the stream      pending = writer.enqueue(takeOutput());    }    outputQueued(pending);  }  /**   * Closes the client.   * If the connection is already closed, this   * call has no effect.   *   * @exception IOException if an error occurs when closing the socket.   */  final public void close() throws IOException  {    readyToStop = true; // Set the flag that tells the thread to stop    try    {      closeAll();    }    finally    {      server.removeConnection(this);      server.clientDisconnected(this);    }  }// ACCESSING METHODS ------------------------------------------------  /**   * Returns the address of the client.   *   * @return the client's Internet address, or null if it is   *    connected through a Unix domain socket.   */  final public InetAddress getInetAddress()  {    if (transport != null)      return transport.getInetAddress();    return clientSocket == null ? null : clientSocket.getInetAddress();  }  /**   * Returns the codec used to exchange messages with the client.   *   * @return the codec agreed on when the client connected, or null if   *    objects are exchanged with object streams.   */  final public MessageCodec getMessageCodec()  {    return transport != null ? transport.getCodec() : codec;  }  /**   * Returns a string representation of the client.   *   * @return the client's description.   */  public String toString()  {    if (isLocal())      return "local (" + getName() + ")";    InetAddress address = getInetAddress();    return address == null ? null :      address.getHostName() +" (" + address.getHostAddress() + ")";  }  /**   * Returns true if the client is connected through the Unix domain   * socket of the server. Such a client has no Internet address.   *   * @return true if the client runs on the same host as the server.   */  final public boolean isLocal()  {    return transport != null && transport.isLocal();  }  /**   * Saves arbitrary information about this client. Designed to be   * used by concrete subclasses of AbstractServer. Based on a hash map.   *   * @param infoType   identifies the type of information   * @param info       the information itself.   */  public void setInfo(String infoType, Object info)  {    synchronized(savedInfo)    {      savedInfo.put(infoType, info);    }  }  /**   * Returns information about the client saved using setInfo.   * Based on a hash map.   *   * @param infoType   identifies the type of information   */  public Object getInfo(String infoType)  {    synchronized(savedInfo)    {      return savedInfo.get(infoType);    }  }  /**   * Returns the token of the session of this client, which it presents   * to resume the session after reconnecting.   *   * @return the token, or null if the client did not ask for one.   */  public String getSessionToken()  {    return sessionToken;  }  /**   * Returns the number of bytes sent to this client, headers and   * framing included.   *   * @return the number of bytes sent.   */  public long getBytesSent()  {    OutputPipeline pipeline = getOutput();    return pipeline == null ? 0 : pipeline.getBytesWritten();  }  /**   * Returns the number of messages sent to this client.   *   * @return the number of messages sent.   */  public long getMessagesSent()  {    OutputPipeline pipeline = getOutput();    return pipeline == null ? 0 : pipeline.getMessageCount();  }  /**   * Returns the number of bytes written since the object stream to   * this client was last reset. The objects they stand for are kept   * reachable by the stream until its next reset.   *   * @return the number of bytes retained by the object stream.   * @see ocsf.server.AbstractServer#setOutputResetThreshold(int)   */  public long getRetainedOutputBytes()  {    OutputPipeline pipeline = getOutput();    return pipeline == null ? 0 : pipeline.getRetainedBytes();  }  /**   * Returns the number of times the object stream to this client was   * reset.   *   * @return the number of resets.   */  public long getOutputResetCount()  {    OutputPipeline pipeline = getOutput();    return pipeline == null ? 0 : pipeline.getResetCount();  }  /**   * Returns the number of bytes sent to this client but not yet   * written to its socket. Only a non-blocking connection queues   * bytes; a blocking one writes them before sending returns.   *   * @return the number of bytes waiting to be written.   */  public long getPendingOutputBytes()  {    if (transport != null)      return transport.getPendingBytes();    ConnectionWriter current = writer;    return current == null ? 0 : current.getPendingBytes();  }  /**   * Returns true if reading from this client is paused because too   * many bytes are waiting to be written to it.   *   * @return true if reading is paused.   * @see ocsf.server.AbstractServer#setOutputWatermarks(int, int)   */  public boolean isReadPaused()  {    return readPaused;  }  /**   * Returns the time since the client last showed it is alive, by   * sending a message or a heartbeat or by accepting bytes.   *   * @return the time in milliseconds.   * @see ocsf.server.AbstractServer#setIdleTimeout(int)   */  public long getIdleTime()  {    return System.currentTimeMillis() - lastActivity;  }  /**   * Returns the pipeline writing to this client.   *   * @return the output pipeline, or null before it is created.   */  private OutputPipeline getOutput()  {    return transport != null ? transport.getOutput() : output;  }  /**   * Returns the lane holding the messages of this client that wait   * for a dispatch worker.   *   * @return the dispatch lane of this client.   */  MessageDispatcher.Lane getDispatchLane()  {    return dispatchLane;  }// RUN METHOD -------------------------------------------------------  /**   * Constantly reads the client's input stream.   * Sends all objects that are read to the server.   * Not to be called.   */  final public void run()  {    server.clientConnected(this);    // This loop reads the input stream and responds to messages    // from clients    try    {      // The message from the client      Object msg;      while (!readyToStop)      {        // This block waits until it reads a message from the client        // and then sends it for handling by the server        awaitReadResumed();        msg = codec != null ?          Framing.readFrame(frameInput, codec, compressor) :          input.readObject();        server.receiveMessageFromClient(msg, this);      }    }    catch (Exception exception)    {      if (!readyToStop)      {        try        {          closeAll();        }        catch (Exception ex) { }        server.clientException(this, exception);      }    }    finally    {      server.removeConnection(this);    }  }// METHODS TO BE USED FROM WITHIN THE FRAMEWORK ONLY ----------------  /**   * Sends a message shared with other clients, encoded once for all   * the clients sharing its wire format.   *   * @param shared the message to be sent.   * @exception IOException if an I/O error occur when sending the   *    message.   */  void sendToClient(SharedMessage shared) throws IOException  {    if (transport != null)    {      transport.send(shared);      return;    }    if (codec != null)      send(shared.getMessage(), shared.getFrame(codec, compressor), null);    else      send(shared.getMessage(), null, shared.getSerialized());  }  /**   * Called once bytes were queued for the client. When they exceed the   * high watermark of the server, reading from the client is paused,   * or the client is dropped if the server drops slow clients.   *   * @param pending the number of bytes waiting to be written.   */  void outputQueued(long pending)  {    if (pending <= server.getOutputHighWatermark() || readPaused)      return;    if (server.isDropSlowClients())    {      dropSlowClient(pending);      return;    }    readPaused = true;    if (transport != null)      transport.pauseReads(true);  }  /**   * Called once queued bytes were written to the client. Reading   * resumes once they fall to the low watermark of the server.   *   * @param pending the number of bytes still waiting to be written.   */  void outputDrained(long pending)  {    recordActivity();    if (!readPaused || pending > server.getOutputLowWatermark())      return;    synchronized(readPauseLock)    {      readPaused = false;      readPauseLock.notifyAll();    }    if (transport != null)      transport.pauseReads(false);  }  /**   * Refuses the client once its handshake is complete: lets the   * server tell it why, then closes the connection once the message   * was written. Reading stops at once.   *   * @param reason the connection limit that was reached.   */  void refuse(String reason)  {    readyToStop = true;    try    {      server.clientRefused(this, reason);    }    catch (RuntimeException ex) {}    try    {      if (transport != null)      {        transport.pauseReads(true);        transport.closeWhenFlushed();      }      else      {        // Tell the client the server is done before closing, so that        // the message is not lost to a reset        clientSocket.shutdownOutput();        closeAll();      }    }    catch (IOException ex) {}    finally    {      server.removeConnection(this);    }  }  /**   * Gives the client the token of its session.   *   * @param sessionToken the token.   */  void setSessionToken(String sessionToken)  {    this.sessionToken = sessionToken;  }  /**   * @return a copy of the information saved using setInfo.   */  Map<String, Object> copyInfo()  {    synchronized(savedInfo)    {      return new HashMap<String, Object>(savedInfo);    }  }  /**   * Saves again the information of a previous session. Information   * saved on this connection already is kept.   *   * @param info the information saved on the previous connection.   */  void restoreInfo(Map<String, Object> info)  {    synchronized(savedInfo)    {      for (Map.Entry<String, Object> entry : info.entrySet())      {        if (!savedInfo.containsKey(entry.getKey()))          savedInfo.put(entry.getKey(), entry.getValue());      }    }  }  /**   * Records that the client is alive. Called when bytes are received   * from it or written to it.   */  void recordActivity()  {    lastActivity = System.currentTimeMillis();  }  /**   * Called by the writer when the socket fails. The socket is closed   * so that the read loop stops and reports the failure.   */  void writeFailed()  {    try    {      closeAll();    }    catch (IOException ex) { }  }// METHODS DESIGNED TO BE USED WITHIN THE CLASS ONLY ----------------  /**   * Returns the bytes produced by the output pipeline since the last   * call. The caller holds the output lock.   *   * @return the bytes to queue for the writer.   */  private byte[] takeOutput()  {    byte[] bytes = outBytes.toByteArray();    outBytes.reset();    return bytes;  }  /**   * Waits while reading from the client is paused.   *   * @exception InterruptedException if the thread is interrupted.   */  private void awaitReadResumed() throws InterruptedException  {    synchronized(readPauseLock)    {      while (readPaused && !readyToStop)        readPauseLock.wait();    }  }  /**   * Closes a client that does not read its messages fast enough and   * reports it to the server, as a failed connection is reported.   *   * @param pending the number of bytes waiting to be written.   */  private void dropSlowClient(long pending)  {    synchronized(readPauseLock)    {      if (dropped)        return;      dropped = true;    }    readyToStop = true;    try    {      closeAll();    }    catch (IOException ex) { }    finally    {      server.removeConnection(this);    }    server.clientException(this, new IOException(      "client too slow, " + pending + " bytes waiting to be written"));  }  /**   * Answers the codec offer that a client may send before its object   * stream. The first bytes are only peeked at, so a client without   * a codec is read as before.   *   * @param in the buffered input stream of the socket.   * @return true if the client offered the server's codec, in which   *    case frames are exchanged instead of objects.   * @exception IOException if an I/O error occurs.   */  private boolean negotiateCodec(InputStream in) throws IOException  {    DataInputStream data = new DataInputStream(in);    in.mark(4);    if (data.readInt() != Framing.MAGIC)    {      in.reset(); // An object stream header, left for the object stream      return false;    }    String offered = Framing.readOffer(data);    int features = Framing.readFeatures(data);    MessageCodec accepted = server.getMessageCodec();    if (accepted != null && !accepted.getName().equals(offered))      accepted = null;    FrameCompressor agreed = accepted == null ?      null : server.createCompressor(features);    DataOutputStream out = new DataOutputStream(      new BufferedOutputStream(clientSocket.getOutputStream()));    Framing.writeAnswer(out, accepted != null,      agreed == null ? 0 : Framing.COMPRESSION);    out.flush();    // When refused, the client goes on with an object stream    if (accepted == null)      return false;    codec = accepted;    compressor = agreed;    frameInput = data;    return true;  }  /**   * Closes all connection to the server.   *   * @exception IOException if an I/O error occur when closing the   *     connection.   */  private void closeAll() throws IOException  {    if (transport != null)    {      transport.close();      return;    }    // Release a read loop paused for a slow client    synchronized(readPauseLock)    {      readPaused = false;      readPauseLock.notifyAll();    }    try    {      // Stop the writer      if (writer != null)        writer.close();      // Close the socket      if (clientSocket != null)        clientSocket.close();      // Close the output stream      if (output != null)        output.close();      // Close the input stream      if (input != null)        input.close();      // Close the frame stream      if (frameInput != null)        frameInput.close();    }    finally    {      // Release the native memory of the compressor      if (compressor != null)        compressor.close();      // Set the streams and the sockets to NULL no matter what      // Doing so allows, but does not require, any finalizers      // of these objects to reclaim system resources if and      // when they are garbage collected. The output      // pipeline is kept so its counts can still be read.      input = null;      frameInput = null;      clientSocket = null;    }  }  /**   * This method is called by garbage collection.   */  protected void finalize()  {    try    {      closeAll();    }    catch(IOException e) {}  }}// End of ConnectionToClient class
\ No newline at end of file
@@ -0,0 +1,182 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.SocketException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Writes the messages sent to a blocking connection on a thread of
+ * its own, so that the thread sending a reply never waits for a slow
+ * client.<p>
+ *
+ * Messages are serialized by the sender and queued as bytes. The
+ * writer takes every message queued at once, writes them and flushes
+ * the socket a single time. The number of bytes queued is reported to
+ * the connection, which pauses or drops the client when they exceed
+ * the watermarks of the server.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#setAsyncWrites(boolean)
+ * @see ocsf.server.AbstractServer#setOutputWatermarks(int, int)
+ */
+class ConnectionWriter implements Runnable
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The size of the buffer in front of the socket.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The connection whose messages are written.
+   */
+  private final ConnectionToClient connection;
+
+  /**
+   * The buffered stream of the socket.
+   */
+  private final OutputStream out;
+
+  /**
+   * The messages waiting to be written. Also the lock of the writer.
+   */
+  private final ArrayDeque<byte[]> queue = new ArrayDeque<byte[]>();
+
+  /**
+   * The number of bytes queued or being written.
+   */
+  private volatile long pendingBytes = 0;
+
+  /**
+   * Indicates if the writer was closed.
+   */
+  private boolean closed = false;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the writer of a connection.
+   *
+   * @param connection the connection whose messages are written.
+   * @param sink the output stream of the socket.
+   */
+  ConnectionWriter(ConnectionToClient connection, OutputStream sink)
+  {
+    this.connection = connection;
+    this.out = new BufferedOutputStream(sink, BUFFER_SIZE);
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Queues the bytes of a message.
+   *
+   * @param bytes the bytes to write.
+   * @return the number of bytes now pending.
+   * @exception SocketException if the writer was closed.
+   */
+  long enqueue(byte[] bytes) throws SocketException
+  {
+    synchronized(queue)
+    {
+      if (closed)
+        throw new SocketException("socket does not exist");
+
+      queue.add(bytes);
+      pendingBytes += bytes.length;
+      queue.notify();
+      return pendingBytes;
+    }
+  }
+
+  /**
+   * Stops the writer. Queued messages are discarded.
+   */
+  void close()
+  {
+    synchronized(queue)
+    {
+      closed = true;
+      queue.clear();
+      pendingBytes = 0;
+      queue.notify();
+    }
+  }
+
+  /**
+   * @return the number of bytes queued or being written.
+   */
+  long getPendingBytes()
+  {
+    return pendingBytes;
+  }
+
+// RUN METHOD -------------------------------------------------------
+
+  /**
+   * Writes the queued messages until the writer is closed.
+   * Not to be called.
+   */
+  public void run()
+  {
+    ArrayList<byte[]> batch = new ArrayList<byte[]>();
+
+    try
+    {
+      while (true)
+      {
+        synchronized(queue)
+        {
+          while (queue.isEmpty() && !closed)
+            queue.wait();
+
+          if (closed)
+            return;
+
+          batch.addAll(queue);
+          queue.clear();
+        }
+
+        long written = 0;
+        for (byte[] bytes : batch)
+        {
+          out.write(bytes);
+          written += bytes.length;
+        }
+        out.flush();
+        batch.clear();
+
+        long pending;
+        synchronized(queue)
+        {
+          if (closed)
+            return;
+
+          pendingBytes -= written;
+          pending = pendingBytes;
+        }
+        connection.outputDrained(pending);
+      }
+    }
+    catch (InterruptedException ex)
+    {
+      // Stopped along with the connection
+    }
+    catch (IOException ex)
+    {
+      // The read loop of the connection fails along with the socket
+      // and reports the exception
+      connection.writeFailed();
+    }
+  }
+}
+// End of ConnectionWriter class
@@ -0,0 +1,144 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts for the messages the server sent to several clients at
+ * once, by <code>sendToAllClients</code>, <code>publish</code> or
+ * <code>shutdown</code>.<p>
+ *
+ * Such a message is encoded once for all the clients sharing a wire
+ * format, rather than once per client. The bytes saved are the bytes
+ * sent to the clients less the bytes actually encoded, that is the
+ * bytes the server would otherwise have serialized again for each of
+ * them.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#getFanOutStats()
+ */
+public class FanOutStats
+{
+// INSTANCE VARIABLES ***********************************************
+
+  /** The number of messages sent to several clients. */
+  private final AtomicLong messages = new AtomicLong();
+  /** The number of times such a message was sent to a client. */
+  private final AtomicLong deliveries = new AtomicLong();
+  /** The bytes encoded, once per wire format of each message. */
+  private final AtomicLong encodedBytes = new AtomicLong();
+  /** The bytes sent to the clients. */
+  private final AtomicLong sentBytes = new AtomicLong();
+  /** The time spent encoding, in nanoseconds. */
+  private final AtomicLong encodeNanos = new AtomicLong();
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Records a message about to be sent to several clients.
+   */
+  void message()
+  {
+    messages.incrementAndGet();
+  }
+
+  /**
+   * Records a message encoded for a wire format.
+   *
+   * @param bytes the length of the encoded message.
+   * @param nanos the time spent encoding.
+   */
+  void encoded(int bytes, long nanos)
+  {
+    encodedBytes.addAndGet(bytes);
+    encodeNanos.addAndGet(nanos);
+  }
+
+  /**
+   * Records a message sent to a client.
+   *
+   * @param bytes the length of the bytes written for the client.
+   */
+  void delivered(int bytes)
+  {
+    deliveries.incrementAndGet();
+    sentBytes.addAndGet(bytes);
+  }
+
+  /**
+   * Forgets every statistic.
+   */
+  public void clear()
+  {
+    messages.set(0);
+    deliveries.set(0);
+    encodedBytes.set(0);
+    sentBytes.set(0);
+    encodeNanos.set(0);
+  }
+
+// ACCESSING METHODS ------------------------------------------------
+
+  /**
+   * @return the number of messages sent to several clients.
+   */
+  public long getMessages()
+  {
+    return messages.get();
+  }
+
+  /**
+   * @return the number of times such a message was sent to a client.
+   */
+  public long getDeliveries()
+  {
+    return deliveries.get();
+  }
+
+  /**
+   * @return the bytes encoded.
+   */
+  public long getEncodedBytes()
+  {
+    return encodedBytes.get();
+  }
+
+  /**
+   * @return the bytes sent to the clients.
+   */
+  public long getSentBytes()
+  {
+    return sentBytes.get();
+  }
+
+  /**
+   * @return the bytes that did not have to be encoded again for each
+   *    client.
+   */
+  public long getSavedBytes()
+  {
+    return Math.max(0, sentBytes.get() - encodedBytes.get());
+  }
+
+  /**
+   * @return the time spent encoding, in nanoseconds.
+   */
+  public long getEncodeNanos()
+  {
+    return encodeNanos.get();
+  }
+
+  public String toString()
+  {
+    return String.format(
+      "fan-out: %d messages to %d clients, %d bytes encoded in %.3f ms,"
+      + " %d bytes sent, %d bytes saved",
+      getMessages(), getDeliveries(), getEncodedBytes(),
+      getEncodeNanos() / 1e6, getSentBytes(), getSavedBytes());
+  }
+}
+// End of FanOutStats class
@@ -0,0 +1,322 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import ocsf.common.Correlated;
+
+/**
+ * Runs the <code>handleMessageFromClient</code> method of a server on a
+ * bounded pool of worker threads instead of the thread that read the
+ * message.<p>
+ *
+ * Messages of the same client are handled one at a time and in the
+ * order they were received: each connection owns a <code>Lane</code>
+ * that is scheduled on the pool only while it holds messages, and a
+ * lane never runs on two workers at once. Messages of different
+ * clients are handled in parallel. A request carrying an id, which
+ * the client matches to its reply, skips the lane: the requests of
+ * one client are handled in parallel too, and answered as they
+ * complete.<p>
+ *
+ * The number of messages waiting in all lanes is bounded. When the
+ * limit is reached, new messages are not queued; the server's
+ * <code>messageRejected</code> hook is called instead, on the reading
+ * thread, so the server can tell the client to retry later.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#setDispatchThreads(int)
+ */
+class MessageDispatcher
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The maximum number of messages a lane handles before giving its
+   * worker to the other lanes.
+   */
+  private static final int LANE_BATCH = 16;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The server whose messages are dispatched.
+   */
+  private final AbstractServer server;
+
+  /**
+   * The worker threads.
+   */
+  private final ThreadPoolExecutor workers;
+
+  /**
+   * The maximum number of messages waiting to be handled.
+   */
+  private final int queueLimit;
+
+  /**
+   * The number of messages waiting to be handled.
+   */
+  private final AtomicInteger queued = new AtomicInteger();
+
+  /**
+   * The number of messages rejected since the dispatcher was created.
+   */
+  private final AtomicInteger rejected = new AtomicInteger();
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the dispatcher and starts its workers.
+   *
+   * @param server the server whose messages are dispatched.
+   * @param threads the number of worker threads.
+   * @param queueLimit the maximum number of waiting messages.
+   * @param factory the factory of the worker threads, or null for
+   *    daemon platform threads.
+   */
+  MessageDispatcher(AbstractServer server, int threads, int queueLimit,
+    ThreadFactory factory)
+  {
+    this.server = server;
+    this.queueLimit = queueLimit;
+
+    final AtomicInteger count = new AtomicInteger();
+    // At most one task per lane, and one per request with an id, is
+    // ever waiting, so the executor queue is bounded by the number of
+    // connections and the queue limit
+    this.workers = new ThreadPoolExecutor(threads, threads,
+      0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+      factory != null ? factory : new ThreadFactory()
+      {
+        public Thread newThread(Runnable task)
+        {
+          Thread thread = new Thread(task,
+            "OCSF dispatch worker " + count.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Queues a message on the lane of its connection.
+   *
+   * @param msg the message received.
+   * @param client the connection that received the message.
+   * @return false if the message was rejected because the dispatcher
+   *    is saturated or shut down.
+   */
+  boolean dispatch(Object msg, ConnectionToClient client)
+  {
+    if (workers.isShutdown())
+      return false;
+
+    if (queued.incrementAndGet() > queueLimit)
+    {
+      queued.decrementAndGet();
+      rejected.incrementAndGet();
+      return false;
+    }
+
+    // A request with an id is answered by id, so it need not wait
+    // for the earlier messages of its client
+    if (msg instanceof Correlated && ((Correlated)msg).getRequestId() != 0)
+      return submitRequest(msg, client);
+
+    Lane lane = client.getDispatchLane();
+    boolean schedule;
+
+    synchronized(lane)
+    {
+      lane.messages.add(msg);
+      schedule = !lane.scheduled;
+      lane.scheduled = true;
+    }
+
+    if (schedule)
+      submit(lane, client);
+
+    return true;
+  }
+
+  /**
+   * Stops the workers. Messages already queued are still handled.
+   */
+  void shutdown()
+  {
+    workers.shutdown();
+  }
+
+  /**
+   * Stops the workers and waits for them to handle the messages
+   * already queued.
+   *
+   * @param nanos the longest time to wait, in nanoseconds.
+   * @return true if every message was handled in time.
+   * @exception InterruptedException if the waiting thread is
+   *    interrupted.
+   */
+  boolean awaitTermination(long nanos) throws InterruptedException
+  {
+    workers.shutdown();
+    return workers.awaitTermination(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Schedules a lane on the pool.
+   *
+   * @param lane the lane holding messages.
+   * @param client the connection owning the lane.
+   */
+  private void submit(final Lane lane, final ConnectionToClient client)
+  {
+    try
+    {
+      workers.execute(new Runnable()
+      {
+        public void run()
+        {
+          drain(lane, client);
+        }
+      });
+    }
+    catch (RejectedExecutionException ex)
+    {
+      // The dispatcher was shut down: the messages will never run
+      synchronized(lane)
+      {
+        queued.addAndGet(-lane.messages.size());
+        lane.messages.clear();
+        lane.scheduled = false;
+      }
+    }
+  }
+
+  /**
+   * Schedules a request on the pool, outside of the lane of its
+   * connection.
+   *
+   * @param msg the request received.
+   * @param client the connection that received the request.
+   * @return false if the dispatcher was shut down.
+   */
+  private boolean submitRequest(final Object msg,
+    final ConnectionToClient client)
+  {
+    try
+    {
+      workers.execute(new Runnable()
+      {
+        public void run()
+        {
+          queued.decrementAndGet();
+          handle(msg, client);
+        }
+      });
+      return true;
+    }
+    catch (RejectedExecutionException ex)
+    {
+      queued.decrementAndGet();
+      return false;
+    }
+  }
+
+  /**
+   * Handles the messages of a lane on a worker thread. After a batch,
+   * the lane is put back at the end of the pool queue so that a busy
+   * client cannot starve the others.
+   *
+   * @param lane the lane to drain.
+   * @param client the connection owning the lane.
+   */
+  private void drain(Lane lane, ConnectionToClient client)
+  {
+    for (int handled = 0; handled < LANE_BATCH; handled++)
+    {
+      Object msg;
+
+      synchronized(lane)
+      {
+        msg = lane.messages.poll();
+        if (msg == null)
+        {
+          lane.scheduled = false;
+          return;
+        }
+      }
+
+      queued.decrementAndGet();
+      handle(msg, client);
+    }
+
+    submit(lane, client);
+  }
+
+  /**
+   * Handles a message on a worker thread.
+   *
+   * @param msg the message received.
+   * @param client the connection that received the message.
+   */
+  private void handle(Object msg, ConnectionToClient client)
+  {
+    try
+    {
+      server.handleMessageFromClient(msg, client);
+    }
+    catch (Throwable exception)
+    {
+      // A connection thread would die here; a worker reports the
+      // exception and carries on with the next message
+      server.clientException(client, exception);
+    }
+  }
+
+// ACCESSING METHODS ------------------------------------------------
+
+  /**
+   * @return the number of messages waiting to be handled.
+   */
+  int getQueuedCount()
+  {
+    return queued.get();
+  }
+
+  /**
+   * @return the number of messages rejected so far.
+   */
+  int getRejectedCount()
+  {
+    return rejected.get();
+  }
+
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * The messages of one connection waiting to be handled. Guarded by
+   * its own lock.
+   */
+  static class Lane
+  {
+    /**
+     * The waiting messages, in the order they were received.
+     */
+    private final ArrayDeque<Object> messages = new ArrayDeque<Object>();
+
+    /**
+     * Indicates if the lane is queued on, or running on, a worker.
+     */
+    private boolean scheduled = false;
+  }
+}
+// End of MessageDispatcher class
@@ -0,0 +1,601 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import ocsf.common.FrameCompressor;
+import ocsf.common.Framing;
+import ocsf.common.MessageCodec;
+
+/**
+ * The non-blocking transport of a <code>ConnectionToClient</code>
+ * created by a server running in non-blocking mode. It owns the
+ * socket channel, decodes incoming objects and queues outgoing bytes
+ * until the channel can accept them.<p>
+ *
+ * Outgoing objects are written to the same kind of
+ * <code>ObjectOutputStream</code> a blocking connection uses, or as
+ * frames of the codec agreed on, so clients cannot tell the two modes
+ * apart.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.NioServerEngine
+ */
+class NioChannel
+{
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The channel connected to the client.
+   */
+  private final SocketChannel channel;
+
+  /**
+   * The event loop whose selector watches this channel.
+   */
+  private final NioServerEngine.EventLoop eventLoop;
+
+  /**
+   * The server receiving the decoded objects.
+   */
+  private final AbstractServer server;
+
+  /**
+   * Decodes the objects sent by the client.
+   */
+  private final ObjectStreamDecoder decoder = new ObjectStreamDecoder();
+
+  /**
+   * Receives the bytes produced by the output pipeline.
+   */
+  private final ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+
+  /**
+   * Pipeline used to write the objects or frames sent to the client.
+   * Its object stream is started once the client has sent its own
+   * stream header.
+   */
+  private final OutputPipeline output;
+
+  /**
+   * The codec agreed on with the client, or null if objects are
+   * exchanged with object streams.
+   */
+  private volatile MessageCodec codec;
+
+  /**
+   * Compresses the frames exchanged with the client, or null if
+   * compression was not agreed on. Set before the codec.
+   */
+  private volatile FrameCompressor compressor;
+
+  /**
+   * Bytes waiting for the channel to become writable.
+   */
+  private final ArrayDeque<ByteBuffer> pendingWrites =
+    new ArrayDeque<ByteBuffer>();
+
+  /**
+   * The number of bytes in the queue of pending writes.
+   */
+  private volatile long pendingBytes = 0;
+
+  /**
+   * Indicates if the event loop stopped reading the channel until the
+   * queued bytes drain.
+   */
+  private volatile boolean readPaused = false;
+
+  /**
+   * The key registering the channel with the event loop selector.
+   */
+  private SelectionKey key;
+
+  /**
+   * The connection using this transport.
+   */
+  private ConnectionToClient connection;
+
+  /**
+   * The connection limit that was reached when the client connected,
+   * or null if it was admitted.
+   */
+  private String refusal;
+
+  /**
+   * True if the channel is closed once the queued bytes are written.
+   * Guarded by the queue.
+   */
+  private boolean closeWhenFlushed = false;
+
+  /**
+   * Indicates if the channel is a Unix domain socket.
+   */
+  private final boolean local;
+
+  /**
+   * Indicates if the channel was closed.
+   */
+  private volatile boolean closed = false;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the transport of a newly accepted channel.
+   *
+   * @param channel the accepted channel, in non-blocking mode.
+   * @param eventLoop the event loop that will serve the channel.
+   * @param server the server receiving the decoded objects.
+   * @param local true if the channel is a Unix domain socket.
+   */
+  NioChannel(SocketChannel channel, NioServerEngine.EventLoop eventLoop,
+    AbstractServer server, boolean local)
+  {
+    this.channel = channel;
+    this.local = local;
+    this.eventLoop = eventLoop;
+    this.server = server;
+    this.output = new OutputPipeline(outBytes, false,
+      server.getOutputResetThreshold());
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Serializes an object and writes it to the channel, queueing
+   * whatever the channel cannot take right away.
+   *
+   * @param msg the object to send.
+   * @exception IOException if the channel is closed or fails.
+   */
+  void send(Object msg) throws IOException
+  {
+    if (closed)
+      throw new SocketException("socket does not exist");
+
+    MessageCodec current = codec;
+    send(msg, current == null ?
+      null : Framing.encode(current, msg, compressor), null);
+  }
+
+  /**
+   * Writes a message shared with other clients to the channel, encoded
+   * once for all the clients sharing its wire format.
+   *
+   * @param shared the message to send.
+   * @exception IOException if the channel is closed or fails.
+   */
+  void send(SharedMessage shared) throws IOException
+  {
+    if (closed)
+      throw new SocketException("socket does not exist");
+
+    MessageCodec current = codec;
+    if (current != null)
+      send(shared.getMessage(), shared.getFrame(current, compressor), null);
+    else
+      send(shared.getMessage(), null, shared.getSerialized());
+  }
+
+  /**
+   * Writes an object, or the bytes encoding it, to the channel.
+   *
+   * @param msg the object to send.
+   * @param frame the frame encoding the object, or null if no codec
+   *    was agreed on.
+   * @param serialized the object serialized by a shared object
+   *    stream, or null to serialize it with the stream of the channel.
+   * @exception IOException if the channel fails.
+   */
+  private void send(Object msg, byte[] frame, byte[] serialized)
+    throws IOException
+  {
+    synchronized(pendingWrites)
+    {
+      if (frame != null)
+        output.writeFrame(frame);
+      else if (serialized != null)
+        output.writeSerialized(serialized);
+      else
+        output.writeObject(msg);
+      writeOutput();
+    }
+
+    if (connection != null)
+      connection.outputQueued(pendingBytes);
+  }
+
+  /**
+   * Writes the bytes produced by the output pipeline to the channel.
+   * The caller holds the lock on the queue.
+   *
+   * @exception IOException if the channel fails.
+   */
+  private void writeOutput() throws IOException
+  {
+    write(ByteBuffer.wrap(outBytes.toByteArray()));
+    outBytes.reset();
+  }
+
+  /**
+   * Writes bytes to the channel, queueing whatever the channel cannot
+   * take right away. The caller holds the lock on the queue.
+   *
+   * @param bytes the bytes to write.
+   * @exception IOException if the channel fails.
+   */
+  private void write(ByteBuffer bytes) throws IOException
+  {
+    // Keep the order of the stream: only write directly when
+    // nothing is already waiting for the selector
+    if (pendingWrites.isEmpty())
+      channel.write(bytes);
+
+    if (bytes.hasRemaining())
+    {
+      boolean wasEmpty = pendingWrites.isEmpty();
+      pendingWrites.add(bytes);
+      pendingBytes += bytes.remaining();
+      if (wasEmpty && key != null)
+        eventLoop.requestInterestUpdate(this);
+    }
+  }
+
+  /**
+   * @return true if bytes are waiting for the channel.
+   */
+  boolean hasPendingWrites()
+  {
+    synchronized(pendingWrites)
+    {
+      return !pendingWrites.isEmpty();
+    }
+  }
+
+  /**
+   * Writes as many queued bytes as the channel accepts, every queued
+   * message in a single gathering write.
+   * Called by the event loop when the channel is writable.
+   *
+   * @exception IOException if the channel fails.
+   */
+  void flushPending() throws IOException
+  {
+    boolean done;
+    synchronized(pendingWrites)
+    {
+      ByteBuffer[] queued =
+        pendingWrites.toArray(new ByteBuffer[pendingWrites.size()]);
+      pendingBytes -= channel.write(queued);
+
+      while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining())
+        pendingWrites.poll();
+
+      done = closeWhenFlushed && pendingWrites.isEmpty();
+    }
+
+    if (done)
+      closeFlushed();
+    else
+      connection.outputDrained(pendingBytes);
+  }
+
+  /**
+   * Closes the channel once the bytes queued so far are written.
+   *
+   * @exception IOException if an error occurs when closing.
+   */
+  void closeWhenFlushed() throws IOException
+  {
+    synchronized(pendingWrites)
+    {
+      if (!pendingWrites.isEmpty())
+      {
+        closeWhenFlushed = true;
+        return;
+      }
+    }
+    closeFlushed();
+  }
+
+  /**
+   * Closes the channel once everything was written, ending the output
+   * first so that the client reads it all before the connection
+   * closes.
+   *
+   * @exception IOException if an error occurs when closing.
+   */
+  private void closeFlushed() throws IOException
+  {
+    try
+    {
+      channel.shutdownOutput();
+    }
+    finally
+    {
+      close();
+    }
+  }
+
+  /**
+   * Stops or resumes reading the channel.
+   *
+   * @param paused true to stop reading.
+   */
+  void pauseReads(boolean paused)
+  {
+    readPaused = paused;
+    if (key != null)
+      eventLoop.requestInterestUpdate(this);
+  }
+
+  /**
+   * @return the operations the event loop should watch the channel
+   *    for: reading unless paused, writing if bytes are queued.
+   */
+  int getInterestOps()
+  {
+    return (readPaused ? 0 : SelectionKey.OP_READ)
+      | (hasPendingWrites() ? SelectionKey.OP_WRITE : 0);
+  }
+
+  /**
+   * Reads the available bytes and hands every complete object to the
+   * server. Called by the event loop when the channel is readable.
+   *
+   * @param readBuffer the event loop's read buffer.
+   * @return false if the client closed the connection.
+   * @exception Exception if reading or decoding fails.
+   */
+  boolean readAvailable(ByteBuffer readBuffer) throws Exception
+  {
+    int count = 0;
+
+    while (!readPaused)
+    {
+      readBuffer.clear();
+      count = channel.read(readBuffer);
+      if (count > 0)
+      {
+        readBuffer.flip();
+        decoder.append(readBuffer);
+        if (connection != null)
+          connection.recordActivity();
+      }
+      if (count <= 0 || readBuffer.hasRemaining())
+        break;
+    }
+
+    deliverDecoded();
+    return count >= 0;
+  }
+
+  /**
+   * Hands the complete objects already read to the server, until
+   * reading is paused. Called by the event loop when the channel is
+   * read and when reading resumes.
+   *
+   * @exception Exception if decoding fails.
+   */
+  void deliverDecoded() throws Exception
+  {
+    Object msg;
+    while (!closed && !readPaused && (msg = decoder.next()) != null)
+    {
+      if (msg == ObjectStreamDecoder.STREAM_STARTED)
+        startObjectStream();
+      else if (msg instanceof ObjectStreamDecoder.Offer)
+        answerOffer((ObjectStreamDecoder.Offer)msg);
+      else
+        server.receiveMessageFromClient(msg, connection);
+    }
+  }
+
+  /**
+   * Answers the client's stream header with the server's, as a
+   * blocking connection does, and reports the connection.
+   *
+   * @exception IOException if the header cannot be written.
+   */
+  private void startObjectStream() throws IOException
+  {
+    synchronized(pendingWrites)
+    {
+      output.startObjectStream();
+      writeOutput();
+    }
+    handshakeDone();
+  }
+
+  /**
+   * Answers a codec offer. If the server's codec has the name offered,
+   * frames are exchanged from now on and the connection is reported;
+   * otherwise the client follows up with an object stream.
+   *
+   * @param offer the offer of the client.
+   * @exception IOException if the answer cannot be written.
+   */
+  private void answerOffer(ObjectStreamDecoder.Offer offer) throws IOException
+  {
+    MessageCodec accepted = server.getMessageCodec();
+    if (accepted != null && !accepted.getName().equals(offer.codecName))
+      accepted = null;
+
+    FrameCompressor agreed = accepted == null ?
+      null : server.createCompressor(offer.features);
+
+    ByteArrayOutputStream answer = new ByteArrayOutputStream(8);
+    Framing.writeAnswer(new DataOutputStream(answer), accepted != null,
+      agreed == null ? 0 : Framing.COMPRESSION);
+
+    synchronized(pendingWrites)
+    {
+      write(ByteBuffer.wrap(answer.toByteArray()));
+    }
+
+    if (accepted != null)
+    {
+      decoder.useCodec(accepted, agreed);
+      compressor = agreed;
+      codec = accepted;
+      handshakeDone();
+    }
+  }
+
+  /**
+   * Reports the connection once its streams are set up, or refuses
+   * it if it was not admitted.
+   */
+  private void handshakeDone()
+  {
+    if (refusal == null)
+      server.clientConnected(connection);
+    else
+      connection.refuse(refusal);
+  }
+
+  /**
+   * Closes the channel. Queued bytes are discarded.
+   *
+   * @exception IOException if an error occurs when closing.
+   */
+  void close() throws IOException
+  {
+    closed = true;
+    if (key != null)
+      key.cancel();
+
+    synchronized(pendingWrites)
+    {
+      pendingWrites.clear();
+      pendingBytes = 0;
+    }
+    eventLoop.channelClosed(this);
+
+    FrameCompressor current = compressor;
+    if (current != null)
+      current.close();
+    channel.close();
+  }
+
+// ACCESSING METHODS ------------------------------------------------
+
+  /**
+   * @return true if the channel was closed.
+   */
+  boolean isClosed()
+  {
+    return closed;
+  }
+
+  /**
+   * @return the socket channel.
+   */
+  SocketChannel getChannel()
+  {
+    return channel;
+  }
+
+  /**
+   * @return the client's Internet address, or null if the client is
+   *    connected through a Unix domain socket or is gone.
+   */
+  InetAddress getInetAddress()
+  {
+    if (local)
+      return null;
+
+    try
+    {
+      SocketAddress address = channel.getRemoteAddress();
+      return address instanceof InetSocketAddress ?
+        ((InetSocketAddress)address).getAddress() : null;
+    }
+    catch (IOException ex)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the client is connected through a Unix domain
+   *    socket.
+   */
+  boolean isLocal()
+  {
+    return local;
+  }
+
+  /**
+   * @return the codec agreed on, or null if objects are exchanged.
+   */
+  MessageCodec getCodec()
+  {
+    return codec;
+  }
+
+  /**
+   * @return the pipeline writing to the client.
+   */
+  OutputPipeline getOutput()
+  {
+    return output;
+  }
+
+  /**
+   * @return the number of bytes waiting for the channel.
+   */
+  long getPendingBytes()
+  {
+    return pendingBytes;
+  }
+
+  /**
+   * @return the key registering the channel, or null.
+   */
+  SelectionKey getKey()
+  {
+    return key;
+  }
+
+  /**
+   * @param key the key registering the channel.
+   */
+  void setKey(SelectionKey key)
+  {
+    this.key = key;
+  }
+
+  /**
+   * @return the connection using this transport.
+   */
+  ConnectionToClient getConnection()
+  {
+    return connection;
+  }
+
+  /**
+   * @param refusal the connection limit reached when the client
+   *    connected, to refuse it once its handshake is done.
+   */
+  void setRefusal(String refusal)
+  {
+    this.refusal = refusal;
+  }
+
+  /**
+   * @param connection the connection using this transport.
+   */
+  void setConnection(ConnectionToClient connection)
+  {
+    this.connection = connection;
+  }
+}
+// End of NioChannel class
@@ -0,0 +1,540 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import ocsf.common.UnixSockets;
+
+/**
+ * The non-blocking engine of an <code>AbstractServer</code>. Instead of
+ * one thread per client, accepted channels are spread over a small,
+ * fixed pool of event loops, each multiplexing its channels with a
+ * <code>Selector</code>. Idle clients therefore cost a socket and a
+ * few buffers, not a thread and two object streams.<p>
+ *
+ * Besides its TCP port, the engine may listen on a Unix domain socket
+ * for clients running on the same host.<p>
+ *
+ * The server's listening thread calls <code>accept</code> repeatedly;
+ * the event loops call the usual hook methods of the server, so
+ * subclasses of <code>AbstractServer</code> do not need to change.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#setNonBlocking(boolean)
+ */
+class NioServerEngine
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The size of the read buffer of each event loop.
+   */
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The server using this engine.
+   */
+  private final AbstractServer server;
+
+  /**
+   * The thread group the connections are created in.
+   */
+  private final ThreadGroup group;
+
+  /**
+   * The channel accepting new clients.
+   */
+  private ServerSocketChannel serverChannel;
+
+  /**
+   * The channel accepting clients on the Unix domain socket, or null.
+   */
+  private ServerSocketChannel localChannel;
+
+  /**
+   * The path of the Unix domain socket, or null.
+   */
+  private String localPath;
+
+  /**
+   * The selector waiting for connection attempts.
+   */
+  private Selector acceptSelector;
+
+  /**
+   * The event loops serving the accepted channels.
+   */
+  private final EventLoop[] eventLoops;
+
+  /**
+   * Used to assign new channels to the event loops in turn.
+   */
+  private final AtomicInteger nextLoop = new AtomicInteger();
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the engine.
+   *
+   * @param server the server using this engine.
+   * @param group the thread group the connections are created in.
+   * @param eventLoopCount the number of event loops.
+   */
+  NioServerEngine(AbstractServer server, ThreadGroup group, int eventLoopCount)
+  {
+    this.server = server;
+    this.group = group;
+    this.eventLoops = new EventLoop[Math.max(1, eventLoopCount)];
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Binds the server channels and starts the event loops.
+   * If the engine is already open, this call has no effect.
+   *
+   * @param port the port on which to listen.
+   * @param backlog the maximum number of pending connections.
+   * @param unixPath the path of the Unix domain socket on which to
+   *    listen as well, or null.
+   * @exception IOException if a channel cannot be bound.
+   */
+  synchronized void open(int port, int backlog, String unixPath)
+    throws IOException
+  {
+    if (serverChannel != null)
+      return;
+
+    serverChannel = ServerSocketChannel.open();
+    try
+    {
+      serverChannel.socket().bind(new InetSocketAddress(port), backlog);
+      serverChannel.configureBlocking(false);
+      acceptSelector = Selector.open();
+      serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+      if (unixPath != null)
+      {
+        localChannel = bindLocal(unixPath, backlog);
+        localPath = unixPath;
+        localChannel.configureBlocking(false);
+        localChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+      }
+
+      for (int i = 0; i < eventLoops.length; i++)
+      {
+        eventLoops[i] = new EventLoop(i);
+        eventLoops[i].start();
+      }
+    }
+    catch (IOException ex)
+    {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Waits for connection attempts and hands the accepted channels
+   * to the event loops. Called repeatedly by the listening thread.
+   *
+   * @param timeout the maximum time to wait in ms.
+   * @exception IOException if accepting fails.
+   */
+  void accept(int timeout) throws IOException
+  {
+    Selector selector = acceptSelector;
+
+    try
+    {
+      if (selector == null || selector.select(timeout) == 0)
+        return;
+
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext())
+      {
+        ServerSocketChannel acceptor = (ServerSocketChannel)keys.next().channel();
+        keys.remove();
+        acceptAll(acceptor, acceptor == localChannel);
+      }
+    }
+    catch (ClosedSelectorException ex)
+    {
+      // The server was closed while waiting
+    }
+    catch (ClosedChannelException ex)
+    {
+      // The server was closed while accepting
+    }
+  }
+
+  /**
+   * Accepts the channels waiting on a server channel and hands them
+   * to the event loops.
+   *
+   * @param acceptor the server channel.
+   * @param local true if it is the Unix domain socket.
+   * @exception IOException if accepting fails.
+   */
+  private void acceptAll(ServerSocketChannel acceptor, boolean local)
+    throws IOException
+  {
+    SocketChannel channel;
+    while ((channel = acceptor.accept()) != null)
+    {
+      channel.configureBlocking(false);
+      if (!local)
+        channel.socket().setTcpNoDelay(true);
+
+      EventLoop loop = eventLoops[
+        Math.abs(nextLoop.getAndIncrement() % eventLoops.length)];
+      NioChannel transport = new NioChannel(channel, loop, server, local);
+      ConnectionToClient client =
+        new ConnectionToClient(group, transport, server);
+      transport.setConnection(client);
+      // A refused client is served until its handshake is done, so
+      // it is told why, and counts as a connection until then
+      transport.setRefusal(server.checkAdmission(transport.getInetAddress()));
+      server.addConnection(client);
+      loop.register(transport);
+    }
+  }
+
+  /**
+   * Binds the Unix domain socket. A socket file left behind by a
+   * server that did not close is replaced, but not the file of a
+   * server still accepting clients.
+   *
+   * @param path the path of the socket file.
+   * @param backlog the maximum number of pending connections.
+   * @return the bound channel.
+   * @exception IOException if the channel cannot be bound.
+   */
+  private static ServerSocketChannel bindLocal(String path, int backlog)
+    throws IOException
+  {
+    File file = new File(path);
+    if (file.exists())
+    {
+      try
+      {
+        UnixSockets.connect(path).close();
+        throw new BindException(path + " is in use");
+      }
+      catch (BindException ex)
+      {
+        throw ex;
+      }
+      catch (IOException ex)
+      {
+        // Nobody listens, the file is stale
+        file.delete();
+      }
+    }
+
+    ServerSocketChannel channel = UnixSockets.openServerChannel();
+    try
+    {
+      channel.bind(UnixSockets.address(path), backlog);
+    }
+    catch (IOException ex)
+    {
+      channel.close();
+      throw ex;
+    }
+    return channel;
+  }
+
+  /**
+   * Closes the server channels and stops the event loops. The client
+   * connections must be closed by the caller beforehand.
+   */
+  synchronized void close()
+  {
+    try
+    {
+      if (acceptSelector != null)
+        acceptSelector.close();
+      if (serverChannel != null)
+        serverChannel.close();
+      if (localChannel != null)
+        localChannel.close();
+    }
+    catch (IOException ex) {}
+
+    // The socket file outlives its channel
+    if (localPath != null)
+      new File(localPath).delete();
+
+    acceptSelector = null;
+    serverChannel = null;
+    localChannel = null;
+    localPath = null;
+
+    for (int i = 0; i < eventLoops.length; i++)
+    {
+      if (eventLoops[i] != null)
+        eventLoops[i].shutdown();
+      eventLoops[i] = null;
+    }
+  }
+
+// ACCESSING METHODS ------------------------------------------------
+
+  /**
+   * @return true if the server channel is bound.
+   */
+  synchronized boolean isOpen()
+  {
+    return serverChannel != null;
+  }
+
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * A thread multiplexing a share of the client channels with its
+   * own selector. Reads, decoding and the calls to the server hook
+   * methods all happen on this thread; writes happen on the sending
+   * thread unless the channel is full.
+   */
+  class EventLoop extends Thread
+  {
+    /**
+     * The selector of this event loop.
+     */
+    private final Selector selector;
+
+    /**
+     * Channels waiting to be registered with the selector.
+     */
+    private final Queue<NioChannel> registrations =
+      new ConcurrentLinkedQueue<NioChannel>();
+
+    /**
+     * Channels whose watched operations must be updated.
+     */
+    private final Queue<NioChannel> interestRequests =
+      new ConcurrentLinkedQueue<NioChannel>();
+
+    /**
+     * Reused for every read performed by this loop.
+     */
+    private final ByteBuffer readBuffer =
+      ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * Indicates if the loop must stop.
+     */
+    private volatile boolean readyToStop = false;
+
+    /**
+     * Constructs an event loop.
+     *
+     * @param index the number of the loop, used in its name.
+     * @exception IOException if the selector cannot be opened.
+     */
+    EventLoop(int index) throws IOException
+    {
+      super("OCSF event loop " + index);
+      this.selector = Selector.open();
+    }
+
+    /**
+     * Queues a channel for registration with this loop.
+     *
+     * @param transport the channel to register.
+     */
+    void register(NioChannel transport)
+    {
+      registrations.add(transport);
+      selector.wakeup();
+    }
+
+    /**
+     * Asks the loop to watch a channel for the operations it now
+     * needs, when bytes are queued or reading is paused or resumed.
+     *
+     * @param transport the channel whose needs changed.
+     */
+    void requestInterestUpdate(NioChannel transport)
+    {
+      interestRequests.add(transport);
+      selector.wakeup();
+    }
+
+    /**
+     * Forgets a channel once it has been closed.
+     *
+     * @param transport the closed channel.
+     */
+    void channelClosed(NioChannel transport)
+    {
+      server.removeConnection(transport.getConnection());
+    }
+
+    /**
+     * Stops the loop and closes its selector.
+     */
+    void shutdown()
+    {
+      readyToStop = true;
+      selector.wakeup();
+    }
+
+    /**
+     * Runs the event loop. Not to be called.
+     */
+    public void run()
+    {
+      try
+      {
+        while (!readyToStop)
+        {
+          selector.select();
+          processRegistrations();
+          processInterestRequests();
+
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext())
+          {
+            SelectionKey key = keys.next();
+            keys.remove();
+            handle(key);
+          }
+        }
+      }
+      catch (IOException ex)
+      {
+        server.listeningException(ex);
+      }
+      finally
+      {
+        try
+        {
+          selector.close();
+        }
+        catch (IOException ex) {}
+      }
+    }
+
+    /**
+     * Registers the queued channels. The server is notified of a new
+     * connection once the client has opened its stream.
+     */
+    private void processRegistrations()
+    {
+      NioChannel transport;
+      while ((transport = registrations.poll()) != null)
+      {
+        try
+        {
+          transport.setKey(transport.getChannel().register(
+            selector, transport.getInterestOps(), transport));
+        }
+        catch (IOException ex)
+        {
+          failed(transport, ex);
+        }
+      }
+    }
+
+    /**
+     * Updates the operations watched for the channels that asked. A
+     * channel whose reading resumed first gets the objects it read
+     * before it was paused.
+     */
+    private void processInterestRequests()
+    {
+      NioChannel transport;
+      while ((transport = interestRequests.poll()) != null)
+      {
+        SelectionKey key = transport.getKey();
+        if (key == null || !key.isValid())
+          continue;
+
+        try
+        {
+          int interest = transport.getInterestOps();
+          key.interestOps(interest);
+          if ((interest & SelectionKey.OP_READ) != 0)
+            transport.deliverDecoded();
+        }
+        catch (CancelledKeyException ex)
+        {
+          // The connection was closed meanwhile
+        }
+        catch (Exception ex)
+        {
+          failed(transport, ex);
+        }
+      }
+    }
+
+    /**
+     * Serves a selected channel.
+     *
+     * @param key the selected key.
+     */
+    private void handle(SelectionKey key)
+    {
+      NioChannel transport = (NioChannel)key.attachment();
+
+      try
+      {
+        if (key.isValid() && key.isWritable())
+        {
+          transport.flushPending();
+          key.interestOps(transport.getInterestOps());
+        }
+
+        if (key.isValid() && key.isReadable())
+        {
+          if (!transport.readAvailable(readBuffer))
+            failed(transport, new EOFException());
+        }
+      }
+      catch (CancelledKeyException ex)
+      {
+        // The connection was closed while being served
+      }
+      catch (Exception ex)
+      {
+        failed(transport, ex);
+      }
+    }
+
+    /**
+     * Closes a failed channel and notifies the server, as a blocking
+     * connection thread does when its stream fails.
+     *
+     * @param transport the failed channel.
+     * @param exception the cause of the failure.
+     */
+    private void failed(NioChannel transport, Exception exception)
+    {
+      if (transport.isClosed())
+        return;
+
+      try
+      {
+        transport.close();
+      }
+      catch (IOException ex) {}
+
+      server.clientException(transport.getConnection(), exception);
+    }
+  }
+}
+// End of NioServerEngine class
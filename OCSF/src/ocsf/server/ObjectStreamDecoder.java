@@ -0,0 +1,312 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import ocsf.common.FrameCompressor;
+import ocsf.common.Framing;
+import ocsf.common.MessageCodec;
+
+/**
+ * Incrementally decodes the object stream written by an
+ * <code>AbstractClient</code> from bytes delivered by a non-blocking
+ * channel.<p>
+ *
+ * The stream starts either with the header of an object stream or
+ * with the offer of a codec. Both are reported to the caller as
+ * events rather than messages: <code>STREAM_STARTED</code> and an
+ * <code>Offer</code>. If the caller accepts the offer, it calls
+ * <code>useCodec</code> and the rest of the stream is decoded as
+ * frames. Otherwise the client follows up with an object stream.<p>
+ *
+ * The client resets its <code>ObjectOutputStream</code> after every
+ * message, so each object on the wire is self contained: it does not
+ * refer back to handles or class descriptors of earlier objects. This
+ * allows every object to be read with a fresh
+ * <code>ObjectInputStream</code> positioned at its first byte. Bytes
+ * are buffered until a complete object is available; a partial object
+ * is simply retried once more bytes arrive.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.NioServerEngine
+ */
+class ObjectStreamDecoder
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The stream header written once by every ObjectOutputStream.
+   */
+  private static final byte[] STREAM_HEADER =
+    {(byte)0xAC, (byte)0xED, 0x00, 0x05};
+
+  /**
+   * Returned by <code>next</code> once the header of an object stream
+   * has been read.
+   */
+  static final Object STREAM_STARTED = new Object();
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * Bytes received but not yet decoded.
+   */
+  private byte[] buffer = new byte[1024];
+
+  /**
+   * Offset of the first undecoded byte in the buffer.
+   */
+  private int start = 0;
+
+  /**
+   * Offset one past the last received byte in the buffer.
+   */
+  private int end = 0;
+
+  /**
+   * Indicates if the stream header sent by the client was consumed.
+   */
+  private boolean headerRead = false;
+
+  /**
+   * The codec decoding frames, or null if objects are decoded.
+   */
+  private MessageCodec codec;
+
+  /**
+   * Inflates compressed frames, or null if compression was not agreed
+   * on.
+   */
+  private FrameCompressor compressor;
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Appends the remaining bytes of a buffer read from the channel.
+   *
+   * @param bytes the bytes read, flipped for reading.
+   */
+  void append(ByteBuffer bytes)
+  {
+    int length = bytes.remaining();
+
+    if (end + length > buffer.length)
+    {
+      // Compact first, grow only if the pending bytes still do not fit
+      int pending = end - start;
+      byte[] target = buffer;
+
+      if (pending + length > buffer.length)
+        target = new byte[Math.max(buffer.length * 2, pending + length)];
+
+      System.arraycopy(buffer, start, target, 0, pending);
+      buffer = target;
+      start = 0;
+      end = pending;
+    }
+
+    bytes.get(buffer, end, length);
+    end += length;
+  }
+
+  /**
+   * Decodes the next complete object, if one is available.
+   *
+   * @return the next object, or null if more bytes are needed.
+   * @exception IOException if the stream is corrupted.
+   * @exception ClassNotFoundException if the class of the object
+   *    cannot be found.
+   */
+  Object next() throws IOException, ClassNotFoundException
+  {
+    if (codec != null)
+      return nextFrame();
+
+    if (!headerRead)
+    {
+      if (end - start < STREAM_HEADER.length)
+        return null;
+
+      if (readInt(start) == Framing.MAGIC)
+        return nextOffer();
+
+      for (int i = 0; i < STREAM_HEADER.length; i++)
+      {
+        if (buffer[start + i] != STREAM_HEADER[i])
+          throw new StreamCorruptedException("invalid stream header");
+      }
+      start += STREAM_HEADER.length;
+      headerRead = true;
+      return STREAM_STARTED;
+    }
+
+    if (start == end)
+      return null;
+
+    ByteArrayInputStream pending =
+      new ByteArrayInputStream(buffer, start, end - start);
+
+    try
+    {
+      ObjectInputStream input = new ObjectInputStream(new SequenceInputStream(
+        new ByteArrayInputStream(STREAM_HEADER), pending));
+      Object msg = input.readObject();
+
+      // ObjectInputStream never reads past the end of an object, so
+      // whatever is left in the pending stream belongs to the next one
+      start = end - pending.available();
+      if (start == end)
+      {
+        start = 0;
+        end = 0;
+      }
+      return msg;
+    }
+    catch (IOException ex)
+    {
+      // Depending on where the bytes ran out, the stream reports an
+      // EOFException, an OptionalDataException or a corrupted block.
+      // If every pending byte was consumed, the object is incomplete.
+      if (pending.available() == 0)
+        return null;
+      throw ex;
+    }
+  }
+
+  /**
+   * Decodes the rest of the stream as frames of the given codec.
+   * Called when the offer of the codec is accepted.
+   *
+   * @param codec the codec agreed on.
+   * @param compressor the compressor of the connection, or null if
+   *    compression was not agreed on.
+   */
+  void useCodec(MessageCodec codec, FrameCompressor compressor)
+  {
+    this.codec = codec;
+    this.compressor = compressor;
+  }
+
+  /**
+   * Returns the number of received bytes that were not decoded yet.
+   *
+   * @return the number of pending bytes.
+   */
+  int pendingBytes()
+  {
+    return end - start;
+  }
+
+// METHODS TO BE USED FROM WITHIN THE CLASS ONLY --------------------
+
+  /**
+   * Decodes a codec offer once <code>MAGIC</code> has been seen.
+   *
+   * @return the offer, or null if more bytes are needed.
+   * @exception IOException if the offer is malformed.
+   */
+  private Object nextOffer() throws IOException
+  {
+    // MAGIC, the name as written by writeUTF, then the features
+    if (end - start < 6)
+      return null;
+
+    int length = 7 + ((buffer[start + 4] & 0xFF) << 8) +
+      (buffer[start + 5] & 0xFF);
+    if (end - start < length)
+      return null;
+
+    DataInputStream in = new DataInputStream(
+      new ByteArrayInputStream(buffer, start + 4, length - 4));
+    Offer offer = new Offer(Framing.readOffer(in), Framing.readFeatures(in));
+    consume(length);
+    return offer;
+  }
+
+  /**
+   * Decodes the next frame, if it was received entirely.
+   *
+   * @return the next message, or null if more bytes are needed.
+   * @exception IOException if the frame is corrupted.
+   * @exception ClassNotFoundException if the class of a serialized
+   *    value cannot be found.
+   */
+  private Object nextFrame() throws IOException, ClassNotFoundException
+  {
+    if (end - start < 4)
+      return null;
+
+    int header = readInt(start);
+    int length = Framing.frameLength(header, compressor);
+    if (end - start < 4 + length)
+      return null;
+
+    Object msg = Framing.decode(codec, header, buffer, start + 4, compressor);
+    consume(4 + length);
+    return msg;
+  }
+
+  /**
+   * Reads a big-endian int from the buffer.
+   *
+   * @param offset the offset of the int.
+   * @return the int read.
+   */
+  private int readInt(int offset)
+  {
+    return ((buffer[offset] & 0xFF) << 24) |
+      ((buffer[offset + 1] & 0xFF) << 16) |
+      ((buffer[offset + 2] & 0xFF) << 8) |
+      (buffer[offset + 3] & 0xFF);
+  }
+
+  /**
+   * Discards decoded bytes.
+   *
+   * @param count the number of bytes decoded.
+   */
+  private void consume(int count)
+  {
+    start += count;
+    if (start == end)
+    {
+      start = 0;
+      end = 0;
+    }
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * Returned by <code>next</code> when the client offers a codec.
+   */
+  static class Offer
+  {
+    /**
+     * The name of the codec offered.
+     */
+    final String codecName;
+
+    /**
+     * The features offered along with the codec.
+     */
+    final int features;
+
+    /**
+     * Constructs an offer.
+     *
+     * @param codecName the name of the codec offered.
+     * @param features the features offered.
+     */
+    Offer(String codecName, int features)
+    {
+      this.codecName = codecName;
+      this.features = features;
+    }
+  }
+}
+// End of ObjectStreamDecoder class
@@ -0,0 +1,266 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+
+/**
+ * The output side of a <code>ConnectionToClient</code>: writes objects
+ * or codec frames to the client and accounts for the memory they
+ * hold.<p>
+ *
+ * An <code>ObjectOutputStream</code> remembers every object it wrote
+ * in a handle table, so that an object written twice is sent as a
+ * back-reference. On a long-lived connection this keeps every message
+ * ever sent reachable, and a modified object written again reaches the
+ * client unchanged. The stream is therefore reset according to a
+ * threshold: after every message when it is 0, otherwise once that
+ * many bytes were written since the last reset.<p>
+ *
+ * Writes go through a buffer and are flushed once per message, instead
+ * of the many small writes an object stream makes to the socket.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#setOutputResetThreshold(int)
+ */
+class OutputPipeline
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The size of the buffer in front of a socket.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * Counts the bytes reaching the sink.
+   */
+  private final CountingOutputStream counter;
+
+  /**
+   * The stream objects and frames are written to.
+   */
+  private final OutputStream out;
+
+  /**
+   * The number of bytes after which the object stream is reset, or 0
+   * to reset it after every message.
+   */
+  private final int resetThreshold;
+
+  /**
+   * The object stream, or null until the client opens its own.
+   */
+  private ObjectOutputStream objects;
+
+  /**
+   * The value of the counter when the object stream was last reset.
+   */
+  private volatile long resetMark = 0;
+
+  /**
+   * The number of messages written.
+   */
+  private volatile long messageCount = 0;
+
+  /**
+   * The number of times the object stream was reset.
+   */
+  private volatile long resetCount = 0;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs the pipeline.
+   *
+   * @param sink the stream receiving the bytes.
+   * @param buffered true to buffer the bytes before the sink, which
+   *    should be done when the sink is a socket.
+   * @param resetThreshold the reset threshold, 0 to reset after every
+   *    message.
+   */
+  OutputPipeline(OutputStream sink, boolean buffered, int resetThreshold)
+  {
+    this.counter = new CountingOutputStream(sink);
+    this.out = buffered ?
+      new BufferedOutputStream(counter, BUFFER_SIZE) : counter;
+    this.resetThreshold = resetThreshold;
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Writes the header of the object stream.
+   *
+   * @exception IOException if the header cannot be written.
+   */
+  void startObjectStream() throws IOException
+  {
+    objects = new ObjectOutputStream(out);
+    objects.flush();
+    resetMark = counter.count;
+  }
+
+  /**
+   * Writes an object, resets the stream if the policy says so and
+   * flushes. The caller holds the output lock of the connection.
+   *
+   * @param msg the object to write.
+   * @exception IOException if the object cannot be written.
+   */
+  void writeObject(Object msg) throws IOException
+  {
+    if (objects == null)
+      throw new java.net.SocketException("stream not established");
+
+    objects.writeObject(msg);
+
+    if (resetThreshold > 0)
+    {
+      objects.flush();
+      if (counter.count - resetMark < resetThreshold)
+      {
+        messageCount++;
+        return;
+      }
+    }
+
+    // The reset marker travels in the same flush as the message
+    objects.reset();
+    objects.flush();
+    resetMark = counter.count;
+    resetCount++;
+    messageCount++;
+  }
+
+  /**
+   * Writes an object already serialized by a fresh object stream, as
+   * shared by the clients of a <code>SharedMessage</code>, and flushes.
+   * The stream is reset before the bytes, so that the client's handle
+   * table is as empty as the one of the stream that wrote them, and
+   * after them, so that both tables are empty again. The caller holds
+   * the output lock of the connection.
+   *
+   * @param serialized the object serialized, stream header excluded.
+   * @exception IOException if the bytes cannot be written.
+   */
+  void writeSerialized(byte[] serialized) throws IOException
+  {
+    if (objects == null)
+      throw new java.net.SocketException("stream not established");
+
+    objects.reset();
+    objects.flush();
+    out.write(serialized);
+    objects.reset();
+    objects.flush();
+    resetMark = counter.count;
+    resetCount++;
+    messageCount++;
+  }
+
+  /**
+   * Writes a frame encoded by a codec and flushes. Frames hold no
+   * references, so there is nothing to reset.
+   *
+   * @param frame the frame to write.
+   * @exception IOException if the frame cannot be written.
+   */
+  void writeFrame(byte[] frame) throws IOException
+  {
+    out.write(frame);
+    out.flush();
+    messageCount++;
+  }
+
+  /**
+   * Closes the stream and the sink.
+   *
+   * @exception IOException if an error occurs when closing.
+   */
+  void close() throws IOException
+  {
+    if (objects != null)
+      objects.close();
+    else
+      out.close();
+  }
+
+// ACCESSING METHODS ------------------------------------------------
+
+  /**
+   * @return the number of bytes written to the sink.
+   */
+  long getBytesWritten()
+  {
+    return counter.count;
+  }
+
+  /**
+   * @return the number of messages written.
+   */
+  long getMessageCount()
+  {
+    return messageCount;
+  }
+
+  /**
+   * @return the number of bytes written since the object stream was
+   *    last reset, whose objects its handle table keeps reachable.
+   */
+  long getRetainedBytes()
+  {
+    return objects == null ? 0 : counter.count - resetMark;
+  }
+
+  /**
+   * @return the number of times the object stream was reset.
+   */
+  long getResetCount()
+  {
+    return resetCount;
+  }
+
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * Counts the bytes going through to the sink. Only one thread
+   * writes at a time; others may read the count.
+   */
+  private static class CountingOutputStream extends FilterOutputStream
+  {
+    /**
+     * The number of bytes written.
+     */
+    volatile long count = 0;
+
+    /**
+     * Constructs the stream.
+     *
+     * @param sink the stream receiving the bytes.
+     */
+    CountingOutputStream(OutputStream sink)
+    {
+      super(sink);
+    }
+
+    public void write(int b) throws IOException
+    {
+      out.write(b);
+      count++;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
+// End of OutputPipeline class
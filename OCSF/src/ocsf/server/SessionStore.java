@@ -0,0 +1,181 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sessions of the clients of a server, by token. A session lives
+ * with its connection; once the connection is lost, what the server
+ * knew about the client, its saved information and its topics, is
+ * kept for the session timeout so that the client may resume it on a
+ * new connection.<p>
+ *
+ * Tokens are random and valid once: a resumed session gets a new
+ * token. A client may also reconnect before the server noticed that
+ * its previous connection was lost; the session is then taken over
+ * from the connection still open.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.common.Session
+ */
+final class SessionStore
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The number of random bytes in a token.
+   */
+  private static final int TOKEN_BYTES = 16;
+
+  /**
+   * Generates the tokens.
+   */
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The sessions of the open connections, by token.
+   */
+  private final ConcurrentHashMap<String, ConnectionToClient> live =
+    new ConcurrentHashMap<String, ConnectionToClient>();
+
+  /**
+   * The sessions of the lost connections, by token.
+   */
+  private final ConcurrentHashMap<String, Saved> suspended =
+    new ConcurrentHashMap<String, Saved>();
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * Gives a connection a new session token. Its previous token, if
+   * any, is no longer valid.
+   *
+   * @param client the connection.
+   * @return the new token.
+   */
+  String issue(ConnectionToClient client)
+  {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    RANDOM.nextBytes(bytes);
+    String token = Base64.getUrlEncoder().withoutPadding()
+      .encodeToString(bytes);
+
+    String previous = client.getSessionToken();
+    if (previous != null)
+      live.remove(previous, client);
+    client.setSessionToken(token);
+    live.put(token, client);
+    return token;
+  }
+
+  /**
+   * Takes the session with a token away from the connection still
+   * holding it.
+   *
+   * @param token the token.
+   * @return the connection, which no longer has a session, or null if
+   *    no open connection has the token.
+   */
+  ConnectionToClient takeLive(String token)
+  {
+    ConnectionToClient client = live.remove(token);
+    if (client != null)
+      client.setSessionToken(null);
+    return client;
+  }
+
+  /**
+   * Takes the session with a token saved when its connection was lost.
+   *
+   * @param token the token.
+   * @return the session, or null if there is none or it expired.
+   */
+  Saved takeSuspended(String token)
+  {
+    Saved saved = suspended.remove(token);
+    return saved == null || saved.isExpired(System.currentTimeMillis()) ?
+      null : saved;
+  }
+
+  /**
+   * Ends the session of a connection that was lost, keeping it for
+   * the given time. Expired sessions are forgotten at the same time.
+   *
+   * @param client the lost connection.
+   * @param timeout the time in milliseconds the session is kept, or 0
+   *    to forget it at once.
+   */
+  void suspend(ConnectionToClient client, long timeout)
+  {
+    String token = client.getSessionToken();
+    if (token == null || !live.remove(token, client))
+      return;
+
+    long now = System.currentTimeMillis();
+    Iterator<Saved> sessions = suspended.values().iterator();
+    while (sessions.hasNext())
+    {
+      if (sessions.next().isExpired(now))
+        sessions.remove();
+    }
+
+    if (timeout > 0)
+    {
+      suspended.put(token, new Saved(client.copyInfo(),
+        new HashSet<String>(client.getTopics()), now + timeout));
+    }
+  }
+
+  /**
+   * Forgets the sessions of the lost connections.
+   */
+  void clear()
+  {
+    suspended.clear();
+  }
+
+  /**
+   * @return the number of sessions kept for lost connections, expired
+   *    ones included until they are forgotten.
+   */
+  int getSuspendedCount()
+  {
+    return suspended.size();
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * What the server knew about a client when its connection was lost.
+   */
+  static final class Saved
+  {
+    /** The information saved on the connection. */
+    final Map<String, Object> info;
+    /** The topics the client was subscribed to. */
+    final Set<String> topics;
+    /** The time in milliseconds at which the session expires. */
+    private final long expires;
+
+    Saved(Map<String, Object> info, Set<String> topics, long expires)
+    {
+      this.info = info;
+      this.topics = topics;
+      this.expires = expires;
+    }
+
+    boolean isExpired(long now)
+    {
+      return now >= expires;
+    }
+  }
+}
+// End of SessionStore class
@@ -0,0 +1,191 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.util.Arrays;
+import ocsf.common.FrameCompressor;
+import ocsf.common.Framing;
+import ocsf.common.MessageCodec;
+
+/**
+ * A message sent to several clients at once, such as the message
+ * published on a topic. It is encoded once for all the clients sharing
+ * a wire format rather than once per client, and the same read only
+ * bytes are written to each of them.<p>
+ *
+ * Clients with a codec share the frame encoded by the codec, and the
+ * compressed frame when compression was agreed on. Clients using
+ * object streams share the serialized object: it is written by a
+ * fresh object stream, whose handle table is empty, and the stream of
+ * each client is reset before and after those bytes so that its handle
+ * table agrees with the client's.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ *
+ * @see ocsf.server.AbstractServer#publish(String, Object)
+ * @see ocsf.server.FanOutStats
+ */
+final class SharedMessage
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The length of the header starting an object stream.
+   */
+  private static final int STREAM_HEADER_LENGTH = 4;
+
+// INSTANCE VARIABLES ***********************************************
+
+  /**
+   * The message sent.
+   */
+  private final Object message;
+
+  /**
+   * The statistics to update.
+   */
+  private final FanOutStats stats;
+
+  /**
+   * The codec the frame was encoded with, or null before it is.
+   */
+  private MessageCodec codec;
+
+  /**
+   * The frame encoded by the codec.
+   */
+  private byte[] frame;
+
+  /**
+   * The threshold of the compressor the frame was compressed with, or
+   * -1 before it is.
+   */
+  private int compressedThreshold = -1;
+
+  /**
+   * The frame as returned by the compressor, compressed or not.
+   */
+  private byte[] compressed;
+
+  /**
+   * The object serialized by a fresh object stream, header excluded.
+   */
+  private byte[] serialized;
+
+// CONSTRUCTORS *****************************************************
+
+  /**
+   * Constructs a message to be sent to several clients.
+   *
+   * @param message the message.
+   * @param stats the statistics to update.
+   */
+  SharedMessage(Object message, FanOutStats stats)
+  {
+    this.message = message;
+    this.stats = stats;
+    stats.message();
+  }
+
+// INSTANCE METHODS *************************************************
+
+  /**
+   * @return the message sent.
+   */
+  Object getMessage()
+  {
+    return message;
+  }
+
+  /**
+   * Returns the frame of the message for a client, encoded and
+   * compressed the first time it is asked for. A server has one codec
+   * and one compression threshold, so the frame is only encoded again
+   * for a client that differs.
+   *
+   * @param codec the codec of the client.
+   * @param compressor the compressor of the client, or null.
+   * @return the frame to write to the client.
+   * @exception IOException if the message cannot be encoded.
+   */
+  byte[] getFrame(MessageCodec codec, FrameCompressor compressor)
+    throws IOException
+  {
+    byte[] bytes;
+    synchronized(this)
+    {
+      if (this.codec != codec)
+      {
+        long start = System.nanoTime();
+        frame = Framing.encode(codec, message);
+        stats.encoded(frame.length, System.nanoTime() - start);
+        this.codec = codec;
+        compressed = null;
+        compressedThreshold = -1;
+      }
+
+      if (compressor == null)
+      {
+        bytes = frame;
+      }
+      else if (compressedThreshold == compressor.getThreshold())
+      {
+        bytes = compressed;
+      }
+      else if (compressedThreshold == -1)
+      {
+        long start = System.nanoTime();
+        compressed = compressor.compress(frame, codec.getMessageType(message));
+        stats.encoded(compressed.length, System.nanoTime() - start);
+        compressedThreshold = compressor.getThreshold();
+        bytes = compressed;
+      }
+      else
+      {
+        bytes = null;
+      }
+    }
+
+    // Only a client connected before the threshold changed gets here
+    if (bytes == null)
+      bytes = compressor.compress(frame, codec.getMessageType(message));
+
+    stats.delivered(bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Returns the message serialized for a client using object streams,
+   * serialized the first time it is asked for.
+   *
+   * @return the bytes to write between two resets of the stream.
+   * @exception IOException if the message cannot be serialized.
+   */
+  byte[] getSerialized() throws IOException
+  {
+    byte[] bytes;
+    synchronized(this)
+    {
+      if (serialized == null)
+      {
+        long start = System.nanoTime();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream objects = new ObjectOutputStream(buffer);
+        objects.writeObject(message);
+        objects.flush();
+        byte[] stream = buffer.toByteArray();
+        serialized = Arrays.copyOfRange(stream, STREAM_HEADER_LENGTH,
+          stream.length);
+        stats.encoded(serialized.length, System.nanoTime() - start);
+      }
+      bytes = serialized;
+    }
+
+    stats.delivered(bytes.length);
+    return bytes;
+  }
+}
+// End of SharedMessage class
@@ -0,0 +1,247 @@
+// This file contains material supporting the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.common;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tests the compression of the frames: the frames below the threshold
+ * and the frames that do not shrink are sent as they are, and the
+ * compressed frames are decoded into the message sent.<p>
+ *
+ * Run with <code>java ocsf.common.FrameCompressorTest</code>; a
+ * failure throws an AssertionError.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public class FrameCompressorTest
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The threshold of the compressors tested.
+   */
+  private static final int THRESHOLD = 1024;
+
+  /**
+   * A codec writing strings and arrays of bytes.
+   */
+  private static final MessageCodec CODEC = new MessageCodec()
+  {
+    public String getName()
+    {
+      return "test";
+    }
+
+    public void encode(Object msg, DataOutputStream out)
+      throws IOException
+    {
+      boolean text = msg instanceof String;
+      byte[] bytes = text ? ((String)msg).getBytes("UTF-8") : (byte[])msg;
+      out.writeBoolean(text);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    public Object decode(DataInputStream in) throws IOException
+    {
+      boolean text = in.readBoolean();
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return text ? new String(bytes, "UTF-8") : bytes;
+    }
+  };
+
+// TESTS ************************************************************
+
+  public static void main(String[] args) throws Exception
+  {
+    leavesTheFramesBelowTheThreshold();
+    roundTripsTheFramesCompressed();
+    leavesTheFramesThatDoNotShrink();
+    refusesATruncatedFrame();
+    System.out.println("FrameCompressorTest passed");
+  }
+
+  /**
+   * A frame whose payload is below the threshold is sent as it is,
+   * however well it would compress.
+   */
+  private static void leavesTheFramesBelowTheThreshold() throws Exception
+  {
+    CompressionStats stats = new CompressionStats();
+    FrameCompressor compressor = new FrameCompressor(THRESHOLD, stats);
+    try
+    {
+      // The codec adds 5 bytes to the text
+      byte[] frame = Framing.encode(CODEC, repeated(THRESHOLD - 6));
+      check(compressor.compress(frame, "String") == frame,
+        "a frame below the threshold to be sent as it is");
+
+      CompressionStats.Entry entry = stats.get("String");
+      check(entry.getSentFrames() == 1 && entry.getCompressedFrames() == 0,
+        "one frame sent uncompressed, got " + entry);
+      check(entry.getCompressNanos() == 0,
+        "a frame below the threshold not to be tried");
+    }
+    finally
+    {
+      compressor.close();
+    }
+  }
+
+  /**
+   * The frames reaching the threshold are compressed when they shrink,
+   * and come out of the compressor of the other side as they went in.
+   */
+  private static void roundTripsTheFramesCompressed() throws Exception
+  {
+    CompressionStats stats = new CompressionStats();
+    FrameCompressor sender = new FrameCompressor(THRESHOLD, stats);
+    FrameCompressor receiver =
+      new FrameCompressor(THRESHOLD, new CompressionStats());
+    try
+    {
+      // The deflater and the inflater are reused from frame to frame,
+      // and the output buffer is not kept beyond 64 KB
+      for (String msg : new String[] {repeated(THRESHOLD - 5),
+        repeated(50000), repeated(THRESHOLD), repeated(200000),
+        "Pizza \u05e4\u05d9\u05e6\u05d4 " + repeated(5000)})
+      {
+        byte[] frame = Framing.encode(CODEC, msg, sender);
+        int header = readInt(frame);
+        check((header & Framing.COMPRESSED) != 0,
+          "a frame of " + msg.length() + " characters to be compressed");
+        check(frame.length < msg.length() / 2,
+          "a repetitive text to shrink, got " + frame.length + " bytes");
+        check(Framing.frameLength(header, receiver) == frame.length - 4,
+          "the length of the compressed payload in the header");
+
+        Object copy = Framing.decode(CODEC, header, frame, 4, receiver);
+        check(msg.equals(copy),
+          "a text of " + msg.length() + " characters to round trip");
+      }
+
+      CompressionStats.Entry entry = stats.get("String");
+      check(entry.getSentFrames() == 5 && entry.getCompressedFrames() == 5,
+        "five frames sent compressed, got " + entry);
+      check(entry.getSentWireBytes() < entry.getSentRawBytes(),
+        "fewer bytes sent than encoded, got " + entry);
+    }
+    finally
+    {
+      sender.close();
+      receiver.close();
+    }
+  }
+
+  /**
+   * A frame of random bytes does not shrink and is sent as it is, and
+   * once most frames of its type did not shrink, the type is only
+   * tried now and then.
+   */
+  private static void leavesTheFramesThatDoNotShrink() throws Exception
+  {
+    CompressionStats stats = new CompressionStats();
+    FrameCompressor compressor = new FrameCompressor(THRESHOLD, stats);
+    CompressionStats.Entry entry = stats.get("byte[]");
+    Random random = new Random(42);
+    try
+    {
+      for (int i = 0; i < CompressionStats.PROBE_COUNT; i++)
+      {
+        byte[] frame = Framing.encode(CODEC, noise(random, 4096));
+        check(compressor.compress(frame, "byte[]") == frame,
+          "a frame of random bytes to be sent as it is");
+      }
+      check(entry.getCompressedFrames() == 0 && entry.getCompressNanos() > 0,
+        "the frames of random bytes to be tried, got " + entry);
+
+      long nanos = entry.getCompressNanos();
+      for (int i = 1; i < CompressionStats.PROBE_INTERVAL; i++)
+        compressor.compress(Framing.encode(CODEC, noise(random, 4096)),
+          "byte[]");
+      check(entry.getCompressNanos() == nanos,
+        "a type that does not shrink not to be tried for a while");
+
+      compressor.compress(Framing.encode(CODEC, noise(random, 4096)),
+        "byte[]");
+      check(entry.getCompressNanos() > nanos,
+        "a type that does not shrink to be tried again in time");
+    }
+    finally
+    {
+      compressor.close();
+    }
+  }
+
+  /**
+   * A compressed frame cut short is refused instead of decoded.
+   */
+  private static void refusesATruncatedFrame() throws Exception
+  {
+    FrameCompressor sender =
+      new FrameCompressor(THRESHOLD, new CompressionStats());
+    FrameCompressor receiver =
+      new FrameCompressor(THRESHOLD, new CompressionStats());
+    try
+    {
+      byte[] frame = Framing.encode(CODEC, repeated(10000), sender);
+      int length = (frame.length - 4) / 2;
+      try
+      {
+        receiver.decode(CODEC, frame, 4, length);
+        throw new AssertionError("Expected a truncated frame to be refused");
+      }
+      catch (StreamCorruptedException ex) {}
+    }
+    finally
+    {
+      sender.close();
+      receiver.close();
+    }
+  }
+
+// UTILITIES ********************************************************
+
+  /**
+   * @param length the length of the text.
+   * @return a text that compresses well.
+   */
+  private static String repeated(int length)
+  {
+    StringBuilder text = new StringBuilder(length);
+    while (text.length() < length)
+      text.append("Salad, Large, No onions; ");
+    text.setLength(length);
+    return text.toString();
+  }
+
+  /**
+   * @param random the source of the bytes.
+   * @param length the number of bytes.
+   * @return bytes that do not compress.
+   */
+  private static byte[] noise(Random random, int length)
+  {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+
+  private static int readInt(byte[] frame)
+  {
+    return ((frame[0] & 0xFF) << 24) | ((frame[1] & 0xFF) << 16) |
+      ((frame[2] & 0xFF) << 8) | (frame[3] & 0xFF);
+  }
+
+  private static void check(boolean condition, String expected)
+  {
+    if (!condition)
+      throw new AssertionError("Expected " + expected);
+  }
+}
+// End of FrameCompressorTest class
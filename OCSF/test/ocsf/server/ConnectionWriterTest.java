@@ -0,0 +1,341 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests the writer threads of the connections against a client that
+ * does not read: reading from the client pauses above the high
+ * watermark and resumes at the low watermark, or the client is dropped
+ * if the server drops slow clients.<p>
+ *
+ * Run with <code>java ocsf.server.ConnectionWriterTest</code>; a
+ * failure throws an AssertionError.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public class ConnectionWriterTest
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The watermarks of the server.
+   */
+  private static final int HIGH = 512 * 1024, LOW = 128 * 1024;
+
+  /**
+   * The size of the messages sent to the client.
+   */
+  private static final int CHUNK = 32 * 1024;
+
+  /**
+   * The most bytes sent before the client must be paused or dropped,
+   * well beyond what the socket buffers hold.
+   */
+  private static final long LIMIT = 256L * 1024 * 1024;
+
+  /**
+   * The longest time in milliseconds a test waits for the server.
+   */
+  private static final long TIMEOUT = 10000;
+
+// TESTS ************************************************************
+
+  public static void main(String[] args) throws Exception
+  {
+    pausesAboveTheHighWatermark();
+    dropsASlowClient();
+    System.out.println("ConnectionWriterTest passed");
+  }
+
+  /**
+   * Replies pile up for a client that does not read: once they exceed
+   * the high watermark, the server stops reading the client, and it
+   * reads again once the client caught up to the low watermark.
+   */
+  private static void pausesAboveTheHighWatermark() throws Exception
+  {
+    TestServer server = new TestServer();
+    server.setAsyncWrites(true);
+    server.setOutputWatermarks(HIGH, LOW);
+    server.listen();
+
+    SlowClient client = new SlowClient(server.getPort());
+    try
+    {
+      ConnectionToClient connection = server.awaitConnection();
+      check(!connection.isReadPaused(), "a new client to be read");
+
+      long sent = flood(connection);
+      check(connection.isReadPaused(),
+        "reading to pause after " + sent + " bytes");
+      check(connection.getPendingOutputBytes() > HIGH,
+        "more than the high watermark to be pending, got "
+          + connection.getPendingOutputBytes());
+
+      // The message read when the pause began is handled, the next
+      // one waits for the client to catch up
+      client.send("first");
+      client.send("second");
+      await(server.handled, 1);
+      pause(200);
+      check(server.handled.equals(Arrays.asList("first")),
+        "only the first message to be read while paused, got "
+          + server.handled);
+
+      client.startReading();
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (connection.isReadPaused()
+        && System.currentTimeMillis() < deadline)
+        pause(10);
+      check(!connection.isReadPaused(), "reading to resume");
+      check(connection.getPendingOutputBytes() <= LOW,
+        "at most the low watermark to be pending on resume, got "
+          + connection.getPendingOutputBytes());
+
+      await(server.handled, 2);
+      check(server.handled.equals(Arrays.asList("first", "second")),
+        "the second message to be read once resumed, got "
+          + server.handled);
+      check(server.exceptions.isEmpty(),
+        "no exception, got " + server.exceptions);
+    }
+    finally
+    {
+      client.close();
+      server.close();
+    }
+  }
+
+  /**
+   * A server dropping slow clients closes the connection of a client
+   * that does not read once its replies exceed the high watermark,
+   * and reports why.
+   */
+  private static void dropsASlowClient() throws Exception
+  {
+    TestServer server = new TestServer();
+    server.setAsyncWrites(true);
+    server.setOutputWatermarks(HIGH, LOW);
+    server.setDropSlowClients(true);
+    server.listen();
+
+    SlowClient client = new SlowClient(server.getPort());
+    try
+    {
+      ConnectionToClient connection = server.awaitConnection();
+      flood(connection);
+
+      await(server.exceptions, 1);
+      Throwable exception = server.exceptions.get(0);
+      check(exception instanceof IOException
+        && exception.getMessage().startsWith("client too slow"),
+        "the client to be dropped as too slow, got " + exception);
+      check(!connection.isReadPaused(), "a dropped client not paused");
+      check(server.getNumberOfClients() == 0,
+        "the client to be removed, " + server.getNumberOfClients()
+          + " left");
+
+      try
+      {
+        connection.sendToClient(new byte[1]);
+        throw new AssertionError(
+          "Expected sending to a dropped client to fail");
+      }
+      catch (SocketException ex) {}
+    }
+    finally
+    {
+      client.close();
+      server.close();
+    }
+  }
+
+// UTILITIES ********************************************************
+
+  /**
+   * Sends messages to a client that does not read until it is paused
+   * for good, once the socket buffers are full, or dropped.
+   *
+   * @param connection the connection of the client.
+   * @return the number of bytes sent.
+   */
+  private static long flood(ConnectionToClient connection)
+    throws IOException
+  {
+    byte[] chunk = new byte[CHUNK];
+    long sent = 0;
+    try
+    {
+      while (sent < LIMIT)
+      {
+        while (!connection.isReadPaused() && sent < LIMIT)
+        {
+          connection.sendToClient(chunk);
+          sent += CHUNK;
+        }
+
+        // The writer may still be filling the socket buffers, and
+        // resume reading if they take the pending bytes
+        pause(100);
+        if (connection.isReadPaused())
+          return sent;
+      }
+    }
+    catch (SocketException ex)
+    {
+      // Dropped
+    }
+    return sent;
+  }
+
+  /**
+   * Waits until a list holds a number of elements.
+   */
+  private static void await(List<?> list, int size)
+  {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (list.size() < size && System.currentTimeMillis() < deadline)
+      pause(10);
+    check(list.size() >= size,
+      size + " elements, got " + list);
+  }
+
+  private static void check(boolean condition, String expected)
+  {
+    if (!condition)
+      throw new AssertionError("Expected " + expected);
+  }
+
+  private static void pause(long millis)
+  {
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return a port no one listens on.
+   */
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+    try
+    {
+      return socket.getLocalPort();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * A server recording what it reads and the exceptions of its
+   * clients.
+   */
+  private static class TestServer extends AbstractServer
+  {
+    final List<Object> handled =
+      Collections.synchronizedList(new ArrayList<Object>());
+    final List<Throwable> exceptions =
+      Collections.synchronizedList(new ArrayList<Throwable>());
+    private final BlockingQueue<ConnectionToClient> connected =
+      new LinkedBlockingQueue<ConnectionToClient>();
+
+    TestServer() throws IOException
+    {
+      super(freePort());
+    }
+
+    ConnectionToClient awaitConnection() throws InterruptedException
+    {
+      ConnectionToClient connection =
+        connected.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+      check(connection != null, "the client to connect");
+      return connection;
+    }
+
+    protected void clientConnected(ConnectionToClient client)
+    {
+      connected.add(client);
+    }
+
+    synchronized protected void clientException(
+      ConnectionToClient client, Throwable exception)
+    {
+      exceptions.add(exception);
+    }
+
+    protected void handleMessageFromClient(Object msg,
+      ConnectionToClient client)
+    {
+      handled.add(msg);
+    }
+  }
+
+  /**
+   * A client speaking the object stream protocol over a small receive
+   * buffer, which does not read what the server sends until told to.
+   */
+  private static class SlowClient
+  {
+    private final Socket socket = new Socket();
+    private final ObjectOutputStream output;
+
+    SlowClient(int port) throws IOException
+    {
+      socket.setReceiveBufferSize(4096);
+      socket.connect(new InetSocketAddress("localhost", port));
+      output = new ObjectOutputStream(socket.getOutputStream());
+      output.flush();
+    }
+
+    void send(Object msg) throws IOException
+    {
+      output.writeObject(msg);
+      output.flush();
+    }
+
+    /**
+     * Reads and discards what the server sends from now on.
+     */
+    void startReading()
+    {
+      Thread reader = new Thread()
+      {
+        public void run()
+        {
+          byte[] buffer = new byte[64 * 1024];
+          try
+          {
+            InputStream in = socket.getInputStream();
+            while (in.read(buffer) >= 0) {}
+          }
+          catch (IOException ex) {}
+        }
+      };
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    void close() throws IOException
+    {
+      socket.close();
+    }
+  }
+}
+// End of ConnectionWriterTest class
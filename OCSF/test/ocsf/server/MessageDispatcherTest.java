@@ -0,0 +1,236 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.*;
+import ocsf.client.AbstractClient;
+
+/**
+ * Tests the dispatch of the messages of the clients to the worker
+ * threads of a server: the messages of a client are handled in the
+ * order they were sent, and the messages beyond the queue limit are
+ * rejected.<p>
+ *
+ * Run with <code>java ocsf.server.MessageDispatcherTest</code>; a
+ * failure throws an AssertionError.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public class MessageDispatcherTest
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The number of messages each client sends.
+   */
+  private static final int MESSAGES = 200;
+
+  /**
+   * The longest time in seconds a test waits for the server.
+   */
+  private static final int TIMEOUT = 10;
+
+// TESTS ************************************************************
+
+  public static void main(String[] args) throws Exception
+  {
+    keepsTheOrderOfEachClient();
+    rejectsMessagesBeyondTheQueueLimit();
+    System.out.println("MessageDispatcherTest passed");
+  }
+
+  /**
+   * Several clients send numbered messages to a server with several
+   * workers, which handle them slowly: each client sees its messages
+   * handled in order.
+   */
+  private static void keepsTheOrderOfEachClient() throws Exception
+  {
+    final Map<ConnectionToClient, List<Integer>> handled =
+      new ConcurrentHashMap<ConnectionToClient, List<Integer>>();
+    final CountDownLatch done = new CountDownLatch(3 * MESSAGES);
+
+    TestServer server = new TestServer()
+    {
+      protected void handleMessageFromClient(Object msg,
+        ConnectionToClient client)
+      {
+        List<Integer> received = handled.get(client);
+        if (received == null)
+        {
+          handled.putIfAbsent(client,
+            Collections.synchronizedList(new ArrayList<Integer>()));
+          received = handled.get(client);
+        }
+        if (ThreadLocalRandom.current().nextInt(10) == 0)
+          pause(1);
+        received.add((Integer)msg);
+        done.countDown();
+      }
+    };
+    server.setDispatchThreads(4);
+    server.listen();
+
+    List<TestClient> clients = new ArrayList<TestClient>();
+    try
+    {
+      for (int i = 0; i < 3; i++)
+        clients.add(new TestClient(server.getPort()));
+      for (int n = 0; n < MESSAGES; n++)
+        for (TestClient client : clients)
+          client.sendToServer(n);
+
+      check(done.await(TIMEOUT, TimeUnit.SECONDS),
+        "every message to be handled");
+      check(handled.size() == 3, "the messages of 3 clients");
+      for (List<Integer> received : handled.values())
+        for (int n = 0; n < MESSAGES; n++)
+          check(received.get(n) == n,
+            "message " + n + " in place, got " + received.get(n));
+    }
+    finally
+    {
+      for (TestClient client : clients)
+        client.closeConnection();
+      server.close();
+    }
+  }
+
+  /**
+   * A client sends more messages than the queue holds while the only
+   * worker is busy: the extra messages are passed to
+   * messageRejected, and the others are still handled in order.
+   */
+  private static void rejectsMessagesBeyondTheQueueLimit()
+    throws Exception
+  {
+    final CountDownLatch busy = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Object> handled =
+      Collections.synchronizedList(new ArrayList<Object>());
+    final List<Object> rejected =
+      Collections.synchronizedList(new ArrayList<Object>());
+
+    TestServer server = new TestServer()
+    {
+      protected void handleMessageFromClient(Object msg,
+        ConnectionToClient client)
+      {
+        busy.countDown();
+        try
+        {
+          release.await();
+        }
+        catch (InterruptedException ex) {}
+        handled.add(msg);
+      }
+
+      protected void messageRejected(Object msg,
+        ConnectionToClient client)
+      {
+        rejected.add(msg);
+      }
+    };
+    server.setDispatchThreads(1);
+    server.setDispatchQueueLimit(2);
+    server.listen();
+
+    TestClient client = new TestClient(server.getPort());
+    try
+    {
+      // The worker holds the first message, the queue the next two
+      client.sendToServer(0);
+      check(busy.await(TIMEOUT, TimeUnit.SECONDS),
+        "the first message to be handled");
+      for (int n = 1; n < 6; n++)
+        client.sendToServer(n);
+
+      long deadline = System.currentTimeMillis() + TIMEOUT * 1000;
+      while (rejected.size() < 3 && System.currentTimeMillis() < deadline)
+        pause(10);
+      check(rejected.equals(Arrays.asList(3, 4, 5)),
+        "messages 3 to 5 to be rejected, got " + rejected);
+
+      release.countDown();
+      while (handled.size() < 3 && System.currentTimeMillis() < deadline)
+        pause(10);
+      check(handled.equals(Arrays.asList(0, 1, 2)),
+        "messages 0 to 2 to be handled, got " + handled);
+    }
+    finally
+    {
+      release.countDown();
+      client.closeConnection();
+      server.close();
+    }
+  }
+
+// UTILITIES ********************************************************
+
+  private static void check(boolean condition, String expected)
+  {
+    if (!condition)
+      throw new AssertionError("Expected " + expected);
+  }
+
+  private static void pause(long millis)
+  {
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return a port no one listens on.
+   */
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+    try
+    {
+      return socket.getLocalPort();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * A server listening on a free port.
+   */
+  private abstract static class TestServer extends AbstractServer
+  {
+    TestServer() throws IOException
+    {
+      super(freePort());
+    }
+  }
+
+  /**
+   * A client ignoring what the server sends.
+   */
+  private static class TestClient extends AbstractClient
+  {
+    TestClient(int port) throws IOException
+    {
+      super("localhost", port);
+      openConnection();
+    }
+
+    protected void handleMessageFromServer(Object msg) {}
+  }
+}
+// End of MessageDispatcherTest class
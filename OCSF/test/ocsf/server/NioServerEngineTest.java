@@ -0,0 +1,327 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Tests the non-blocking engine: the object stream of a client is
+ * decoded from bytes split anywhere, a stream that is not an object
+ * stream is refused, and clients writing their messages in small
+ * pieces are served in order by the event loops.<p>
+ *
+ * Run with <code>java ocsf.server.NioServerEngineTest</code>; a
+ * failure throws an AssertionError.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public class NioServerEngineTest
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The number of messages each client sends.
+   */
+  private static final int MESSAGES = 20;
+
+  /**
+   * The longest time in milliseconds a test waits for the server.
+   */
+  private static final int TIMEOUT = 10000;
+
+// TESTS ************************************************************
+
+  public static void main(String[] args) throws Exception
+  {
+    decodesObjectsSplitAnywhere();
+    refusesABadHeader();
+    servesClientsWritingInPieces();
+    System.out.println("NioServerEngineTest passed");
+  }
+
+  /**
+   * The objects written by a client come out of the decoder whole and
+   * in order, after the start of the stream, whether the bytes arrive
+   * one by one or in chunks of any size.
+   */
+  private static void decodesObjectsSplitAnywhere() throws Exception
+  {
+    List<Object> sent = new ArrayList<Object>();
+    sent.add(ObjectStreamDecoder.STREAM_STARTED);
+    sent.addAll(messages("decoder"));
+    byte[] stream = objectStream(sent.subList(1, sent.size()));
+
+    ObjectStreamDecoder decoder = new ObjectStreamDecoder();
+    List<Object> decoded = new ArrayList<Object>();
+    for (int i = 0; i < stream.length; i++)
+      decode(decoder, stream, i, 1, decoded);
+    check(decoded.equals(sent),
+      "the objects fed byte by byte to be decoded, got " + decoded);
+    // The reset following the last object is read with the next one
+    check(decoder.pendingBytes() == 1,
+      "only the last reset to be left over, got " + decoder.pendingBytes());
+
+    Random random = new Random(42);
+    decoder = new ObjectStreamDecoder();
+    decoded.clear();
+    for (int i = 0; i < stream.length;)
+    {
+      int length = Math.min(1 + random.nextInt(64), stream.length - i);
+      decode(decoder, stream, i, length, decoded);
+      i += length;
+    }
+    check(decoded.equals(sent),
+      "the objects fed in chunks to be decoded, got " + decoded);
+    check(decoder.pendingBytes() == 1,
+      "only the last reset to be left over, got " + decoder.pendingBytes());
+  }
+
+  /**
+   * A stream that does not start with the header of an object stream
+   * is refused once its first bytes arrive.
+   */
+  private static void refusesABadHeader() throws Exception
+  {
+    ObjectStreamDecoder decoder = new ObjectStreamDecoder();
+    decoder.append(ByteBuffer.wrap("GET / HTTP/1.1\r\n".getBytes("US-ASCII")));
+    try
+    {
+      decoder.next();
+      throw new AssertionError("Expected a bad header to be refused");
+    }
+    catch (StreamCorruptedException ex) {}
+  }
+
+  /**
+   * Clients whose messages reach the server a few bytes at a time are
+   * spread over two event loops; each message is handled once, in the
+   * order its client sent it, and the replies come back in order.
+   */
+  private static void servesClientsWritingInPieces() throws Exception
+  {
+    EchoServer server = new EchoServer();
+    server.setNonBlocking(true);
+    server.setEventLoopCount(2);
+    server.listen();
+
+    List<PieceClient> clients = new ArrayList<PieceClient>();
+    try
+    {
+      for (int i = 0; i < 3; i++)
+        clients.add(new PieceClient(server.getPort()));
+
+      List<List<Object>> sent = new ArrayList<List<Object>>();
+      for (int i = 0; i < clients.size(); i++)
+      {
+        List<Object> msgs = messages("client " + i);
+        sent.add(msgs);
+        clients.get(i).send(msgs);
+      }
+
+      for (int i = 0; i < clients.size(); i++)
+      {
+        List<Object> replies = clients.get(i).receive(MESSAGES);
+        check(replies.equals(sent.get(i)),
+          "client " + i + " to get its replies in order, got " + replies);
+      }
+
+      List<Object> handled = server.handled();
+      check(handled.size() == MESSAGES * clients.size(),
+        "every message to be handled once, got " + handled.size());
+      for (int i = 0; i < clients.size(); i++)
+      {
+        List<Object> order = new ArrayList<Object>();
+        for (Object msg : handled)
+        {
+          if (sent.get(i).contains(msg))
+            order.add(msg);
+        }
+        check(order.equals(sent.get(i)),
+          "the messages of client " + i + " to be handled in order, got "
+            + order);
+      }
+      check(server.getNumberOfClients() == clients.size(),
+        "every client to be connected, got " + server.getNumberOfClients());
+    }
+    finally
+    {
+      for (PieceClient client : clients)
+        client.close();
+      server.close();
+    }
+  }
+
+// UTILITIES ********************************************************
+
+  /**
+   * @param prefix what makes the messages of a client unique.
+   * @return messages of various sizes and types.
+   */
+  private static List<Object> messages(String prefix)
+  {
+    List<Object> msgs = new ArrayList<Object>();
+    for (int i = 0; i < MESSAGES; i++)
+    {
+      if (i % 3 == 0)
+        msgs.add(new ArrayList<Object>(Arrays.asList(prefix, i, "order")));
+      else
+      {
+        StringBuilder text = new StringBuilder(prefix + " #" + i + ":");
+        for (int j = 0; j < i * 40; j++)
+          text.append((char)('a' + j % 26));
+        msgs.add(text.toString());
+      }
+    }
+    return msgs;
+  }
+
+  /**
+   * @param msgs the messages.
+   * @return the object stream of a client sending the messages,
+   *   resetting the stream after each one like AbstractClient.
+   */
+  private static byte[] objectStream(List<Object> msgs) throws IOException
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream output = new ObjectOutputStream(bytes);
+    for (Object msg : msgs)
+    {
+      output.writeObject(msg);
+      output.reset();
+    }
+    output.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Feeds bytes to a decoder and collects the objects it decodes.
+   */
+  private static void decode(ObjectStreamDecoder decoder, byte[] stream,
+    int offset, int length, List<Object> decoded) throws Exception
+  {
+    decoder.append(ByteBuffer.wrap(stream, offset, length));
+    Object msg;
+    while ((msg = decoder.next()) != null)
+      decoded.add(msg);
+  }
+
+  private static void check(boolean condition, String expected)
+  {
+    if (!condition)
+      throw new AssertionError("Expected " + expected);
+  }
+
+  private static void pause(long millis)
+  {
+    try
+    {
+      Thread.sleep(millis);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * @return a port no one listens on.
+   */
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+    try
+    {
+      return socket.getLocalPort();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * A server sending every message back to its client.
+   */
+  private static class EchoServer extends AbstractServer
+  {
+    private final List<Object> handled = new ArrayList<Object>();
+
+    EchoServer() throws IOException
+    {
+      super(freePort());
+    }
+
+    synchronized List<Object> handled()
+    {
+      return new ArrayList<Object>(handled);
+    }
+
+    protected void handleMessageFromClient(Object msg,
+      ConnectionToClient client)
+    {
+      synchronized (this)
+      {
+        handled.add(msg);
+      }
+      try
+      {
+        client.sendToClient(msg);
+      }
+      catch (IOException ex)
+      {
+        throw new AssertionError("Expected the reply to be sent, got " + ex);
+      }
+    }
+  }
+
+  /**
+   * A client speaking the object stream protocol, which writes its
+   * messages a few bytes at a time.
+   */
+  private static class PieceClient
+  {
+    private final Socket socket = new Socket();
+
+    PieceClient(int port) throws IOException
+    {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(TIMEOUT);
+      socket.connect(new InetSocketAddress("localhost", port));
+    }
+
+    void send(List<Object> msgs) throws IOException
+    {
+      byte[] stream = objectStream(msgs);
+      OutputStream out = socket.getOutputStream();
+      for (int i = 0; i < stream.length; i += 7)
+      {
+        out.write(stream, i, Math.min(7, stream.length - i));
+        out.flush();
+        if (i % 70 == 0)
+          pause(1);
+      }
+    }
+
+    List<Object> receive(int count) throws Exception
+    {
+      ObjectInputStream input = new ObjectInputStream(socket.getInputStream());
+      List<Object> replies = new ArrayList<Object>();
+      while (replies.size() < count)
+        replies.add(input.readObject());
+      return replies;
+    }
+
+    void close() throws IOException
+    {
+      socket.close();
+    }
+  }
+}
+// End of NioServerEngineTest class
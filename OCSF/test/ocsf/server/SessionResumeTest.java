@@ -0,0 +1,270 @@
+// This file contains material supporting section 3.8 of the textbook:
+// "Object Oriented Software Engineering" and is issued under the open-source
+// license found at www.lloseng.com
+
+package ocsf.server;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import ocsf.client.AbstractClient;
+import ocsf.common.Session;
+
+/**
+ * Tests the resuming of sessions: a client reconnecting by itself
+ * within the session timeout gets back the information and the topics
+ * of its lost connection, a token resumes one session only, and a
+ * session kept beyond the timeout is not resumed.<p>
+ *
+ * Run with <code>java ocsf.server.SessionResumeTest</code>; a
+ * failure throws an AssertionError.<p>
+ *
+ * Project Name: OCSF (Object Client-Server Framework)<p>
+ */
+public class SessionResumeTest
+{
+// CLASS VARIABLES **************************************************
+
+  /**
+   * The longest time in milliseconds a test waits for the server or
+   * the client.
+   */
+  private static final long TIMEOUT = 10000;
+
+// TESTS ************************************************************
+
+  public static void main(String[] args) throws Exception
+  {
+    resumesTheSessionAfterReconnecting();
+    resumesASessionOnce();
+    doesNotResumeAnExpiredSession();
+    System.out.println("SessionResumeTest passed");
+  }
+
+  /**
+   * A client whose connection is lost reconnects, and the new
+   * connection gets the information and the topics of the lost one
+   * under a new token.
+   */
+  private static void resumesTheSessionAfterReconnecting()
+    throws Exception
+  {
+    TestServer server = new TestServer(5000);
+    TestClient client = new TestClient(server.getPort(), 50);
+    try
+    {
+      client.openConnection();
+      check(!client.awaitSession(), "the first session to be new");
+      ConnectionToClient lost = server.awaitConnection();
+      String token = client.getSessionToken();
+      check(token != null && token.equals(lost.getSessionToken()),
+        "the client to get the token of its connection");
+
+      lost.setInfo("login", "dana");
+      lost.subscribe("restaurant:7");
+      lost.close();
+
+      check(client.awaitSession(), "the session to be resumed");
+      ConnectionToClient resumed = server.awaitConnection();
+      check(server.resumed.contains(resumed),
+        "the server to be told of the resumed session");
+      check("dana".equals(resumed.getInfo("login")),
+        "the information of the lost connection to be restored");
+      check(server.getSubscribers("restaurant:7").contains(resumed)
+        && !server.getSubscribers("restaurant:7").contains(lost),
+        "the topics of the lost connection to be restored");
+      check(client.getSessionToken() != null
+        && !client.getSessionToken().equals(token),
+        "a new token to be given");
+      check(server.getSuspendedSessionCount() == 0,
+        "the resumed session not to be kept");
+    }
+    finally
+    {
+      client.setAutoReconnect(false);
+      client.closeConnection();
+      server.close();
+    }
+  }
+
+  /**
+   * A token presented again once its session was resumed starts a new
+   * session.
+   */
+  private static void resumesASessionOnce() throws Exception
+  {
+    TestServer server = new TestServer(5000);
+    TestClient client = new TestClient(server.getPort(), 50);
+    TestClient other = new TestClient(server.getPort(), 50);
+    try
+    {
+      client.openConnection();
+      client.awaitSession();
+      String token = client.getSessionToken();
+      ConnectionToClient lost = server.awaitConnection();
+      lost.setInfo("login", "dana");
+      lost.close();
+      check(client.awaitSession(), "the session to be resumed");
+      server.awaitConnection();
+
+      other.setAutoReconnect(false);
+      other.openConnection();
+      other.sendToServer(new Session(token, false));
+      check(!other.awaitSession(), "a used token not to resume a session");
+      check(server.awaitConnection().getInfo("login") == null,
+        "the information of the session not to be given again");
+      check(server.resumed.size() == 1, "a single session to be resumed");
+    }
+    finally
+    {
+      client.setAutoReconnect(false);
+      client.closeConnection();
+      other.closeConnection();
+      server.close();
+    }
+  }
+
+  /**
+   * A client reconnecting after the session timeout gets a new
+   * session, without the information of the lost connection.
+   */
+  private static void doesNotResumeAnExpiredSession() throws Exception
+  {
+    TestServer server = new TestServer(100);
+    // Each attempt waits at least half the delay, well beyond the
+    // session timeout
+    TestClient client = new TestClient(server.getPort(), 800);
+    try
+    {
+      client.openConnection();
+      client.awaitSession();
+      ConnectionToClient lost = server.awaitConnection();
+      lost.setInfo("login", "dana");
+      lost.close();
+
+      check(!client.awaitSession(), "an expired session not to be resumed");
+      ConnectionToClient renewed = server.awaitConnection();
+      check(renewed.getInfo("login") == null,
+        "the information of an expired session not to be restored");
+      check(server.resumed.isEmpty(),
+        "the server not to be told of a resumed session");
+    }
+    finally
+    {
+      client.setAutoReconnect(false);
+      client.closeConnection();
+      server.close();
+    }
+  }
+
+// UTILITIES ********************************************************
+
+  private static void check(boolean condition, String expected)
+  {
+    if (!condition)
+      throw new AssertionError("Expected " + expected);
+  }
+
+  /**
+   * @return a port no one listens on.
+   */
+  private static int freePort() throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+    try
+    {
+      return socket.getLocalPort();
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+// INNER CLASSES ****************************************************
+
+  /**
+   * A server keeping the sessions of lost connections, which records
+   * its connections once they have a session.
+   */
+  private static class TestServer extends AbstractServer
+  {
+    final List<ConnectionToClient> resumed =
+      Collections.synchronizedList(new ArrayList<ConnectionToClient>());
+    private final BlockingQueue<ConnectionToClient> connected =
+      new LinkedBlockingQueue<ConnectionToClient>();
+
+    TestServer(int sessionTimeout) throws IOException
+    {
+      super(freePort());
+      setSessionTimeout(sessionTimeout);
+      listen();
+    }
+
+    /**
+     * @return the next connection given a session.
+     */
+    ConnectionToClient awaitConnection() throws InterruptedException
+    {
+      ConnectionToClient connection =
+        connected.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+      check(connection != null, "a client to connect");
+      long deadline = System.currentTimeMillis() + TIMEOUT;
+      while (connection.getSessionToken() == null
+        && System.currentTimeMillis() < deadline)
+        Thread.sleep(10);
+      check(connection.getSessionToken() != null,
+        "the client to get a session");
+      return connection;
+    }
+
+    protected void clientConnected(ConnectionToClient client)
+    {
+      connected.add(client);
+    }
+
+    protected void clientResumed(ConnectionToClient client)
+    {
+      resumed.add(client);
+    }
+
+    protected void handleMessageFromClient(Object msg,
+      ConnectionToClient client) {}
+  }
+
+  /**
+   * A client reconnecting by itself, which records the sessions the
+   * server gives it.
+   */
+  private static class TestClient extends AbstractClient
+  {
+    private final BlockingQueue<Boolean> sessions =
+      new LinkedBlockingQueue<Boolean>();
+
+    TestClient(int port, int reconnectDelay)
+    {
+      super("localhost", port);
+      setAutoReconnect(true);
+      setReconnectDelays(reconnectDelay, reconnectDelay * 2);
+    }
+
+    /**
+     * @return true if the next session resumed the previous one.
+     */
+    boolean awaitSession() throws InterruptedException
+    {
+      Boolean resumed = sessions.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+      check(resumed != null, "the server to give a session");
+      return resumed;
+    }
+
+    protected void sessionStarted(boolean resumed)
+    {
+      sessions.add(resumed);
+    }
+
+    protected void handleMessageFromServer(Object msg) {}
+  }
+}
+// End of SessionResumeTest class